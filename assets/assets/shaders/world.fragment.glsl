@@ -24,6 +24,10 @@ varying float v_opacity;
 varying MED vec2 v_diffuseUV;
 uniform sampler2D u_diffuseTexture;
 
+#ifdef feature_greedy
+varying MED vec4 v_region;
+#endif
+
 #ifdef feature_ao
 varying MED vec2 v_aoUV;
 uniform sampler2D u_aoTexture;
@@ -49,7 +53,11 @@ vec4 add_fog(vec4 fragColour) {
 
 void main() {
     vec3 normal = v_normal;
+    #ifdef feature_greedy
+    vec4 diffuse = texture2D(u_diffuseTexture, v_region.xy + fract(v_diffuseUV) * v_region.zw);
+    #else
     vec4 diffuse = texture2D(u_diffuseTexture, v_diffuseUV);
+    #endif
 
     #ifdef feature_ao
 	vec4 ao = texture2D(u_aoTexture, v_aoUV);
@@ -7,14 +7,18 @@
 
 #define textureFlag
 
+#ifndef feature_packed
 attribute vec3 a_position;
+#endif
 uniform mat4 u_projViewTrans;
 
 attribute vec3 a_normal;
 uniform mat3 u_normalMatrix;
 varying vec3 v_normal;
 
+#ifndef feature_packed
 attribute vec2 a_texCoord0;
+#endif
 uniform vec4 u_diffuseUVTransform;
 varying vec2 v_diffuseUV;
 
@@ -25,7 +29,9 @@ varying float v_opacity;
 
 uniform float u_sunlight;
 uniform float u_lightoverride;
+#ifndef feature_packed
 attribute float a_voxellight;
+#endif
 varying float v_voxellight;
 
 #ifdef GL_ES
@@ -38,27 +44,72 @@ varying float v_distance;
 #endif
 
 #ifdef feature_ao
+#ifndef feature_packed
 attribute vec2 a_ao_texCoord;
+#endif
 uniform vec4 u_aoUVTransform;
 varying vec2 v_aoUV;
 #endif
 
+#ifdef feature_greedy
+attribute vec4 a_region;
+varying vec4 v_region;
+#endif
+
+#ifdef feature_packed
+// see VertexPacker, each component is an unsigned byte
+attribute vec4 a_packedPosition;
+attribute vec4 a_packedTexCoord;
+#ifdef feature_ao
+attribute vec4 a_packedAO;
+#endif
+uniform vec2 u_packedTexelSize;
+
+// CrossFaceVertices min and max
+#define CROSS_MIN 0.14644661
+#define CROSS_MAX 0.85355339
+// AmbientOcclusion SQRT_TOTAL
+#define AO_SQRT_TOTAL 16.0
+
+float unpackCoordinate(float packed) {
+    float inset = floor(packed / 64.0);
+    return packed - (inset * 64.0) + (step(0.5, inset) * CROSS_MIN) + (step(1.5, inset) * (CROSS_MAX - CROSS_MIN));
+}
+#endif
+
 void main() {
+    #ifdef feature_packed
+    vec2 texel = vec2(a_packedTexCoord.x + (mod(a_packedTexCoord.z, 16.0) * 256.0), a_packedTexCoord.y + (floor(a_packedTexCoord.z / 16.0) * 256.0));
+    v_diffuseUV = u_diffuseUVTransform.xy + (texel * u_packedTexelSize) * u_diffuseUVTransform.zw;
+    #ifdef feature_ao
+    vec2 aoRegion = vec2(mod(a_packedAO.x, AO_SQRT_TOTAL), floor(a_packedAO.x / AO_SQRT_TOTAL));
+    vec2 aoCorner = vec2(mod(a_packedAO.y, 2.0), floor(a_packedAO.y / 2.0));
+    v_aoUV = u_aoUVTransform.xy + ((aoRegion + aoCorner) / AO_SQRT_TOTAL) * u_aoUVTransform.zw;
+    #endif
+    vec3 position = vec3(unpackCoordinate(a_packedPosition.x), a_packedPosition.w, unpackCoordinate(a_packedPosition.z));
+    float voxellight = a_packedPosition.y + (a_packedTexCoord.w * 256.0);
+    #else
+    #ifdef feature_greedy
+    v_diffuseUV = a_texCoord0;
+    v_region = vec4(u_diffuseUVTransform.xy + a_region.xy * u_diffuseUVTransform.zw, a_region.zw * u_diffuseUVTransform.zw);
+    #else
     v_diffuseUV = u_diffuseUVTransform.xy + a_texCoord0 * u_diffuseUVTransform.zw;
+    #endif
     #ifdef feature_ao
     v_aoUV = u_aoUVTransform.xy + a_ao_texCoord * u_aoUVTransform.zw;
     #endif
+    vec3 position = a_position;
+    float voxellight = a_voxellight;
+    #endif
 
     v_opacity = u_opacity;
 
-    vec4 pos = u_worldTrans * vec4(a_position, 1.0);
+    vec4 pos = u_worldTrans * vec4(position, 1.0);
     gl_Position = u_projViewTrans * pos;
 
     vec3 normal = normalize(u_normalMatrix * a_normal);
     v_normal = normal;
 
-    float voxellight = a_voxellight;
-
     #ifdef simpleOperations
     int int_side = int(floor(voxellight / 256.0));
     #else
@@ -14,8 +14,13 @@ import java.util.Arrays;
 
 public class BlockLeaves extends Block {
 
-  private static final boolean[] randomTickChecked = new boolean[9 * 9 * 9];
-  private static final IntQueue randomTickTodo = new IntQueue(9 * 9 * 9);
+  // areas can be ticked in parallel
+  private static final ThreadLocal<RandomTickState> randomTickState = new ThreadLocal<RandomTickState>() {
+    @Override
+    protected RandomTickState initialValue() {
+      return new RandomTickState();
+    }
+  };
 
   public BlockLeaves() {
     super("core:leaves");
@@ -32,10 +37,13 @@ public class BlockLeaves extends Block {
   @Override
   public void randomTick(World world, Area area, final int blockX, final int blockY, final int blockZ, int meta) {
     if (meta == 1) {
+      RandomTickState state = randomTickState.get();
+      boolean[] randomTickChecked = state.checked;
+      IntQueue randomTickTodo = state.todo;
       Arrays.fill(randomTickChecked, false);
       randomTickTodo.clear();
 
-      add(0, 0, 0);
+      add(randomTickChecked, randomTickTodo, 0, 0, 0);
       while (!randomTickTodo.isEmpty()) {
         int poll = randomTickTodo.poll();
         int cx = (poll / 9 / 9) - 4, cy = ((poll / 9) % 9) - 4, cz = (poll % 9) - 4;
@@ -50,12 +58,12 @@ public class BlockLeaves extends Block {
         if (y < 0 || y > a.maxY) continue;
         Block b = a.getBlock(x, y, z);
         if (b == Blocks.leaves) {
-          add(cx + -1, cy, cz);
-          add(cx + 1, cy, cz);
-          add(cx, cy + -1, cz);
-          add(cx, cy + 1, cz);
-          add(cx, cy, cz + -1);
-          add(cx, cy, cz + 1);
+          add(randomTickChecked, randomTickTodo, cx + -1, cy, cz);
+          add(randomTickChecked, randomTickTodo, cx + 1, cy, cz);
+          add(randomTickChecked, randomTickTodo, cx, cy + -1, cz);
+          add(randomTickChecked, randomTickTodo, cx, cy + 1, cz);
+          add(randomTickChecked, randomTickTodo, cx, cy, cz + -1);
+          add(randomTickChecked, randomTickTodo, cx, cy, cz + 1);
         } else if (b == Blocks.log) {
           return;
         }
@@ -69,7 +77,7 @@ public class BlockLeaves extends Block {
     return ((x + 4) * 9 * 9) + ((y + 4) * 9) + (z + 4);
   }
 
-  private void add(int cx, int cy, int cz) {
+  private void add(boolean[] randomTickChecked, IntQueue randomTickTodo, int cx, int cy, int cz) {
     if (cx < -4 || cx > 4 || cy < -4 || cy > 4 || cz < -4 || cz > 4) return;
     int pos = getPos(cx, cy, cz);
     if (!randomTickChecked[pos]) {
@@ -101,4 +109,9 @@ public class BlockLeaves extends Block {
       }
     }
   }
+
+  private static class RandomTickState {
+    final boolean[] checked = new boolean[9 * 9 * 9];
+    final IntQueue todo = new IntQueue(9 * 9 * 9);
+  }
 }
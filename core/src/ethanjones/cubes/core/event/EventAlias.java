@@ -26,6 +26,7 @@ public class EventAlias {
     registerAlias("PlayerPlaceBlockEvent", ethanjones.cubes.core.event.entity.living.player.PlayerPlaceBlockEvent.class);
 
     registerAlias("BlockChangedEvent", ethanjones.cubes.core.event.world.block.BlockChangedEvent.class);
+    registerAlias("BlocksChangedEvent", ethanjones.cubes.core.event.world.block.BlocksChangedEvent.class);
 
     registerAlias("AreaLoadedEvent", ethanjones.cubes.core.event.world.generation.AreaLoadedEvent.class);
     registerAlias("AreaFeaturesEvent", ethanjones.cubes.core.event.world.generation.FeaturesEvent.class);
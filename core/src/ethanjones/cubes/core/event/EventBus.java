@@ -7,8 +7,8 @@ import ethanjones.cubes.side.common.Side;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class EventBus {
 
@@ -19,6 +19,8 @@ public class EventBus {
   }
 
   private HashMap<Class<? extends Event>, List<EventWrapper>> data = new HashMap<Class<? extends Event>, List<EventWrapper>>();
+  // handlers for each posted class and its superclasses, rebuilt after handlers are added or removed
+  private final ConcurrentHashMap<Class<?>, EventWrapper[]> dispatch = new ConcurrentHashMap<Class<?>, EventWrapper[]>();
   private final Side side;
 
   public EventBus(Side side) {
@@ -33,9 +35,9 @@ public class EventBus {
           Class<?>[] parameterTypes = method.getParameterTypes();
           if (parameterTypes.length == 1 && Event.class.isAssignableFrom(parameterTypes[0])) {
             Class<? extends Event> eventClass = parameterTypes[0].asSubclass(Event.class);
-            final List<EventWrapper> list = getList(eventClass);
-            synchronized (list) {
-              list.add(new EventWrapper(method, instance, eventHandler));
+            synchronized (this) {
+              getList(eventClass).add(new EventWrapper(method, instance, eventHandler));
+              dispatch.clear();
             }
           } else {
             Log.error(new CubesException("Invalid EventHandler method parameters"));
@@ -48,38 +50,51 @@ public class EventBus {
     return this;
   }
 
-  List<EventWrapper> getList(Class<? extends Event> eventClass) {
-    synchronized (this) {
-      List<EventWrapper> eventHandlers = data.get(eventClass);
-      if (eventHandlers == null) {
-        eventHandlers = new ArrayList<EventWrapper>();
-        data.put(eventClass, eventHandlers);
-      }
-      return eventHandlers;
+  // must be synchronized
+  private List<EventWrapper> getList(Class<? extends Event> eventClass) {
+    List<EventWrapper> eventHandlers = data.get(eventClass);
+    if (eventHandlers == null) {
+      eventHandlers = new ArrayList<EventWrapper>();
+      data.put(eventClass, eventHandlers);
     }
+    return eventHandlers;
   }
 
   <E extends Event> E post(E event) {
     event.setSide(side);
-    Class<?> c = event.getClass();
-    final List<EventWrapper> posted = new ArrayList<EventWrapper>(); //Prevents being posted multiple times to same EventHandler
+    EventWrapper[] wrappers = dispatch.get(event.getClass());
+    if (wrappers == null) wrappers = build(event.getClass());
+    for (EventWrapper wrapper : wrappers) {
+      if (!wrapper.run(event)) remove(wrapper);
+    }
+    return event;
+  }
+
+  private synchronized EventWrapper[] build(Class<?> eventClass) {
+    EventWrapper[] wrappers = dispatch.get(eventClass);
+    if (wrappers != null) return wrappers;
+
+    final List<EventWrapper> list = new ArrayList<EventWrapper>();
+    Class<?> c = eventClass;
     while (c != null && Event.class.isAssignableFrom(c)) {
-      Class<? extends Event> eventClass = c.asSubclass(Event.class);
-      final List<EventWrapper> list = getList(eventClass);
-      synchronized (list) {
-        Iterator<EventWrapper> iterator = list.iterator();
-        while (iterator.hasNext()) {
-          EventWrapper wrapper = iterator.next();
-          if (posted.contains(wrapper)) continue;
-          posted.add(wrapper);
-          if (!wrapper.run(event)) {
-            iterator.remove();
-          }
+      List<EventWrapper> handlers = data.get(c);
+      if (handlers != null) {
+        for (EventWrapper wrapper : handlers) {
+          if (!list.contains(wrapper)) list.add(wrapper); //Prevents being posted multiple times to same EventHandler
         }
       }
       c = c.getSuperclass();
     }
-    return event;
+    wrappers = list.toArray(new EventWrapper[list.size()]);
+    dispatch.put(eventClass, wrappers);
+    return wrappers;
+  }
+
+  private synchronized void remove(EventWrapper wrapper) {
+    for (List<EventWrapper> list : data.values()) {
+      list.remove(wrapper);
+    }
+    dispatch.clear();
   }
 
   public Side getSide() {
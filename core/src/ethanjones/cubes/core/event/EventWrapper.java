@@ -16,6 +16,11 @@ class EventWrapper {
     this.method = method;
     this.instance = instance;
     this.eventHandler = eventHandler;
+    try {
+      // skips the access check on every invoke
+      method.setAccessible(true);
+    } catch (SecurityException ignored) {
+    }
   }
 
   public boolean run(Event event) {
@@ -11,14 +11,20 @@ public class BlockChangedEvent extends BlockEvent {
   private final Block newBlock;
   private final int newMeta;
   private final Area area;
+  private final boolean bulk;
 
   public BlockChangedEvent(BlockReference blockReference, Block oldBlock, int oldMeta, Block newBlock, int newMeta, Area area) {
+    this(blockReference, oldBlock, oldMeta, newBlock, newMeta, area, false);
+  }
+
+  public BlockChangedEvent(BlockReference blockReference, Block oldBlock, int oldMeta, Block newBlock, int newMeta, Area area, boolean bulk) {
     super(false, blockReference);
     this.oldBlock = oldBlock;
     this.oldMeta = oldMeta;
     this.newBlock = newBlock;
     this.newMeta = newMeta;
     this.area = area;
+    this.bulk = bulk;
   }
 
   public Block getOldBlock() {
@@ -40,4 +46,12 @@ public class BlockChangedEvent extends BlockEvent {
   public Area getArea() {
     return area;
   }
+
+  /**
+   * @return true if posted for one block of {@link Area#setBlocks(int[], int[], int)}, after the
+   * {@link BlocksChangedEvent} for all of them
+   */
+  public boolean isBulk() {
+    return bulk;
+  }
 }
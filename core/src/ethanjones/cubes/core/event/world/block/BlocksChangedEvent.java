@@ -0,0 +1,47 @@
+package ethanjones.cubes.core.event.world.block;
+
+import ethanjones.cubes.core.event.world.WorldEvent;
+import ethanjones.cubes.world.storage.Area;
+
+/**
+ * Posted once per area by {@link Area#setBlocks(int[], int[], int)}, before a BlockChangedEvent for each block where
+ * {@link BlockChangedEvent#isBulk()} is true. Handlers of both only need to handle one.
+ * Blocks are block ints, with the meta in bits 20 to 27, and refs are from {@link Area#getRef(int, int, int)}.
+ */
+public class BlocksChangedEvent extends WorldEvent {
+
+  private final Area area;
+  private final int count;
+  private final int[] refs;
+  private final int[] oldBlocks;
+  private final int[] newBlocks;
+
+  public BlocksChangedEvent(Area area, int count, int[] refs, int[] oldBlocks, int[] newBlocks) {
+    super(false);
+    this.area = area;
+    this.count = count;
+    this.refs = refs;
+    this.oldBlocks = oldBlocks;
+    this.newBlocks = newBlocks;
+  }
+
+  public Area getArea() {
+    return area;
+  }
+
+  public int getCount() {
+    return count;
+  }
+
+  public int getRef(int i) {
+    return refs[i];
+  }
+
+  public int getOldBlock(int i) {
+    return oldBlocks[i];
+  }
+
+  public int getNewBlock(int i) {
+    return newBlocks[i];
+  }
+}
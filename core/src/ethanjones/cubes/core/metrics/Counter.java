@@ -0,0 +1,34 @@
+package ethanjones.cubes.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Counter extends Metric {
+
+  private final AtomicLong value = new AtomicLong();
+
+  public Counter(String name, String help, String labels) {
+    super(name, help, labels);
+  }
+
+  public void inc() {
+    value.incrementAndGet();
+  }
+
+  public void add(long l) {
+    value.addAndGet(l);
+  }
+
+  public long get() {
+    return value.get();
+  }
+
+  @Override
+  public String type() {
+    return "counter";
+  }
+
+  @Override
+  public void write(StringBuilder builder) {
+    sample(builder, "", "", value.get());
+  }
+}
@@ -0,0 +1,23 @@
+package ethanjones.cubes.core.metrics;
+
+/**
+ * A value read when the metrics are written
+ */
+public abstract class Gauge extends Metric {
+
+  public Gauge(String name, String help, String labels) {
+    super(name, help, labels);
+  }
+
+  public abstract double get();
+
+  @Override
+  public String type() {
+    return "gauge";
+  }
+
+  @Override
+  public void write(StringBuilder builder) {
+    sample(builder, "", "", get());
+  }
+}
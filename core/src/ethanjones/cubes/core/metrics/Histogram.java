@@ -0,0 +1,89 @@
+package ethanjones.cubes.core.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts nanosecond durations in log-linear buckets, each power of two split into 16, so quantiles are within about 6%.
+ * Recording is lock free. Written as a summary in seconds.
+ */
+public class Histogram extends Metric {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+  private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  public Histogram(String name, String help, String labels) {
+    super(name, help, labels);
+  }
+
+  public void record(long nanos) {
+    if (nanos < 0) nanos = 0;
+    counts.incrementAndGet(bucket(nanos));
+    count.incrementAndGet();
+    sum.addAndGet(nanos);
+    long m = max.get();
+    while (nanos > m && !max.compareAndSet(m, nanos)) {
+      m = max.get();
+    }
+  }
+
+  private static int bucket(long value) {
+    if (value < SUB_BUCKETS) return (int) value;
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+  }
+
+  // the middle of the values counted in the bucket
+  private static long value(int bucket) {
+    if (bucket < SUB_BUCKETS) return bucket;
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int sub = bucket % SUB_BUCKETS;
+    long low = (1L << exponent) | ((long) sub << (exponent - SUB_BUCKET_BITS));
+    return low + (1L << (exponent - SUB_BUCKET_BITS)) / 2;
+  }
+
+  /**
+   * @return the approximate duration in nanoseconds which the fraction of recorded durations are less than
+   */
+  public long quantile(double quantile) {
+    long total = count.get();
+    if (total == 0) return 0;
+    long target = (long) Math.ceil(quantile * total);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts.get(i);
+      if (seen >= target) return Math.min(value(i), max.get());
+    }
+    return max.get();
+  }
+
+  public long count() {
+    return count.get();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  @Override
+  public String type() {
+    return "summary";
+  }
+
+  @Override
+  public void write(StringBuilder builder) {
+    for (double quantile : QUANTILES) {
+      sample(builder, "", "quantile=\"" + quantile + "\"", quantile(quantile) / 1e9);
+    }
+    sample(builder, "_sum", "", sum.get() / 1e9);
+    sample(builder, "_count", "", count.get());
+  }
+}
@@ -0,0 +1,48 @@
+package ethanjones.cubes.core.metrics;
+
+/**
+ * A metric in the {@link Metrics} registry. Metrics with the same name and different labels are written together.
+ */
+public abstract class Metric {
+
+  public final String name;
+  public final String help;
+  // prometheus label pairs without braces, like tag="light", or empty
+  public final String labels;
+
+  protected Metric(String name, String help, String labels) {
+    this.name = name;
+    this.help = help;
+    this.labels = labels == null ? "" : labels;
+  }
+
+  /**
+   * @return counter, gauge, summary or untyped
+   */
+  public abstract String type();
+
+  /**
+   * Appends the metric's samples in the text exposition format
+   */
+  public abstract void write(StringBuilder builder);
+
+  protected void sample(StringBuilder builder, String suffix, String extraLabels, double value) {
+    builder.append(name).append(suffix);
+    if (!labels.isEmpty() || !extraLabels.isEmpty()) {
+      builder.append('{').append(labels);
+      if (!labels.isEmpty() && !extraLabels.isEmpty()) builder.append(',');
+      builder.append(extraLabels).append('}');
+    }
+    builder.append(' ');
+    if (value == (long) value) {
+      builder.append((long) value);
+    } else {
+      builder.append(value);
+    }
+    builder.append('\n');
+  }
+
+  public static String label(String name, String value) {
+    return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+  }
+}
@@ -0,0 +1,80 @@
+package ethanjones.cubes.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of counters, gauges and histograms, written in the Prometheus text exposition format by {@link #write()}
+ */
+public class Metrics {
+
+  private static final ConcurrentHashMap<String, Metric> metrics = new ConcurrentHashMap<String, Metric>();
+
+  public static Counter counter(String name, String help) {
+    return counter(name, help, "");
+  }
+
+  public static Counter counter(String name, String help, String labels) {
+    Metric metric = metrics.get(key(name, labels));
+    if (metric == null) {
+      Metric counter = new Counter(name, help, labels);
+      metric = metrics.putIfAbsent(key(name, labels), counter);
+      if (metric == null) metric = counter;
+    }
+    return (Counter) metric;
+  }
+
+  public static Histogram histogram(String name, String help) {
+    return histogram(name, help, "");
+  }
+
+  public static Histogram histogram(String name, String help, String labels) {
+    Metric metric = metrics.get(key(name, labels));
+    if (metric == null) {
+      Metric histogram = new Histogram(name, help, labels);
+      metric = metrics.putIfAbsent(key(name, labels), histogram);
+      if (metric == null) metric = histogram;
+    }
+    return (Histogram) metric;
+  }
+
+  /**
+   * Adds the metric, replacing any with the same name and labels
+   */
+  public static <T extends Metric> T register(T metric) {
+    metrics.put(key(metric.name, metric.labels), metric);
+    return metric;
+  }
+
+  public static void remove(Metric metric) {
+    metrics.remove(key(metric.name, metric.labels), metric);
+  }
+
+  private static String key(String name, String labels) {
+    return labels == null || labels.isEmpty() ? name : name + "{" + labels + "}";
+  }
+
+  public static String write() {
+    ArrayList<Metric> list = new ArrayList<Metric>(metrics.values());
+    Collections.sort(list, new Comparator<Metric>() {
+      @Override
+      public int compare(Metric o1, Metric o2) {
+        int i = o1.name.compareTo(o2.name);
+        return i != 0 ? i : o1.labels.compareTo(o2.labels);
+      }
+    });
+    StringBuilder builder = new StringBuilder();
+    String last = null;
+    for (Metric metric : list) {
+      if (!metric.name.equals(last)) {
+        last = metric.name;
+        builder.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+        builder.append("# TYPE ").append(metric.name).append(' ').append(metric.type()).append('\n');
+      }
+      metric.write(builder);
+    }
+    return builder.toString();
+  }
+}
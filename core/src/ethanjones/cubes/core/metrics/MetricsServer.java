@@ -0,0 +1,73 @@
+package ethanjones.cubes.core.metrics;
+
+import ethanjones.cubes.core.logging.Log;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * Answers every HTTP request on a local port with {@link Metrics#write()}, for Prometheus to scrape
+ */
+public class MetricsServer implements Runnable {
+
+  private static final int TIMEOUT = 5000;
+
+  private final ServerSocket serverSocket;
+  private final Thread thread;
+  private volatile boolean running = true;
+
+  public MetricsServer(int port) throws IOException {
+    serverSocket = new ServerSocket(port, 8, InetAddress.getByName("127.0.0.1"));
+    thread = new Thread(this);
+    thread.setName("Metrics Server: " + port);
+    thread.setDaemon(true);
+    thread.start();
+    Log.info("Serving metrics on http://127.0.0.1:" + port + "/metrics");
+  }
+
+  @Override
+  public void run() {
+    while (running) {
+      Socket socket = null;
+      try {
+        socket = serverSocket.accept();
+        socket.setSoTimeout(TIMEOUT);
+        handle(socket);
+      } catch (SocketTimeoutException ignored) {
+      } catch (IOException e) {
+        if (running) Log.debug("Metrics request failed", e);
+      } finally {
+        if (socket != null) {
+          try {
+            socket.close();
+          } catch (IOException ignored) {
+          }
+        }
+      }
+    }
+  }
+
+  private void handle(Socket socket) throws IOException {
+    BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+    String line;
+    while ((line = reader.readLine()) != null && !line.isEmpty()) {
+      // the request is ignored
+    }
+    byte[] body = Metrics.write().getBytes("UTF-8");
+    OutputStream output = new BufferedOutputStream(socket.getOutputStream());
+    output.write(("HTTP/1.0 200 OK\r\nContent-Type: text/plain; version=0.0.4; charset=utf-8\r\nContent-Length: " + body.length + "\r\nConnection: close\r\n\r\n").getBytes("UTF-8"));
+    output.write(body);
+    output.flush();
+  }
+
+  public void dispose() {
+    running = false;
+    try {
+      serverSocket.close();
+    } catch (IOException ignored) {
+    }
+  }
+}
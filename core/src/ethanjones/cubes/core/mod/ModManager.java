@@ -9,6 +9,7 @@ import ethanjones.cubes.core.mod.json.JsonModInstance;
 import ethanjones.cubes.core.mod.lua.LuaModInstance;
 import ethanjones.cubes.core.platform.Compatibility;
 import ethanjones.cubes.core.system.CubesException;
+import ethanjones.cubes.core.system.Executor;
 import ethanjones.cubes.graphics.assets.AssetFinder;
 import ethanjones.cubes.graphics.assets.AssetManager;
 import ethanjones.cubes.graphics.assets.Assets;
@@ -21,6 +22,7 @@ import java.io.FileFilter;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 public class ModManager {
 
@@ -41,8 +43,8 @@ public class ModManager {
     
     Log.debug("Loading mods");
     ArrayList<ModInstance> mods = new ArrayList<ModInstance>();
-    ModLoader modLoader = Compatibility.get().getModLoader();
-    FileHandle temp = Compatibility.get().getBaseFolder().child("mods").child("temp");
+    final ModLoader modLoader = Compatibility.get().getModLoader();
+    final FileHandle temp = Compatibility.get().getBaseFolder().child("mods").child("temp");
     temp.deleteDirectory();
     temp.mkdirs();
     Compatibility.get().nomedia(temp);
@@ -58,88 +60,31 @@ public class ModManager {
       }
     }
     
-    for (FileHandle fileHandle : getModFiles()) {
+    // extracting is independent for each mod, loading stays in order
+    List<FileHandle> modFiles = getModFiles();
+    ArrayList<Callable<ExtractedMod>> extract = new ArrayList<Callable<ExtractedMod>>(modFiles.size());
+    final int finalLoadJar = loadJar;
+    final int finalLoadDex = loadDex;
+    for (final FileHandle fileHandle : modFiles) {
       if (extraMods.contains(fileHandle)) Log.warning("Loading mod from " + fileHandle.file().getAbsolutePath());
-      FileHandle classFile = null;
-      String className = null;
-      String name = "";
-      int selectedPriority = -1;
-      ModType selectedModType = null;
-      Map<String, FileHandle> jsonFiles = new HashMap<String, FileHandle>();
-      Map<String, FileHandle> luaFiles = new HashMap<String, FileHandle>();
-      FileHandle modAssets = Assets.assetsFolder.child(fileHandle.name());
-      
-      ModInputStream mis = null;
-      try {
-        mis = ModInputStream.get(fileHandle);
-        ModFile modFile;
-        while ((modFile = mis.getNextModFile()) != null) {
-          if (modFile.isFolder()) continue;
-          String modFileName = modFile.getName();
-          FileHandle f = temp.child(fileHandle.name()).child(modFileName);
-          if (modFileName.equals("mod.jar")) {
-            if (loadJar != -1 && (selectedPriority == -1 || loadJar < selectedPriority)) {
-              writeToFile(f, modFile);
-              classFile = f;
-              selectedPriority = loadJar;
-              selectedModType = ModType.jar;
-            }
-          } else if (modFileName.equals("mod.dex")) {
-            if (loadDex != -1 && (selectedPriority == -1 || loadDex < selectedPriority)) {
-              writeToFile(f, modFile);
-              classFile = f;
-              selectedPriority = loadDex;
-              selectedModType = ModType.jar;
-            }
-          } else if (modFileName.equals("mod.properties")) {
-            Properties properties = new Properties();
-            InputStream propertiesStream = null;
-            try {
-              propertiesStream = modFile.getInputStream();
-              properties.load(propertiesStream);
-            } finally {
-              StreamUtils.closeQuietly(propertiesStream);
-            }
-            className = properties.getProperty("modClass");
-            name = properties.getProperty("modName");
-          } else if (modFileName.startsWith("assets/")) {
-            writeToFile(modAssets.child(modFileName.substring(7)), modFile);
-          } else if (modFileName.startsWith("json/") && modFileName.endsWith(".json")) {
-            writeToFile(f, modFile);
-            jsonFiles.put(modFileName.substring(5), f);
-          } else if (modFileName.startsWith("lua/") && modFileName.endsWith(".lua")) {
-            writeToFile(f, modFile);
-            luaFiles.put(modFileName.substring(4), f);
-          }
-        }
-        if (name == null) {
-          Log.error("Mod " + fileHandle.name() + " does not contain a properties file");
-          continue;
-        }
-        if (jsonFiles.isEmpty() && luaFiles.isEmpty()) {
-          if (className == null) {
-            Log.error("Mod " + fileHandle.name() + " does not contain a \"mod.properties\" with a \"className\" or json or lua files");
-            continue;
-          }
-          if (classFile == null) {
-            Log.error("Mod " + fileHandle.name() + " does not contain any of " + Arrays.deepToString(modLoader.getTypes()));
-            continue;
-          }
-        } else {
-          if (className == null && classFile != null) {
-            Log.error("Mod " + fileHandle.name() + " does not contain a \"mod.properties\" with a \"className\"");
-            continue;
-          } else if (className != null && classFile == null) {
-            Log.error("Mod " + fileHandle.name() + " does not contain any of " + Arrays.deepToString(modLoader.getTypes()));
-            continue;
-          }
+      extract.add(new Callable<ExtractedMod>() {
+        @Override
+        public ExtractedMod call() {
+          return extract(fileHandle, temp, modLoader, finalLoadJar, finalLoadDex);
         }
-      } catch (Exception e) {
-        Log.error("Failed to load mod: " + name, e);
-        continue;
-      } finally {
-        StreamUtils.closeQuietly(mis);
-      }
+      });
+    }
+
+    for (ExtractedMod extracted : Executor.executeAllNotSided(extract)) {
+      if (extracted == null) continue;
+      FileHandle fileHandle = extracted.fileHandle;
+      FileHandle classFile = extracted.classFile;
+      String className = extracted.className;
+      String name = extracted.name;
+      ModType selectedModType = extracted.selectedModType;
+      Map<String, FileHandle> jsonFiles = extracted.jsonFiles;
+      Map<String, FileHandle> luaFiles = extracted.luaFiles;
+      FileHandle modAssets = extracted.modAssets;
       try {
         Log.debug("Mod file: \"" + fileHandle.name() + "\" Name: \"" + name + "\"");
         AssetManager assetManager;
@@ -186,6 +131,110 @@ public class ModManager {
     ModManager.mods = Collections.unmodifiableList(mods);
   }
 
+  private static ExtractedMod extract(FileHandle fileHandle, FileHandle temp, ModLoader modLoader, int loadJar, int loadDex) {
+    FileHandle classFile = null;
+    String className = null;
+    String name = "";
+    int selectedPriority = -1;
+    ModType selectedModType = null;
+    Map<String, FileHandle> jsonFiles = new HashMap<String, FileHandle>();
+    Map<String, FileHandle> luaFiles = new HashMap<String, FileHandle>();
+    FileHandle modAssets = Assets.assetsFolder.child(fileHandle.name());
+    
+    ModInputStream mis = null;
+    try {
+      mis = ModInputStream.get(fileHandle);
+      ModFile modFile;
+      while ((modFile = mis.getNextModFile()) != null) {
+        if (modFile.isFolder()) continue;
+        String modFileName = modFile.getName();
+        FileHandle f = temp.child(fileHandle.name()).child(modFileName);
+        if (modFileName.equals("mod.jar")) {
+          if (loadJar != -1 && (selectedPriority == -1 || loadJar < selectedPriority)) {
+            writeToFile(f, modFile);
+            classFile = f;
+            selectedPriority = loadJar;
+            selectedModType = ModType.jar;
+          }
+        } else if (modFileName.equals("mod.dex")) {
+          if (loadDex != -1 && (selectedPriority == -1 || loadDex < selectedPriority)) {
+            writeToFile(f, modFile);
+            classFile = f;
+            selectedPriority = loadDex;
+            selectedModType = ModType.jar;
+          }
+        } else if (modFileName.equals("mod.properties")) {
+          Properties properties = new Properties();
+          InputStream propertiesStream = null;
+          try {
+            propertiesStream = modFile.getInputStream();
+            properties.load(propertiesStream);
+          } finally {
+            StreamUtils.closeQuietly(propertiesStream);
+          }
+          className = properties.getProperty("modClass");
+          name = properties.getProperty("modName");
+        } else if (modFileName.startsWith("assets/")) {
+          writeToFile(modAssets.child(modFileName.substring(7)), modFile);
+        } else if (modFileName.startsWith("json/") && modFileName.endsWith(".json")) {
+          writeToFile(f, modFile);
+          jsonFiles.put(modFileName.substring(5), f);
+        } else if (modFileName.startsWith("lua/") && modFileName.endsWith(".lua")) {
+          writeToFile(f, modFile);
+          luaFiles.put(modFileName.substring(4), f);
+        }
+      }
+      if (name == null) {
+        Log.error("Mod " + fileHandle.name() + " does not contain a properties file");
+        return null;
+      }
+      if (jsonFiles.isEmpty() && luaFiles.isEmpty()) {
+        if (className == null) {
+          Log.error("Mod " + fileHandle.name() + " does not contain a \"mod.properties\" with a \"className\" or json or lua files");
+          return null;
+        }
+        if (classFile == null) {
+          Log.error("Mod " + fileHandle.name() + " does not contain any of " + Arrays.deepToString(modLoader.getTypes()));
+          return null;
+        }
+      } else {
+        if (className == null && classFile != null) {
+          Log.error("Mod " + fileHandle.name() + " does not contain a \"mod.properties\" with a \"className\"");
+          return null;
+        } else if (className != null && classFile == null) {
+          Log.error("Mod " + fileHandle.name() + " does not contain any of " + Arrays.deepToString(modLoader.getTypes()));
+          return null;
+        }
+      }
+    } catch (Exception e) {
+      Log.error("Failed to load mod: " + name, e);
+      return null;
+    } finally {
+      StreamUtils.closeQuietly(mis);
+    }
+    ExtractedMod extracted = new ExtractedMod();
+    extracted.fileHandle = fileHandle;
+    extracted.classFile = classFile;
+    extracted.className = className;
+    extracted.name = name;
+    extracted.selectedModType = selectedModType;
+    extracted.jsonFiles = jsonFiles;
+    extracted.luaFiles = luaFiles;
+    extracted.modAssets = modAssets;
+    return extracted;
+  }
+
+  private static class ExtractedMod {
+    FileHandle fileHandle;
+    FileHandle classFile;
+    String className;
+    String name;
+    ModType selectedModType;
+    Map<String, FileHandle> jsonFiles;
+    Map<String, FileHandle> luaFiles;
+    FileHandle modAssets;
+  }
+
   private static List<FileHandle> getModFiles() {
     FileHandle base = Compatibility.get().getBaseFolder().child("mods");
     base.mkdirs();
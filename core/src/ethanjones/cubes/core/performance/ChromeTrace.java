@@ -0,0 +1,90 @@
+package ethanjones.cubes.core.performance;
+
+import com.eclipsesource.json.Json;
+
+import java.io.*;
+
+/**
+ * Converts a performance file to the Chrome Trace Event format, which can be opened in chrome://tracing or Perfetto.
+ * Each top level node is a thread, every other node a complete event.
+ */
+public class ChromeTrace {
+
+  public static void main(String[] args) {
+    if (args.length != 1) throw new IllegalArgumentException("Excepted file as argument");
+    File file = new File(args[0]);
+    try {
+      run(file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public static void run(File file) throws IOException {
+    if (!file.exists()) throw new IllegalArgumentException("File does not exist");
+    if (file.isDirectory()) throw new IllegalArgumentException("Path is a directory");
+
+    FileInputStream fileInputStream = null;
+    Writer out = null;
+    try {
+      fileInputStream = new FileInputStream(file);
+      DataInputStream data = new DataInputStream(new BufferedInputStream(fileInputStream));
+
+      if (!(data.readUnsignedByte() == 0xEE && data.readUnsignedByte() == 0xCE)) {
+        throw new IllegalArgumentException("Not a Cubes Performance file");
+      }
+      out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file.getAbsolutePath() + ".json"), "UTF-8"));
+      out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      int thread = 0;
+      while (data.readUnsignedByte() != 0xFF) {
+        readThread(data, out, thread++);
+      }
+      out.write("]}");
+    } finally {
+      if (fileInputStream != null) {
+        try {
+          fileInputStream.close();
+        } catch (Exception ignored) {
+
+        }
+      }
+      if (out != null) {
+        try {
+          out.close();
+        } catch (Exception ignored) {
+
+        }
+      }
+    }
+  }
+
+  private static void readThread(DataInputStream in, Writer out, int thread) throws IOException {
+    String name = in.readUTF();
+    in.readUTF();
+    in.readLong();
+    in.readLong();
+    if (thread > 0) out.write(',');
+    out.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread + ",\"args\":{\"name\":" + Json.value(name).toString() + "}}");
+    while (in.readUnsignedByte() != 0xFF) {
+      read(in, out, thread);
+    }
+  }
+
+  private static void read(DataInputStream in, Writer out, int thread) throws IOException {
+    String tag = in.readUTF();
+    String extra = in.readUTF();
+    if (!extra.isEmpty()) tag += " " + extra;
+
+    long start = in.readLong();
+    long end = in.readLong();
+    out.write(",\n{\"name\":" + Json.value(tag).toString() + ",\"cat\":\"cubes\",\"ph\":\"X\",\"pid\":1,\"tid\":" + thread + ",\"ts\":" + micros(start) + ",\"dur\":" + micros(end - start) + "}");
+    while (in.readUnsignedByte() != 0xFF) {
+      read(in, out, thread);
+    }
+  }
+
+  private static String micros(long nanos) {
+    long fraction = Math.abs(nanos % 1000);
+    return (nanos / 1000) + (fraction < 10 ? ".00" : fraction < 100 ? ".0" : ".") + fraction;
+  }
+}
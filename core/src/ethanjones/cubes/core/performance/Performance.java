@@ -1,156 +1,235 @@
 package ethanjones.cubes.core.performance;
 
 import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.metrics.Histogram;
+import ethanjones.cubes.core.metrics.Metric;
+import ethanjones.cubes.core.metrics.Metrics;
 import ethanjones.cubes.core.platform.Compatibility;
+import ethanjones.cubes.core.settings.Settings;
 
 import com.badlogic.gdx.files.FileHandle;
 
 import java.io.*;
-import java.util.ArrayDeque;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Records when tagged sections start and stop in a fixed size ring buffer per thread, so it can always be enabled. The
+ * most recent records can be saved with {@link #dump(String)}, which happens automatically after a slow tick.
+ */
 public class Performance {
 
+  // records kept per thread, a power of two
+  public static final int RECORDS = 16384;
+  private static final int MASK = RECORDS - 1;
+  private static final int MAX_DEPTH = 64;
+  // minimum milliseconds between dumps after slow ticks
+  private static final long SLOW_TICK_DUMP_INTERVAL = 60000;
+
   public static long startTime = System.nanoTime();
-  private static ThreadLocal<ThreadPerformance> threadNode = new ThreadLocalPerformance();
-  private static final ArrayList<ThreadPerformance> nodes = new ArrayList<ThreadPerformance>();
-  private static final AtomicBoolean enabled = new AtomicBoolean(false);
+  private static volatile boolean enabled = true;
+  // records started before are ignored, and open records are dropped by threads seeing a new generation
+  private static volatile long clearTime = 0;
+  private static volatile int generation = 0;
+  private static long lastSlowTickDump;
+  private static volatile Listener listener;
+  // by tag id, for the tags which have been stopped
+  private static volatile Histogram[] tagHistograms = new Histogram[0];
 
-  public static void start(String tag) {
-    if (!enabled.get()) return;
-    ThreadPerformance threadPerformance = threadNode.get();
-    synchronized (threadPerformance) {
-      PerformanceNode last = threadPerformance.active.getLast();
-      PerformanceNode n = new PerformanceNode();
-      n.tag = tag;
-      n.parent = last;
-      last.children.add(n);
-      threadPerformance.active.add(n);
-      n.start = System.nanoTime() - startTime;
+  private static final ConcurrentHashMap<String, Integer> tagIDs = new ConcurrentHashMap<String, Integer>();
+  private static final ArrayList<String> tags = new ArrayList<String>();
+  // recorders of threads which have ended are removed when another thread starts recording
+  private static final ArrayList<ThreadRecorder> recorders = new ArrayList<ThreadRecorder>();
+  private static final ThreadLocal<ThreadRecorder> threadRecorder = new ThreadLocal<ThreadRecorder>() {
+    @Override
+    protected ThreadRecorder initialValue() {
+      ThreadRecorder recorder = new ThreadRecorder(Thread.currentThread());
+      synchronized (recorders) {
+        Iterator<ThreadRecorder> iterator = recorders.iterator();
+        while (iterator.hasNext()) {
+          if (!iterator.next().isAlive()) iterator.remove();
+        }
+        recorders.add(recorder);
+      }
+      return recorder;
     }
+  };
+
+  /**
+   * Told about every tag started and stopped, whether or not tracking is enabled, for example to forward them to a
+   * platform profiler
+   */
+  public interface Listener {
+    void start(String tag);
+
+    void stop(String tag);
+  }
+
+  public static void setListener(Listener listener) {
+    Performance.listener = listener;
+  }
+
+  public static void start(String tag) {
+    Listener listener = Performance.listener;
+    if (listener != null) listener.start(tag);
+    if (!enabled) return;
+    int tagID = tagID(tag);
+    threadRecorder.get().start(tagID, tagID, System.nanoTime() - startTime);
   }
 
+  /**
+   * Stopped by {@link #stop(String)} with the tag. Every different extra is kept, so only use a few.
+   */
   public static void start(String tag, String extra) {
-    if (!enabled.get()) return;
-    ThreadPerformance threadPerformance = threadNode.get();
-    synchronized (threadPerformance) {
-      PerformanceNode last = threadPerformance.active.getLast();
-      PerformanceNode n = new PerformanceNode();
-      n.tag = tag;
-      n.extra = extra;
-      n.parent = last;
-      last.children.add(n);
-      threadPerformance.active.add(n);
-      n.start = System.nanoTime() - startTime;
-    }
+    Listener listener = Performance.listener;
+    if (listener != null) listener.start(tag);
+    if (!enabled) return;
+    threadRecorder.get().start(tagID(tag), tagID(tag + " " + extra), System.nanoTime() - startTime);
   }
 
   public static void stop(String tag) {
-    if (!enabled.get()) return;
-    ThreadPerformance threadPerformance = threadNode.get();
-    synchronized (threadPerformance) {
-      PerformanceNode last = threadPerformance.active.getLast();
-      if (last.tag.equals(tag) && !(last instanceof ThreadPerformance)) {
-        last.end = System.nanoTime() - startTime;
-        threadPerformance.active.remove(last);
-      } else {
-        Log.error("Performance: stopping tag '" + tag + "' when the last tag is '" + last.tag + "'");
-        PerformanceNode node = null;
-        for (PerformanceNode performanceNode : threadPerformance.active) {
-          if (performanceNode.tag.equals(tag)) {
-            node = performanceNode;
-            break;
-          }
-        }
-        if (node == null) {
-          Log.error("Performance: tag '" + tag + "' was never started");
-          return;
-        }
-        ArrayDeque<PerformanceNode> d = new ArrayDeque<PerformanceNode>();
-        d.add(node);
-        while (d.size() > 0) {
-          PerformanceNode n = d.removeFirst();
-          if (n.end == 0) {
-            n.end = System.nanoTime() - startTime;
-            threadPerformance.active.remove(n);
-            d.addAll(n.children);
-          }
-        }
+    Listener listener = Performance.listener;
+    if (listener != null) listener.stop(tag);
+    if (!enabled) return;
+    int tagID = tagID(tag);
+    long duration = threadRecorder.get().stop(tagID, System.nanoTime() - startTime);
+    if (duration >= 0) histogram(tagID).record(duration);
+  }
+
+  private static Histogram histogram(int tagID) {
+    Histogram[] histograms = tagHistograms;
+    if (tagID < histograms.length && histograms[tagID] != null) return histograms[tagID];
+    synchronized (tags) {
+      histograms = tagHistograms;
+      if (tagID >= histograms.length) histograms = Arrays.copyOf(histograms, tags.size());
+      if (histograms[tagID] == null) {
+        histograms[tagID] = Metrics.histogram("cubes_performance_seconds", "Time spent in each performance tag", Metric.label("tag", tags.get(tagID)));
       }
+      tagHistograms = histograms;
+      return histograms[tagID];
     }
   }
 
-  public static synchronized void startTracking() {
-    synchronized (nodes) {
-      startTime = System.nanoTime();
-      enabled.set(true);
-      Log.warning("Started performance tracking");
+  private static int tagID(String tag) {
+    Integer id = tagIDs.get(tag);
+    if (id != null) return id;
+    synchronized (tags) {
+      id = tagIDs.get(tag);
+      if (id != null) return id;
+      id = tags.size();
+      tags.add(tag);
+      tagIDs.put(tag, id);
+      return id;
     }
   }
 
-  public static synchronized void stopTracking() {
-    enabled.set(false);
-    synchronized (nodes) {
-      for (ThreadPerformance node : nodes) {
-        synchronized (node) {
-          Iterator<PerformanceNode> iterator = node.active.iterator();
-          while (iterator.hasNext()) {
-            iterator.next().end = System.nanoTime() - startTime;
-            iterator.remove();
-          }
-        }
-      }
+  private static String tag(int id) {
+    synchronized (tags) {
+      return tags.get(id);
     }
-    Log.warning("Stopped performance tracking");
   }
 
-  public static synchronized void toggleTracking() {
-    if (enabled.get()) {
-      stopTracking();
-      FileHandle dir = Compatibility.get().getBaseFolder().child("performance");
-      Compatibility.get().nomedia(dir);
-      dir.mkdirs();
-      final long time = System.currentTimeMillis();
-      final File saveFile = dir.child(time + ".cbpf").file();
-      final ArrayList<ThreadPerformance> saveNodes;
-      synchronized (nodes) {
-        saveNodes = new ArrayList<ThreadPerformance>(nodes);
-        nodes.clear();
-      }
+  /**
+   * Call at the end of every tick, saves the recent records if the tick was slower than the setting
+   */
+  public static void tickTime(long nanos) {
+    if (!enabled) return;
+    int threshold = Settings.getIntegerSettingValue(Settings.DEBUG_PROFILER_SLOW_TICK);
+    if (threshold <= 0 || nanos < threshold * 1000000L) return;
+    synchronized (Performance.class) {
+      long now = System.currentTimeMillis();
+      if (now - lastSlowTickDump < SLOW_TICK_DUMP_INTERVAL) return;
+      lastSlowTickDump = now;
+    }
+    dump("slow tick " + (nanos / 1000000) + "ms on " + Thread.currentThread().getName());
+  }
 
-      Thread thread = new Thread("PerformanceWrite" + time) {
-        @Override
-        public void run() {
-          try {
-            save(saveFile, saveNodes);
-            PerformanceAnalysis.run(saveFile);
-            Log.info("Saved performance analysis information '" + saveFile.getAbsolutePath() + ".txt'");
-          } catch (IOException e) {
-            e.printStackTrace();
-          }
-        }
-      };
-      thread.setDaemon(false);
-      thread.setPriority(Thread.MIN_PRIORITY);
-      thread.start();
+  public static boolean isTracking() {
+    return enabled;
+  }
+
+  public static synchronized void startTracking() {
+    if (enabled) return;
+    clear();
+    enabled = true;
+    Log.info("Started performance tracking");
+  }
+
+  public static synchronized void stopTracking() {
+    if (!enabled) return;
+    enabled = false;
+    Log.info("Stopped performance tracking");
+  }
+
+  /**
+   * Saves the recent records, or starts tracking if not already
+   */
+  public static synchronized void toggleTracking() {
+    if (enabled) {
+      dump("requested");
     } else {
-      clear();
       startTracking();
     }
   }
 
   public static synchronized void clear() {
-    if (enabled.get()) return;
-    synchronized (nodes) {
-      nodes.clear();
-      threadNode = new ThreadLocalPerformance();
+    clearTime = System.nanoTime() - startTime;
+    generation++;
+  }
+
+  /**
+   * Copies the recent records of every thread and saves them in the background
+   *
+   * @return the file being written
+   */
+  public static File dump(final String reason) {
+    final ArrayList<Snapshot> snapshots = snapshot();
+
+    FileHandle dir = Compatibility.get().getBaseFolder().child("performance");
+    Compatibility.get().nomedia(dir);
+    dir.mkdirs();
+    final long time = System.currentTimeMillis();
+    final File saveFile = dir.child(time + ".cbpf").file();
+    Log.warning("Saving performance information: " + reason);
+
+    Thread thread = new Thread("PerformanceWrite" + time) {
+      @Override
+      public void run() {
+        try {
+          save(saveFile, snapshots);
+          PerformanceAnalysis.run(saveFile);
+          Log.info("Saved performance analysis information '" + saveFile.getAbsolutePath() + ".txt'");
+          ChromeTrace.run(saveFile);
+          Log.info("Saved performance trace '" + saveFile.getAbsolutePath() + ".json'");
+        } catch (IOException e) {
+          Log.error("Failed to save performance information", e);
+        }
+      }
+    };
+    thread.setDaemon(false);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+    return saveFile;
+  }
+
+  public static ArrayList<Snapshot> snapshot() {
+    long now = System.nanoTime() - startTime;
+    ArrayList<ThreadRecorder> threads;
+    synchronized (recorders) {
+      threads = new ArrayList<ThreadRecorder>(recorders);
+    }
+    ArrayList<Snapshot> snapshots = new ArrayList<Snapshot>(threads.size());
+    for (ThreadRecorder recorder : threads) {
+      Snapshot snapshot = recorder.snapshot(now, clearTime);
+      if (snapshot.count > 0) snapshots.add(snapshot);
     }
+    return snapshots;
   }
 
-  public static synchronized void save(File file,  ArrayList<ThreadPerformance> nodes) throws IOException {
+  public static void save(File file, ArrayList<Snapshot> snapshots) throws IOException {
     if (!file.exists()) file.createNewFile();
     FileOutputStream fileOutputStream = null;
     DataOutputStream dataOutputStream = null;
@@ -159,11 +238,9 @@ public class Performance {
       dataOutputStream = new DataOutputStream(new BufferedOutputStream(fileOutputStream));
       dataOutputStream.writeByte(0xEE);
       dataOutputStream.writeByte(0xCE);
-      synchronized (nodes) {
-        for (ThreadPerformance threadN : nodes) {
-          dataOutputStream.writeByte(0x00);
-          write(threadN, dataOutputStream);
-        }
+      for (Snapshot snapshot : snapshots) {
+        dataOutputStream.writeByte(0x00);
+        write(snapshot, dataOutputStream);
       }
       dataOutputStream.writeByte(0xFF);
     } finally {
@@ -178,50 +255,178 @@ public class Performance {
         try {
           fileOutputStream.close();
         } catch (Exception ignored) {
-      
+
         }
       }
     }
     Log.info("Saved performance information '" + file.getAbsolutePath() + "'");
   }
 
-  private static void write(PerformanceNode node, DataOutputStream dataOutputStream) throws IOException {
-    dataOutputStream.writeUTF(node.tag);
-    dataOutputStream.writeUTF(node.extra);
-    dataOutputStream.writeLong(node.start);
-    dataOutputStream.writeLong(node.end);
-    for (PerformanceNode child : node.children) {
+  /**
+   * Writes the thread's records as a tree using their depths. Records whose parents have been overwritten are written
+   * as children of the nearest remaining ancestor.
+   */
+  private static void write(Snapshot snapshot, DataOutputStream dataOutputStream) throws IOException {
+    dataOutputStream.writeUTF(snapshot.thread);
+    dataOutputStream.writeUTF("");
+    dataOutputStream.writeLong(snapshot.start[0]);
+    dataOutputStream.writeLong(snapshot.time);
+
+    int[] open = new int[MAX_DEPTH];
+    int openCount = 0;
+    for (int i = 0; i < snapshot.count; i++) {
+      int depth = snapshot.depth[i];
+      while (openCount > 0 && open[openCount - 1] >= depth) {
+        dataOutputStream.writeByte(0xFF);
+        openCount--;
+      }
       dataOutputStream.writeByte(0x00);
-      write(child, dataOutputStream);
+      dataOutputStream.writeUTF(tag(snapshot.tag[i]));
+      dataOutputStream.writeUTF("");
+      dataOutputStream.writeLong(snapshot.start[i]);
+      dataOutputStream.writeLong(snapshot.end[i]);
+      open[openCount++] = depth;
+    }
+    while (openCount > 0) {
+      dataOutputStream.writeByte(0xFF);
+      openCount--;
     }
     dataOutputStream.writeByte(0xFF);
   }
 
-  public static class PerformanceNode {
-    String tag;
-    String extra = "";
-    long start;
-    long end;
-    PerformanceNode parent = null;
-    ArrayList<PerformanceNode> children = new ArrayList<PerformanceNode>();
-  }
+  /**
+   * Records of one thread, oldest first. Records which have not stopped end at the time of the snapshot.
+   */
+  public static class Snapshot {
+    public final String thread;
+    public final long time;
+    public final int count;
+    public final int[] tag;
+    public final long[] start;
+    public final long[] end;
+    public final byte[] depth;
 
-  public static class ThreadPerformance extends PerformanceNode {
-    LinkedList<PerformanceNode> active = new LinkedList<PerformanceNode>() {{
-      add(ThreadPerformance.this);
-    }};
+    private Snapshot(String thread, long time, int count) {
+      this.thread = thread;
+      this.time = time;
+      this.count = count;
+      this.tag = new int[count];
+      this.start = new long[count];
+      this.end = new long[count];
+      this.depth = new byte[count];
+    }
+
+    public String tagName(int i) {
+      return tag(tag[i]);
+    }
   }
 
-  public static class ThreadLocalPerformance extends ThreadLocal<ThreadPerformance> {
-    @Override
-    protected ThreadPerformance initialValue() {
-      ThreadPerformance threadPerformance = new ThreadPerformance();
-      threadPerformance.tag = Thread.currentThread().getName() + "|" + Thread.currentThread().getId();
-      threadPerformance.start = System.nanoTime() - startTime;
-      synchronized (nodes) {
-        nodes.add(threadPerformance);
+  /**
+   * Only written by its thread, read without locking by snapshots so the newest records may be inconsistent
+   */
+  private static class ThreadRecorder {
+    private final String name;
+    private final WeakReference<Thread> thread;
+    private final int[] tag = new int[RECORDS];
+    private final long[] start = new long[RECORDS];
+    private final long[] end = new long[RECORDS];
+    private final byte[] depth = new byte[RECORDS];
+    private volatile long written;
+
+    // records started but not stopped
+    private final int[] openTag = new int[MAX_DEPTH];
+    private final long[] openRecord = new long[MAX_DEPTH];
+    private final long[] openStart = new long[MAX_DEPTH];
+    private int openCount;
+    private int generation = Performance.generation;
+
+    private ThreadRecorder(Thread thread) {
+      this.name = thread.getName() + "|" + thread.getId();
+      this.thread = new WeakReference<Thread>(thread);
+    }
+
+    private boolean isAlive() {
+      Thread t = thread.get();
+      return t != null && t.isAlive();
+    }
+
+    /**
+     * @param recordTagID the tag saved, which may include an extra
+     */
+    private void start(int tagID, int recordTagID, long time) {
+      checkGeneration();
+      if (openCount >= MAX_DEPTH) {
+        // too deep to record
+        openCount++;
+        return;
+      }
+      long record = written;
+      int i = (int) record & MASK;
+      tag[i] = recordTagID;
+      start[i] = time;
+      end[i] = 0;
+      depth[i] = (byte) openCount;
+      openTag[openCount] = tagID;
+      openRecord[openCount] = record;
+      openStart[openCount] = time;
+      openCount++;
+      written = record + 1;
+    }
+
+    /**
+     * @return nanoseconds since the tag started, or -1
+     */
+    private long stop(int tagID, long time) {
+      checkGeneration();
+      if (openCount > MAX_DEPTH) {
+        openCount--;
+        return -1;
+      }
+      if (openCount == 0) {
+        Log.error("Performance: tag '" + tag(tagID) + "' was never started");
+        return -1;
+      }
+      int index = openCount - 1;
+      if (openTag[index] != tagID) {
+        Log.error("Performance: stopping tag '" + tag(tagID) + "' when the last tag is '" + tag(openTag[index]) + "'");
+        while (index >= 0 && openTag[index] != tagID) index--;
+        if (index < 0) {
+          Log.error("Performance: tag '" + tag(tagID) + "' was never started");
+          return -1;
+        }
+      }
+      long duration = time - openStart[index];
+      // stops the tag and any started inside it
+      long newest = written;
+      while (openCount > index) {
+        openCount--;
+        long record = openRecord[openCount];
+        if (newest - record <= RECORDS) end[(int) record & MASK] = time;
+      }
+      return duration;
+    }
+
+    private void checkGeneration() {
+      if (generation != Performance.generation) {
+        generation = Performance.generation;
+        openCount = 0;
+      }
+    }
+
+    private Snapshot snapshot(long time, long after) {
+      long newest = written;
+      long oldest = Math.max(0, newest - RECORDS);
+      while (oldest < newest && start[(int) oldest & MASK] < after) oldest++;
+
+      Snapshot snapshot = new Snapshot(name, time, (int) (newest - oldest));
+      for (int i = 0; i < snapshot.count; i++) {
+        int r = (int) (oldest + i) & MASK;
+        snapshot.tag[i] = tag[r];
+        snapshot.start[i] = start[r];
+        snapshot.end[i] = end[r] == 0 ? time : end[r];
+        snapshot.depth[i] = depth[r];
       }
-      return threadPerformance;
+      return snapshot;
     }
   }
 }
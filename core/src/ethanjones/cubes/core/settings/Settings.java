@@ -3,11 +3,13 @@ package ethanjones.cubes.core.settings;
 import ethanjones.cubes.core.event.settings.AddSettingsEvent;
 import ethanjones.cubes.core.localization.Localization;
 import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.performance.Performance;
 import ethanjones.cubes.core.platform.Adapter;
 import ethanjones.cubes.core.platform.Compatibility;
 import ethanjones.cubes.core.settings.type.*;
 import ethanjones.cubes.core.system.CubesException;
 import ethanjones.cubes.graphics.CubesShaderProvider;
+import ethanjones.cubes.graphics.CubesVertexAttributes;
 import ethanjones.cubes.graphics.Graphics;
 import ethanjones.cubes.graphics.Screenshot;
 import ethanjones.cubes.graphics.world.ao.AmbientOcclusion;
@@ -35,19 +37,29 @@ public class Settings {
   public static final String GRAPHICS_SCALE = "graphics.scaleOffset";
   public static final String GRAPHICS_AO = "graphics.ambientOcclusion";
   public static final String GRAPHICS_SIMPLE_SHADER = "graphics.simpleShader";
+  public static final String GRAPHICS_GREEDY_MESHING = "graphics.greedyMeshing";
+  public static final String GRAPHICS_PACKED_VERTICES = "graphics.packedVertices";
   public static final String GRAPHICS_SCREENSHOT_SIZE = "graphics.screenshotSize";
   public static final String INPUT_MOUSE_SENSITIVITY = "input.mouseSensitivity";
   public static final String INPUT_TOUCHPAD_SIZE = "input.touchpadSize";
   public static final String INPUT_TOUCHPAD_LEFT = "input.touchpadLeft";
   public static final String NETWORKING_PORT = "networking.port";
+  public static final String NETWORKING_NIO = "networking.nio";
+  public static final String NETWORKING_FLUSH_DELAY = "networking.flushDelay";
+  public static final String SERVER_PARALLEL_AREA_TICK = "server.parallelAreaTick";
+  public static final String SERVER_AREA_SEND_KILOBYTES = "server.areaSendKilobytes";
+  public static final String SERVER_METRICS_PORT = "server.metricsPort";
   public static final String DEBUG_FRAMETIME_GRAPH = "debug.frametimeGraph";
   public static final String DEBUG_GL_PROFILER = "debug.glProfiler";
   public static final String DEBUG_UNLIMITED_VIEW_DISTANCE = "debug.unlimitedViewDistance";
   public static final String DEBUG_AREA_SHARING = "debug.areaSharing";
+  public static final String DEBUG_PROFILER = "debug.profiler";
+  public static final String DEBUG_PROFILER_SLOW_TICK = "debug.profilerSlowTick";
 
   public static final String GROUP_GRAPHICS = "graphics";
   public static final String GROUP_INPUT = "input";
   public static final String GROUP_NETWORKING = "networking";
+  public static final String GROUP_SERVER = "server";
   public static final String GROUP_DEBUG = "debug";
 
   protected static SettingGroup base = new SettingGroup();
@@ -77,6 +89,8 @@ public class Settings {
     });
     addSetting(GRAPHICS_AO, AmbientOcclusion.getSetting());
     addSetting(GRAPHICS_SIMPLE_SHADER, CubesShaderProvider.getSetting());
+    addSetting(GRAPHICS_GREEDY_MESHING, new BooleanSetting(false));
+    addSetting(GRAPHICS_PACKED_VERTICES, CubesVertexAttributes.getSetting());
     addSetting(GRAPHICS_SCREENSHOT_SIZE, Screenshot.screenshotResolutionSetting());
 
     addSetting(INPUT_MOUSE_SENSITIVITY, new FloatSetting(0.5f, 0.05f, 1f, FloatSetting.Type.Slider));
@@ -98,6 +112,12 @@ public class Settings {
     });
 
     addSetting(NETWORKING_PORT, new IntegerSetting(24842));
+    addSetting(NETWORKING_NIO, new BooleanSetting(true));
+    addSetting(NETWORKING_FLUSH_DELAY, new IntegerSetting(5, 0, 50, IntegerSetting.Type.Slider));
+
+    addSetting(SERVER_PARALLEL_AREA_TICK, new BooleanSetting(false));
+    addSetting(SERVER_AREA_SEND_KILOBYTES, new IntegerSetting(256, 16, 4096, IntegerSetting.Type.TextField));
+    addSetting(SERVER_METRICS_PORT, new IntegerSetting(0, 0, 65535, IntegerSetting.Type.TextField));
 
     addSetting(DEBUG_FRAMETIME_GRAPH, new BooleanSetting(false));
     addSetting(DEBUG_GL_PROFILER, new BooleanSetting(false));
@@ -115,15 +135,27 @@ public class Settings {
       }
     });
     addSetting(DEBUG_AREA_SHARING, new BooleanSetting(true));
+    addSetting(DEBUG_PROFILER, new BooleanSetting(true) {
+      @Override
+      public void onChange() {
+        if (get()) {
+          Performance.startTracking();
+        } else {
+          Performance.stopTracking();
+        }
+      }
+    });
+    addSetting(DEBUG_PROFILER_SLOW_TICK, new IntegerSetting(500, 0, 10000, IntegerSetting.Type.TextField));
 
     String keybindsGroup = Keybinds.KEYBIND_GROUP;
     SettingGroup keybinds = Keybinds.init();
 
     base.add(USERNAME)
-        .add(GROUP_GRAPHICS, new SettingGroup().add(GRAPHICS_VIEW_DISTANCE).add(GRAPHICS_FOV).add(GRAPHICS_FOG).add(GRAPHICS_SCALE).add(GRAPHICS_AO).add(GRAPHICS_SIMPLE_SHADER).add(GRAPHICS_SCREENSHOT_SIZE))
+        .add(GROUP_GRAPHICS, new SettingGroup().add(GRAPHICS_VIEW_DISTANCE).add(GRAPHICS_FOV).add(GRAPHICS_FOG).add(GRAPHICS_SCALE).add(GRAPHICS_AO).add(GRAPHICS_GREEDY_MESHING).add(GRAPHICS_PACKED_VERTICES).add(GRAPHICS_SIMPLE_SHADER).add(GRAPHICS_SCREENSHOT_SIZE))
         .add(GROUP_INPUT, new SettingGroup().add(keybindsGroup, keybinds).add(INPUT_MOUSE_SENSITIVITY).add(INPUT_TOUCHPAD_SIZE).add(INPUT_TOUCHPAD_LEFT))
-        .add(GROUP_NETWORKING, new SettingGroup().add(NETWORKING_PORT))
-        .add(GROUP_DEBUG, new SettingGroup().add(DEBUG_FRAMETIME_GRAPH).add(DEBUG_GL_PROFILER).add(DEBUG_UNLIMITED_VIEW_DISTANCE).add(DEBUG_AREA_SHARING));
+        .add(GROUP_NETWORKING, new SettingGroup().add(NETWORKING_PORT).add(NETWORKING_NIO).add(NETWORKING_FLUSH_DELAY))
+        .add(GROUP_SERVER, new SettingGroup().add(SERVER_PARALLEL_AREA_TICK).add(SERVER_AREA_SEND_KILOBYTES).add(SERVER_METRICS_PORT))
+        .add(GROUP_DEBUG, new SettingGroup().add(DEBUG_FRAMETIME_GRAPH).add(DEBUG_GL_PROFILER).add(DEBUG_UNLIMITED_VIEW_DISTANCE).add(DEBUG_AREA_SHARING).add(DEBUG_PROFILER).add(DEBUG_PROFILER_SLOW_TICK));
 
     new AddSettingsEvent().post();
 
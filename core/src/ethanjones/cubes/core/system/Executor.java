@@ -4,6 +4,7 @@ import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.*;
 
 public class Executor {
@@ -65,6 +66,29 @@ public class Executor {
     }
   }
 
+  /**
+   * Runs the callables on the executor and waits for all of them. Callables should handle their own exceptions.
+   *
+   * @return the results, in the same order as the callables
+   */
+  public static <T> List<T> executeAllNotSided(List<? extends Callable<T>> callables) {
+    ArrayList<Future<T>> futures = new ArrayList<Future<T>>(callables.size());
+    for (Callable<T> callable : callables) {
+      futures.add(executeNotSided(callable));
+    }
+    ArrayList<T> results = new ArrayList<T>(callables.size());
+    for (Future<T> future : futures) {
+      try {
+        results.add(future.get());
+      } catch (InterruptedException e) {
+        throw new CubesException("Interrupted while waiting for executor", e);
+      } catch (ExecutionException e) {
+        throw new CubesException("Exception thrown in executor thread", e.getCause());
+      }
+    }
+    return results;
+  }
+
   public static synchronized <T> Future<T> schedule(Callable<T> callable, long delay, TimeUnit timeUnit) {
     synchronized (sync) {
       if (!running) start();
@@ -0,0 +1,69 @@
+package ethanjones.cubes.core.system;
+
+import ethanjones.cubes.core.logging.Log;
+
+import java.util.ArrayList;
+
+/**
+ * Records how long each stage of startup takes, and logs them once startup has finished
+ */
+public class StartupTimeline {
+
+  private static final ArrayList<Phase> phases = new ArrayList<Phase>();
+  private static final ArrayList<Phase> open = new ArrayList<Phase>();
+  private static long startTime = -1;
+
+  private static class Phase {
+    final String name;
+    final int depth;
+    final long start;
+    long end;
+
+    Phase(String name, int depth, long start) {
+      this.name = name;
+      this.depth = depth;
+      this.start = start;
+    }
+  }
+
+  public static synchronized void start(String name) {
+    long now = System.nanoTime();
+    if (startTime == -1) startTime = now;
+    Phase phase = new Phase(name, open.size(), now);
+    phases.add(phase);
+    open.add(phase);
+  }
+
+  public static synchronized void stop(String name) {
+    if (open.isEmpty()) return;
+    Phase phase = open.remove(open.size() - 1);
+    if (!phase.name.equals(name)) Log.warning("Expected startup phase " + phase.name + " to stop, not " + name);
+    phase.end = System.nanoTime();
+    Log.debug("Startup: " + name + " took " + millis(phase.end - phase.start) + "ms");
+  }
+
+  /**
+   * Logs every phase with the time it started and its duration
+   */
+  public static synchronized void finish() {
+    if (phases.isEmpty()) return;
+    long now = System.nanoTime();
+    StringBuilder builder = new StringBuilder("Startup took ").append(millis(now - startTime)).append("ms");
+    for (Phase phase : phases) {
+      long end = phase.end == 0 ? now : phase.end;
+      builder.append("\n  +").append(millis(phase.start - startTime)).append("ms ");
+      for (int i = 0; i < phase.depth; i++) {
+        builder.append("  ");
+      }
+      builder.append(phase.name).append(" ").append(millis(end - phase.start)).append("ms");
+    }
+    Log.info(builder.toString());
+    phases.clear();
+    open.clear();
+    startTime = -1;
+  }
+
+  private static long millis(long nanos) {
+    return nanos / 1000000;
+  }
+}
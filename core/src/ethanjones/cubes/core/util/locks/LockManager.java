@@ -26,6 +26,7 @@ public final class LockManager<T extends Lockable<T>> {
     } else {
       locked.setup(t, write);
       (write ? t.lock.writeLock() : t.lock.readLock()).lock();
+      if (write) t.writeLocked();
       return locked;
     }
   }
@@ -36,6 +37,7 @@ public final class LockManager<T extends Lockable<T>> {
 
     boolean lockSucceeded = (write ? t.lock.writeLock() : t.lock.readLock()).tryLock();
     if (lockSucceeded) {
+      if (write) t.writeLocked();
       locked.setup(t, write);
       return locked;
     } else {
@@ -45,15 +47,44 @@ public final class LockManager<T extends Lockable<T>> {
 
   /** Used by LockedRoot to release a lock */
   void unlock(LockedRoot<T> locked) {
+    if (locked.shared) throw new LockException("Tried to unlock shared lock");
     if (!locked.alive) throw new LockException("Tried to unlock dead lock");
     if (threadRootLocks.get() != locked) throw new LockException("Lock does not match!");
 
     for (T t : locked.locks) {
-      (locked.write ? t.lock.writeLock() : t.lock.readLock()).unlock();
+      if (locked.write) {
+        t.writeUnlocked();
+        t.lock.writeLock().unlock();
+      } else {
+        t.lock.readLock().unlock();
+      }
     }
     locked.reset();
   }
 
+  private void runShared(LockedRoot<T> parent, Runnable runnable) {
+    LockedRoot<T> own = threadRootLocks.get();
+    if (own.alive) throw new LockException("Tried to share lock with a thread which already has a lock");
+    threadRootLocks.set(new LockedRoot<>(parent));
+    try {
+      runnable.run();
+    } finally {
+      threadRootLocks.set(own);
+    }
+  }
+
+  /**
+   * Runs on this thread as if it held parent, so locking anything parent contains grants a Sub Lock.
+   * The thread which owns parent must wait for the runnable to finish and must not unlock it before then.
+   * Threads sharing a lock are not excluded from each other, so must not modify the same state.
+   */
+  public static <T extends Lockable<T>> void runShared(Locked<T> parent, Runnable runnable) {
+    while (parent instanceof LockedSub) parent = ((LockedSub<T>) parent).parent();
+    LockedRoot<T> root = (LockedRoot<T>) parent;
+    if (!root.alive) throw new LockException("Tried to share dead lock");
+    root.manager.runShared(root, runnable);
+  }
+
   /** Values must be in lock order */
   public static <T extends Lockable<T>> Locked<T> lockMany(boolean write, T... values) {
     Locked<T> locked = null;
@@ -1,5 +1,7 @@
 package ethanjones.cubes.core.util.locks;
 
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 // Usage:
@@ -20,8 +22,16 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 //
 
 public abstract class Lockable<T extends Lockable<T>> implements Comparable<T> {
+  // java 7 has no load fence, a volatile write stops earlier reads moving past the version read after it.
+  // striped by thread so readers don't contend on one cache line
+  private static final int FENCE_STRIPES = 64;
+  private static final int FENCE_PADDING = 16;
+  private static final AtomicIntegerArray fence = new AtomicIntegerArray(FENCE_STRIPES * FENCE_PADDING);
+
   private final LockManager<T> manager;
   final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+  // incremented when write locked and when write unlocked, so odd while write locked
+  private final AtomicInteger version = new AtomicInteger();
 
   public Lockable(LockManager<T> manager) {
     this.manager = manager;
@@ -45,6 +55,33 @@ public abstract class Lockable<T extends Lockable<T>> implements Comparable<T> {
     return manager.tryLock(t, write);
   }
 
+  /**
+   * Starts a read without locking. Anything read must be checked with {@link #validate(int)} before being used, and
+   * reading must not fail or loop forever if it sees a partially written state.
+   *
+   * @return the stamp to validate, or -1 if write locked
+   */
+  public int tryOptimisticRead() {
+    int stamp = version.get();
+    return (stamp & 1) == 0 ? stamp : -1;
+  }
+
+  /**
+   * @return if nothing has been write locked since the stamp was returned by {@link #tryOptimisticRead()}
+   */
+  public boolean validate(int stamp) {
+    fence.set(((int) Thread.currentThread().getId() & (FENCE_STRIPES - 1)) * FENCE_PADDING, stamp);
+    return stamp != -1 && version.get() == stamp;
+  }
+
+  void writeLocked() {
+    version.incrementAndGet();
+  }
+
+  void writeUnlocked() {
+    version.incrementAndGet();
+  }
+
   public boolean lockOwnedByCurrentThread() {
     return lock.isWriteLockedByCurrentThread();
   }
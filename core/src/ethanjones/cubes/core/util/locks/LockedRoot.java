@@ -6,16 +6,28 @@ import java.util.ArrayList;
  * Normal Locked instance
  */
 final class LockedRoot<T extends Lockable<T>> implements Locked<T> {
-  private final LockManager<T> manager;
+  final LockManager<T> manager;
   final LockedSub<T> subLock;
   final ArrayList<T> locks;
   boolean write;
   boolean alive;
+  final boolean shared;
 
   LockedRoot(LockManager<T> manager) {
     this.manager = manager;
     this.subLock = new LockedSub<>(this);
     this.locks = new ArrayList<>();
+    this.shared = false;
+  }
+
+  /** Uses the locks held by parent, which must not change while in use */
+  LockedRoot(LockedRoot<T> parent) {
+    this.manager = parent.manager;
+    this.subLock = new LockedSub<>(this);
+    this.locks = parent.locks;
+    this.write = parent.write;
+    this.alive = true;
+    this.shared = true;
   }
 
   void reset() {
@@ -34,6 +46,7 @@ final class LockedRoot<T extends Lockable<T>> implements Locked<T> {
 
   @Override
   public void extendLock(T t) {
+    if (shared) throw new LockException("Tried to extend shared lock");
     if (!alive) throw new LockException("Tried to extend dead " + t.getClass().getSimpleName() + " lock");
 
     int c = locks.get(locks.size() - 1).compareTo(t);
@@ -42,6 +55,7 @@ final class LockedRoot<T extends Lockable<T>> implements Locked<T> {
 
     this.locks.add(t);
     (write ? t.lock.writeLock() : t.lock.readLock()).lock();
+    if (write) t.writeLocked();
   }
 
   @Override
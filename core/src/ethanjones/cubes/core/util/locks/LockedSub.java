@@ -12,6 +12,10 @@ final class LockedSub<T extends Lockable<T>> implements Locked<T> {
     this.parent = parent;
   }
 
+  Locked<T> parent() {
+    return parent;
+  }
+
   @Override
   public void extendLock(T t) {
     if (!parent.containsLock(t)) throw new LockException("Extension not in parent lock");
@@ -27,6 +27,8 @@ public class Entity implements DataParser, Disposable {
   public final Vector3 angle;
   public final Vector3 motion;
   public final String id;
+  // assigned by the server when first synced, see PacketEntitySync
+  public int networkID;
   protected Vector3 tmpVector;
 
   public Entity(String id) {
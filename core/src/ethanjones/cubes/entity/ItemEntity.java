@@ -1,14 +1,14 @@
 package ethanjones.cubes.entity;
 
 import ethanjones.cubes.block.Blocks;
-import ethanjones.cubes.core.util.VectorUtil;
+import ethanjones.cubes.entity.living.player.Player;
 import ethanjones.cubes.graphics.entity.ItemEntityRenderer;
 import ethanjones.cubes.item.ItemStack;
 import ethanjones.cubes.item.inv.InventoryHelper;
-import ethanjones.cubes.networking.server.ClientIdentifier;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
 import ethanjones.cubes.world.CoordinateConverter;
+import ethanjones.cubes.world.storage.Entities;
 import ethanjones.data.DataGroup;
 
 import com.badlogic.gdx.graphics.g3d.Renderable;
@@ -73,11 +73,20 @@ public class ItemEntity extends Entity implements RenderableProvider {
         return true;
       }
       if (age >= 0) {
-        for (ClientIdentifier clientIdentifier : Cubes.getServer().getAllClients()) {
-          float distance2 = VectorUtil.distance2(this.position, clientIdentifier.getPlayer().position.cpy().sub(0, clientIdentifier.getPlayer().height, 0));
-          if (distance2 < 1f) {
-            InventoryHelper.addItemstack(clientIdentifier.getPlayer().getInventory(), itemStack);
-            return true;
+        // players within a block are in the surrounding areas
+        Entities entities = Cubes.getServer().world.entities;
+        int minAreaX = CoordinateConverter.area(position.x - 1), maxAreaX = CoordinateConverter.area(position.x + 1);
+        int minAreaZ = CoordinateConverter.area(position.z - 1), maxAreaZ = CoordinateConverter.area(position.z + 1);
+        for (int areaX = minAreaX; areaX <= maxAreaX; areaX++) {
+          for (int areaZ = minAreaZ; areaZ <= maxAreaZ; areaZ++) {
+            for (Entity entity : entities.getEntitiesInArea(areaX, areaZ)) {
+              if (!(entity instanceof Player)) continue;
+              Player player = (Player) entity;
+              if (position.dst2(player.position.x, player.position.y - player.height, player.position.z) < 1f) {
+                InventoryHelper.addItemstack(player.getInventory(), itemStack);
+                return true;
+              }
+            }
           }
         }
       }
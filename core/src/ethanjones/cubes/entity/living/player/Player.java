@@ -101,7 +101,7 @@ public class Player extends LivingEntity implements CommandSender, RenderablePro
   public void addToWorld() {
     World world = Side.getCubes().world;
     try (Locked<WorldLockable> locked = world.entities.acquireWriteLock()) {
-      world.entities.map.put(uuid, this);
+      world.entities.add(this);
       if (world instanceof WorldServer) ((WorldServer) world).addLoadedAreaFilter(this);
     }
   }
@@ -14,6 +14,8 @@ import ethanjones.cubes.world.storage.Area;
 
 import com.badlogic.gdx.Application;
 import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g3d.Renderable;
 import com.badlogic.gdx.graphics.g3d.Shader;
 import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
@@ -33,8 +35,10 @@ public class CubesShaderProvider implements ShaderProvider {
 
   private static final int FEATURE_FOG = 1 << 0;
   private static final int FEATURE_AO = 1 << 1;
+  private static final int FEATURE_GREEDY = 1 << 2;
+  private static final int FEATURE_PACKED = 1 << 3;
 
-  private static final int MAX_FEATURE_FLAG = 2;
+  private static final int MAX_FEATURE_FLAG = 8;
   private static final int COMBINATIONS = 2 * MAX_FEATURE_FLAG;
   private static final CubesShader[] shaders = new CubesShader[COMBINATIONS];
 
@@ -69,9 +73,16 @@ public class CubesShaderProvider implements ShaderProvider {
     if (renderable instanceof CubesRenderable) fogFlag &= ((CubesRenderable) renderable).fogEnabled;
     if (fogFlag) shader |= FEATURE_FOG;
 
-    boolean aoFlag = renderable.meshPart.mesh.getVertexAttributes() == CubesVertexAttributes.VERTEX_ATTRIBUTES_AO;
+    VertexAttributes vertexAttributes = renderable.meshPart.mesh.getVertexAttributes();
+    boolean aoFlag = vertexAttributes == CubesVertexAttributes.VERTEX_ATTRIBUTES_AO || vertexAttributes == CubesVertexAttributes.VERTEX_ATTRIBUTES_PACKED_AO;
     if (aoFlag) shader |= FEATURE_AO;
 
+    boolean greedyFlag = vertexAttributes == CubesVertexAttributes.VERTEX_ATTRIBUTES_GREEDY;
+    if (greedyFlag) shader |= FEATURE_GREEDY;
+
+    boolean packedFlag = CubesVertexAttributes.isPacked(vertexAttributes);
+    if (packedFlag) shader |= FEATURE_PACKED;
+
     if (shaders[shader] == null) {
       if (shader == 0) {
         shaders[shader] = new CubesShader(renderable);
@@ -79,6 +90,8 @@ public class CubesShaderProvider implements ShaderProvider {
         ArrayList<Feature> f = new ArrayList<Feature>();
         if (fogFlag) f.add(new FogFeature());
         if (aoFlag) f.add(new AmbientOcclusionFeature());
+        if (greedyFlag) f.add(new GreedyFeature());
+        if (packedFlag) f.add(new PackedFeature());
         shaders[shader] = new FeatureShader(renderable, f);
       }
 
@@ -290,4 +303,43 @@ public class CubesShaderProvider implements ShaderProvider {
       program.setUniformf(u_aoStrength, AmbientOcclusion.getStrength().strength);
     }
   }
+
+  protected static class GreedyFeature implements Feature {
+
+    @Override
+    public String prefix() {
+      return "#define feature_greedy\n";
+    }
+
+    @Override
+    public void init(ShaderProgram program) {
+
+    }
+
+    @Override
+    public void begin(ShaderProgram program, Camera camera, RenderContext context) {
+
+    }
+  }
+
+  protected static class PackedFeature implements Feature {
+
+    private int u_packedTexelSize;
+
+    @Override
+    public String prefix() {
+      return "#define feature_packed\n";
+    }
+
+    @Override
+    public void init(ShaderProgram program) {
+      u_packedTexelSize = program.fetchUniformLocation("u_packedTexelSize", false);
+    }
+
+    @Override
+    public void begin(ShaderProgram program, Camera camera, RenderContext context) {
+      Texture texture = Assets.blockItemSheet.getTexture();
+      program.setUniformf(u_packedTexelSize, 1f / texture.getWidth(), 1f / texture.getHeight());
+    }
+  }
 }
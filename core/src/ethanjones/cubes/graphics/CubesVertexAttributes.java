@@ -1,7 +1,17 @@
 package ethanjones.cubes.graphics;
 
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.settings.Setting;
+import ethanjones.cubes.core.settings.Settings;
+import ethanjones.cubes.core.settings.type.BooleanSetting;
+import ethanjones.cubes.core.system.Pools;
+import ethanjones.cubes.graphics.assets.Assets;
+import ethanjones.cubes.graphics.world.WorldGraphicsPools;
 import ethanjones.cubes.graphics.world.ao.AmbientOcclusion;
+import ethanjones.cubes.graphics.world.area.AreaMesh;
 
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.glutils.ShaderProgram;
@@ -10,6 +20,12 @@ public class CubesVertexAttributes {
 
   public static final VertexAttributes VERTEX_ATTRIBUTES;
   public static final VertexAttributes VERTEX_ATTRIBUTES_AO;
+  public static final VertexAttributes VERTEX_ATTRIBUTES_GREEDY;
+  public static final VertexAttributes VERTEX_ATTRIBUTES_PACKED;
+  public static final VertexAttributes VERTEX_ATTRIBUTES_PACKED_AO;
+
+  // packed texture coordinates are in texels, using 12 bits each
+  public static final int MAX_PACKED_TEXTURE_SIZE = 4095;
 
   static {
     VertexAttribute[] vertexAttributes = new VertexAttribute[3];
@@ -24,26 +40,80 @@ public class CubesVertexAttributes {
     vertexAttributesAO[2] = new VertexAttribute(VertexAttributes.Usage.Generic, 1, "a_voxellight", 0);
     vertexAttributesAO[3] = new VertexAttribute(VertexAttributes.Usage.Generic, 2, "a_ao_texCoord", 1);
     VERTEX_ATTRIBUTES_AO = new VertexAttributes(vertexAttributesAO);
+
+    VertexAttribute[] vertexAttributesGreedy = new VertexAttribute[4];
+    vertexAttributesGreedy[0] = new VertexAttribute(VertexAttributes.Usage.Position, 3, ShaderProgram.POSITION_ATTRIBUTE);
+    vertexAttributesGreedy[1] = new VertexAttribute(VertexAttributes.Usage.TextureCoordinates, 2, ShaderProgram.TEXCOORD_ATTRIBUTE + "0");
+    vertexAttributesGreedy[2] = new VertexAttribute(VertexAttributes.Usage.Generic, 1, "a_voxellight", 0);
+    vertexAttributesGreedy[3] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, "a_region", 1);
+    VERTEX_ATTRIBUTES_GREEDY = new VertexAttributes(vertexAttributesGreedy);
+
+    // see VertexPacker for the layout
+    VertexAttribute[] vertexAttributesPacked = new VertexAttribute[2];
+    vertexAttributesPacked[0] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_packedPosition", 0);
+    vertexAttributesPacked[1] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_packedTexCoord", 1);
+    VERTEX_ATTRIBUTES_PACKED = new VertexAttributes(vertexAttributesPacked);
+
+    VertexAttribute[] vertexAttributesPackedAO = new VertexAttribute[3];
+    vertexAttributesPackedAO[0] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_packedPosition", 0);
+    vertexAttributesPackedAO[1] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_packedTexCoord", 1);
+    vertexAttributesPackedAO[2] = new VertexAttribute(VertexAttributes.Usage.Generic, 4, GL20.GL_UNSIGNED_BYTE, false, "a_packedAO", 2);
+    VERTEX_ATTRIBUTES_PACKED_AO = new VertexAttributes(vertexAttributesPackedAO);
   }
 
   public static final int COMPONENTS = 6;
   public static final int COMPONENTS_AO = 8; //3 for position, 2 for texture coordinates, 1 for light, 2 for ao
+  public static final int COMPONENTS_GREEDY = 10; //3 for position, 2 for tile coordinates, 1 for light, 4 for texture region
+  public static final int COMPONENTS_PACKED = 2; //4 bytes for position and light, 4 bytes for texture coordinates and side
+  public static final int COMPONENTS_PACKED_AO = 3; //4 more bytes for ao
 
-  public static final int MAX_COMPONENTS = 8;
+  public static final int MAX_COMPONENTS = 10;
 
   public static VertexAttributes getVertexAttributes() {
+    if (isPackingEnabled()) return AmbientOcclusion.isEnabled() ? VERTEX_ATTRIBUTES_PACKED_AO : VERTEX_ATTRIBUTES_PACKED;
     if (AmbientOcclusion.isEnabled()) return VERTEX_ATTRIBUTES_AO;
     return VERTEX_ATTRIBUTES;
   }
 
+  public static boolean isPacked(VertexAttributes v) {
+    return v == VERTEX_ATTRIBUTES_PACKED || v == VERTEX_ATTRIBUTES_PACKED_AO;
+  }
+
+  /**
+   * @return if area meshes should use the packed vertex attributes, which also requires the block texture sheet to be
+   * small enough for its texel coordinates to be packed
+   */
+  public static boolean isPackingEnabled() {
+    if (!Settings.getBooleanSettingValue(Settings.GRAPHICS_PACKED_VERTICES)) return false;
+    Texture texture = Assets.blockItemSheet.getTexture();
+    return texture.getWidth() <= MAX_PACKED_TEXTURE_SIZE && texture.getHeight() <= MAX_PACKED_TEXTURE_SIZE;
+  }
+
   public static int components(VertexAttributes v) {
     if (v == VERTEX_ATTRIBUTES) return COMPONENTS;
     if (v == VERTEX_ATTRIBUTES_AO) return COMPONENTS_AO;
-    int components = 0;
+    if (v == VERTEX_ATTRIBUTES_GREEDY) return COMPONENTS_GREEDY;
+    if (v == VERTEX_ATTRIBUTES_PACKED) return COMPONENTS_PACKED;
+    if (v == VERTEX_ATTRIBUTES_PACKED_AO) return COMPONENTS_PACKED_AO;
+    int size = 0;
     for (VertexAttribute attribute : v) {
-      components += attribute.numComponents;
+      size += attribute.getSizeInBytes();
     }
-    return components;
+    return size / 4;
+  }
+
+  public static Setting getSetting() {
+    return new BooleanSetting(true) {
+      @Override
+      public void onChange() {
+        super.onChange();
+        if (Pools.poolExists(AreaMesh.class)) {
+          Log.debug("Clearing AreaMesh pool on packed vertices setting change");
+          WorldGraphicsPools.free();
+          Pools.clearPool(AreaMesh.class);
+        }
+      }
+    };
   }
 
 }
@@ -5,6 +5,7 @@ import ethanjones.cubes.core.event.Event;
 import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.settings.Settings;
+import ethanjones.cubes.core.system.StartupTimeline;
 import ethanjones.cubes.graphics.hud.inv.BlockIcons;
 import ethanjones.cubes.graphics.world.WorldGraphicsPools;
 import ethanjones.cubes.item.Item;
@@ -48,7 +49,9 @@ public class Graphics {
       item.loadGraphics();
     }
     WorldGraphicsPools.init();
+    StartupTimeline.start("BlockIcons");
     BlockIcons.renderIcons();
+    StartupTimeline.stop("BlockIcons");
 
     glProfiler = new GLProfiler(Gdx.graphics);
   }
@@ -4,6 +4,7 @@ import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.platform.Adapter;
 import ethanjones.cubes.core.platform.Compatibility;
 import ethanjones.cubes.core.system.CubesException;
+import ethanjones.cubes.core.system.Executor;
 
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
@@ -16,10 +17,14 @@ import com.badlogic.gdx.graphics.g3d.attributes.BlendingAttribute;
 import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 public class Assets {
 
@@ -100,39 +105,101 @@ public class Assets {
     }
     String name = nameBuilder.toString();
 
-    TexturePacker texturePacker = new TexturePacker(2048, 2048, 1, true);
+    ArrayList<Asset> assets = new ArrayList<Asset>();
     for (Map.Entry<String, AssetManager> entry : assetManagers.entrySet()) {
       for (AssetType type : assetTypes) {
-        ArrayList<Asset> assets = entry.getValue().getAssets(type.name() + "/");
-        for (Asset asset : assets) {
+        for (Asset asset : entry.getValue().getAssets(type.name() + "/")) {
+          if (asset.getFileHandle().extension().equals("png")) assets.add(asset);
+        }
+      }
+    }
+    Collections.sort(assets, new Comparator<Asset>() {
+      @Override
+      public int compare(Asset o1, Asset o2) {
+        return o1.toString().compareTo(o2.toString());
+      }
+    });
+
+    // files are read and decoded on the executor, but used in order so the layout is the same every time
+    ArrayList<Callable<byte[]>> read = new ArrayList<Callable<byte[]>>(assets.size());
+    for (final Asset asset : assets) {
+      read.add(new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
           try {
-            if (!asset.getFileHandle().extension().equals("png")) continue;
-            Pixmap pixmap = new Pixmap(asset.getFileHandle());
-            texturePacker.insertImage(asset, pixmap);
-            pixmap.dispose();
-          } catch (Exception e) {
+            return asset.getFileHandle().readBytes();
+          } catch (GdxRuntimeException e) {
             Log.error("Failed to read file: " + asset.getPath(), e);
+            return null;
           }
         }
-      }
+      });
+    }
+    List<byte[]> bytes = Executor.executeAllNotSided(read);
+
+    // the mod list is part of the asset names
+    MessageDigest digest = TextureCache.digest();
+    for (int i = 0; i < assets.size(); i++) {
+      TextureCache.update(digest, assets.get(i).toString());
+      if (bytes.get(i) != null) digest.update(bytes.get(i));
     }
-    FileHandle fileHandle = assetsFolder.child("packed");
-    fileHandle.mkdirs();
-    Compatibility.get().nomedia(fileHandle);
-    fileHandle = fileHandle.child(name + ".cim");
-
-    try {
-      PixmapIO.writeCIM(fileHandle, texturePacker.getPixmap());
-    } catch (GdxRuntimeException e) {
-      Log.error("Failed to write packed image", e);
+    String hash = TextureCache.hash(digest);
+    FileHandle fileHandle = TextureCache.file(name, hash, "cim");
+    FileHandle rectanglesFile = TextureCache.file(name, hash, "txt");
+
+    Map<Asset, TexturePacker.PackRectangle> rectangles = fileHandle.exists() ? TextureCache.readRectangles(rectanglesFile) : null;
+    if (rectangles == null) {
+      Log.debug("Packing " + name);
+      ArrayList<Callable<Pixmap>> decode = new ArrayList<Callable<Pixmap>>(assets.size());
+      for (int i = 0; i < assets.size(); i++) {
+        final Asset asset = assets.get(i);
+        final byte[] data = bytes.get(i);
+        decode.add(new Callable<Pixmap>() {
+          @Override
+          public Pixmap call() {
+            if (data == null) return null;
+            try {
+              return new Pixmap(data, 0, data.length);
+            } catch (Exception e) {
+              Log.error("Failed to read file: " + asset.getPath(), e);
+              return null;
+            }
+          }
+        });
+      }
+      List<Pixmap> pixmaps = Executor.executeAllNotSided(decode);
+
+      TexturePacker texturePacker = new TexturePacker(2048, 2048, 1, true);
+      for (int i = 0; i < assets.size(); i++) {
+        Pixmap pixmap = pixmaps.get(i);
+        if (pixmap == null) continue;
+        try {
+          texturePacker.insertImage(assets.get(i), pixmap);
+        } catch (Exception e) {
+          Log.error("Failed to pack file: " + assets.get(i).getPath(), e);
+        }
+        pixmap.dispose();
+      }
+      rectangles = texturePacker.getRectangles();
+
+      try {
+        PixmapIO.writeCIM(fileHandle, texturePacker.getPixmap());
+        // written last, so only complete images are used
+        TextureCache.writeRectangles(rectanglesFile, rectangles);
+      } catch (GdxRuntimeException e) {
+        Log.error("Failed to write packed image", e);
+      }
+      texturePacker.getPixmap().dispose();
+      TextureCache.clean(name, hash);
+    } else {
+      Log.debug("Using cached " + name);
     }
 
     Texture texture = new Texture(fileHandle);
     texture.setFilter(Texture.TextureFilter.Nearest, Texture.TextureFilter.Nearest);
-    PackedTextureSheet packedTextureSheet = new PackedTextureSheet(new Material("mtl" + name, TextureAttribute.createDiffuse(texture)));
+    PackedTextureSheet packedTextureSheet = new PackedTextureSheet(new Material("mtl" + name, TextureAttribute.createDiffuse(texture)), hash);
     packedTextureSheet.getMaterial().set(new BlendingAttribute(GL20.GL_SRC_ALPHA, GL20.GL_ONE_MINUS_SRC_ALPHA));
 
-    Map<Asset, TexturePacker.PackRectangle> rectangles = texturePacker.getRectangles();
     int num = 0;
     for (Map.Entry<Asset, TexturePacker.PackRectangle> entry : rectangles.entrySet()) {
       num++;
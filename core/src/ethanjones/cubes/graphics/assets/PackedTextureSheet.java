@@ -1,7 +1,9 @@
 package ethanjones.cubes.graphics.assets;
 
+import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import com.badlogic.gdx.graphics.g3d.Material;
+import com.badlogic.gdx.graphics.g3d.attributes.TextureAttribute;
 
 import java.util.HashMap;
 
@@ -9,10 +11,12 @@ public class PackedTextureSheet {
 
   private final HashMap<String, TextureRegion> packedTextures;
   private final Material material;
+  private final String hash;
 
-  public PackedTextureSheet(Material material) {
+  public PackedTextureSheet(Material material, String hash) {
     packedTextures = new HashMap<String, TextureRegion>();
     this.material = material;
+    this.hash = hash;
   }
 
   public HashMap<String, TextureRegion> getPackedTextures() {
@@ -23,6 +27,17 @@ public class PackedTextureSheet {
     return material;
   }
 
+  public Texture getTexture() {
+    return ((TextureAttribute) material.get(TextureAttribute.Diffuse)).textureDescription.texture;
+  }
+
+  /**
+   * @return hash of the packed assets, which identifies the sheet's contents
+   */
+  public String getHash() {
+    return hash;
+  }
+
   public TextureRegion getPackedTexture(String name) {
     return packedTextures.get(name);
   }
@@ -0,0 +1,108 @@
+package ethanjones.cubes.graphics.assets;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.platform.Compatibility;
+import ethanjones.cubes.core.system.Branding;
+import ethanjones.cubes.core.system.CubesException;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Packed textures and block icons kept between launches. Files are named by a hash of everything used to create them,
+ * so a changed asset, mod or build creates new files instead of reusing stale ones.
+ */
+public class TextureCache {
+
+  // increase when the packer or icon rendering output changes
+  private static final int VERSION = 1;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  public static FileHandle folder() {
+    FileHandle folder = Compatibility.get().getBaseFolder().child("cache").child("textures");
+    folder.mkdirs();
+    Compatibility.get().nomedia(folder);
+    return folder;
+  }
+
+  public static MessageDigest digest() {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      update(digest, VERSION + " " + Branding.VERSION_HASH);
+      return digest;
+    } catch (NoSuchAlgorithmException e) {
+      throw new CubesException("SHA-1 not available", e);
+    }
+  }
+
+  public static void update(MessageDigest digest, String str) {
+    try {
+      digest.update(str.getBytes("UTF-8"));
+      digest.update((byte) 0);
+    } catch (UnsupportedEncodingException e) {
+      throw new CubesException(e);
+    }
+  }
+
+  public static String hash(MessageDigest digest) {
+    byte[] bytes = digest.digest();
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  public static FileHandle file(String name, String hash, String extension) {
+    return folder().child(name + "-" + hash + "." + extension);
+  }
+
+  /**
+   * Deletes files created for older hashes
+   */
+  public static void clean(String name, String hash) {
+    for (FileHandle fileHandle : folder().list()) {
+      String fileName = fileHandle.name();
+      if (fileName.startsWith(name + "-") && !fileName.startsWith(name + "-" + hash + ".")) {
+        fileHandle.delete();
+      }
+    }
+  }
+
+  /**
+   * @return the rectangles, or null if the file does not exist or refers to an asset that is no longer loaded
+   */
+  static Map<Asset, TexturePacker.PackRectangle> readRectangles(FileHandle fileHandle) {
+    if (!fileHandle.exists()) return null;
+    HashMap<Asset, TexturePacker.PackRectangle> rectangles = new HashMap<Asset, TexturePacker.PackRectangle>();
+    try {
+      for (String line : fileHandle.readString("UTF-8").split("\n")) {
+        if (line.isEmpty()) continue;
+        String[] split = line.split(" ", 5);
+        Asset asset = Assets.getAsset(split[4]);
+        if (asset == null) return null;
+        rectangles.put(asset, new TexturePacker.PackRectangle(Integer.parseInt(split[0]), Integer.parseInt(split[1]), Integer.parseInt(split[2]), Integer.parseInt(split[3])));
+      }
+    } catch (Exception e) {
+      Log.warning("Failed to read cached texture rectangles " + fileHandle.name(), e);
+      return null;
+    }
+    return rectangles;
+  }
+
+  static void writeRectangles(FileHandle fileHandle, Map<Asset, TexturePacker.PackRectangle> rectangles) {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<Asset, TexturePacker.PackRectangle> entry : rectangles.entrySet()) {
+      TexturePacker.PackRectangle r = entry.getValue();
+      builder.append(r.x).append(' ').append(r.y).append(' ').append(r.width).append(' ').append(r.height).append(' ');
+      builder.append(entry.getKey().toString()).append('\n');
+    }
+    fileHandle.writeString(builder.toString(), false, "UTF-8");
+  }
+}
@@ -7,6 +7,7 @@ import ethanjones.cubes.core.util.BlockFace;
 import ethanjones.cubes.graphics.CubesVertexAttributes;
 import ethanjones.cubes.graphics.Graphics;
 import ethanjones.cubes.graphics.assets.Assets;
+import ethanjones.cubes.graphics.assets.TextureCache;
 import ethanjones.cubes.graphics.world.area.AreaMesh;
 import ethanjones.cubes.graphics.world.block.BlockRenderType;
 import ethanjones.cubes.graphics.world.block.BlockTextureHandler;
@@ -24,15 +25,17 @@ import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.GdxRuntimeException;
 import com.badlogic.gdx.utils.ScreenUtils;
 
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map.Entry;
 
 public class BlockIcons {
 
   private static final boolean DEBUG_OUTPUT = false;
 
+  private static final BlockFace[] ICON_FACES = new BlockFace[]{BlockFace.posX, BlockFace.posY, BlockFace.posZ};
+
   private static HashMap<BlockID, TextureRegion> textureRegions = new HashMap<BlockID, TextureRegion>();
 
   public static TextureRegion getIcon(String id, int meta) {
@@ -42,6 +45,72 @@ public class BlockIcons {
   public static void renderIcons() {
     int size = 64;
 
+    List<Block> blocks = IDManager.getBlocks();
+    ArrayList<BlockID> blockids = new ArrayList<BlockID>();
+    for (Block block : blocks) {
+      for (int meta : block.displayMetaValues()) {
+        if (block.renderType(meta) != BlockRenderType.DEFAULT) continue;
+        blockids.add(new BlockID(block.id, meta));
+      }
+    }
+    int numberBlock = (int) Math.ceil(Math.sqrt(blockids.size()));
+
+    String hash = hash(blockids, size);
+    FileHandle cached = hash == null ? null : TextureCache.file("blockicons", hash, "cim");
+    Pixmap pixmap = null;
+    if (cached != null && cached.exists()) {
+      try {
+        pixmap = PixmapIO.readCIM(cached);
+        Log.debug("Using cached block icons");
+      } catch (GdxRuntimeException e) {
+        Log.warning("Failed to read cached block icons", e);
+      }
+    }
+    if (pixmap == null) {
+      pixmap = render(blockids, size, numberBlock);
+      if (cached != null) {
+        try {
+          PixmapIO.writeCIM(cached, pixmap);
+        } catch (GdxRuntimeException e) {
+          Log.error("Failed to write block icons", e);
+        }
+        TextureCache.clean("blockicons", hash);
+      }
+    }
+
+    Texture texture = new Texture(pixmap, true);
+    texture.setFilter(TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
+
+    for (int number = 0; number < blockids.size(); number++) {
+      int x = (number % numberBlock) * size;
+      int y = (number / numberBlock) * size;
+      textureRegions.put(blockids.get(number), new TextureRegion(texture, x, y, size, size));
+    }
+  }
+
+  /**
+   * @return hash of the block textures used by the icons, or null if they cannot be cached
+   */
+  private static String hash(ArrayList<BlockID> blockids, int size) {
+    if (DEBUG_OUTPUT || Assets.blockItemSheet == null) return null;
+    Texture sheet = Assets.blockItemSheet.getTexture();
+    MessageDigest digest = TextureCache.digest();
+    TextureCache.update(digest, size + " " + Assets.blockItemSheet.getHash());
+    for (BlockID blockID : blockids) {
+      BlockTextureHandler textureHandler = IDManager.toBlock(blockID.id).getTextureHandler(blockID.meta);
+      StringBuilder builder = new StringBuilder(blockID.id).append(' ').append(blockID.meta);
+      for (BlockFace face : ICON_FACES) {
+        TextureRegion region = textureHandler.getSide(face);
+        if (region.getTexture() != sheet) return null; // can't tell if the texture has changed
+        builder.append(' ').append(region.getRegionX()).append(' ').append(region.getRegionY());
+        builder.append(' ').append(region.getRegionWidth()).append(' ').append(region.getRegionHeight());
+      }
+      TextureCache.update(digest, builder.toString());
+    }
+    return TextureCache.hash(digest);
+  }
+
+  private static Pixmap render(ArrayList<BlockID> blockids, int size, int numberBlock) {
     FrameBuffer frameBuffer = new FrameBuffer(Format.RGBA8888, size, size, false);
     frameBuffer.begin();
 
@@ -54,20 +123,10 @@ public class BlockIcons {
 
 
     final AreaMesh mesh = new AreaMesh(CubesVertexAttributes.VERTEX_ATTRIBUTES);
-    List<Block> blocks = IDManager.getBlocks();
+    float[] vertices = new float[3 * 4 * CubesVertexAttributes.COMPONENTS];
 
-    ArrayList<BlockID> blockids = new ArrayList<BlockID>();
-    for (Block block : blocks) {
-      for (int meta : block.displayMetaValues()) {
-        if (block.renderType(meta) != BlockRenderType.DEFAULT) continue;
-        blockids.add(new BlockID(block.id, meta));
-      }
-    }
-
-    int numberBlock = (int) Math.ceil(Math.sqrt(blockids.size()));
     Pixmap pixmap = new Pixmap(size * numberBlock, size * numberBlock, Format.RGBA8888);
     int number = 0;
-    HashMap<BlockID, Location> map = new HashMap<BlockID, Location>();
 
     mesh.renderable.setLightOverride(BlockLight.FULL_LIGHT);
     mesh.renderable.setFogEnabled(false);
@@ -77,10 +136,10 @@ public class BlockIcons {
       Block block = IDManager.toBlock(blockID.id);
       BlockTextureHandler textureHandler = block.getTextureHandler(blockID.meta);
       int vertexOffset = 0;
-      vertexOffset = FaceVertices.createMaxX(Vector3.Zero, textureHandler.getSide(BlockFace.posX), null, 0, 0, 0, BlockLight.FULL_LIGHT, AreaMesh.vertices, vertexOffset);
-      vertexOffset = FaceVertices.createMaxY(Vector3.Zero, textureHandler.getSide(BlockFace.posY), null, 0, 0, 0, BlockLight.FULL_LIGHT, AreaMesh.vertices, vertexOffset);
-      vertexOffset = FaceVertices.createMaxZ(Vector3.Zero, textureHandler.getSide(BlockFace.posZ), null, 0, 0, 0, BlockLight.FULL_LIGHT, AreaMesh.vertices, vertexOffset);
-      mesh.saveVertices(vertexOffset);
+      vertexOffset = FaceVertices.createMaxX(Vector3.Zero, textureHandler.getSide(BlockFace.posX), null, 0, 0, 0, BlockLight.FULL_LIGHT, vertices, vertexOffset);
+      vertexOffset = FaceVertices.createMaxY(Vector3.Zero, textureHandler.getSide(BlockFace.posY), null, 0, 0, 0, BlockLight.FULL_LIGHT, vertices, vertexOffset);
+      vertexOffset = FaceVertices.createMaxZ(Vector3.Zero, textureHandler.getSide(BlockFace.posZ), null, 0, 0, 0, BlockLight.FULL_LIGHT, vertices, vertexOffset);
+      mesh.saveVertices(vertices, vertexOffset);
 
       Graphics.modelBatch.begin(camera);
       Graphics.modelBatch.render(mesh.renderable);
@@ -100,7 +159,6 @@ public class BlockIcons {
       int y = (number / numberBlock) * size;
       pixmap.drawPixmap(bufferPixmap, x, y);
       bufferPixmap.dispose();
-      map.put(blockID, new Location(x, y));
 
       number++;
       Gdx.gl20.glClearColor(0, 0, 0, 0);
@@ -118,16 +176,9 @@ public class BlockIcons {
       }
     }
 
-    Texture texture = new Texture(pixmap, true);
-    texture.setFilter(TextureFilter.MipMapLinearLinear, TextureFilter.Linear);
-
-    for (Entry<BlockID, Location> entry : map.entrySet()) {
-      Location l = entry.getValue();
-      textureRegions.put(entry.getKey(), new TextureRegion(texture, l.x, l.y, size, size));
-    }
-
     frameBuffer.end();
     frameBuffer.dispose();
+    return pixmap;
   }
 
   public static class BlockID {
@@ -150,15 +201,4 @@ public class BlockIcons {
       return obj instanceof BlockID && id.equals(((BlockID) obj).id) && meta == ((BlockID) obj).meta;
     }
   }
-
-  private static class Location {
-
-    final int x;
-    final int y;
-
-    private Location(int x, int y) {
-      this.x = x;
-      this.y = y;
-    }
-  }
 }
@@ -10,6 +10,7 @@ import ethanjones.cubes.entity.Entity;
 import ethanjones.cubes.graphics.Graphics;
 import ethanjones.cubes.graphics.world.WorldGraphicsPools;
 import ethanjones.cubes.graphics.world.area.AreaBoundaries;
+import ethanjones.cubes.graphics.world.area.AreaMeshBuilder;
 import ethanjones.cubes.graphics.world.area.AreaRenderStatus;
 import ethanjones.cubes.graphics.world.area.AreaRenderer;
 import ethanjones.cubes.graphics.world.area.DebugLineRenderer;
@@ -49,6 +50,7 @@ public class WorldRenderer implements Disposable {
   private static ArrayDeque<AreaNode> poolNode = new ArrayDeque<AreaNode>(256);
 
   public PerspectiveCamera camera;
+  private final AreaMeshBuilder areaMeshBuilder = new AreaMeshBuilder();
   private ArrayList<AreaRenderer> needToRefresh = new ArrayList<AreaRenderer>();
   private ArrayDeque<AreaNode> queue = new ArrayDeque<AreaNode>();
   private IntSet checkedNodes = new IntSet(1024);
@@ -83,6 +85,11 @@ public class WorldRenderer implements Disposable {
     checkedNodes.clear();
     effectiveViewDistance = 0;
 
+    // before any areas are rendered, as uploading frees the old meshes
+    Performance.start(PerformanceTags.CLIENT_RENDER_WORLD_UPDATE);
+    areaMeshBuilder.upload();
+    Performance.stop(PerformanceTags.CLIENT_RENDER_WORLD_UPDATE);
+
     modelBatch.begin(camera);
 
     int renderDistance = Settings.getIntegerSettingValue(Settings.GRAPHICS_VIEW_DISTANCE);
@@ -170,26 +177,17 @@ public class WorldRenderer implements Disposable {
     }
     Performance.stop(PerformanceTags.CLIENT_RENDER_WORLD_AREAS);
 
-    int refreshed = 0;
+    int queued = 0;
     if (needToRefresh.size() > 0) {
       Performance.start(PerformanceTags.CLIENT_RENDER_WORLD_UPDATES);
       Collections.sort(needToRefresh, new AreaRendererSorter());
-      boolean doUpdates = true;
       for (AreaRenderer areaRenderer : needToRefresh) {
-        if (doUpdates) {
-          Performance.start(PerformanceTags.CLIENT_RENDER_WORLD_UPDATE);
-          if (areaRenderer.update()) {
-            refreshed++;
-          }
-          Performance.stop(PerformanceTags.CLIENT_RENDER_WORLD_UPDATE);
-
-          if (refreshed > 0 && (System.nanoTime() - Cubes.getClient().frameStart) > 3000000) doUpdates = false;
-        }
+        if (areaMeshBuilder.submit(areaRenderer)) queued++;
         modelBatch.render(areaRenderer);
       }
       Performance.stop(PerformanceTags.CLIENT_RENDER_WORLD_UPDATES);
     }
-    AreaRenderer.refreshQueueLength = needToRefresh.size() - refreshed;
+    AreaRenderer.refreshQueueLength = needToRefresh.size() - queued + areaMeshBuilder.queued();
 
     Performance.start(PerformanceTags.CLIENT_RENDER_WORLD_ENTITY);
     float deltaTime = Gdx.graphics.getDeltaTime();
@@ -274,7 +272,7 @@ public class WorldRenderer implements Disposable {
 
   @Override
   public void dispose() {
-
+    areaMeshBuilder.dispose();
   }
 
   private static AreaNode get(Area area, int areaX, int areaZ, int ySection) {
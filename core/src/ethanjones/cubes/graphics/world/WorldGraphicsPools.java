@@ -1,6 +1,7 @@
 package ethanjones.cubes.graphics.world;
 
 import ethanjones.cubes.core.system.Pools;
+import ethanjones.cubes.graphics.CubesVertexAttributes;
 import ethanjones.cubes.graphics.world.area.AreaMesh;
 import ethanjones.cubes.graphics.world.area.AreaRenderer;
 
@@ -42,6 +43,8 @@ public class WorldGraphicsPools {
   }
 
   public static final ConcurrentLinkedQueue<AreaRenderer> toFree = new ConcurrentLinkedQueue<AreaRenderer>();
+  // AreaMeshs using CubesVertexAttributes.VERTEX_ATTRIBUTES_GREEDY, which don't change with settings
+  public static DisposablePool<AreaMesh> greedyAreaMesh;
 
   public static void init() {
     Pools.registerType(AreaRenderer.class, new Pool<AreaRenderer>() {
@@ -56,6 +59,12 @@ public class WorldGraphicsPools {
         return new AreaMesh();
       }
     });
+    greedyAreaMesh = new DisposablePool<AreaMesh>() {
+      @Override
+      protected AreaMesh newObject() {
+        return new AreaMesh(CubesVertexAttributes.VERTEX_ATTRIBUTES_GREEDY);
+      }
+    };
   }
 
   public static void free() {
@@ -33,7 +33,7 @@ public final class AmbientOcclusion {
   static final int G = 1 << 6;
   static final int H = 1 << 7;
 
-  static final int SQRT_TOTAL = 16;
+  public static final int SQRT_TOTAL = 16;
   static final int TOTAL = SQRT_TOTAL * SQRT_TOTAL;
   static final int INDIVIDUAL_SIZE = 256;
   static final int TEXTURE_SIZE = SQRT_TOTAL * INDIVIDUAL_SIZE;
@@ -50,7 +50,7 @@ public final class AmbientOcclusion {
     if (y > a.maxY || y < 0) return false;
     x -= a.minBlockX;
     z -= a.minBlockZ;
-    return !TransparencyManager.isTransparent(a.blocks[Area.getRef(x, y, z)]);
+    return !TransparencyManager.isTransparent(a.getBlockInt(Area.getRef(x, y, z)));
   }
 
   private static TextureRegion y(Area area, int x, int y, int z) {
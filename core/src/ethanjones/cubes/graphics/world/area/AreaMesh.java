@@ -3,6 +3,7 @@ package ethanjones.cubes.graphics.world.area;
 import ethanjones.cubes.graphics.CubesRenderable;
 import ethanjones.cubes.graphics.CubesVertexAttributes;
 import ethanjones.cubes.graphics.assets.Assets;
+import ethanjones.cubes.world.storage.Area;
 
 import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.Mesh;
@@ -16,12 +17,11 @@ public class AreaMesh implements Pool.Poolable, Disposable {
   public static final int MAX_INDICES = 32760;
   public static final int MAX_SIDES = MAX_INDICES / 6;
   public static final int MAX_VERTICES = MAX_SIDES * 4;
+  private static final float HALF_SECTION = Area.SIZE_BLOCKS / 2f;
 
   public static short[] indices;
-  public static float[] vertices;
 
   static {
-    vertices = new float[MAX_VERTICES * CubesVertexAttributes.MAX_COMPONENTS * 2];
     indices = new short[MAX_INDICES];
     short j = 0;
     for (int i = 0; i < indices.length; i += 6, j += 4) {
@@ -59,13 +59,20 @@ public class AreaMesh implements Pool.Poolable, Disposable {
     renderable.name = "AreaMesh";
   }
 
-  public void saveVertices(int vertexCount) {
+  public void saveVertices(float[] vertices, int vertexCount) {
     mesh.setVertices(vertices, 0, vertexCount);
     int v = vertexCount / CubesVertexAttributes.components(mesh.getVertexAttributes());
     meshPart.size = v / 4 * 6;
     this.vertexCount = vertexCount;
     if (vertexCount > 0) {
-      meshPart.update();
+      if (CubesVertexAttributes.isPacked(mesh.getVertexAttributes())) {
+        // packed positions can't be read back, the bounds are the section
+        meshPart.center.set(HALF_SECTION, HALF_SECTION, HALF_SECTION);
+        meshPart.halfExtents.set(HALF_SECTION, HALF_SECTION, HALF_SECTION);
+        meshPart.radius = meshPart.halfExtents.len();
+      } else {
+        meshPart.update();
+      }
       renderable.meshPart.set(meshPart);
     }
   }
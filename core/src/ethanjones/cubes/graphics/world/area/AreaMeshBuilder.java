@@ -0,0 +1,233 @@
+package ethanjones.cubes.graphics.world.area;
+
+import ethanjones.cubes.block.Block;
+import ethanjones.cubes.core.id.IDManager;
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.system.ThreadPool;
+import ethanjones.cubes.graphics.CubesVertexAttributes;
+import ethanjones.cubes.graphics.assets.Assets;
+import ethanjones.cubes.graphics.world.ao.AmbientOcclusion;
+import ethanjones.cubes.graphics.world.block.BlockRenderType;
+import ethanjones.cubes.graphics.world.block.BlockTextureHandler;
+import ethanjones.cubes.side.common.Side;
+import ethanjones.cubes.world.storage.Area;
+import ethanjones.cubes.world.storage.AreaMap;
+
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static ethanjones.cubes.world.storage.Area.*;
+
+/**
+ * Builds area vertices on worker threads. Each task copies the section and the sections around it from the area and
+ * its neighbours, so areas are only read locked while being copied. Meshes are uploaded on the render thread.
+ */
+public class AreaMeshBuilder {
+
+  public static final long UPLOAD_BUDGET_NS = 2000000;
+  private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  private static final int MAX_QUEUED = THREADS * 2;
+
+  private final LinkedBlockingQueue<Task> queue = new LinkedBlockingQueue<Task>();
+  private final ConcurrentLinkedQueue<Task> built = new ConcurrentLinkedQueue<Task>();
+  private final ThreadPool threadPool;
+  private int queued; // render thread only
+
+  public AreaMeshBuilder() {
+    threadPool = new ThreadPool("AreaMeshBuilder", new Worker(), THREADS);
+    threadPool.setSide(Side.Client).setDaemon(true).setPriority(Thread.NORM_PRIORITY - 1).start();
+  }
+
+  /**
+   * @return if the area renderer was queued, false if the queue is full or its neighbours are not loaded
+   */
+  public boolean submit(AreaRenderer areaRenderer) {
+    if (queued >= MAX_QUEUED || areaRenderer.queued) return false;
+    Area area = areaRenderer.getArea();
+    if (area == null || !neighboursLoaded(area)) return false;
+
+    areaRenderer.refresh = false;
+    areaRenderer.queued = true;
+    queued++;
+    boolean ao = AmbientOcclusion.isEnabled();
+    VertexPacker packer = null;
+    if (CubesVertexAttributes.isPackingEnabled()) {
+      Texture texture = Assets.blockItemSheet.getTexture();
+      packer = new VertexPacker(texture.getWidth(), texture.getHeight(), ao);
+    }
+    queue.add(new Task(areaRenderer, area, areaRenderer.getYSection(), areaRenderer.generation, ao, GreedyMesher.isEnabled(), packer));
+    return true;
+  }
+
+  /**
+   * Uploads built meshes until the budget is used, always uploading at least one. Must be called before rendering
+   * any area renderers this frame, as replaced meshes are freed.
+   *
+   * @return the number of area renderers updated
+   */
+  public int upload() {
+    long start = System.nanoTime();
+    int uploaded = 0;
+    Task task;
+    while ((uploaded == 0 || System.nanoTime() - start < UPLOAD_BUDGET_NS) && (task = built.poll()) != null) {
+      queued--;
+      AreaRenderer areaRenderer = task.areaRenderer;
+      if (areaRenderer.generation != task.generation) continue; // reset since queued
+      areaRenderer.queued = false;
+
+      if (task.vertices == null || task.ao != AmbientOcclusion.isEnabled() || task.greedy != GreedyMesher.isEnabled() || (task.packer != null) != CubesVertexAttributes.isPackingEnabled()) {
+        areaRenderer.refresh = true;
+        continue;
+      }
+      areaRenderer.setMeshes(task.vertices, task.greedyVertices);
+      uploaded++;
+    }
+    return uploaded;
+  }
+
+  public int queued() {
+    return queued;
+  }
+
+  public void dispose() {
+    queue.clear();
+    threadPool.stop();
+    built.clear();
+  }
+
+  private static boolean neighboursLoaded(Area area) {
+    return area.neighbour(area.areaX + 1, area.areaZ) != null && area.neighbour(area.areaX - 1, area.areaZ) != null && area.neighbour(area.areaX, area.areaZ + 1) != null && area.neighbour(area.areaX, area.areaZ - 1) != null;
+  }
+
+  private class Worker implements Runnable {
+
+    @Override
+    public void run() {
+      // per thread, reused between tasks
+      float[] vertices = new float[AreaMesh.MAX_VERTICES * CubesVertexAttributes.MAX_COMPONENTS];
+      float[] greedyVertices = new float[AreaMesh.MAX_VERTICES * CubesVertexAttributes.COMPONENTS_GREEDY];
+      GreedyMesher greedyMesher = new GreedyMesher();
+      byte[][] light = new byte[9][];
+      AreaMap copies = null;
+
+      while (!Thread.currentThread().isInterrupted()) {
+        Task task;
+        try {
+          task = queue.take();
+        } catch (InterruptedException e) {
+          return;
+        }
+
+        try {
+          AreaMap areaMap = task.area.areaMap();
+          if (areaMap != null) {
+            if (copies == null || copies.world != areaMap.world) copies = new AreaMap(areaMap.world);
+            task.build(vertices, greedyVertices, greedyMesher, light, copies);
+          }
+        } catch (Exception e) {
+          Log.warning("Failed to build area mesh", e);
+          task.vertices = null;
+        }
+        built.add(task);
+      }
+    }
+  }
+
+  private static class Task {
+    final AreaRenderer areaRenderer;
+    final Area area;
+    final int ySection;
+    final int generation;
+    final boolean ao;
+    final boolean greedy;
+    final VertexPacker packer;
+    ArrayList<float[]> vertices;
+    ArrayList<float[]> greedyVertices;
+
+    Task(AreaRenderer areaRenderer, Area area, int ySection, int generation, boolean ao, boolean greedy, VertexPacker packer) {
+      this.areaRenderer = areaRenderer;
+      this.area = area;
+      this.ySection = ySection;
+      this.generation = generation;
+      this.ao = ao;
+      this.greedy = greedy;
+      this.packer = packer;
+    }
+
+    // copies the areas, including diagonal neighbours for ambient occlusion, then meshes the copy
+    void build(float[] vertices, float[] greedyVertices, GreedyMesher greedyMesher, byte[][] light, AreaMap copies) {
+      int minSection = Math.max(0, ySection - 1);
+      copies.empty();
+      for (int dX = -1, n = 0; dX <= 1; dX++) {
+        for (int dZ = -1; dZ <= 1; dZ++, n++) {
+          Area a = area.neighbour(area.areaX + dX, area.areaZ + dZ);
+          if (a == null) continue;
+          Area copy = a.copySections(minSection, ySection + 1, light[n]);
+          if (copy.light != null) light[n] = copy.light;
+          copies.setArea(copy.areaX, copy.areaZ, copy);
+        }
+      }
+
+      Area area = copies.lockedGetArea(this.area.areaX, this.area.areaZ);
+      Area maxX = area.neighbour(area.areaX + 1, area.areaZ);
+      Area minX = area.neighbour(area.areaX - 1, area.areaZ);
+      Area maxZ = area.neighbour(area.areaX, area.areaZ + 1);
+      Area minZ = area.neighbour(area.areaX, area.areaZ - 1);
+      if (maxX == null || minX == null || maxZ == null || minZ == null) return;
+      this.vertices = new ArrayList<float[]>();
+      this.greedyVertices = new ArrayList<float[]>();
+      if (area.isBlank()) return;
+
+      if (maxX.isBlank()) maxX = null;
+      if (minX.isBlank()) minX = null;
+      if (maxZ.isBlank()) maxZ = null;
+      if (minZ.isBlank()) minZ = null;
+
+      int section = ySection - minSection;
+      Vector3 offset = new Vector3(area.minBlockX, minSection * SIZE_BLOCKS, area.minBlockZ);
+      // packed positions are relative to the section, AreaRenderer translates them
+      Vector3 blockOffset = packer == null ? offset : new Vector3(0, -section * SIZE_BLOCKS, 0);
+      int componentSize = ao ? CubesVertexAttributes.COMPONENTS_AO : CubesVertexAttributes.COMPONENTS;
+      int maxVertexOffset = AreaMesh.MAX_VERTICES * componentSize;
+      int i = section * SIZE_BLOCKS_CUBED;
+      int vertexOffset = 0;
+
+      for (int y = section * SIZE_BLOCKS; y < (section + 1) * SIZE_BLOCKS; y++) {
+        for (int z = 0; z < SIZE_BLOCKS; z++) {
+          for (int x = 0; x < SIZE_BLOCKS; x++, i++) {
+            int blockInt = area.getBlockInt(i);
+            if ((blockInt & BLOCK_VISIBLE) != BLOCK_VISIBLE) continue;
+            Block block = IDManager.toBlock(blockInt & 0xFFFFF);
+            if (block == null) continue;
+
+            int meta = (blockInt >> 20) & 0xFF;
+            if (greedy && GreedyMesher.canMerge(block, meta, blockInt)) continue;
+            BlockTextureHandler textureHandler = block.getTextureHandler(meta);
+            BlockRenderType renderType = block.renderType(meta);
+            if (vertexOffset + (renderType.maxVertices * componentSize) > maxVertexOffset) {
+              this.vertices.add(output(vertices, vertexOffset));
+              vertexOffset = 0;
+            }
+            vertexOffset = renderType.render(vertices, vertexOffset, blockOffset, block, meta, textureHandler, area, x, y, z, i, ao, minX, maxZ, minZ, maxX);
+          }
+        }
+      }
+      if (vertexOffset > 0) this.vertices.add(output(vertices, vertexOffset));
+
+      if (greedy) {
+        int greedyOffset = greedyMesher.mesh(area, section, minX, maxZ, minZ, maxX, offset, greedyVertices, 0, this.greedyVertices);
+        if (greedyOffset > 0) this.greedyVertices.add(Arrays.copyOf(greedyVertices, greedyOffset));
+      }
+    }
+
+    private float[] output(float[] vertices, int length) {
+      if (packer == null) return Arrays.copyOf(vertices, length);
+      return packer.pack(vertices, length);
+    }
+  }
+}
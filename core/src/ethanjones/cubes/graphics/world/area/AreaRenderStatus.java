@@ -3,7 +3,6 @@ package ethanjones.cubes.graphics.world.area;
 import ethanjones.cubes.world.storage.Area;
 
 import static ethanjones.cubes.world.storage.Area.SIZE_BLOCKS;
-import static ethanjones.cubes.world.storage.Area.SIZE_BLOCKS_CUBED;
 
 public class AreaRenderStatus {
 
@@ -68,7 +67,7 @@ public class AreaRenderStatus {
     for (int x = x1; x <= x2; x++) {
       for (int y = y1 + h; y <= y2 + h; y++) {
         for (int z = z1; z <= z2; z++) {
-          if (area.blocks[Area.getRef(x, y, z)] == 0) return false;
+          if (area.getBlockInt(Area.getRef(x, y, z)) == 0) return false;
         }
       }
     }
@@ -76,10 +75,7 @@ public class AreaRenderStatus {
   }
 
   private static boolean checkEmpty(Area area, int ySection) {
-    for (int i = ySection * SIZE_BLOCKS_CUBED; i < ((ySection + 1) * SIZE_BLOCKS_CUBED); i++) {
-      if (area.blocks[i] != 0) return false;
-    }
-    return true;
+    return area.blocks[ySection].isEmpty();
   }
 
   public static int[] create(int ySections) {
@@ -0,0 +1,239 @@
+package ethanjones.cubes.graphics.world.area;
+
+import ethanjones.cubes.block.Block;
+import ethanjones.cubes.core.id.IDManager;
+import ethanjones.cubes.core.id.TransparencyManager;
+import ethanjones.cubes.core.settings.Settings;
+import ethanjones.cubes.core.util.BlockFace;
+import ethanjones.cubes.graphics.CubesVertexAttributes;
+import ethanjones.cubes.graphics.world.ao.AmbientOcclusion;
+import ethanjones.cubes.graphics.world.block.BlockRenderType;
+import ethanjones.cubes.world.storage.Area;
+
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.math.Vector3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static ethanjones.cubes.world.light.SunLight.MAX_SUNLIGHT;
+import static ethanjones.cubes.world.storage.Area.*;
+
+/**
+ * Merges coplanar faces of opaque full cubes with the same texture region and light into larger quads.
+ * Texture coordinates are in blocks, the shader repeats the texture region across the quad, so merged faces are
+ * stored in separate meshes using VERTEX_ATTRIBUTES_GREEDY. Not used with ambient occlusion, as it differs per face.
+ */
+public final class GreedyMesher {
+
+  private static final int QUAD_COMPONENTS = 4 * CubesVertexAttributes.COMPONENTS_GREEDY;
+
+  // for each face, the corners of the quad as (a, b) pairs in the plane of the face, matching FaceVertices
+  private static final int[][] CORNERS = new int[][]{
+    {0, 1, 1, 1, 1, 0, 0, 0}, // posX, a = z, b = y
+    {1, 0, 1, 1, 0, 1, 0, 0}, // negX
+    {0, 1, 1, 1, 1, 0, 0, 0}, // posY, a = x, b = z
+    {1, 0, 1, 1, 0, 1, 0, 0}, // negY
+    {1, 0, 1, 1, 0, 1, 0, 0}, // posZ, a = x, b = y
+    {0, 1, 1, 1, 1, 0, 0, 0}  // negZ
+  };
+  private static final boolean[] FLIP_U = new boolean[]{true, false, false, false, false, true};
+  private static final boolean[] FLIP_V = new boolean[]{true, true, false, true, true, true};
+  private static final int[] SIDE = new int[]{1 << 8, 1 << 8, 0, 0, 2 << 8, 2 << 8};
+
+  private final TextureRegion[] regions = new TextureRegion[SIZE_BLOCKS_SQUARED];
+  private final int[] lights = new int[SIZE_BLOCKS_SQUARED];
+
+  private Area area, minX, maxZ, minZ, maxX;
+  private Vector3 offset;
+  private float[] vertices;
+  private int vertexOffset;
+  private int maxVertexOffset;
+  private ArrayList<float[]> meshes;
+
+  public static boolean isEnabled() {
+    return Settings.getBooleanSettingValue(Settings.GRAPHICS_GREEDY_MESHING) && !AmbientOcclusion.isEnabled();
+  }
+
+  static boolean canMerge(Block block, int meta, int blockInt) {
+    return block.renderType(meta) == BlockRenderType.DEFAULT && !TransparencyManager.isTransparent(blockInt);
+  }
+
+  /**
+   * Adds the merged faces of the section to vertices, adding full buffers to meshes
+   *
+   * @return the new vertex offset
+   */
+  int mesh(Area area, int section, Area minX, Area maxZ, Area minZ, Area maxX, Vector3 offset, float[] vertices, int vertexOffset, ArrayList<float[]> meshes) {
+    this.area = area;
+    this.minX = minX;
+    this.maxZ = maxZ;
+    this.minZ = minZ;
+    this.maxX = maxX;
+    this.offset = offset;
+    this.vertices = vertices;
+    this.vertexOffset = vertexOffset;
+    this.maxVertexOffset = AreaMesh.MAX_VERTICES * CubesVertexAttributes.COMPONENTS_GREEDY;
+    this.meshes = meshes;
+
+    int minY = section * SIZE_BLOCKS;
+    for (BlockFace face : BlockFace.values()) {
+      for (int s = 0; s < SIZE_BLOCKS; s++) {
+        if (fill(face, minY, s)) merge(face, minY, s);
+      }
+    }
+
+    this.area = this.minX = this.maxZ = this.minZ = this.maxX = null;
+    this.vertices = null;
+    this.meshes = null;
+    return this.vertexOffset;
+  }
+
+  // fills the regions and lights of faces in slice s, returns false if there are none
+  private boolean fill(BlockFace face, int minY, int s) {
+    boolean any = false;
+    for (int b = 0, k = 0; b < SIZE_BLOCKS; b++) {
+      for (int a = 0; a < SIZE_BLOCKS; a++, k++) {
+        int x, y, z;
+        if (face == BlockFace.posX || face == BlockFace.negX) {
+          x = s;
+          y = minY + b;
+          z = a;
+        } else if (face == BlockFace.posY || face == BlockFace.negY) {
+          x = a;
+          y = minY + s;
+          z = b;
+        } else {
+          x = a;
+          y = minY + b;
+          z = s;
+        }
+        regions[k] = null;
+
+        int i = getRef(x, y, z);
+        int blockInt = area.getBlockInt(i);
+        if ((blockInt & BLOCK_VISIBLE) != BLOCK_VISIBLE) continue;
+        Block block = IDManager.toBlock(blockInt & 0xFFFFF);
+        if (block == null) continue;
+        int meta = (blockInt >> 20) & 0xFF;
+        if (!canMerge(block, meta, blockInt)) continue;
+
+        int light = faceLight(face, block, x, y, z, i);
+        if (light == -1) continue;
+        regions[k] = block.getTextureHandler(meta).getSide(face);
+        lights[k] = light;
+        any = true;
+      }
+    }
+    return any;
+  }
+
+  // the light of the face, or -1 if hidden. matches BlockRenderType.DEFAULT
+  private int faceLight(BlockFace face, Block block, int x, int y, int z, int i) {
+    switch (face) {
+      case posX:
+        if (x < SIZE_BLOCKS - 1) return visible(block, face, area, i + MAX_X_OFFSET);
+        if (maxX == null || y > maxX.maxY) return MAX_SUNLIGHT;
+        return visible(block, face, maxX, getRef(0, y, z));
+      case negX:
+        if (x > 0) return visible(block, face, area, i + MIN_X_OFFSET);
+        if (minX == null || y > minX.maxY) return MAX_SUNLIGHT;
+        return visible(block, face, minX, getRef(SIZE_BLOCKS - 1, y, z));
+      case posY:
+        if (y < area.maxY) return visible(block, face, area, i + MAX_Y_OFFSET);
+        return MAX_SUNLIGHT;
+      case negY:
+        if (y > 0) return visible(block, face, area, i + MIN_Y_OFFSET);
+        return 0;
+      case posZ:
+        if (z < SIZE_BLOCKS - 1) return visible(block, face, area, i + MAX_Z_OFFSET);
+        if (maxZ == null || y > maxZ.maxY) return MAX_SUNLIGHT;
+        return visible(block, face, maxZ, getRef(x, y, 0));
+      default:
+        if (z > 0) return visible(block, face, area, i + MIN_Z_OFFSET);
+        if (minZ == null || y > minZ.maxY) return MAX_SUNLIGHT;
+        return visible(block, face, minZ, getRef(x, y, SIZE_BLOCKS - 1));
+    }
+  }
+
+  private static int visible(Block block, BlockFace face, Area neighbour, int ref) {
+    if (!block.renderFace(face, neighbour.getBlockInt(ref))) return -1;
+    return neighbour.light[ref] & 0xFF;
+  }
+
+  private void merge(BlockFace face, int minY, int s) {
+    for (int b = 0; b < SIZE_BLOCKS; b++) {
+      for (int a = 0; a < SIZE_BLOCKS; ) {
+        int k = a + b * SIZE_BLOCKS;
+        TextureRegion region = regions[k];
+        if (region == null) {
+          a++;
+          continue;
+        }
+        int light = lights[k];
+
+        int w = 1;
+        while (a + w < SIZE_BLOCKS && matches(k + w, region, light)) w++;
+
+        int h = 1;
+        expand:
+        while (b + h < SIZE_BLOCKS) {
+          int row = k + h * SIZE_BLOCKS;
+          for (int j = 0; j < w; j++) {
+            if (!matches(row + j, region, light)) break expand;
+          }
+          h++;
+        }
+
+        for (int j = 0; j < h; j++) {
+          Arrays.fill(regions, k + j * SIZE_BLOCKS, k + j * SIZE_BLOCKS + w, null);
+        }
+        quad(face, minY, s, a, b, w, h, region, light);
+        a += w;
+      }
+    }
+  }
+
+  private boolean matches(int k, TextureRegion region, int light) {
+    return regions[k] == region && lights[k] == light;
+  }
+
+  private void quad(BlockFace face, int minY, int s, int a, int b, int w, int h, TextureRegion region, int light) {
+    if (vertexOffset + QUAD_COMPONENTS > maxVertexOffset) {
+      meshes.add(Arrays.copyOf(vertices, vertexOffset));
+      vertexOffset = 0;
+    }
+
+    int f = face.ordinal();
+    int[] corners = CORNERS[f];
+    boolean positive = face == BlockFace.posX || face == BlockFace.posY || face == BlockFace.posZ;
+    int fixed = s + (positive ? 1 : 0);
+    float regionWidth = region.getU2() - region.getU();
+    float regionHeight = region.getV2() - region.getV();
+
+    for (int c = 0; c < 8; c += 2) {
+      int ca = corners[c], cb = corners[c + 1];
+      int pa = a + ca * w, pb = b + cb * h;
+      if (face == BlockFace.posX || face == BlockFace.negX) {
+        vertices[vertexOffset++] = offset.x + fixed;
+        vertices[vertexOffset++] = offset.y + minY + pb;
+        vertices[vertexOffset++] = offset.z + pa;
+      } else if (face == BlockFace.posY || face == BlockFace.negY) {
+        vertices[vertexOffset++] = offset.x + pa;
+        vertices[vertexOffset++] = offset.y + minY + fixed;
+        vertices[vertexOffset++] = offset.z + pb;
+      } else {
+        vertices[vertexOffset++] = offset.x + pa;
+        vertices[vertexOffset++] = offset.y + minY + pb;
+        vertices[vertexOffset++] = offset.z + fixed;
+      }
+      vertices[vertexOffset++] = (FLIP_U[f] ? 1 - ca : ca) * w;
+      vertices[vertexOffset++] = (FLIP_V[f] ? 1 - cb : cb) * h;
+      vertices[vertexOffset++] = light + SIDE[f];
+      vertices[vertexOffset++] = region.getU();
+      vertices[vertexOffset++] = region.getV();
+      vertices[vertexOffset++] = regionWidth;
+      vertices[vertexOffset++] = regionHeight;
+    }
+  }
+}
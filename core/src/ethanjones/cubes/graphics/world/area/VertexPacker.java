@@ -0,0 +1,81 @@
+package ethanjones.cubes.graphics.world.area;
+
+import ethanjones.cubes.graphics.CubesVertexAttributes;
+import ethanjones.cubes.graphics.world.ao.AmbientOcclusion;
+
+/**
+ * Converts vertices written by FaceVertices and CrossFaceVertices, with positions relative to the section, into
+ * CubesVertexAttributes.VERTEX_ATTRIBUTES_PACKED(_AO). Each vertex is two or three little endian words of four bytes:
+ * <pre>{@code
+ * a_packedPosition  x | inset << 6, light, z | inset << 6, y
+ * a_packedTexCoord  u & 0xFF, v & 0xFF, u >> 8 | (v >> 8) << 4, side
+ * a_packedAO        ao region index, corner u | corner v << 1, 0, 0
+ * }</pre>
+ * The inset selects the fractional part of the coordinate, 0, CrossFaceVertices.min or CrossFaceVertices.max. Texture
+ * coordinates are in texels of the block texture sheet. Bit 6 of the last byte of every word is never set, so a word
+ * is never a NaN and survives being stored in a float array.
+ */
+final class VertexPacker {
+
+  private static final float EPSILON = 0.01f;
+
+  private final int textureWidth;
+  private final int textureHeight;
+  private final boolean ao;
+  private final int inputComponents;
+  private final int outputComponents;
+
+  VertexPacker(int textureWidth, int textureHeight, boolean ao) {
+    this.textureWidth = textureWidth;
+    this.textureHeight = textureHeight;
+    this.ao = ao;
+    this.inputComponents = ao ? CubesVertexAttributes.COMPONENTS_AO : CubesVertexAttributes.COMPONENTS;
+    this.outputComponents = ao ? CubesVertexAttributes.COMPONENTS_PACKED_AO : CubesVertexAttributes.COMPONENTS_PACKED;
+  }
+
+  float[] pack(float[] vertices, int length) {
+    int vertexCount = length / inputComponents;
+    float[] packed = new float[vertexCount * outputComponents];
+    int in = 0, out = 0;
+    // ao coordinates are the corners of one region per quad, so the region is found from the quad's minimum
+    for (int quad = 0; quad < vertexCount; quad += 4) {
+      int aoIndex = 0;
+      float aoMinU = 0, aoMinV = 0;
+      if (ao) {
+        aoMinU = aoMinV = Float.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+          aoMinU = Math.min(aoMinU, vertices[in + (i * inputComponents) + 6]);
+          aoMinV = Math.min(aoMinV, vertices[in + (i * inputComponents) + 7]);
+        }
+        int column = Math.round(aoMinU * AmbientOcclusion.SQRT_TOTAL);
+        int row = Math.round(aoMinV * AmbientOcclusion.SQRT_TOTAL);
+        aoIndex = column + (row * AmbientOcclusion.SQRT_TOTAL);
+      }
+
+      for (int i = 0; i < 4; i++, in += inputComponents) {
+        int light = (int) vertices[in + 5];
+        int u = Math.round(vertices[in + 3] * textureWidth);
+        int v = Math.round(vertices[in + 4] * textureHeight);
+
+        int position = coordinate(vertices[in]) | ((light & 0xFF) << 8) | (coordinate(vertices[in + 2]) << 16) | ((int) vertices[in + 1] << 24);
+        int texCoord = (u & 0xFF) | ((v & 0xFF) << 8) | (((u >> 8) | ((v >> 8) << 4)) << 16) | ((light >> 8) << 24);
+        packed[out++] = Float.intBitsToFloat(position);
+        packed[out++] = Float.intBitsToFloat(texCoord);
+        if (ao) {
+          int corner = (vertices[in + 6] > aoMinU ? 1 : 0) | (vertices[in + 7] > aoMinV ? 2 : 0);
+          packed[out++] = Float.intBitsToFloat(aoIndex | (corner << 8));
+        }
+      }
+    }
+    return packed;
+  }
+
+  // whole block in the lower 6 bits, fractional part as the inset in the upper 2
+  private static int coordinate(float f) {
+    int block = (int) Math.floor(f + EPSILON);
+    float fraction = f - block;
+    if (fraction < EPSILON) return block;
+    if (fraction < 0.5f) return block | (1 << 6);
+    return block | (2 << 6);
+  }
+}
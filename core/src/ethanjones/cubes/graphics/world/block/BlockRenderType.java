@@ -20,27 +20,27 @@ public abstract class BlockRenderType {
     @Override
     public int render(float[] vertices, int vertexOffset, Vector3 areaOffset, Block block, int meta, BlockTextureHandler textureHandler, Area area, int x, int y, int z, int i, boolean ao, Area minX, Area maxZ, Area minZ, Area maxX) {
       if (x < SIZE_BLOCKS - 1) {
-        if (block.renderFace(BlockFace.posX, area.blocks[i + MAX_X_OFFSET])) { //light: byte is signed (-128 to 127) so & 0xFF to convert to 0-255
+        if (block.renderFace(BlockFace.posX, area.getBlockInt(i + MAX_X_OFFSET))) { //light: byte is signed (-128 to 127) so & 0xFF to convert to 0-255
           vertexOffset = createMaxX(areaOffset, textureHandler.getSide(BlockFace.posX), AmbientOcclusion.posX(area, x, y, z, ao), x, y, z, area.light[i + MAX_X_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else if (maxX == null || y > maxX.maxY) {
         vertexOffset = createMaxX(areaOffset, textureHandler.getSide(BlockFace.posX), AmbientOcclusion.posX(area, x, y, z, ao), x, y, z, MAX_SUNLIGHT, vertices, vertexOffset);
-      } else if (block.renderFace(BlockFace.posX, maxX.blocks[getRef(MIN_AREA, y, z)])) {
+      } else if (block.renderFace(BlockFace.posX, maxX.getBlockInt(getRef(MIN_AREA, y, z)))) {
         vertexOffset = createMaxX(areaOffset, textureHandler.getSide(BlockFace.posX), AmbientOcclusion.posX(area, x, y, z, ao), x, y, z, maxX.light[getRef(MIN_AREA, y, z)] & 0xFF, vertices, vertexOffset);
       }
 
       if (x > 0) {
-        if (block.renderFace(BlockFace.negX, area.blocks[i + MIN_X_OFFSET])) {
+        if (block.renderFace(BlockFace.negX, area.getBlockInt(i + MIN_X_OFFSET))) {
           vertexOffset = createMinX(areaOffset, textureHandler.getSide(BlockFace.negX), AmbientOcclusion.negX(area, x, y, z, ao), x, y, z, area.light[i + MIN_X_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else if (minX == null || y > minX.maxY) {
         vertexOffset = createMinX(areaOffset, textureHandler.getSide(BlockFace.negX), AmbientOcclusion.negX(area, x, y, z, ao), x, y, z, MAX_SUNLIGHT, vertices, vertexOffset);
-      } else if (block.renderFace(BlockFace.negX, minX.blocks[getRef(MAX_AREA, y, z)])) {
+      } else if (block.renderFace(BlockFace.negX, minX.getBlockInt(getRef(MAX_AREA, y, z)))) {
         vertexOffset = createMinX(areaOffset, textureHandler.getSide(BlockFace.negX), AmbientOcclusion.negX(area, x, y, z, ao), x, y, z, minX.light[getRef(MAX_AREA, y, z)] & 0xFF, vertices, vertexOffset);
       }
 
       if (y < area.maxY) {
-        if (block.renderFace(BlockFace.posY, area.blocks[i + MAX_Y_OFFSET])) {
+        if (block.renderFace(BlockFace.posY, area.getBlockInt(i + MAX_Y_OFFSET))) {
           vertexOffset = createMaxY(areaOffset, textureHandler.getSide(BlockFace.posY), AmbientOcclusion.posY(area, x, y, z, ao), x, y, z, area.light[i + MAX_Y_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else {
@@ -48,7 +48,7 @@ public abstract class BlockRenderType {
       }
 
       if (y > 0) {
-        if (block.renderFace(BlockFace.negY, area.blocks[i + MIN_Y_OFFSET])) {
+        if (block.renderFace(BlockFace.negY, area.getBlockInt(i + MIN_Y_OFFSET))) {
           vertexOffset = createMinY(areaOffset, textureHandler.getSide(BlockFace.negY), AmbientOcclusion.negY(area, x, y, z, ao), x, y, z, area.light[i + MIN_Y_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else {
@@ -56,22 +56,22 @@ public abstract class BlockRenderType {
       }
 
       if (z < SIZE_BLOCKS - 1) {
-        if (block.renderFace(BlockFace.posZ, area.blocks[i + MAX_Z_OFFSET])) {
+        if (block.renderFace(BlockFace.posZ, area.getBlockInt(i + MAX_Z_OFFSET))) {
           vertexOffset = createMaxZ(areaOffset, textureHandler.getSide(BlockFace.posZ), AmbientOcclusion.posZ(area, x, y, z, ao), x, y, z, area.light[i + MAX_Z_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else if (maxZ == null || y > maxZ.maxY) {
         vertexOffset = createMaxZ(areaOffset, textureHandler.getSide(BlockFace.posZ), AmbientOcclusion.posZ(area, x, y, z, ao), x, y, z, MAX_SUNLIGHT, vertices, vertexOffset);
-      } else if (block.renderFace(BlockFace.posZ, maxZ.blocks[getRef(x, y, MIN_AREA)])) {
+      } else if (block.renderFace(BlockFace.posZ, maxZ.getBlockInt(getRef(x, y, MIN_AREA)))) {
         vertexOffset = createMaxZ(areaOffset, textureHandler.getSide(BlockFace.posZ), AmbientOcclusion.posZ(area, x, y, z, ao), x, y, z, maxZ.light[getRef(x, y, MIN_AREA)] & 0xFF, vertices, vertexOffset);
       }
 
       if (z > 0) {
-        if (block.renderFace(BlockFace.negZ, area.blocks[i + MIN_Z_OFFSET])) {
+        if (block.renderFace(BlockFace.negZ, area.getBlockInt(i + MIN_Z_OFFSET))) {
           vertexOffset = createMinZ(areaOffset, textureHandler.getSide(BlockFace.negZ), AmbientOcclusion.negZ(area, x, y, z, ao), x, y, z, area.light[i + MIN_Z_OFFSET] & 0xFF, vertices, vertexOffset);
         }
       } else if (minZ == null || y > minZ.maxY) {
         vertexOffset = createMinZ(areaOffset, textureHandler.getSide(BlockFace.negZ), AmbientOcclusion.negZ(area, x, y, z, ao), x, y, z, MAX_SUNLIGHT, vertices, vertexOffset);
-      } else if (block.renderFace(BlockFace.negZ, minZ.blocks[getRef(x, y, MAX_AREA)])) {
+      } else if (block.renderFace(BlockFace.negZ, minZ.getBlockInt(getRef(x, y, MAX_AREA)))) {
         vertexOffset = createMinZ(areaOffset, textureHandler.getSide(BlockFace.negZ), AmbientOcclusion.negZ(area, x, y, z, ao), x, y, z, minZ.light[getRef(x, y, MAX_AREA)] & 0xFF, vertices, vertexOffset);
       }
       return vertexOffset;
@@ -5,8 +5,8 @@ import com.badlogic.gdx.math.Vector3;
 
 public class CrossFaceVertices {
 
-  private static final float min = (float) ((1 - (Math.sqrt(2) / 2)) / 2);
-  private static final float max = 1 - min;
+  public static final float min = (float) ((1 - (Math.sqrt(2) / 2)) / 2);
+  public static final float max = 1 - min;
 
   public static int createMinXMaxZStretched(Vector3 offset, TextureRegion region, int x, int y, int z, int light, float[] vertices, int vertexOffset, boolean ao) {
     vertices[vertexOffset++] = offset.x + x;
@@ -56,4 +56,11 @@ public abstract class Networking {
 
   public abstract void processPackets();
 
+  /**
+   * Called once everything for a tick has been queued, to send it without waiting for the flush delay
+   */
+  public void flush() {
+
+  }
+
 }
@@ -1,10 +1,12 @@
 package ethanjones.cubes.networking;
 
 import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.settings.Settings;
 import ethanjones.cubes.networking.client.ClientNetworking;
 import ethanjones.cubes.networking.client.ClientNetworkingParameter;
 import ethanjones.cubes.networking.packet.Packet;
 import ethanjones.cubes.networking.server.ClientIdentifier;
+import ethanjones.cubes.networking.server.NioServerNetworking;
 import ethanjones.cubes.networking.server.ServerNetworking;
 import ethanjones.cubes.networking.server.ServerNetworkingParameter;
 import ethanjones.cubes.networking.singleplayer.SingleplayerNetworking;
@@ -26,7 +28,11 @@ public class NetworkingManager {
   }
 
   public static void serverPreInit(ServerNetworkingParameter serverNetworkingParameter) throws Exception {
-    serverNetworking = new ServerNetworking(serverNetworkingParameter);
+    if (Settings.getBooleanSettingValue(Settings.NETWORKING_NIO)) {
+      serverNetworking = new NioServerNetworking(serverNetworkingParameter);
+    } else {
+      serverNetworking = new ServerNetworking(serverNetworkingParameter);
+    }
     serverNetworking.preInit();
   }
 
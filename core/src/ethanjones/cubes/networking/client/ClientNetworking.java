@@ -10,6 +10,7 @@ import ethanjones.cubes.networking.packet.PacketDirection;
 import ethanjones.cubes.networking.packet.PacketQueue;
 import ethanjones.cubes.networking.packets.PacketConnect;
 import ethanjones.cubes.networking.packets.PacketPingRequest;
+import ethanjones.cubes.networking.socket.BlockingSocketMonitor;
 import ethanjones.cubes.networking.socket.SocketMonitor;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
@@ -79,7 +80,7 @@ public class ClientNetworking extends Networking {
 
   @Override
   public void init() {
-    socketMonitor = new SocketMonitor(socket, this, Side.Client);
+    socketMonitor = new BlockingSocketMonitor(socket, this, Side.Client);
     setNetworkingState(NetworkingState.Running);
     sendPacketToServer(new PacketConnect()); //Has to be running when sending packet
   }
@@ -115,20 +116,25 @@ public class ClientNetworking extends Networking {
       return;
     }
     PacketDirection.checkPacketSend(packet.getClass(), Side.Client);
-    socketMonitor.getSocketOutput().getPacketQueue().add(packet);
+    socketMonitor.getOutputQueue().add(packet);
   }
 
   @Override
   public synchronized void disconnected(SocketMonitor socketMonitor, Exception e) {
     if (getNetworkingState() == NetworkingState.Stopping) return;
     this.exception = e;
-    Log.info("Disconnected from " + socketMonitor.getSocket().getRemoteAddress(), e);
+    Log.info("Disconnected from " + socketMonitor.remoteAddress, e);
     stop();
   }
 
+  @Override
+  public void flush() {
+    if (getNetworkingState() == NetworkingState.Running) socketMonitor.flush();
+  }
+
   public void processPackets() {
     Packet packet = null;
-    PacketQueue packetQueue = socketMonitor.getSocketInput().getPacketQueue();
+    PacketQueue packetQueue = socketMonitor.getInputQueue();
     while ((packet = packetQueue.get()) != null) {
       PacketDirection.checkPacketReceive(packet.getClass(), Side.Client);
       packet.handlePacket();
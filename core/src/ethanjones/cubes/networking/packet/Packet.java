@@ -29,6 +29,29 @@ public abstract class Packet {
     return false;
   }
 
+  /**
+   * For compressed packets which are written the same way to every client
+   *
+   * @return the packet already compressed, written instead of writing and compressing the packet, or null
+   */
+  public byte[] getCompressed() {
+    return null;
+  }
+
+  /**
+   * Uncompressed length of {@link #getCompressed()}
+   */
+  public int getUncompressedLength() {
+    return 0;
+  }
+
+  /**
+   * Called after a compressed packet has been written and compressed, the buffer is reused after returning
+   */
+  public void compressed(byte[] compressed, int length, int uncompressedLength) {
+
+  }
+
   /**
    * Sided.getSide() will return the new side
    */
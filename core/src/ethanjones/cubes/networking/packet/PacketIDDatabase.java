@@ -69,7 +69,7 @@ public class PacketIDDatabase {
       PacketID confirming = new PacketID();
       confirming.id = packetID.id;
       confirming.c = packetID.c;
-      packetID.getSocketMonitor().getSocketOutput().getPacketQueue().add(confirming);
+      packetID.getSocketMonitor().getOutputQueue().add(confirming);
     }
     synchronized (lock) {
       states.put(c, State.Confirmed);
@@ -95,7 +95,7 @@ public class PacketIDDatabase {
     synchronized (lock) {
       packetID.id = classInt.get(packetClass);
     }
-    socketMonitor.getSocketOutput().getPacketQueue().add(packetID);
+    socketMonitor.getOutputQueue().add(packetID);
   }
 
   public void allocate(Class<? extends Packet> packetClass) {
@@ -29,4 +29,8 @@ public class PacketQueue {
     }
   }
 
+  public int size() {
+    return queue.size();
+  }
+
 }
@@ -32,6 +32,11 @@ public class PriorityPacketQueue extends PacketQueue {
     }
   }
 
+  @Override
+  public int size() {
+    return queue.size();
+  }
+
   private static final class FIFOEntry implements Comparable<FIFOEntry> {
     private static final AtomicLong sequence = new AtomicLong(0L);
 
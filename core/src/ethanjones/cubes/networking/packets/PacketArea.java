@@ -5,9 +5,12 @@ import ethanjones.cubes.networking.packet.PacketDirection;
 import ethanjones.cubes.networking.packet.PacketDirection.Direction;
 import ethanjones.cubes.networking.packet.PacketPriority;
 import ethanjones.cubes.networking.packet.PacketPriority.Priority;
+import ethanjones.cubes.core.util.locks.Locked;
+import ethanjones.cubes.networking.server.AreaPayloadCache;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.server.PlayerManager;
 import ethanjones.cubes.world.storage.Area;
+import ethanjones.cubes.world.storage.PaletteStorage;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -19,10 +22,31 @@ public class PacketArea extends Packet {
 
   public Area area;
   public PlayerManager playerManager;
+  private int writtenModCount;
+  private AreaPayloadCache.Payload payload;
 
   @Override
   public void write(DataOutputStream dataOutputStream) throws IOException {
-    area.writeNetworking(dataOutputStream);
+    try (Locked<Area> locked = area.acquireReadLock()) {
+      writtenModCount = area.modCount();
+      area.writeNetworking(dataOutputStream);
+    }
+  }
+
+  @Override
+  public byte[] getCompressed() {
+    payload = AreaPayloadCache.get(area);
+    return payload == null ? null : payload.compressed;
+  }
+
+  @Override
+  public int getUncompressedLength() {
+    return payload == null ? 0 : payload.uncompressedLength;
+  }
+
+  @Override
+  public void compressed(byte[] compressed, int length, int uncompressedLength) {
+    AreaPayloadCache.put(area, writtenModCount, compressed, length, uncompressedLength);
   }
 
   @Override
@@ -56,6 +80,34 @@ public class PacketArea extends Packet {
     return p;
   }
 
+  /**
+   * @return bytes sent for the area, the cached payload's length if there is one, otherwise an estimate
+   */
+  public static int sendSize(Area area) {
+    AreaPayloadCache.Payload payload = AreaPayloadCache.get(area);
+    if (payload != null) return payload.compressed.length;
+    return AreaPayloadCache.estimateCompressed(estimateSize(area));
+  }
+
+  /**
+   * @return rough uncompressed size in bytes of the area when written, without serializing it
+   */
+  public static int estimateSize(Area area) {
+    PaletteStorage[] blocks = area.blocks;
+    if (blocks == null) return 12;
+    // heightmap, then for each section a header, runs of blocks shorter with fewer distinct blocks, and light which is
+    // usually uniform in empty sections and a palette of half a byte per block otherwise
+    int size = 12 + Area.SIZE_BLOCKS_SQUARED * 4;
+    for (PaletteStorage section : blocks) {
+      if (section.isEmpty()) {
+        size += 2;
+      } else {
+        size += 5 + Area.SIZE_BLOCKS_CUBED * section.bits() / 8 + 17 + Area.SIZE_BLOCKS_CUBED / 2;
+      }
+    }
+    return size;
+  }
+
   @Override
   public String toString() {
     return super.toString() + " " + area.areaX + "," + area.areaZ;
@@ -41,7 +41,7 @@ public class PacketConnected extends DataPacket {
     NetworkingManager.sendPacketToServer(new PacketConnectedReply());
 
     SocketMonitor socketMonitor = getSocketMonitor();
-    if (socketMonitor != null) socketMonitor.getSocketOutput().setConnectionInitialized();
+    if (socketMonitor != null) socketMonitor.setConnectionInitialized();
   }
 
   @Override
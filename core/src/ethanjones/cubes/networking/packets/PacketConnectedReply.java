@@ -28,6 +28,6 @@ public class PacketConnectedReply extends Packet {
   @Override
   public void handlePacket() {
     SocketMonitor socketMonitor = getSocketMonitor();
-    if (socketMonitor != null) socketMonitor.getSocketOutput().setConnectionInitialized();
+    if (socketMonitor != null) socketMonitor.setConnectionInitialized();
   }
 }
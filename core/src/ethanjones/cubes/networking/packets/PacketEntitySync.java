@@ -0,0 +1,250 @@
+package ethanjones.cubes.networking.packets;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.util.locks.Locked;
+import ethanjones.cubes.entity.Entity;
+import ethanjones.cubes.networking.packet.Packet;
+import ethanjones.cubes.networking.packet.PacketDirection;
+import ethanjones.cubes.networking.packet.PacketDirection.Direction;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
+import ethanjones.cubes.side.common.Cubes;
+import ethanjones.cubes.world.CoordinateConverter;
+import ethanjones.cubes.world.client.WorldClient;
+import ethanjones.cubes.world.thread.WorldLockable;
+import ethanjones.data.Data;
+import ethanjones.data.DataGroup;
+
+import com.badlogic.gdx.math.Vector3;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * The entities that moved during a tick. Each record is the entity's network id and either the full entity, the first
+ * time it is sent to a client, or the changes in its quantized position, motion and angle since the last record sent.
+ */
+@Direction(PacketDirection.TO_CLIENT)
+public class PacketEntitySync extends Packet {
+
+  public static final float POSITION_SCALE = 32f;
+  public static final float MOTION_SCALE = 256f;
+  public static final float ANGLE_SCALE = 1024f;
+
+  private static final int FLAG_FULL = 1;
+  private static final int FLAG_POSITION = 2;
+  private static final int FLAG_MOTION = 4;
+  private static final int FLAG_ANGLE = 8;
+  private static final int FLAG_BYTE = 16;
+
+  public int count;
+  public byte[] records;
+  public int length;
+
+  /**
+   * Quantized position, motion and angle of an entity last sent to or received by a client
+   */
+  public static class State {
+    public final Entity entity;
+    public final int[] values = new int[9];
+
+    public State(Entity entity) {
+      this.entity = entity;
+    }
+  }
+
+  @Override
+  public void write(DataOutputStream dataOutputStream) throws IOException {
+    dataOutputStream.writeInt(count);
+    dataOutputStream.writeInt(length);
+    dataOutputStream.write(records, 0, length);
+  }
+
+  @Override
+  public void read(DataInputStream dataInputStream) throws IOException {
+    count = dataInputStream.readInt();
+    length = dataInputStream.readInt();
+    if (count < 0 || length < 0) throw new IOException("Invalid entity sync size " + count + " " + length);
+    records = new byte[length];
+    dataInputStream.readFully(records);
+  }
+
+  @Override
+  public void handlePacket() {
+    WorldClient world = (WorldClient) Cubes.getClient().world;
+    DataInputStream input = new DataInputStream(new ByteArrayInputStream(records, 0, length));
+    try (Locked<WorldLockable> locked = world.entities.acquireWriteLock()) {
+      for (int i = 0; i < count; i++) {
+        readRecord(input, world);
+      }
+    } catch (IOException e) {
+      Log.warning("Failed to read entity sync", e);
+    }
+  }
+
+  private static void readRecord(DataInputStream input, WorldClient world) throws IOException {
+    int networkID = readVarInt(input);
+    int flags = input.readUnsignedByte();
+    if ((flags & FLAG_FULL) != 0) {
+      DataGroup data = (DataGroup) Data.input(input);
+      Entity entity = world.getEntity((UUID) data.get("uuid"));
+      if (entity != null) {
+        entity.read(data);
+      } else {
+        entity = Entity.readType(data);
+        if (entity == null) return;
+        world.addEntity(entity);
+      }
+      entity.networkID = networkID;
+      State state = new State(entity);
+      quantize(entity, state.values);
+      world.syncedEntities.put(networkID, state);
+      return;
+    }
+
+    State state = world.syncedEntities.get(networkID);
+    int[] values = state == null ? new int[9] : state.values; // still read the record if the entity is not known
+    for (int group = 0; group < 3; group++) {
+      if ((flags & (FLAG_POSITION << group)) == 0) continue;
+      for (int i = group * 3; i < group * 3 + 3; i++) {
+        values[i] += (flags & FLAG_BYTE) != 0 ? input.readByte() : input.readShort();
+      }
+    }
+    if (state == null) return;
+    Entity entity = state.entity;
+    if ((flags & FLAG_POSITION) != 0) entity.position.set(values[0] / POSITION_SCALE, values[1] / POSITION_SCALE, values[2] / POSITION_SCALE);
+    if ((flags & FLAG_MOTION) != 0) entity.motion.set(values[3] / MOTION_SCALE, values[4] / MOTION_SCALE, values[5] / MOTION_SCALE);
+    if ((flags & FLAG_ANGLE) != 0) entity.angle.set(values[6] / ANGLE_SCALE, values[7] / ANGLE_SCALE, values[8] / ANGLE_SCALE);
+  }
+
+  /**
+   * Writes the entity's changes since the state, or the full entity if state is null, and updates the state
+   *
+   * @return the state for the entity
+   */
+  public static State writeRecord(DataOutputStream output, Entity entity, State state, int[] tmp) throws IOException {
+    quantize(entity, tmp);
+    if (state != null) {
+      int flags = 0;
+      boolean fitsByte = true;
+      boolean fitsShort = true;
+      for (int i = 0; i < 9; i++) {
+        int delta = tmp[i] - state.values[i];
+        if (delta == 0) continue;
+        flags |= FLAG_POSITION << (i / 3);
+        if (delta < Byte.MIN_VALUE || delta > Byte.MAX_VALUE) fitsByte = false;
+        if (delta < Short.MIN_VALUE || delta > Short.MAX_VALUE) fitsShort = false;
+      }
+      if (fitsShort) {
+        if (flags == 0) return state;
+        if (fitsByte) flags |= FLAG_BYTE;
+        writeVarInt(output, entity.networkID);
+        output.writeByte(flags);
+        for (int group = 0; group < 3; group++) {
+          if ((flags & (FLAG_POSITION << group)) == 0) continue;
+          for (int i = group * 3; i < group * 3 + 3; i++) {
+            int delta = tmp[i] - state.values[i];
+            if (fitsByte) {
+              output.writeByte(delta);
+            } else {
+              output.writeShort(delta);
+            }
+          }
+        }
+        System.arraycopy(tmp, 0, state.values, 0, 9);
+        return state;
+      }
+    }
+
+    // the client quantizes the full entity the same way
+    writeVarInt(output, entity.networkID);
+    output.writeByte(FLAG_FULL);
+    Data.output(entity.write(), output);
+    state = new State(entity);
+    System.arraycopy(tmp, 0, state.values, 0, 9);
+    return state;
+  }
+
+  /**
+   * The range check used by both sides. The server syncs entities within {@link #syncDistance(int)} of the player and
+   * forgets the rest, the client removes entities one area further out. The server's view of the player lags behind
+   * the client's, so the margin stops the client dropping an entity the server is still sending changes for.
+   */
+  public static boolean inRange(Vector3 position, int playerAreaX, int playerAreaZ, int distance) {
+    int dX = Math.abs(CoordinateConverter.area(position.x) - playerAreaX);
+    int dZ = Math.abs(CoordinateConverter.area(position.z) - playerAreaZ);
+    return dX <= distance && dZ <= distance;
+  }
+
+  public static int syncDistance(int renderDistance) {
+    return renderDistance + 1;
+  }
+
+  public static int clientRemoveDistance(int renderDistance) {
+    return syncDistance(renderDistance) + 1;
+  }
+
+  public static void quantize(Entity entity, int[] values) {
+    quantize(entity.position, POSITION_SCALE, values, 0);
+    quantize(entity.motion, MOTION_SCALE, values, 3);
+    quantize(entity.angle, ANGLE_SCALE, values, 6);
+  }
+
+  private static void quantize(Vector3 vector, float scale, int[] values, int offset) {
+    values[offset] = Math.round(vector.x * scale);
+    values[offset + 1] = Math.round(vector.y * scale);
+    values[offset + 2] = Math.round(vector.z * scale);
+  }
+
+  private static void writeVarInt(DataOutputStream output, int i) throws IOException {
+    while ((i & ~0x7F) != 0) {
+      output.writeByte((i & 0x7F) | 0x80);
+      i >>>= 7;
+    }
+    output.writeByte(i);
+  }
+
+  private static int readVarInt(DataInputStream input) throws IOException {
+    int i = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      int b = input.readUnsignedByte();
+      i |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) return i;
+    }
+    throw new IOException("Invalid network id");
+  }
+
+  /**
+   * @param output the records, copied into the packet
+   */
+  public static PacketEntitySync create(int count, DirectByteArrayOutputStream output) {
+    PacketEntitySync packet = new PacketEntitySync();
+    packet.count = count;
+    packet.length = output.count();
+    packet.records = new byte[packet.length];
+    System.arraycopy(output.buffer(), 0, packet.records, 0, packet.length);
+    return packet;
+  }
+
+  @Override
+  public boolean shouldCompress() {
+    return length > 1024;
+  }
+
+  @Override
+  public Packet copy() {
+    // the records are not modified after being created
+    PacketEntitySync p = new PacketEntitySync();
+    p.count = count;
+    p.records = records;
+    p.length = length;
+    return p;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " " + count;
+  }
+}
@@ -35,7 +35,7 @@ public class PacketPingReply extends Packet {
     
     PacketPingConfirm ppc = new PacketPingConfirm();
     ppc.serverTime = serverTime;
-    getSocketMonitor().getSocketOutput().getPacketQueue().add(ppc);
+    getSocketMonitor().getOutputQueue().add(ppc);
   }
   
   @Override
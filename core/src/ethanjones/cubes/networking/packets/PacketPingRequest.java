@@ -26,7 +26,7 @@ public class PacketPingRequest extends Packet {
     
     PacketPingReply ppr = new PacketPingReply();
     ppr.clientTime = clientTime;
-    getSocketMonitor().getSocketOutput().getPacketQueue().add(ppr);
+    getSocketMonitor().getOutputQueue().add(ppr);
   }
   
   @Override
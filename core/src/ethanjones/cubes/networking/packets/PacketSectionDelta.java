@@ -0,0 +1,124 @@
+package ethanjones.cubes.networking.packets;
+
+import ethanjones.cubes.networking.packet.Packet;
+import ethanjones.cubes.networking.packet.PacketDirection;
+import ethanjones.cubes.networking.packet.PacketDirection.Direction;
+import ethanjones.cubes.side.common.Cubes;
+import ethanjones.cubes.world.storage.Area;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * The blocks changed in one area during a tick, replacing a PacketBlockChanged per block. Written grouped by section
+ * with refs relative to the section.
+ */
+@Direction(PacketDirection.TO_CLIENT)
+public class PacketSectionDelta extends Packet {
+
+  public int areaX;
+  public int areaZ;
+  public int count;
+  // sorted refs from Area.getRef
+  public int[] refs;
+  public int[] blocks;
+
+  @Override
+  public void write(DataOutputStream dataOutputStream) throws IOException {
+    dataOutputStream.writeInt(areaX);
+    dataOutputStream.writeInt(areaZ);
+    dataOutputStream.writeInt(count);
+    int start = 0;
+    while (start < count) {
+      int section = refs[start] / Area.SIZE_BLOCKS_CUBED;
+      int end = start;
+      while (end < count && refs[end] / Area.SIZE_BLOCKS_CUBED == section) end++;
+
+      dataOutputStream.writeInt(section);
+      dataOutputStream.writeInt(end - start);
+      for (int i = start; i < end; i++) {
+        dataOutputStream.writeShort(refs[i] % Area.SIZE_BLOCKS_CUBED);
+      }
+      for (int i = start; i < end; i++) {
+        dataOutputStream.writeInt(blocks[i]);
+      }
+      start = end;
+    }
+  }
+
+  @Override
+  public void read(DataInputStream dataInputStream) throws IOException {
+    areaX = dataInputStream.readInt();
+    areaZ = dataInputStream.readInt();
+    count = dataInputStream.readInt();
+    if (count < 0) throw new IOException("Invalid section delta size " + count);
+    refs = new int[count];
+    blocks = new int[count];
+    int start = 0;
+    while (start < count) {
+      int section = dataInputStream.readInt();
+      int sectionCount = dataInputStream.readInt();
+      if (section < 0 || sectionCount <= 0 || sectionCount > count - start) throw new IOException("Invalid section delta " + section + " " + sectionCount);
+      int offset = section * Area.SIZE_BLOCKS_CUBED;
+      for (int i = start; i < start + sectionCount; i++) {
+        refs[i] = offset + (dataInputStream.readShort() & 0xFFFF);
+      }
+      for (int i = start; i < start + sectionCount; i++) {
+        blocks[i] = dataInputStream.readInt();
+      }
+      start += sectionCount;
+    }
+  }
+
+  @Override
+  public void handlePacket() {
+    Area area = Cubes.getClient().world.getArea(areaX, areaZ);
+    if (area == null) return;
+    area.setBlocks(refs, blocks, count);
+  }
+
+  @Override
+  public boolean shouldCompress() {
+    return true;
+  }
+
+  @Override
+  public Packet copy() {
+    // the arrays are not modified after being sent
+    PacketSectionDelta p = new PacketSectionDelta();
+    p.areaX = areaX;
+    p.areaZ = areaZ;
+    p.count = count;
+    p.refs = refs;
+    p.blocks = blocks;
+    return p;
+  }
+
+  @Override
+  public String toString() {
+    return super.toString() + " " + areaX + "," + areaZ + " " + count;
+  }
+
+  /**
+   * @param changes the new block int for each ref changed in the area
+   */
+  public static PacketSectionDelta create(int areaX, int areaZ, IntIntMap changes) {
+    IntArray keys = changes.keys().toArray();
+    keys.sort();
+
+    PacketSectionDelta packet = new PacketSectionDelta();
+    packet.areaX = areaX;
+    packet.areaZ = areaZ;
+    packet.count = keys.size;
+    packet.refs = keys.toArray();
+    packet.blocks = new int[packet.count];
+    for (int i = 0; i < packet.count; i++) {
+      packet.blocks[i] = changes.get(packet.refs[i], 0);
+    }
+    return packet;
+  }
+}
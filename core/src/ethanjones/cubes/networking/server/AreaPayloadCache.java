@@ -0,0 +1,90 @@
+package ethanjones.cubes.networking.server;
+
+import ethanjones.cubes.world.storage.Area;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Compressed PacketArea payloads, so an area sent to many clients is only serialized and compressed once. Entries are
+ * for the area's modCount when written, so any {@link Area#modify()} invalidates them. The least recently used entries
+ * are evicted to stay under {@link #MEMORY_BUDGET} bytes.
+ */
+public class AreaPayloadCache {
+
+  public static final int MEMORY_BUDGET = 32 * 1024 * 1024;
+
+  private static final LinkedHashMap<Area, Payload> cache = new LinkedHashMap<Area, Payload>(64, 0.75f, true);
+  private static int size;
+  // every payload put, to estimate the compressed size of areas which haven't been sent yet
+  private static long totalCompressed;
+  private static long totalUncompressed;
+
+  /**
+   * @return the payload for the area as it currently is, or null
+   */
+  public static synchronized Payload get(Area area) {
+    Payload payload = cache.get(area);
+    if (payload == null) return null;
+    if (payload.modCount != area.modCount() || area.isUnloaded()) {
+      remove(area);
+      return null;
+    }
+    return payload;
+  }
+
+  /**
+   * @param modCount the area's modCount while it was written, the data is copied
+   */
+  public static synchronized void put(Area area, int modCount, byte[] compressed, int length, int uncompressedLength) {
+    totalCompressed += length;
+    totalUncompressed += uncompressedLength;
+    if (totalUncompressed > 1L << 30) {
+      // favour recent areas
+      totalCompressed >>= 1;
+      totalUncompressed >>= 1;
+    }
+    if (length > MEMORY_BUDGET || modCount != area.modCount() || area.isUnloaded()) return;
+    remove(area);
+    Payload payload = new Payload(modCount, Arrays.copyOf(compressed, length), uncompressedLength);
+    cache.put(area, payload);
+    size += length;
+
+    Iterator<Payload> iterator = cache.values().iterator();
+    while (size > MEMORY_BUDGET && iterator.hasNext()) {
+      size -= iterator.next().compressed.length;
+      iterator.remove();
+    }
+  }
+
+  /**
+   * @return the uncompressed length scaled by the compression ratio of the payloads so far
+   */
+  public static synchronized int estimateCompressed(int uncompressedLength) {
+    if (totalUncompressed == 0) return uncompressedLength / 4;
+    return (int) (uncompressedLength * totalCompressed / totalUncompressed);
+  }
+
+  public static synchronized void remove(Area area) {
+    Payload payload = cache.remove(area);
+    if (payload != null) size -= payload.compressed.length;
+  }
+
+  public static synchronized void clear() {
+    cache.clear();
+    size = 0;
+  }
+
+  public static class Payload {
+    public final int modCount;
+    public final byte[] compressed;
+    public final int uncompressedLength;
+
+    private Payload(int modCount, byte[] compressed, int uncompressedLength) {
+      this.modCount = modCount;
+      this.compressed = compressed;
+      this.uncompressedLength = uncompressedLength;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package ethanjones.cubes.networking.server;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.side.common.Side;
+
+import java.io.IOException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Thread reading and writing the connections registered with its selector. Other threads queue work with
+ * {@link #register(NioSocketMonitor)}, {@link #write(NioSocketMonitor)} and
+ * {@link #writeLater(NioSocketMonitor, long)}, which wake the selector if needed.
+ */
+class NioEventLoop implements Runnable {
+
+  private static final int SELECT_TIMEOUT = 1000;
+
+  private final NioServerNetworking networking;
+  private final Selector selector;
+  private final Thread thread;
+  private final AtomicBoolean running = new AtomicBoolean(true);
+  private final ConcurrentLinkedQueue<NioSocketMonitor> registering = new ConcurrentLinkedQueue<NioSocketMonitor>();
+  private final ConcurrentLinkedQueue<NioSocketMonitor> writing = new ConcurrentLinkedQueue<NioSocketMonitor>();
+  private final ConcurrentLinkedQueue<NioSocketMonitor> writingLater = new ConcurrentLinkedQueue<NioSocketMonitor>();
+  private final ArrayList<NioSocketMonitor> delayed = new ArrayList<NioSocketMonitor>();
+  private volatile long selectUntil;
+
+  NioEventLoop(NioServerNetworking networking, int index) throws IOException {
+    this.networking = networking;
+    this.selector = Selector.open();
+    this.thread = new Thread(this);
+    thread.setDaemon(true);
+    thread.setName("Server Networking " + index + ": " + networking.getPort());
+  }
+
+  void start() {
+    thread.start();
+  }
+
+  /**
+   * Must be called before starting
+   */
+  void registerServer(ServerSocketChannel serverChannel) throws IOException {
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  void register(NioSocketMonitor socketMonitor) {
+    registering.add(socketMonitor);
+    selector.wakeup();
+  }
+
+  void write(NioSocketMonitor socketMonitor) {
+    writing.add(socketMonitor);
+    selector.wakeup();
+  }
+
+  /**
+   * @param time when to write, from System.currentTimeMillis()
+   */
+  void writeLater(NioSocketMonitor socketMonitor, long time) {
+    socketMonitor.writeTime = time;
+    writingLater.add(socketMonitor);
+    if (time < selectUntil) selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    Side.setSide(Side.Server);
+    long lastTimeoutCheck = System.currentTimeMillis();
+    try {
+      while (running.get()) {
+        NioSocketMonitor socketMonitor;
+        while ((socketMonitor = writingLater.poll()) != null) {
+          delayed.add(socketMonitor);
+        }
+        long now = System.currentTimeMillis();
+        long until = now + SELECT_TIMEOUT;
+        for (NioSocketMonitor m : delayed) {
+          until = Math.min(until, m.writeTime);
+        }
+        selectUntil = until;
+        if (until > now && writingLater.isEmpty()) {
+          selector.select(until - now);
+        } else {
+          selector.selectNow();
+        }
+        selectUntil = 0;
+
+        while ((socketMonitor = registering.poll()) != null) {
+          try {
+            socketMonitor.registered(selector);
+          } catch (IOException e) {
+            socketMonitor.failed(e);
+          }
+        }
+        while ((socketMonitor = writing.poll()) != null) {
+          socketMonitor.write();
+        }
+        now = System.currentTimeMillis();
+        for (Iterator<NioSocketMonitor> iterator = delayed.iterator(); iterator.hasNext(); ) {
+          socketMonitor = iterator.next();
+          if (socketMonitor.writeTime <= now) {
+            iterator.remove();
+            socketMonitor.write();
+          }
+        }
+
+        Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+        while (iterator.hasNext()) {
+          SelectionKey key = iterator.next();
+          iterator.remove();
+          if (!key.isValid()) continue;
+          if (key.isAcceptable()) {
+            try {
+              networking.accept();
+            } catch (IOException e) {
+              if (running.get()) Log.error(e);
+            }
+            continue;
+          }
+          NioSocketMonitor attachment = (NioSocketMonitor) key.attachment();
+          if (key.isReadable()) attachment.read();
+          if (key.isValid() && key.isWritable()) attachment.write();
+        }
+
+        if (now - lastTimeoutCheck >= SELECT_TIMEOUT) {
+          lastTimeoutCheck = now;
+          for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioSocketMonitor) ((NioSocketMonitor) key.attachment()).checkTimeout(now);
+          }
+        }
+      }
+    } catch (ClosedSelectorException ignored) {
+    } catch (IOException e) {
+      Log.error(e);
+    } finally {
+      for (NioSocketMonitor socketMonitor : registering) {
+        socketMonitor.dispose();
+      }
+      try {
+        selector.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  void dispose() {
+    running.set(false);
+    selector.wakeup();
+  }
+}
@@ -0,0 +1,91 @@
+package ethanjones.cubes.networking.server;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.networking.Networking;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Server networking on a few selector threads, instead of two threads per connection. Uses the same handshake and
+ * framing as {@link ServerNetworking}.
+ */
+public class NioServerNetworking extends ServerNetworking {
+
+  public static final int LOOPS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+
+  private ServerSocketChannel serverChannel;
+  private NioEventLoop[] loops;
+  private int nextLoop;
+
+  public NioServerNetworking(ServerNetworkingParameter serverNetworkingParameter) {
+    super(serverNetworkingParameter);
+  }
+
+  @Override
+  public synchronized void preInit() throws Exception {
+    setNetworkingState(NetworkingState.Starting);
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().setReuseAddress(Networking.serverSocketHints.reuseAddress);
+    serverChannel.socket().bind(new InetSocketAddress(serverNetworkingParameter.port), Networking.serverSocketHints.backlog);
+    serverChannel.configureBlocking(false);
+
+    loops = new NioEventLoop[LOOPS];
+    for (int i = 0; i < loops.length; i++) {
+      loops[i] = new NioEventLoop(this, i);
+    }
+  }
+
+  @Override
+  public void init() {
+    Log.info("Starting Server Networking with " + loops.length + " selector threads");
+    try {
+      loops[0].registerServer(serverChannel);
+    } catch (IOException e) {
+      Log.error("Failed to accept connections", e);
+    }
+    for (NioEventLoop loop : loops) {
+      loop.start();
+    }
+    setNetworkingState(NetworkingState.Running);
+  }
+
+  @Override
+  public synchronized void stop() {
+    super.stop();
+    // after the connections have been disposed, so the loops release them
+    for (NioEventLoop loop : loops) {
+      loop.dispose();
+    }
+  }
+
+  @Override
+  protected void stopAccepting() {
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      Log.debug(e);
+    }
+  }
+
+  /**
+   * Called by the loop the server channel is registered with
+   */
+  void accept() throws IOException {
+    SocketChannel channel;
+    while ((channel = serverChannel.accept()) != null) {
+      channel.configureBlocking(false);
+      Socket socket = channel.socket();
+      socket.setKeepAlive(Networking.socketHints.keepAlive);
+      socket.setTcpNoDelay(Networking.socketHints.tcpNoDelay);
+      socket.setSendBufferSize(Networking.socketHints.sendBufferSize);
+      socket.setReceiveBufferSize(Networking.socketHints.receiveBufferSize);
+
+      NioEventLoop loop = loops[nextLoop++ % loops.length];
+      loop.register(new NioSocketMonitor(channel, loop, this));
+    }
+  }
+}
@@ -0,0 +1,293 @@
+package ethanjones.cubes.networking.server;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.networking.packet.Packet;
+import ethanjones.cubes.networking.packet.PacketPriority;
+import ethanjones.cubes.networking.packet.PacketQueue;
+import ethanjones.cubes.networking.packet.PriorityPacketQueue;
+import ethanjones.cubes.networking.socket.PacketDecoder;
+import ethanjones.cubes.networking.socket.PacketEncoder;
+import ethanjones.cubes.networking.socket.SocketMonitor;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
+import ethanjones.cubes.networking.stream.NoCloseDataOutputStream;
+import ethanjones.cubes.side.common.Side;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static ethanjones.cubes.networking.Networking.NETWORKING_DEBUG;
+
+/**
+ * A connection read and written by a {@link NioEventLoop}. Everything except queueing packets, initializing, flushing
+ * and disposing happens on the loop's thread. Queued packets are written together after the flush delay, or at the end
+ * of the tick.
+ */
+class NioSocketMonitor extends SocketMonitor {
+
+  private static final int READ_BUFFER = 16384;
+  // stop encoding packets once this much is waiting to be written
+  private static final int WRITE_BATCH = 65536;
+
+  private final SocketChannel channel;
+  private final NioEventLoop loop;
+  private final NioServerNetworking networking;
+  private final long created = System.currentTimeMillis();
+  private SelectionKey key;
+  volatile long writeTime; // for NioEventLoop.writeLater
+
+  private final PacketQueue inputQueue = new PacketQueue();
+  private final PacketQueue outputQueue = new PriorityPacketQueue() {
+    @Override
+    public void add(Packet packet) {
+      super.add(packet);
+      scheduleWrite();
+    }
+  };
+  private final AtomicBoolean writeScheduled = new AtomicBoolean(false);
+  private volatile boolean connectionInitialized;
+  private final ArrayList<Packet> deferred = new ArrayList<Packet>();
+
+  private final PacketEncoder encoder;
+  private final PacketDecoder decoder;
+  private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER);
+  private final DirectByteArrayOutputStream outgoing = new DirectByteArrayOutputStream(READ_BUFFER);
+  private final DataOutputStream outgoingData = new NoCloseDataOutputStream(outgoing);
+  // the outgoing buffer split around gathered payloads, null if not being written
+  private ByteBuffer[] writing;
+  private int writingIndex;
+
+  private boolean handshakeDone;
+  private boolean accepted;
+  private boolean closeAfterWrite;
+  private boolean released;
+
+  NioSocketMonitor(SocketChannel channel, NioEventLoop loop, NioServerNetworking networking) {
+    super(String.valueOf(channel.socket().getRemoteSocketAddress()), networking, Side.Server);
+    this.channel = channel;
+    this.loop = loop;
+    this.networking = networking;
+    this.encoder = new PacketEncoder(this, outgoing, true);
+    this.decoder = new PacketDecoder(this);
+  }
+
+  @Override
+  public PacketQueue getInputQueue() {
+    return inputQueue;
+  }
+
+  @Override
+  public PacketQueue getOutputQueue() {
+    return outputQueue;
+  }
+
+  @Override
+  public void setConnectionInitialized() {
+    Log.debug("Finished Initializing Connection to " + remoteAddress);
+    if (connectionInitialized) throw new IllegalStateException("Connection is already initialized!");
+    connectionInitialized = true;
+    scheduleWrite();
+  }
+
+  @Override
+  public void dispose() {
+    if (!running.compareAndSet(true, false)) return;
+    try {
+      channel.close();
+    } catch (IOException ignored) {
+    }
+    // the loop releases the encoder and decoder
+    loop.write(this);
+  }
+
+  void registered(Selector selector) throws IOException {
+    if (!running.get()) {
+      write();
+      return;
+    }
+    key = channel.register(selector, SelectionKey.OP_READ, this);
+    write();
+  }
+
+  void failed(Exception e) {
+    if (!running.get()) return;
+    if (accepted) {
+      networking.disconnected(this, e);
+    } else {
+      Log.debug(e);
+      dispose();
+    }
+  }
+
+  void checkTimeout(long now) {
+    if (!handshakeDone && !closeAfterWrite && now - created > ServerConnectionInitializer.TIMEOUT) {
+      failed(new IOException("Client did not respond in time"));
+    }
+  }
+
+  void read() {
+    try {
+      if (channel.read(readBuffer) == -1) throw new EOFException("Connection closed by " + remoteAddress);
+      readBuffer.flip();
+
+      if (!handshakeDone && !closeAfterWrite && readBuffer.hasRemaining()) handshake(readBuffer.get());
+
+      int needed = 0;
+      while (handshakeDone && running.get() && readBuffer.remaining() >= 4) {
+        int length = readBuffer.getInt(readBuffer.position());
+        PacketDecoder.checkLength(length, Side.Server);
+        if (readBuffer.remaining() < length + 4) {
+          needed = length + 4;
+          break;
+        }
+        readBuffer.position(readBuffer.position() + 4);
+        Packet packet = decoder.decode(readBuffer.array(), readBuffer.arrayOffset() + readBuffer.position(), length);
+        readBuffer.position(readBuffer.position() + length);
+        if (packet == null) continue;
+        if (NETWORKING_DEBUG) Log.debug(getSide() + " receive " + packet.toString());
+        inputQueue.add(packet);
+      }
+      readBuffer.compact();
+
+      // grow as a large frame arrives rather than when its length is read, and shrink again after large frames
+      if (needed > readBuffer.capacity() && !readBuffer.hasRemaining()) {
+        resize(Math.min(needed, readBuffer.capacity() * 2));
+      } else if (readBuffer.capacity() > READ_BUFFER && needed <= READ_BUFFER && readBuffer.position() <= READ_BUFFER) {
+        resize(READ_BUFFER);
+      }
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  private void resize(int capacity) {
+    ByteBuffer resized = ByteBuffer.allocate(capacity);
+    readBuffer.flip();
+    resized.put(readBuffer);
+    readBuffer = resized;
+  }
+
+  private void handshake(byte code) throws IOException {
+    ServerConnectionInitializer.writeVersion(outgoingData);
+    switch (code) {
+      case 0:
+        handshakeDone = true;
+        accepted = true;
+        networking.accepted(this);
+        break;
+      case 1:
+        Log.debug(remoteAddress + " pinged the server");
+        ServerConnectionInitializer.writePing(outgoingData);
+        closeAfterWrite = true;
+        break;
+      default:
+        throw new IOException("Unrecognised connection code " + code);
+    }
+    write();
+  }
+
+  @Override
+  public void flush() {
+    if (writeScheduled.get()) loop.write(this);
+  }
+
+  /**
+   * Encodes queued packets and writes them with the data already in the output, gathering payloads the encoder left
+   * out of it
+   */
+  void write() {
+    if (!running.get()) {
+      release();
+      return;
+    }
+    if (key == null) return; // written once registered
+    writeScheduled.set(false);
+    try {
+      while (true) {
+        if (writing == null) {
+          encode();
+          if (outgoing.count() == 0) break;
+          writing = buffers();
+          writingIndex = 0;
+        }
+        bytesSent.addAndGet(channel.write(writing, writingIndex, writing.length - writingIndex));
+        while (writingIndex < writing.length && !writing[writingIndex].hasRemaining()) writingIndex++;
+        if (writingIndex < writing.length) {
+          // the socket is full, continue when it is writable
+          key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+          return;
+        }
+        writing = null;
+        outgoing.reset();
+        encoder.clearGathered();
+      }
+      if (closeAfterWrite) {
+        dispose();
+        return;
+      }
+      key.interestOps(SelectionKey.OP_READ);
+    } catch (IOException e) {
+      failed(e);
+    }
+  }
+
+  private ByteBuffer[] buffers() {
+    ArrayList<ByteBuffer> buffers = new ArrayList<ByteBuffer>(encoder.gatheredCount() * 2 + 1);
+    int position = 0;
+    for (int i = 0; i < encoder.gatheredCount(); i++) {
+      int gatheredPosition = encoder.gatheredPosition(i);
+      if (gatheredPosition > position) buffers.add(ByteBuffer.wrap(outgoing.buffer(), position, gatheredPosition - position));
+      buffers.add(ByteBuffer.wrap(encoder.gathered(i)));
+      position = gatheredPosition;
+    }
+    if (outgoing.count() > position) buffers.add(ByteBuffer.wrap(outgoing.buffer(), position, outgoing.count() - position));
+    return buffers.toArray(new ByteBuffer[buffers.size()]);
+  }
+
+  private void encode() throws IOException {
+    if (!handshakeDone) return;
+    if (connectionInitialized && !deferred.isEmpty()) {
+      for (Packet packet : deferred) {
+        outputQueue.add(packet);
+      }
+      deferred.clear();
+    }
+
+    Packet packet;
+    while (outgoing.count() + encoder.gatheredLength() < WRITE_BATCH && (packet = outputQueue.get()) != null) {
+      if (!connectionInitialized && PacketPriority.get(packet.getClass()) != PacketPriority.CONNECTION_INITIALIZATION) {
+        deferred.add(packet);
+        continue;
+      }
+      try {
+        encoder.encode(packet);
+        if (NETWORKING_DEBUG) Log.debug(getSide() + " send " + packet.toString());
+      } catch (RuntimeException e) {
+        Log.info("Failed to write packet", e);
+      }
+    }
+  }
+
+  private void scheduleWrite() {
+    if (!writeScheduled.compareAndSet(false, true)) return;
+    int flushDelay = flushDelay();
+    if (flushDelay == 0) {
+      loop.write(this);
+    } else {
+      loop.writeLater(this, System.currentTimeMillis() + flushDelay);
+    }
+  }
+
+  private void release() {
+    if (released) return;
+    released = true;
+    encoder.dispose();
+    decoder.dispose();
+  }
+}
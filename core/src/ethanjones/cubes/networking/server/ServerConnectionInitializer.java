@@ -56,11 +56,7 @@ public class ServerConnectionInitializer {
     DataInputStream dataInputStream = new DataInputStream(javaSocket.getInputStream());
     byte b = dataInputStream.readByte();
     DataOutputStream dataOutputStream = new DataOutputStream(javaSocket.getOutputStream());
-    dataOutputStream.writeInt(Branding.VERSION_MAJOR);
-    dataOutputStream.writeInt(Branding.VERSION_MINOR);
-    dataOutputStream.writeInt(Branding.VERSION_POINT);
-    dataOutputStream.writeInt(Branding.VERSION_BUILD);
-    dataOutputStream.writeUTF(Branding.VERSION_HASH);
+    writeVersion(dataOutputStream);
     switch (b) {
       case 0:
         connect(javaSocket, gdxSocket, dataOutputStream, dataInputStream);
@@ -80,13 +76,28 @@ public class ServerConnectionInitializer {
 
   private static void ping(Socket javaSocket, NetJavaSocketImpl gdxSocket, DataOutputStream dataOutputStream, DataInputStream dataInputStream) throws Exception {
     Log.debug(gdxSocket.getRemoteAddress() + " pinged the server");
+    writePing(dataOutputStream);
+    dataOutputStream.flush();
+    gdxSocket.dispose();
+  }
+
+  /**
+   * Reply to the connection code
+   */
+  static void writeVersion(DataOutputStream dataOutputStream) throws IOException {
+    dataOutputStream.writeInt(Branding.VERSION_MAJOR);
+    dataOutputStream.writeInt(Branding.VERSION_MINOR);
+    dataOutputStream.writeInt(Branding.VERSION_POINT);
+    dataOutputStream.writeInt(Branding.VERSION_BUILD);
+    dataOutputStream.writeUTF(Branding.VERSION_HASH);
+  }
+
+  static void writePing(DataOutputStream dataOutputStream) throws IOException {
     List<ClientIdentifier> clients = Cubes.getServer().getAllClients();
     dataOutputStream.writeInt(clients.size());
     for (ClientIdentifier client : clients) {
       dataOutputStream.writeUTF(client.getPlayer().username);
     }
-    dataOutputStream.flush();
-    gdxSocket.dispose();
   }
   
 }
@@ -5,6 +5,7 @@ import ethanjones.cubes.networking.Networking;
 import ethanjones.cubes.networking.packet.Packet;
 import ethanjones.cubes.networking.packet.PacketDirection;
 import ethanjones.cubes.networking.packet.PacketQueue;
+import ethanjones.cubes.networking.socket.BlockingSocketMonitor;
 import ethanjones.cubes.networking.socket.SocketMonitor;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
@@ -14,7 +15,7 @@ import com.badlogic.gdx.utils.Array;
 
 public class ServerNetworking extends Networking {
 
-  private final ServerNetworkingParameter serverNetworkingParameter;
+  protected final ServerNetworkingParameter serverNetworkingParameter;
   private Array<SocketMonitor> sockets;
   private ServerSocketMonitor serverSocketMonitor;
 
@@ -46,7 +47,7 @@ public class ServerNetworking extends Networking {
     if (getNetworkingState() != NetworkingState.Running) return;
     setNetworkingState(NetworkingState.Stopping);
     Log.info("Stopping Server Networking");
-    serverSocketMonitor.dispose();
+    stopAccepting();
     for (int i = 0; i < sockets.size; i++) {
       sockets.pop().dispose();
     }
@@ -59,21 +60,33 @@ public class ServerNetworking extends Networking {
       return;
     }
     PacketDirection.checkPacketSend(packet.getClass(), Side.Server);
-    clientIdentifier.getSocketMonitor().getSocketOutput().getPacketQueue().add(packet);
+    clientIdentifier.getSocketMonitor().getOutputQueue().add(packet);
+  }
+
+  protected void stopAccepting() {
+    serverSocketMonitor.dispose();
   }
 
   @Override
   public synchronized void disconnected(SocketMonitor socketMonitor, Exception e) {
     if (getNetworkingState() == NetworkingState.Stopping) return;
-    Log.info("Disconnected from " + socketMonitor.getSocket().getRemoteAddress(), e);
+    Log.info("Disconnected from " + socketMonitor.remoteAddress, e);
     socketMonitor.dispose();
     Cubes.getServer().removeClient(socketMonitor);
   }
 
+  @Override
+  public synchronized void flush() {
+    if (getNetworkingState() != NetworkingState.Running) return;
+    for (int i = 0; i < sockets.size; i++) {
+      sockets.get(i).flush();
+    }
+  }
+
   public void processPackets() {
     for (SocketMonitor socketMonitor : sockets) {
       Packet packet = null;
-      PacketQueue packetQueue = socketMonitor.getSocketInput().getPacketQueue();
+      PacketQueue packetQueue = socketMonitor.getInputQueue();
       while ((packet = packetQueue.get()) != null) {
         PacketDirection.checkPacketReceive(packet.getClass(), Side.Server);
         packet.handlePacket();
@@ -81,9 +94,13 @@ public class ServerNetworking extends Networking {
     }
   }
 
-  protected synchronized void accepted(Socket socket) {
-    sockets.add(new SocketMonitor(socket, this, Side.Server));
-    Log.info("Successfully connected to " + socket.getRemoteAddress());
+  protected void accepted(Socket socket) {
+    accepted(new BlockingSocketMonitor(socket, this, Side.Server));
+  }
+
+  protected synchronized void accepted(SocketMonitor socketMonitor) {
+    sockets.add(socketMonitor);
+    Log.info("Successfully connected to " + socketMonitor.remoteAddress);
   }
 
   public int getPort() {
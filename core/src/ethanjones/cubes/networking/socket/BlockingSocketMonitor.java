@@ -0,0 +1,66 @@
+package ethanjones.cubes.networking.socket;
+
+import ethanjones.cubes.networking.Networking;
+import ethanjones.cubes.networking.packet.PacketQueue;
+import ethanjones.cubes.side.common.Side;
+
+import com.badlogic.gdx.net.Socket;
+
+/**
+ * A connection with a thread reading and a thread writing its blocking socket
+ */
+public class BlockingSocketMonitor extends SocketMonitor {
+
+  private final Socket socket;
+  private final SocketInput socketInput;
+  private final SocketOutput socketOutput;
+
+  public BlockingSocketMonitor(Socket socket, Networking networking, Side side) {
+    super(socket.getRemoteAddress(), networking, side);
+    this.socket = socket;
+    socketInput = new SocketInput(this);
+    socketOutput = new SocketOutput(this);
+    socketInput.start("Socket Input: " + remoteAddress);
+    socketOutput.start("Socket Output: " + remoteAddress);
+  }
+
+  @Override
+  public void dispose() {
+    running.set(false);
+    socketInput.dispose();
+    socketOutput.dispose();
+    socket.dispose();
+  }
+
+  @Override
+  public PacketQueue getInputQueue() {
+    return socketInput.getPacketQueue();
+  }
+
+  @Override
+  public PacketQueue getOutputQueue() {
+    return socketOutput.getPacketQueue();
+  }
+
+  @Override
+  public void setConnectionInitialized() {
+    socketOutput.setConnectionInitialized();
+  }
+
+  @Override
+  public void flush() {
+    socketOutput.flush();
+  }
+
+  public Socket getSocket() {
+    return socket;
+  }
+
+  public SocketInput getSocketInput() {
+    return socketInput;
+  }
+
+  public SocketOutput getSocketOutput() {
+    return socketOutput;
+  }
+}
@@ -0,0 +1,139 @@
+package ethanjones.cubes.networking.socket;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.networking.packet.Packet;
+import ethanjones.cubes.networking.stream.NoCloseDataInputStream;
+import ethanjones.cubes.networking.stream.PairedStreams;
+import ethanjones.cubes.side.common.Side;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads frames written by {@link PacketEncoder}, after their length has been read
+ */
+public class PacketDecoder {
+
+  // larger frames or packets are treated as a corrupt stream. Clients only send small packets, the server sends areas
+  public static final int MAX_CLIENT_FRAME_LENGTH = 1024 * 1024;
+  public static final int MAX_SERVER_FRAME_LENGTH = 64 * 1024 * 1024;
+
+  private final SocketMonitor socketMonitor;
+  private final FrameInput frameInput = new FrameInput();
+  private final DataInputStream dataInput = new NoCloseDataInputStream(frameInput);
+
+  private final Inflater inflater;
+  private final PairedStreams pairedStreams;
+  private final byte[] inflateBuffer = new byte[16384];
+
+  public PacketDecoder(SocketMonitor socketMonitor) {
+    this.socketMonitor = socketMonitor;
+    this.inflater = new Inflater(PacketEncoder.COMPRESSION_NOWRAP);
+    this.pairedStreams = new PairedStreams();
+  }
+
+  /**
+   * @param side the side receiving the frame
+   */
+  public static int maxFrameLength(Side side) {
+    return side == Side.Server ? MAX_CLIENT_FRAME_LENGTH : MAX_SERVER_FRAME_LENGTH;
+  }
+
+  public static void checkLength(int length, Side side) throws IOException {
+    if (length < 1 || length > maxFrameLength(side)) throw new IOException("Invalid frame length " + length);
+  }
+
+  /**
+   * @return the packet, or null if it failed to be read in which case the rest of the frame is skipped
+   * @throws IOException if the connection can't continue
+   */
+  public Packet decode(byte[] buffer, int offset, int length) throws IOException {
+    frameInput.set(buffer, offset, length);
+
+    int b = dataInput.readByte();
+    Class<? extends Packet> packetClass;
+    Packet packet;
+    try {
+      if (b == 0 || b == 2) {
+        packetClass = socketMonitor.getPacketIDDatabase().get(dataInput.readInt());
+      } else {
+        packetClass = Class.forName(dataInput.readUTF()).asSubclass(Packet.class);
+        if (socketMonitor.getSide() == Side.Server) {
+          socketMonitor.getPacketIDDatabase().sendID(packetClass, socketMonitor);
+        }
+      }
+      packet = packetClass.newInstance();
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Failed to create packet", e);
+    }
+    packet.setSocketMonitor(socketMonitor);
+
+    if (b == 2 || b == 3) {
+      int compressedLength = dataInput.readInt();
+      int uncompressedLength = dataInput.readInt();
+      if (compressedLength != frameInput.available()) {
+        throw new IOException("Compressed length should be " + frameInput.available() + " but is " + compressedLength);
+      }
+      if (uncompressedLength < 0 || uncompressedLength > maxFrameLength(socketMonitor.getSide())) {
+        throw new IOException("Invalid uncompressed length " + uncompressedLength);
+      }
+      //Inflate from the frame
+      pairedStreams.reset();
+      inflater.reset();
+      inflater.setInput(buffer, frameInput.position(), compressedLength);
+      try {
+        int inflated;
+        while ((inflated = inflater.inflate(inflateBuffer, 0, inflateBuffer.length)) > 0) {
+          pairedStreams.output.write(inflateBuffer, 0, inflated);
+          if (pairedStreams.output.count() > uncompressedLength) throw new IOException("Packet inflated past " + uncompressedLength + " bytes");
+        }
+      } catch (DataFormatException e) {
+        throw new IOException(e);
+      }
+      if (pairedStreams.output.count() != uncompressedLength) {
+        throw new IOException("Uncompressed length should be " + uncompressedLength + " but is " + pairedStreams.output.count() + " [" + inflater.needsInput() + "," + inflater.needsDictionary() + "]");
+      }
+      pairedStreams.updateInput();
+      return read(packet, pairedStreams.dataInput);
+    }
+    return read(packet, dataInput);
+  }
+
+  private static Packet read(Packet packet, DataInputStream dataInputStream) {
+    try {
+      packet.read(dataInputStream);
+      return packet;
+    } catch (Exception e) {
+      // the frame is skipped so later packets are unaffected
+      Log.info("Failed to read packet " + packet.getClass().getSimpleName(), e);
+      return null;
+    }
+  }
+
+  public void dispose() {
+    inflater.end();
+  }
+
+  private static class FrameInput extends ByteArrayInputStream {
+
+    private FrameInput() {
+      super(new byte[0]);
+    }
+
+    private void set(byte[] buffer, int offset, int length) {
+      this.buf = buffer;
+      this.pos = offset;
+      this.mark = offset;
+      this.count = offset + length;
+    }
+
+    private int position() {
+      return pos;
+    }
+  }
+}
@@ -0,0 +1,174 @@
+package ethanjones.cubes.networking.socket;
+
+import ethanjones.cubes.networking.packet.Packet;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
+import ethanjones.cubes.networking.stream.NoCloseDataOutputStream;
+import ethanjones.cubes.side.common.Side;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.zip.Deflater;
+
+/**
+ * Writes packets as frames, the length of the rest of the frame followed by the header byte, the packet id or class name
+ * and the packet, compressed if {@link Packet#shouldCompress()}. Header bytes are 0 for an id, 1 for a class name,
+ * plus 2 if compressed. Read by {@link PacketDecoder}.
+ */
+public class PacketEncoder {
+
+  public static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
+  public static final boolean COMPRESSION_NOWRAP = false;
+
+  private final SocketMonitor socketMonitor;
+  private final DirectByteArrayOutputStream output;
+  private final DataOutputStream dataOutput;
+
+  private final Deflater deflater;
+  private final DirectByteArrayOutputStream uncompressedOutput;
+  private final DataOutputStream uncompressedDataOutput;
+  private final DirectByteArrayOutputStream compressionOutput;
+  private final byte[] deflateBuffer = new byte[16384];
+
+  // precompressed payloads not copied into the output, and the output position they belong at
+  private final boolean gather;
+  private final ArrayList<byte[]> gathered = new ArrayList<byte[]>();
+  private final IntArray gatheredPositions = new IntArray();
+  private int gatheredLength;
+
+  /**
+   * @param output frames are appended to the output
+   */
+  public PacketEncoder(SocketMonitor socketMonitor, DirectByteArrayOutputStream output) {
+    this(socketMonitor, output, false);
+  }
+
+  /**
+   * @param gather if precompressed payloads should be left out of the output for a gathering write, see
+   *               {@link #gathered(int)}
+   */
+  public PacketEncoder(SocketMonitor socketMonitor, DirectByteArrayOutputStream output, boolean gather) {
+    this.socketMonitor = socketMonitor;
+    this.gather = gather;
+    this.output = output;
+    this.dataOutput = new NoCloseDataOutputStream(output);
+
+    this.deflater = new Deflater(COMPRESSION_LEVEL, COMPRESSION_NOWRAP);
+    this.uncompressedOutput = new DirectByteArrayOutputStream();
+    this.uncompressedDataOutput = new NoCloseDataOutputStream(uncompressedOutput);
+    this.compressionOutput = new DirectByteArrayOutputStream();
+  }
+
+  public void encode(Packet packet) throws IOException {
+    int start = output.count();
+    int startGathered = gathered.size();
+    int startGatheredLength = gatheredLength;
+    try {
+      dataOutput.writeInt(0); // length, set once written
+      write(packet);
+    } catch (IOException e) {
+      truncate(start, startGathered, startGatheredLength);
+      throw e;
+    } catch (RuntimeException e) {
+      truncate(start, startGathered, startGatheredLength);
+      throw e;
+    }
+    output.setInt(start, output.count() - start - 4 + gatheredLength - startGatheredLength);
+  }
+
+  public int gatheredCount() {
+    return gathered.size();
+  }
+
+  public byte[] gathered(int i) {
+    return gathered.get(i);
+  }
+
+  /**
+   * @return the position in the output the gathered payload is written at
+   */
+  public int gatheredPosition(int i) {
+    return gatheredPositions.get(i);
+  }
+
+  public int gatheredLength() {
+    return gatheredLength;
+  }
+
+  /**
+   * Call when the output is reset
+   */
+  public void clearGathered() {
+    gathered.clear();
+    gatheredPositions.clear();
+    gatheredLength = 0;
+  }
+
+  private void truncate(int start, int startGathered, int startGatheredLength) {
+    output.truncate(start);
+    while (gathered.size() > startGathered) {
+      gathered.remove(gathered.size() - 1);
+    }
+    gatheredPositions.size = startGathered;
+    gatheredLength = startGatheredLength;
+  }
+
+  private void write(Packet packet) throws IOException {
+    Class<? extends Packet> packetClass = packet.getClass();
+    boolean compress = packet.shouldCompress();
+    if (socketMonitor.getPacketIDDatabase().contains(packetClass)) {
+      dataOutput.writeByte(compress ? 2 : 0);
+      dataOutput.writeInt(socketMonitor.getPacketIDDatabase().get(packetClass));
+    } else {
+      dataOutput.writeByte(compress ? 3 : 1);
+      dataOutput.writeUTF(packetClass.getName());
+      if (socketMonitor.getSide() == Side.Server) {
+        socketMonitor.getPacketIDDatabase().sendID(packetClass, socketMonitor);
+      }
+    }
+
+    if (!compress) {
+      packet.write(dataOutput);
+      return;
+    }
+
+    byte[] precompressed = packet.getCompressed();
+    if (precompressed != null) {
+      dataOutput.writeInt(precompressed.length);
+      dataOutput.writeInt(packet.getUncompressedLength());
+      if (gather) {
+        gathered.add(precompressed);
+        gatheredPositions.add(output.count());
+        gatheredLength += precompressed.length;
+      } else {
+        dataOutput.write(precompressed);
+      }
+      return;
+    }
+
+    //Reset
+    uncompressedOutput.reset();
+    compressionOutput.reset();
+    deflater.reset();
+    //Write packet
+    packet.write(uncompressedDataOutput);
+    //Deflate
+    deflater.setInput(uncompressedOutput.buffer(), 0, uncompressedOutput.count());
+    deflater.finish();
+    int length;
+    while ((length = deflater.deflate(deflateBuffer, 0, deflateBuffer.length)) > 0) {
+      compressionOutput.write(deflateBuffer, 0, length);
+    }
+    //Write to output
+    dataOutput.writeInt(compressionOutput.count());
+    dataOutput.writeInt(uncompressedOutput.count());
+    dataOutput.write(compressionOutput.buffer(), 0, compressionOutput.count());
+    packet.compressed(compressionOutput.buffer(), compressionOutput.count(), uncompressedOutput.count());
+  }
+
+  public void dispose() {
+    deflater.end();
+  }
+}
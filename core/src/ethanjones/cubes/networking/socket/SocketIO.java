@@ -6,10 +6,10 @@ import com.badlogic.gdx.utils.Disposable;
 
 public abstract class SocketIO implements Runnable, Disposable {
 
-  protected final SocketMonitor socketMonitor;
+  protected final BlockingSocketMonitor socketMonitor;
   private Thread thread;
 
-  public SocketIO(SocketMonitor socketMonitor) {
+  public SocketIO(BlockingSocketMonitor socketMonitor) {
     this.socketMonitor = socketMonitor;
   }
 
@@ -3,13 +3,13 @@ package ethanjones.cubes.networking.socket;
 import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.networking.packet.Packet;
 import ethanjones.cubes.networking.packet.PacketQueue;
-import ethanjones.cubes.networking.stream.PairedStreams;
 import ethanjones.cubes.side.common.Side;
 
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.Inflater;
+import java.util.Arrays;
 
 import static ethanjones.cubes.networking.Networking.NETWORKING_DEBUG;
 
@@ -19,12 +19,10 @@ public class SocketInput extends SocketIO {
   private final DataInputStream dataInputStream;
 
   private final PacketQueue packetQueue;
-  private final Inflater inflater;
-  private final PairedStreams pairedStreams;
-  private final byte[] compressedBuffer = new byte[16384];
-  private final byte[] inflateBuffer = new byte[16384];
+  private final PacketDecoder decoder;
+  private byte[] frame = new byte[16384];
 
-  public SocketInput(SocketMonitor socketMonitor) {
+  public SocketInput(BlockingSocketMonitor socketMonitor) {
     super(socketMonitor);
     this.packetQueue = new PacketQueue();
     this.socketInputStream = socketMonitor.getSocket().getInputStream();
@@ -35,8 +33,7 @@ public class SocketInput extends SocketIO {
       }
     };
 
-    this.inflater = new Inflater(SocketOutput.COMPRESSION_NOWRAP);
-    this.pairedStreams = new PairedStreams();
+    this.decoder = new PacketDecoder(socketMonitor);
   }
 
   @Override
@@ -47,80 +44,40 @@ public class SocketInput extends SocketIO {
   @Override
   public void run() {
     Side.setSide(socketMonitor.getSide());
-    while (socketMonitor.running.get()) {
-      try {
-        Class<? extends Packet> packetClass;
-
-        int b = dataInputStream.readByte();
-        if (b == 0 || b == 2) {
-          packetClass = socketMonitor.getPacketIDDatabase().get(dataInputStream.readInt());
-        } else {
-          packetClass = Class.forName(dataInputStream.readUTF()).asSubclass(Packet.class);
-          if (socketMonitor.getSide() == Side.Server) {
-            socketMonitor.getPacketIDDatabase().sendID(packetClass, socketMonitor);
+    try {
+      while (socketMonitor.running.get()) {
+        try {
+          int length = dataInputStream.readInt();
+          PacketDecoder.checkLength(length, socketMonitor.getSide());
+          // grow as the frame arrives, so a large length alone doesn't allocate
+          int read = 0;
+          while (read < length) {
+            if (read == frame.length) frame = Arrays.copyOf(frame, Math.min(length, frame.length * 2));
+            int r = dataInputStream.read(frame, read, Math.min(length, frame.length) - read);
+            if (r == -1) throw new EOFException();
+            read += r;
           }
-        }
 
-        Packet packet = packetClass.newInstance();
-        packet.setSocketMonitor(socketMonitor);
-        if (b == 2 || b == 3) {
-          //Reset
-          pairedStreams.reset();
-          inflater.reset();
-          //Read compressed and uncompressed lengths
-          int compressedLength = dataInputStream.readInt();
-          int uncompressedLength = dataInputStream.readInt();
-          //Read in compressed version
-          inflater.reset();
-          int inflater_length;
-          int offset = 0;
-          int input_length = dataInputStream.read(compressedBuffer, 0, Math.min(compressedLength, compressedBuffer.length));
-          offset += input_length;
-          inflater.setInput(compressedBuffer, 0, input_length);
-          while (true) {
-            inflater_length = inflater.inflate(inflateBuffer, 0, inflateBuffer.length);
-            if (inflater_length > 0) {
-              pairedStreams.output.write(inflateBuffer, 0, inflater_length);
-            } else {
-              if (offset < compressedLength) {
-                input_length = dataInputStream.read(compressedBuffer, 0, Math.min(compressedLength - offset, compressedBuffer.length));
-                offset += input_length;
-                inflater.setInput(compressedBuffer, 0, input_length);
-              } else {
-                break;
-              }
-            }
-          }
-          // uncompressed);
-          if (pairedStreams.output.count() != uncompressedLength) {
-            String msg = "Uncompressed length should be " + uncompressedLength + " but is " + pairedStreams.output.count() + " [" + inflater.needsInput() + "," + inflater.needsDictionary() + "]";
-            Log.error(msg);
-            socketMonitor.getNetworking().disconnected(socketMonitor, new IOException(msg));
-            return;
-          }
-          //Packet read in
-          pairedStreams.updateInput();
-          packet.read(pairedStreams.dataInput);
-        } else {
-          packet.read(dataInputStream);
+          Packet packet = decoder.decode(frame, 0, length);
+          if (packet == null) continue;
+          if (NETWORKING_DEBUG) Log.debug(socketMonitor.getSide() + " receive " + packet.toString());
+          packetQueue.add(packet);
+        } catch (IOException e) {
+          socketMonitor.getNetworking().disconnected(socketMonitor, e);
+          return;
+        } catch (Exception e) {
+          Log.info("Failed to read packet", e);
         }
-        if (NETWORKING_DEBUG) Log.debug(socketMonitor.getSide() + " receive " + packet.toString());
-        packetQueue.add(packet);
-      } catch (IOException e) {
-        socketMonitor.getNetworking().disconnected(socketMonitor, e);
-        return;
-      } catch (Exception e) {
-        Log.info("Failed to read packet", e);
       }
+    } finally {
+      decoder.dispose();
     }
-
   }
 
   @Override
   public void dispose() {
     try {
       socketInputStream.close();
-      inflater.end();
     } catch (IOException e) {
 
     }
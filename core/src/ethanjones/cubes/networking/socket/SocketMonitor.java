@@ -1,64 +1,77 @@
 package ethanjones.cubes.networking.socket;
 
+import ethanjones.cubes.core.settings.Settings;
 import ethanjones.cubes.networking.Networking;
 import ethanjones.cubes.networking.packet.PacketIDDatabase;
+import ethanjones.cubes.networking.packet.PacketQueue;
 import ethanjones.cubes.side.common.Side;
 
-import com.badlogic.gdx.net.Socket;
 import com.badlogic.gdx.utils.Disposable;
 
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A connection, sending and receiving packets framed by {@link PacketEncoder} and {@link PacketDecoder}
+ */
+public abstract class SocketMonitor implements Disposable {
 
-public class SocketMonitor implements Disposable {
-  
   public final String remoteAddress;
   protected final AtomicBoolean running;
+  protected final AtomicLong bytesSent = new AtomicLong();
   private final Networking networking;
   private final Side side;
-  private final Socket socket;
-  private final SocketInput socketInput;
-  private final SocketOutput socketOutput;
   private final PacketIDDatabase packetIDDatabase;
 
-  public SocketMonitor(Socket socket, Networking networking, Side side) {
-    this.socket = socket;
+  protected SocketMonitor(String remoteAddress, Networking networking, Side side) {
+    this.remoteAddress = remoteAddress;
     this.networking = networking;
     this.side = side;
-    this.remoteAddress = socket.getRemoteAddress();
     this.packetIDDatabase = new PacketIDDatabase();
     running = new AtomicBoolean(true);
-    socketInput = new SocketInput(this);
-    socketOutput = new SocketOutput(this);
-    socketInput.start("Socket Input: " + remoteAddress);
-    socketOutput.start("Socket Output: " + remoteAddress);
   }
 
-  @Override
-  public void dispose() {
-    running.set(false);
-    socketInput.dispose();
-    socketOutput.dispose();
-    socket.dispose();
-  }
+  /**
+   * @return packets received, handled by the networking's processPackets
+   */
+  public abstract PacketQueue getInputQueue();
 
-  public Networking getNetworking() {
-    return networking;
+  /**
+   * @return packets to send
+   */
+  public abstract PacketQueue getOutputQueue();
+
+  /**
+   * Until called only connection initialization packets are sent
+   */
+  public abstract void setConnectionInitialized();
+
+  /**
+   * Sends the queued packets without waiting for the flush delay
+   */
+  public abstract void flush();
+
+  /**
+   * @return milliseconds a packet can wait to be sent together with later packets
+   */
+  public static int flushDelay() {
+    return Settings.getIntegerSettingValue(Settings.NETWORKING_FLUSH_DELAY);
   }
 
-  public Side getSide() {
-    return side;
+  public long getBytesSent() {
+    return bytesSent.get();
   }
 
-  public Socket getSocket() {
-    return socket;
+  public boolean isRunning() {
+    return running.get();
   }
 
-  public SocketInput getSocketInput() {
-    return socketInput;
+  public Networking getNetworking() {
+    return networking;
   }
 
-  public SocketOutput getSocketOutput() {
-    return socketOutput;
+  public Side getSide() {
+    return side;
   }
 
   public PacketIDDatabase getPacketIDDatabase() {
@@ -6,45 +6,38 @@ import ethanjones.cubes.networking.packet.PacketPriority;
 import ethanjones.cubes.networking.packet.PacketQueue;
 import ethanjones.cubes.networking.packet.PriorityPacketQueue;
 import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
-import ethanjones.cubes.networking.stream.NoCloseDataOutputStream;
 import ethanjones.cubes.side.common.Side;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.zip.Deflater;
 
 import static ethanjones.cubes.networking.Networking.NETWORKING_DEBUG;
 
 public class SocketOutput extends SocketIO {
 
-  public static final int COMPRESSION_LEVEL = Deflater.DEFAULT_COMPRESSION;
-  public static final boolean COMPRESSION_NOWRAP = false;
+  // write once this much has been encoded, even if more packets are queued
+  private static final int MAX_BATCH = 262144;
 
   private final PacketQueue packetQueue;
   private final OutputStream socketOutputStream;
-  private final DataOutputStream dataOutputStream;
 
-  private final Deflater deflater;
-  private final DirectByteArrayOutputStream uncompressedOutput;
-  private final DataOutputStream uncompressedDataOutput;
-  private final DirectByteArrayOutputStream compressionOutput;
-
-  private final byte[] deflateBuffer = new byte[16384];
+  private final DirectByteArrayOutputStream frameOutput;
+  private final PacketEncoder encoder;
+  private final ArrayList<Packet> deferred = new ArrayList<Packet>();
 
   private final AtomicBoolean connectionInitialized = new AtomicBoolean(false);
+  private final Object flushLock = new Object();
+  private boolean flushRequested;
 
-  public SocketOutput(SocketMonitor socketMonitor) {
+  public SocketOutput(BlockingSocketMonitor socketMonitor) {
     super(socketMonitor);
     this.packetQueue = new PriorityPacketQueue();
     this.socketOutputStream = socketMonitor.getSocket().getOutputStream();
-    this.dataOutputStream = new NoCloseDataOutputStream(socketOutputStream);
 
-    this.deflater = new Deflater(COMPRESSION_LEVEL, COMPRESSION_NOWRAP);
-    this.uncompressedOutput = new DirectByteArrayOutputStream();
-    this.uncompressedDataOutput = new NoCloseDataOutputStream(uncompressedOutput);
-    this.compressionOutput = new DirectByteArrayOutputStream();
+    this.frameOutput = new DirectByteArrayOutputStream();
+    this.encoder = new PacketEncoder(socketMonitor, frameOutput);
   }
 
   @Override
@@ -52,78 +45,77 @@ public class SocketOutput extends SocketIO {
     return packetQueue;
   }
 
+  /**
+   * Packets are encoded into one buffer and written together. After the first packet the thread waits up to the flush
+   * delay, or until {@link #flush()}, for more packets before writing.
+   */
   @Override
   public void run() {
     Side.setSide(socketMonitor.getSide());
-    while (socketMonitor.running.get()) {
-      try {
-        Packet packet = packetQueue.waitAndGet();
-        if (packet == null) continue;
-
-        if (!connectionInitialized.get()) {
-          // connection not yet initialized
-          if (PacketPriority.get(packet.getClass()) != PacketPriority.CONNECTION_INITIALIZATION) {
-            // if not connection initialization packet,  add back to queue and sleep
-            packetQueue.add(packet);
-
-            try {
-              Thread.sleep(25);
-            } catch (Exception e) {
-
+    try {
+      while (socketMonitor.running.get()) {
+        try {
+          Packet packet = packetQueue.waitAndGet();
+          if (packet == null) continue;
+
+          frameOutput.reset();
+          encode(packet);
+
+          int flushDelay = SocketMonitor.flushDelay();
+          if (flushDelay > 0) {
+            synchronized (flushLock) {
+              if (!flushRequested) flushLock.wait(flushDelay);
+              flushRequested = false;
             }
-            continue;
           }
-        }
-
-        Class<? extends Packet> packetClass = packet.getClass();
-        boolean compress = packet.shouldCompress();
-        if (socketMonitor.getPacketIDDatabase().contains(packetClass)) {
-          if (compress) {
-            dataOutputStream.writeByte(2);
-          } else {
-            dataOutputStream.writeByte(0);
-          }
-          dataOutputStream.writeInt(socketMonitor.getPacketIDDatabase().get(packetClass));
-        } else {
-          if (compress) {
-            dataOutputStream.writeByte(3);
-          } else {
-            dataOutputStream.writeByte(1);
+          while (frameOutput.count() < MAX_BATCH && (packet = packetQueue.get()) != null) {
+            encode(packet);
           }
-          dataOutputStream.writeUTF(packetClass.getName());
-          if (socketMonitor.getSide() == Side.Server) {
-            socketMonitor.getPacketIDDatabase().sendID(packetClass, socketMonitor);
+
+          if (frameOutput.count() > 0) {
+            socketOutputStream.write(frameOutput.buffer(), 0, frameOutput.count());
+            socketMonitor.bytesSent.addAndGet(frameOutput.count());
           }
-        }
 
-        if (compress) {
-          //Reset
-          uncompressedOutput.reset();
-          compressionOutput.reset();
-          deflater.reset();
-          //Write packet
-          packet.write(uncompressedDataOutput);
-          //Deflate
-          deflater.setInput(uncompressedOutput.buffer(), 0, uncompressedOutput.count());
-          deflater.finish();
-          int length;
-          while ((length = deflater.deflate(deflateBuffer, 0, deflateBuffer.length)) > 0) {
-            compressionOutput.write(deflateBuffer, 0, length);
+          if (!deferred.isEmpty()) {
+            // connection not yet initialized, add back to queue and sleep
+            for (Packet p : deferred) {
+              packetQueue.add(p);
+            }
+            deferred.clear();
+            Thread.sleep(25);
           }
-          //Write to outputstream
-          dataOutputStream.writeInt(compressionOutput.count());
-          dataOutputStream.writeInt(uncompressedOutput.count());
-          dataOutputStream.write(compressionOutput.buffer(), 0, compressionOutput.count());
-        } else {
-          packet.write(dataOutputStream);
+        } catch (IOException e) {
+          socketMonitor.getNetworking().disconnected(socketMonitor, e);
+          return;
+        } catch (InterruptedException e) {
+          // disposed
+        } catch (Exception e) {
+          Log.info("Failed to write packet", e);
         }
-        if (NETWORKING_DEBUG) Log.debug(socketMonitor.getSide() + " send " + packet.toString());
-      } catch (IOException e) {
-        socketMonitor.getNetworking().disconnected(socketMonitor, e);
-        return;
-      } catch (Exception e) {
-        Log.info("Failed to write packet", e);
       }
+    } finally {
+      encoder.dispose();
+    }
+  }
+
+  private void encode(Packet packet) throws IOException {
+    if (!connectionInitialized.get() && PacketPriority.get(packet.getClass()) != PacketPriority.CONNECTION_INITIALIZATION) {
+      deferred.add(packet);
+      return;
+    }
+    try {
+      encoder.encode(packet);
+      if (NETWORKING_DEBUG) Log.debug(socketMonitor.getSide() + " send " + packet.toString());
+    } catch (RuntimeException e) {
+      Log.info("Failed to write packet", e);
+    }
+  }
+
+  public void flush() {
+    synchronized (flushLock) {
+      flushRequested = true;
+      flushLock.notify();
     }
   }
 
@@ -131,7 +123,6 @@ public class SocketOutput extends SocketIO {
   public void dispose() {
     try {
       socketOutputStream.close();
-      deflater.end();
     } catch (IOException e) {
 
     }
@@ -19,4 +19,23 @@ public class DirectByteArrayOutputStream extends ByteArrayOutputStream {
   public int count() {
     return count;
   }
+
+  /**
+   * Discards everything written after count bytes
+   */
+  public void truncate(int count) {
+    if (count < 0 || count > this.count) throw new IndexOutOfBoundsException(String.valueOf(count));
+    this.count = count;
+  }
+
+  /**
+   * Overwrites 4 already written bytes at index with a big endian int
+   */
+  public void setInt(int index, int i) {
+    if (index < 0 || index + 4 > count) throw new IndexOutOfBoundsException(String.valueOf(index));
+    buf[index] = (byte) (i >>> 24);
+    buf[index + 1] = (byte) (i >>> 16);
+    buf[index + 2] = (byte) (i >>> 8);
+    buf[index + 3] = (byte) i;
+  }
 }
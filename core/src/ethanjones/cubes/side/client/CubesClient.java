@@ -128,11 +128,14 @@ public class CubesClient extends Cubes implements ApplicationListener {
 
   @Override
   protected void tick() {
+    long tickStartNS = System.nanoTime();
     Performance.start(PerformanceTags.CLIENT_TICK);
     super.tick();
     inputChain.tick();
     RainRenderer.tick();
+    NetworkingManager.getNetworking(Side.Client).flush();
     Performance.stop(PerformanceTags.CLIENT_TICK);
+    Performance.tickTime(System.nanoTime() - tickStartNS);
   }
 
   @Override
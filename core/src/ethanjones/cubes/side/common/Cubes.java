@@ -17,6 +17,7 @@ import ethanjones.cubes.core.system.Branding;
 import ethanjones.cubes.core.system.CubesException;
 import ethanjones.cubes.core.system.Debug;
 import ethanjones.cubes.core.system.Executor;
+import ethanjones.cubes.core.system.StartupTimeline;
 import ethanjones.cubes.core.util.PerSecond;
 import ethanjones.cubes.core.util.RunnableQueue;
 import ethanjones.cubes.entity.EntityManager;
@@ -53,7 +54,9 @@ public abstract class Cubes {
     Compatibility.get().logEnvironment();
     Executor.init();
 
+    StartupTimeline.start("Assets.preInit");
     Assets.preInit();
+    StartupTimeline.stop("Assets.preInit");
 
   }
   
@@ -62,28 +65,51 @@ public abstract class Cubes {
     if (init) return;
     init = true;
   
+    StartupTimeline.start("JsonLoader.loadCore");
     JsonLoader.loadCore();
     Blocks.init();
+    StartupTimeline.stop("JsonLoader.loadCore");
+    StartupTimeline.start("ModManager.init");
     ModManager.init();
+    StartupTimeline.stop("ModManager.init");
+    StartupTimeline.start("JsonLoader.firstStage");
     JsonLoader.firstStage();
+    StartupTimeline.stop("JsonLoader.firstStage");
   
+    StartupTimeline.start("PreInitialization");
     Compatibility.get().preInit();
     ModManager.postModEvent(new PreInitializationEvent());
+    StartupTimeline.stop("PreInitialization");
   
+    StartupTimeline.start("JsonLoader.secondStage");
     JsonLoader.secondStage();
+    StartupTimeline.stop("JsonLoader.secondStage");
+    StartupTimeline.start("Initialization");
     Settings.init();
     Compatibility.get().init();
     ModManager.postModEvent(new InitializationEvent());
+    StartupTimeline.stop("Initialization");
   
+    StartupTimeline.start("Assets.init");
     Assets.init();
+    StartupTimeline.stop("Assets.init");
+    StartupTimeline.start("Localization.load");
     Localization.load();
+    StartupTimeline.stop("Localization.load");
     Settings.print();
+    StartupTimeline.start("PostInitialization");
     Compatibility.get().postInit();
     ModManager.postModEvent(new PostInitializationEvent());
     IDManager.loaded();
     EntityManager.loaded();
+    StartupTimeline.stop("PostInitialization");
   
-    if (!Adapter.isDedicatedServer()) Graphics.init();
+    if (!Adapter.isDedicatedServer()) {
+      StartupTimeline.start("Graphics.init");
+      Graphics.init();
+      StartupTimeline.stop("Graphics.init");
+    }
+    StartupTimeline.finish();
   }
 
   public static CubesClient getClient() {
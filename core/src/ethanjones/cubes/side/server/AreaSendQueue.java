@@ -0,0 +1,114 @@
+package ethanjones.cubes.side.server;
+
+import ethanjones.cubes.core.settings.Settings;
+import ethanjones.cubes.networking.NetworkingManager;
+import ethanjones.cubes.networking.packets.PacketArea;
+import ethanjones.cubes.world.storage.Area;
+
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+/**
+ * Areas waiting to be sent to one client. Each tick the areas still in range are sent nearest first, preferring areas in
+ * front of the player, until the configured number of bytes has been sent. Areas which leave range are dropped before
+ * they are serialized.
+ */
+class AreaSendQueue {
+
+  private final PlayerManager playerManager;
+  private final LongMap<Area> pending = new LongMap<Area>();
+  private final ArrayList<Entry> entries = new ArrayList<Entry>();
+
+  private static final Comparator<Entry> comparator = new Comparator<Entry>() {
+    @Override
+    public int compare(Entry o1, Entry o2) {
+      return Float.compare(o1.score, o2.score);
+    }
+  };
+
+  AreaSendQueue(PlayerManager playerManager) {
+    this.playerManager = playerManager;
+  }
+
+  void add(Area area) {
+    pending.put(key(area.areaX, area.areaZ), area);
+  }
+
+  boolean isEmpty() {
+    return pending.size == 0;
+  }
+
+  /**
+   * Must be called synchronized on the player manager
+   */
+  void update(int playerAreaX, int playerAreaZ, Vector3 angle) {
+    if (pending.size == 0) return;
+
+    // horizontal view direction, zero if looking straight up or down
+    float lookX = angle.x, lookZ = angle.z;
+    float look = (float) Math.sqrt(lookX * lookX + lookZ * lookZ);
+    if (look > 0) {
+      lookX /= look;
+      lookZ /= look;
+    }
+
+    for (LongMap.Entry<Area> e : pending.entries()) {
+      Area area = e.value;
+      if (area.isUnloaded() || !playerManager.shouldSendArea(area.areaX, area.areaZ)) continue;
+      int dX = area.areaX - playerAreaX;
+      int dZ = area.areaZ - playerAreaZ;
+      float score = dX * dX + dZ * dZ;
+      if (score > 0) {
+        // between 1x for directly ahead and 2x for directly behind
+        float cos = (dX * lookX + dZ * lookZ) / (float) Math.sqrt(score);
+        score *= (3f - cos) / 2f;
+      }
+      entries.add(new Entry(area, score));
+    }
+    pending.clear();
+    Collections.sort(entries, comparator);
+
+    int budget = Settings.getIntegerSettingValue(Settings.SERVER_AREA_SEND_KILOBYTES) * 1024;
+    int sent = 0;
+    boolean full = false;
+    for (Entry entry : entries) {
+      Area area = entry.area;
+      int size = PacketArea.sendSize(area);
+      // always send at least one area, keep the rest in order for the next tick
+      if (full || (sent > 0 && sent + size > budget)) {
+        full = true;
+        pending.put(key(area.areaX, area.areaZ), area);
+        continue;
+      }
+      sent += size;
+
+      PacketArea packet = new PacketArea();
+      packet.area = area;
+      packet.playerManager = playerManager;
+      NetworkingManager.sendPacketToClient(packet, playerManager.client);
+    }
+    entries.clear();
+  }
+
+  void clear() {
+    pending.clear();
+  }
+
+  private static long key(int areaX, int areaZ) {
+    return ((long) areaX << 32) | (areaZ & 0xFFFFFFFFL);
+  }
+
+  private static class Entry {
+    final Area area;
+    final float score;
+
+    Entry(Area area, float score) {
+      this.area = area;
+      this.score = score;
+    }
+  }
+}
@@ -4,6 +4,11 @@ import ethanjones.cubes.block.Blocks;
 import ethanjones.cubes.core.event.EventHandler;
 import ethanjones.cubes.core.event.entity.living.player.PlayerPlaceBlockEvent;
 import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.metrics.Gauge;
+import ethanjones.cubes.core.metrics.Histogram;
+import ethanjones.cubes.core.metrics.Metric;
+import ethanjones.cubes.core.metrics.Metrics;
+import ethanjones.cubes.core.metrics.MetricsServer;
 import ethanjones.cubes.core.mod.ModManager;
 import ethanjones.cubes.core.mod.event.StartingServerEvent;
 import ethanjones.cubes.core.mod.event.StoppingServerEvent;
@@ -11,8 +16,11 @@ import ethanjones.cubes.core.performance.Performance;
 import ethanjones.cubes.core.performance.PerformanceTags;
 import ethanjones.cubes.core.platform.Adapter;
 import ethanjones.cubes.core.platform.Compatibility;
+import ethanjones.cubes.core.settings.Settings;
 import ethanjones.cubes.core.timing.TimeHandler;
+import ethanjones.cubes.entity.Entity;
 import ethanjones.cubes.networking.NetworkingManager;
+import ethanjones.cubes.networking.server.AreaPayloadCache;
 import ethanjones.cubes.networking.server.ClientIdentifier;
 import ethanjones.cubes.networking.socket.SocketMonitor;
 import ethanjones.cubes.side.common.Cubes;
@@ -22,7 +30,10 @@ import ethanjones.cubes.world.save.Save;
 import ethanjones.cubes.world.server.WorldServer;
 
 import com.badlogic.gdx.math.WindowedMean;
+import com.badlogic.gdx.utils.Array;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -32,6 +43,9 @@ public abstract class CubesServer extends Cubes implements TimeHandler {
   private static final AtomicLong lastUpdateTime = new AtomicLong();
   private final Save save;
   public final WindowedMean meanUpdateMS = new WindowedMean(50);
+  private final Histogram tickTime = Metrics.histogram("cubes_server_tick_seconds", "Server tick duration");
+  private final ArrayList<Metric> metrics = new ArrayList<Metric>();
+  private MetricsServer metricsServer;
 
   public CubesServer(Save save) {
     super(Side.Server);
@@ -50,6 +64,16 @@ public abstract class CubesServer extends Cubes implements TimeHandler {
 
     Side.getTiming().addHandler(this, SAVE_TIME);
 
+    registerMetrics();
+    int metricsPort = Settings.getIntegerSettingValue(Settings.SERVER_METRICS_PORT);
+    if (metricsPort > 0) {
+      try {
+        metricsServer = new MetricsServer(metricsPort);
+      } catch (IOException e) {
+        Log.error("Failed to start metrics server on port " + metricsPort, e);
+      }
+    }
+
     ModManager.postModEvent(new StartingServerEvent());
 
     lastUpdateTime.set(System.currentTimeMillis());
@@ -88,6 +112,8 @@ public abstract class CubesServer extends Cubes implements TimeHandler {
       tick();
       long tickEndNS = System.nanoTime();
       meanUpdateMS.addValue((float) (tickEndNS - tickStartNS) / 1000000f);
+      Performance.tickTime(tickEndNS - tickStartNS);
+      tickTime.record(tickEndNS - tickStartNS);
 
       nextTickTime += tickMS;
     }
@@ -98,10 +124,13 @@ public abstract class CubesServer extends Cubes implements TimeHandler {
     Performance.start(PerformanceTags.SERVER_TICK);
     super.tick();
     Performance.start(PerformanceTags.SERVER_PLAYERS_UPDATE);
+    Array<Entity> syncedEntities = ((WorldServer) world).pollSyncedEntities();
     for (ClientIdentifier clientIdentifier : getAllClients()) {
       clientIdentifier.getPlayerManager().update();
+      clientIdentifier.getPlayerManager().syncEntities(syncedEntities);
     }
     Performance.stop(PerformanceTags.SERVER_PLAYERS_UPDATE);
+    NetworkingManager.getNetworking(Side.Server).flush();
     Performance.stop(PerformanceTags.SERVER_TICK);
   }
   
@@ -117,9 +146,75 @@ public abstract class CubesServer extends Cubes implements TimeHandler {
     if (state.hasStopped() || !state.isSetup()) return;
     ModManager.postModEvent(new StoppingServerEvent());
     super.stop();
+    AreaPayloadCache.clear();
+    if (metricsServer != null) {
+      metricsServer.dispose();
+      metricsServer = null;
+    }
+    for (Metric metric : metrics) {
+      Metrics.remove(metric);
+    }
+    metrics.clear();
     if (isDedicated()) Adapter.quit();
   }
 
+  private void registerMetrics() {
+    metrics.add(Metrics.register(new Gauge("cubes_server_ticks_per_second", "Server ticks in the last second", null) {
+      @Override
+      public double get() {
+        return ticksPerSecond.last();
+      }
+    }));
+    metrics.add(Metrics.register(new Gauge("cubes_server_clients", "Connected clients", null) {
+      @Override
+      public double get() {
+        return getAllClients().size();
+      }
+    }));
+    metrics.add(Metrics.register(new Gauge("cubes_world_loaded_areas", "Areas loaded by the server", null) {
+      @Override
+      public double get() {
+        return world == null ? 0 : world.map.getSize();
+      }
+    }));
+    metrics.add(Metrics.register(new Gauge("cubes_world_light_updates", "Blocks relit by the last light update", null) {
+      @Override
+      public double get() {
+        return world == null ? 0 : world.lightUpdates.lastUpdateCount();
+      }
+    }));
+    metrics.add(Metrics.register(new Metric("cubes_connection_queued_packets", "Packets waiting to be sent to each client", null) {
+      @Override
+      public String type() {
+        return "gauge";
+      }
+
+      @Override
+      public void write(StringBuilder builder) {
+        for (ClientIdentifier client : getAllClients()) {
+          SocketMonitor socketMonitor = client.getSocketMonitor();
+          if (socketMonitor == null) continue; // singleplayer
+          sample(builder, "", label("client", client.getPlayer().username), socketMonitor.getOutputQueue().size());
+        }
+      }
+    }));
+    metrics.add(Metrics.register(new Metric("cubes_connection_sent_bytes_total", "Bytes written to each client", null) {
+      @Override
+      public String type() {
+        return "counter";
+      }
+
+      @Override
+      public void write(StringBuilder builder) {
+        for (ClientIdentifier client : getAllClients()) {
+          SocketMonitor socketMonitor = client.getSocketMonitor();
+          if (socketMonitor == null) continue; // singleplayer
+          sample(builder, "", label("client", client.getPlayer().username), socketMonitor.getBytesSent());
+        }
+      }
+    }));
+  }
+
   @Override
   public void time(int interval) {
     if (shouldReturn()) return;
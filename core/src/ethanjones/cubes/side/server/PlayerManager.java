@@ -3,6 +3,7 @@ package ethanjones.cubes.side.server;
 import ethanjones.cubes.core.event.EventHandler;
 import ethanjones.cubes.core.event.entity.living.player.PlayerMovementEvent;
 import ethanjones.cubes.core.event.world.block.BlockChangedEvent;
+import ethanjones.cubes.core.event.world.block.BlocksChangedEvent;
 import ethanjones.cubes.core.event.world.generation.AreaLoadedEvent;
 import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.system.CubesException;
@@ -16,6 +17,8 @@ import ethanjones.cubes.networking.NetworkingManager;
 import ethanjones.cubes.networking.client.ClientNetworking;
 import ethanjones.cubes.networking.packets.*;
 import ethanjones.cubes.networking.server.ClientIdentifier;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
+import ethanjones.cubes.networking.stream.NoCloseDataOutputStream;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
 import ethanjones.cubes.world.CoordinateConverter;
@@ -33,6 +36,15 @@ import ethanjones.cubes.world.thread.WorldLockable;
 import ethanjones.cubes.world.thread.WorldRequestParameter;
 
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.IntMap;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
 
 public class PlayerManager {
   
@@ -46,6 +58,15 @@ public class PlayerManager {
   private int loadDistance;
   public ClickType clickType;
   private RainStatus lastSentRainStatus = RainStatus.NOT_RAINING;
+  private final AreaSendQueue areaSendQueue = new AreaSendQueue(this);
+  // block changes in each area this tick, sent together by update
+  private final LongMap<IntIntMap> changedBlocks = new LongMap<IntIntMap>();
+  private boolean initialAreasLoaded;
+  // last state sent for each entity the client is tracking, by network id
+  private final IntMap<PacketEntitySync.State> syncedEntities = new IntMap<PacketEntitySync.State>();
+  private final DirectByteArrayOutputStream entitySyncOutput = new DirectByteArrayOutputStream();
+  private final DataOutputStream entitySyncDataOutput = new NoCloseDataOutputStream(entitySyncOutput);
+  private final int[] entitySyncTmp = new int[9];
   
   public PlayerManager(ClientIdentifier clientIdentifier, PacketConnect packetConnect) {
     this.server = Cubes.getServer();
@@ -53,7 +74,7 @@ public class PlayerManager {
     this.playerArea = new AreaReference().setFromPositionVector3(client.getPlayer().position);
     
     renderDistance = packetConnect.renderDistance;
-    loadDistance = renderDistance + 1;
+    loadDistance = PacketEntitySync.syncDistance(renderDistance);
     
     Side.getSidedEventBus().register(this);
     
@@ -97,6 +118,15 @@ public class PlayerManager {
     initialLoadAreas();
   }
 
+  /**
+   * @return distance squared in areas to the player, read without locking so only suitable as a hint
+   */
+  public int areaDistance2(int areaX, int areaZ) {
+    int dX = areaX - playerArea.areaX;
+    int dZ = areaZ - playerArea.areaZ;
+    return dX * dX + dZ * dZ;
+  }
+
   private void initialLoadAreas() {
     AreaReference check = new AreaReference();
     synchronized (this) {
@@ -112,15 +142,20 @@ public class PlayerManager {
       WorldRequestParameter parameter = new WorldRequestParameter(playerArea.copy(), new Runnable() {
         @Override
         public void run() {
-          NetworkingManager.sendPacketToClient(new PacketInitialAreasLoaded(), client);
+          // sent by update once the queued areas have been sent
+          synchronized (PlayerManager.this) {
+            initialAreasLoaded = true;
+          }
         }
       });
       initialGenerationTask = server.world.requestRegion(new WorldRegion(playerArea, loadDistance), parameter);
 
       World world = Cubes.getServer().world;
+      ArrayList<Entity> entities = new ArrayList<Entity>();
       try (Locked<WorldLockable> locked = world.entities.acquireReadLock()) {
-        for (Entity entity : world.entities.map.values()) {
-          if (positionInLoadRange(entity.position) && !(entity instanceof Player)) {
+        world.entities.getEntitiesInRange(playerArea.areaX - loadDistance, playerArea.areaZ - loadDistance, playerArea.areaX + loadDistance, playerArea.areaZ + loadDistance, entities);
+        for (Entity entity : entities) {
+          if (!(entity instanceof Player)) {
             PacketEntityAdd packet = new PacketEntityAdd();
             packet.entity = entity;
             NetworkingManager.sendPacketToClient(packet, client);
@@ -179,11 +214,13 @@ public class PlayerManager {
 
         World world = Cubes.getServer().world;
         try (Locked<WorldLockable> locked = world.entities.acquireReadLock()) {
-          for (Entity entity : world.entities.map.values()) {
-            if (!(entity instanceof Player) && newRegion.contains(entity.position) && !oldRegion.contains(entity.position)) {
-              PacketEntityAdd packet = new PacketEntityAdd();
-              packet.entity = entity;
-              NetworkingManager.sendPacketToClient(packet, client);
+          for (AreaReference areaReference : difference) {
+            for (Entity entity : world.entities.getEntitiesInArea(areaReference.areaX, areaReference.areaZ)) {
+              if (!(entity instanceof Player)) {
+                PacketEntityAdd packet = new PacketEntityAdd();
+                packet.entity = entity;
+                NetworkingManager.sendPacketToClient(packet, client);
+              }
             }
           }
         }
@@ -203,6 +240,7 @@ public class PlayerManager {
   
   @EventHandler
   public void blockChanged(BlockChangedEvent event) {
+    if (event.isBulk()) return; // sent by blocksChanged
     BlockReference blockReference = event.getBlockReference();
     synchronized (this) {
       if (Math.abs(CoordinateConverter.area(blockReference.blockX) - playerArea.areaX) > loadDistance) return;
@@ -215,14 +253,50 @@ public class PlayerManager {
       packet.ySection = CoordinateConverter.area(blockReference.blockY);
       NetworkingManager.sendPacketToClient(packet, client);
     } else {
-      PacketBlockChanged packet = new PacketBlockChanged();
-      packet.x = blockReference.blockX;
-      packet.y = blockReference.blockY;
-      packet.z = blockReference.blockZ;
-      packet.meta = event.getNewMeta();
-      packet.block = IDManager.toInt(event.getNewBlock());
-      NetworkingManager.sendPacketToClient(packet, client);
+      Area area = event.getArea();
+      int ref = Area.getRef(blockReference.blockX - area.minBlockX, blockReference.blockY, blockReference.blockZ - area.minBlockZ);
+      int block = IDManager.toInt(event.getNewBlock()) | ((event.getNewMeta() & 0xFF) << 20);
+      synchronized (this) {
+        changedBlocks(area).put(ref, block);
+      }
+    }
+  }
+  
+  @EventHandler
+  public void blocksChanged(BlocksChangedEvent event) {
+    Area area = event.getArea();
+    if (!shouldSendArea(area.areaX, area.areaZ)) return;
+    if (Area.isShared()) {
+      int lastSection = -1;
+      for (int i = 0; i < event.getCount(); i++) {
+        int section = event.getRef(i) / Area.SIZE_BLOCKS_CUBED;
+        if (section == lastSection) continue;
+        lastSection = section;
+        PacketAreaUpdateRender packet = new PacketAreaUpdateRender();
+        packet.areaX = area.areaX;
+        packet.areaZ = area.areaZ;
+        packet.ySection = section;
+        NetworkingManager.sendPacketToClient(packet, client);
+      }
+    } else {
+      synchronized (this) {
+        IntIntMap changes = changedBlocks(area);
+        for (int i = 0; i < event.getCount(); i++) {
+          changes.put(event.getRef(i), event.getNewBlock(i));
+        }
+      }
+    }
+  }
+
+  // must be synchronized
+  private IntIntMap changedBlocks(Area area) {
+    long key = ((long) area.areaX << 32) | (area.areaZ & 0xFFFFFFFFL);
+    IntIntMap changes = changedBlocks.get(key);
+    if (changes == null) {
+      changes = new IntIntMap();
+      changedBlocks.put(key, changes);
     }
+    return changes;
   }
   
   @EventHandler
@@ -241,12 +315,12 @@ public class PlayerManager {
     }
   }
   
+  /**
+   * Queues the area to be sent, nearest areas are sent first by {@link #update()}
+   */
   public void sendArea(Area area) {
     synchronized (this) {
-      PacketArea packet = new PacketArea();
-      packet.area = area;
-      packet.playerManager = this;
-      NetworkingManager.sendPacketToClient(packet, client);
+      areaSendQueue.add(area);
     }
   }
   
@@ -282,6 +356,20 @@ public class PlayerManager {
         if (doneFeatures == totalFeatures && doneGenerate == totalGenerate) initialGenerationTask = null;
       }
 
+      for (LongMap.Entry<IntIntMap> entry : changedBlocks.entries()) {
+        int areaX = (int) (entry.key >> 32), areaZ = (int) entry.key;
+        if (shouldSendArea(areaX, areaZ)) {
+          NetworkingManager.sendPacketToClient(PacketSectionDelta.create(areaX, areaZ, entry.value), client);
+        }
+      }
+      changedBlocks.clear();
+
+      areaSendQueue.update(playerArea.areaX, playerArea.areaZ, client.getPlayer().angle);
+      if (initialAreasLoaded && areaSendQueue.isEmpty()) {
+        initialAreasLoaded = false;
+        NetworkingManager.sendPacketToClient(new PacketInitialAreasLoaded(), client);
+      }
+
       RainStatus rainStatus = ((WorldServer) Cubes.getServer().world).getRainStatus(client.getPlayer().position.x, client.getPlayer().position.z);
       if (rainStatus.raining != lastSentRainStatus.raining || Math.abs(rainStatus.rainRate - lastSentRainStatus.rainRate) > 0.05) {
         lastSentRainStatus = rainStatus;
@@ -297,7 +385,47 @@ public class PlayerManager {
     }
   }
   
+  /**
+   * Sends the moved entities in range in one packet. Entities which have left the range are no longer tracked, as the
+   * client removes them.
+   */
+  protected void syncEntities(Array<Entity> entities) {
+    synchronized (this) {
+      Iterator<IntMap.Entry<PacketEntitySync.State>> iterator = syncedEntities.entries().iterator();
+      while (iterator.hasNext()) {
+        if (!positionInLoadRange(iterator.next().value.entity.position)) iterator.remove();
+      }
+
+      entitySyncOutput.reset();
+      int count = 0;
+      try {
+        for (Entity entity : entities) {
+          if (!positionInLoadRange(entity.position)) continue;
+          PacketEntitySync.State state = syncedEntities.get(entity.networkID);
+          int length = entitySyncOutput.count();
+          PacketEntitySync.State written = PacketEntitySync.writeRecord(entitySyncDataOutput, entity, state, entitySyncTmp);
+          if (written != state) syncedEntities.put(entity.networkID, written);
+          if (entitySyncOutput.count() != length) count++;
+        }
+      } catch (IOException e) {
+        throw new CubesException("Failed to write entity sync", e);
+      }
+      if (count > 0) NetworkingManager.sendPacketToClient(PacketEntitySync.create(count, entitySyncOutput), client);
+    }
+  }
+
+  public void entityRemoved(Entity entity) {
+    synchronized (this) {
+      syncedEntities.remove(entity.networkID);
+    }
+  }
+
   public void disconnected() {
+    synchronized (this) {
+      areaSendQueue.clear();
+      changedBlocks.clear();
+      syncedEntities.clear();
+    }
     Cubes.getServer().world.save.writePlayer(client.getPlayer());
     Cubes.getServer().world.removeEntity(client.getPlayer().uuid);
     ((WorldServer) Cubes.getServer().world).removeLoadedAreaFilter(client.getPlayer());
@@ -308,9 +436,7 @@ public class PlayerManager {
   }
   
   public boolean positionInLoadRange(Vector3 position) {
-    int areaX = CoordinateConverter.area(position.x);
-    int areaZ = CoordinateConverter.area(position.z);
-    return areaX >= (playerArea.areaX - loadDistance) && areaX <= (playerArea.areaX + loadDistance) && areaZ >= (playerArea.areaZ - loadDistance) && areaZ <= (playerArea.areaZ + loadDistance);
+    return PacketEntitySync.inRange(position, playerArea.areaX, playerArea.areaZ, loadDistance);
   }
 
   public boolean areaInLoadRange(AreaReference a) {
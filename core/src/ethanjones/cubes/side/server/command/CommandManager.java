@@ -105,5 +105,7 @@ public class CommandManager {
 
     StopCommand.init();
     ThreadDumpCommand.init();
+    MetricsCommand.init();
+    BenchmarkCommand.init();
   }
 }
@@ -0,0 +1,170 @@
+package ethanjones.cubes.side.server.commands;
+
+import ethanjones.cubes.core.localization.Localization;
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.system.Executor;
+import ethanjones.cubes.core.util.locks.Locked;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
+import ethanjones.cubes.side.common.Cubes;
+import ethanjones.cubes.side.server.command.*;
+import ethanjones.cubes.world.World;
+import ethanjones.cubes.world.light.SunLight;
+import ethanjones.cubes.world.save.SaveAreaIO;
+import ethanjones.cubes.world.storage.Area;
+import ethanjones.cubes.world.storage.AreaMap;
+import ethanjones.cubes.world.thread.WorldLockable;
+import ethanjones.data.DataGroup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class BenchmarkCommand {
+
+  private static final int AREA_IO_AREAS = 64;
+  private static final int AREA_IO_WARMUP = 5;
+  private static final int AREA_IO_ROUNDS = 20;
+  private static final int LIGHT_AREAS = 16;
+  private static final int LIGHT_WARMUP = 5;
+  private static final int LIGHT_ROUNDS = 20;
+
+  public static void init() {
+    CommandBuilder benchmark = new CommandBuilder("benchmark").register().setCommandPermission(CommandPermission.Extended);
+
+    benchmark.add("areaio").setCommandListener(new CommandListener() {
+      @Override
+      public void onCommand(CommandBuilder builder, List<CommandArgument> arguments, final CommandSender sender) {
+        sender.print(Localization.get("command.benchmark.starting"));
+        Executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              areaIO(sender);
+            } catch (Exception e) {
+              Log.warning("Area IO benchmark failed", e);
+              sender.print(Localization.get("command.common.exception", e.getClass().getSimpleName()));
+            }
+          }
+        });
+      }
+    });
+
+    benchmark.add("light").setCommandListener(new CommandListener() {
+      @Override
+      public void onCommand(CommandBuilder builder, List<CommandArgument> arguments, final CommandSender sender) {
+        sender.print(Localization.get("command.benchmark.starting"));
+        Executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              light(sender);
+            } catch (Exception e) {
+              Log.warning("Light benchmark failed", e);
+              sender.print(Localization.get("command.common.exception", e.getClass().getSimpleName()));
+            }
+          }
+        });
+      }
+    });
+  }
+
+  // decodes loaded areas, saved without entities, through the stream and buffer paths of SaveAreaIO
+  private static void areaIO(CommandSender sender) throws Exception {
+    World world = Cubes.getServer().world;
+    ArrayList<Area> areas = new ArrayList<Area>();
+    ArrayList<byte[]> data = new ArrayList<byte[]>();
+    int compressed = 0;
+
+    try (Locked<WorldLockable> locked = world.map.acquireReadLock()) {
+      for (Area area : world.map) {
+        if (areas.size() >= AREA_IO_AREAS) break;
+        if (!area.isReady()) continue;
+        DirectByteArrayOutputStream stream = SaveAreaIO.encode(area, new DataGroup[0]);
+        areas.add(area);
+        data.add(Arrays.copyOf(stream.buffer(), stream.count()));
+        compressed += stream.count();
+      }
+    }
+    if (areas.isEmpty()) {
+      sender.print(Localization.get("command.benchmark.noAreas"));
+      return;
+    }
+    sender.print(Localization.get("command.benchmark.areaIO.areas", areas.size(), compressed / 1024));
+
+    long stream = 0, buffer = 0;
+    for (int round = 0; round < AREA_IO_WARMUP + AREA_IO_ROUNDS; round++) {
+      long start = System.nanoTime();
+      for (int i = 0; i < areas.size(); i++) {
+        Area area = areas.get(i);
+        SaveAreaIO.decodeStream(area.areaX, area.areaZ, new ByteArrayInputStream(data.get(i)));
+      }
+      long middle = System.nanoTime();
+      for (int i = 0; i < areas.size(); i++) {
+        Area area = areas.get(i);
+        SaveAreaIO.decode(area.areaX, area.areaZ, ByteBuffer.wrap(data.get(i)));
+      }
+      long end = System.nanoTime();
+
+      if (round >= AREA_IO_WARMUP) {
+        stream += middle - start;
+        buffer += end - middle;
+      }
+    }
+
+    double decoded = areas.size() * AREA_IO_ROUNDS * 1000000d;
+    sender.print(Localization.get("command.benchmark.areaIO.stream", stream / decoded));
+    sender.print(Localization.get("command.benchmark.areaIO.buffer", buffer / decoded));
+  }
+
+  // lights copies of loaded areas, with copies of their neighbours in a separate area map
+  private static void light(CommandSender sender) {
+    World world = Cubes.getServer().world;
+    ArrayList<Area> areas = new ArrayList<Area>();
+
+    try (Locked<WorldLockable> locked = world.map.acquireReadLock()) {
+      for (Area area : world.map) {
+        if (areas.size() >= LIGHT_AREAS) break;
+        if (!area.isReady() || !neighboursReady(world, area)) continue;
+        AreaMap map = new AreaMap(world);
+        for (int x = -1; x <= 1; x++) {
+          for (int z = -1; z <= 1; z++) {
+            Area copy = new Area(world.map.lockedGetArea(area.areaX + x, area.areaZ + z));
+            map.setArea(copy.areaX, copy.areaZ, copy);
+          }
+        }
+        areas.add(map.getArea(area.areaX, area.areaZ));
+      }
+    }
+    if (areas.isEmpty()) {
+      sender.print(Localization.get("command.benchmark.noAreas"));
+      return;
+    }
+    sender.print(Localization.get("command.benchmark.light.areas", areas.size()));
+
+    long time = 0;
+    for (int round = 0; round < LIGHT_WARMUP + LIGHT_ROUNDS; round++) {
+      for (Area area : areas) {
+        Arrays.fill(area.light, (byte) 0);
+      }
+      long start = System.nanoTime();
+      for (Area area : areas) {
+        SunLight.initialSunlight(area);
+      }
+      if (round >= LIGHT_WARMUP) time += System.nanoTime() - start;
+    }
+
+    sender.print(Localization.get("command.benchmark.light.time", time / (areas.size() * LIGHT_ROUNDS * 1000000d)));
+  }
+
+  private static boolean neighboursReady(World world, Area area) {
+    for (int x = -1; x <= 1; x++) {
+      for (int z = -1; z <= 1; z++) {
+        Area a = world.map.lockedGetArea(area.areaX + x, area.areaZ + z);
+        if (a == null || !a.isReady()) return false;
+      }
+    }
+    return true;
+  }
+}
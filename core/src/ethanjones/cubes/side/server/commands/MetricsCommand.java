@@ -0,0 +1,21 @@
+package ethanjones.cubes.side.server.commands;
+
+import ethanjones.cubes.core.metrics.Metrics;
+import ethanjones.cubes.side.server.command.*;
+
+import java.util.List;
+
+public class MetricsCommand {
+
+  public static void init() {
+    // All is the highest permission, not every sender, so like stop and threaddump only the console can use it
+    new CommandBuilder("metrics").register().setCommandPermission(CommandPermission.All).setCommandListener(new CommandListener() {
+      @Override
+      public void onCommand(CommandBuilder builder, List<CommandArgument> arguments, CommandSender sender) {
+        for (String line : Metrics.write().split("\n")) {
+          sender.print(line);
+        }
+      }
+    });
+  }
+}
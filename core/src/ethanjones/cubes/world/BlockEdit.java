@@ -0,0 +1,86 @@
+package ethanjones.cubes.world;
+
+import ethanjones.cubes.block.Block;
+import ethanjones.cubes.world.storage.Area;
+
+import com.badlogic.gdx.utils.IntIntMap;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.Arrays;
+
+/**
+ * Collects block changes and applies them per area when closed, so each area is locked, relit and sent to clients
+ * once instead of once per block. Later changes to the same block replace earlier ones. Changes to areas which are
+ * not loaded when closed are ignored, as with {@link World#setBlock(Block, int, int, int, int)}.
+ * <pre>
+ * try (BlockEdit edit = world.edit()) {
+ *   edit.setBlock(block, x, y, z, meta);
+ * }
+ * </pre>
+ */
+public class BlockEdit implements AutoCloseable {
+
+  private final World world;
+  private final LongMap<IntIntMap> areas = new LongMap<IntIntMap>();
+  private IntIntMap last;
+  private int lastAreaX, lastAreaZ;
+  private boolean closed;
+
+  BlockEdit(World world) {
+    this.world = world;
+  }
+
+  public BlockEdit setBlock(Block block, int x, int y, int z, int meta) {
+    if (closed) throw new IllegalStateException("BlockEdit has been closed");
+    if (y < 0) return this;
+
+    int areaX = CoordinateConverter.area(x);
+    int areaZ = CoordinateConverter.area(z);
+    if (last == null || areaX != lastAreaX || areaZ != lastAreaZ) {
+      long key = key(areaX, areaZ);
+      last = areas.get(key);
+      if (last == null) {
+        last = new IntIntMap();
+        areas.put(key, last);
+      }
+      lastAreaX = areaX;
+      lastAreaZ = areaZ;
+    }
+
+    int n = block == null ? 0 : block.intID;
+    n += (meta & 0xFF) << 20;
+    last.put(Area.getRef(x - (areaX * Area.SIZE_BLOCKS), y, z - (areaZ * Area.SIZE_BLOCKS)), n);
+    return this;
+  }
+
+  public BlockEdit setBlock(Block block, int x, int y, int z) {
+    return setBlock(block, x, y, z, 0);
+  }
+
+  @Override
+  public void close() {
+    if (closed) return;
+    closed = true;
+
+    for (LongMap.Entry<IntIntMap> entry : areas.entries()) {
+      Area area = world.getArea((int) (entry.key >> 32), (int) entry.key);
+      if (area == null) continue;
+      IntIntMap changes = entry.value;
+
+      // sorted refs keep changes in the same section together
+      int[] refs = changes.keys().toArray().toArray();
+      Arrays.sort(refs);
+      int[] blocks = new int[refs.length];
+      for (int i = 0; i < refs.length; i++) {
+        blocks[i] = changes.get(refs[i], 0);
+      }
+      area.setBlocks(refs, blocks, refs.length);
+    }
+    areas.clear();
+    last = null;
+  }
+
+  private static long key(int areaX, int areaZ) {
+    return ((long) areaX << 32) | (areaZ & 0xFFFFFFFFL);
+  }
+}
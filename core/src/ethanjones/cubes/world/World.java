@@ -12,6 +12,7 @@ import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
 import ethanjones.cubes.world.generator.GeneratorManager;
 import ethanjones.cubes.world.generator.TerrainGenerator;
+import ethanjones.cubes.world.light.LightUpdateQueue;
 import ethanjones.cubes.world.reference.AreaReference;
 import ethanjones.cubes.world.reference.multi.MultiAreaReference;
 import ethanjones.cubes.world.reference.multi.WorldRegion;
@@ -42,6 +43,7 @@ public abstract class World extends WorldLockable implements Disposable {
   public final TerrainGenerator terrainGenerator;
   public final Save save;
   public final Side side;
+  public final LightUpdateQueue lightUpdates;
 
   protected int time;
   protected long playingTime;
@@ -58,6 +60,7 @@ public abstract class World extends WorldLockable implements Disposable {
     this.playingTime = save == null ? 0 : save.getSaveOptions().worldPlayingTime;
     map = new AreaMap(this);
     entities = new Entities(this);
+    lightUpdates = new LightUpdateQueue(this);
     lua = LuaMapping.mapping(new LuaMappingWorld(this));
   }
   
@@ -140,21 +143,27 @@ public abstract class World extends WorldLockable implements Disposable {
   }
 
   public void setBlocks(Block block, int x1, int y1, int z1, int x2, int y2, int z2, int meta) {
-    int minX = Math.min(x1, x2), minY = Math.min(y1, y2), minZ = Math.min(z1, z2);
+    int minX = Math.min(x1, x2), minY = Math.max(Math.min(y1, y2), 0), minZ = Math.min(z1, z2);
     int maxX = Math.max(x1, x2), maxY = Math.max(y1, y2), maxZ = Math.max(z1, z2);
 
-    for (int x = minX; x <= maxX; x++) {
-      for (int z = minZ; z <= maxZ; z++) {
-        Area area = getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
-        if (area != null) {
+    try (BlockEdit edit = edit()) {
+      for (int x = minX; x <= maxX; x++) {
+        for (int z = minZ; z <= maxZ; z++) {
           for (int y = minY; y <= maxY; y++) {
-            area.setBlock(block, x - area.minBlockX, y, z - area.minBlockZ, meta);
+            edit.setBlock(block, x, y, z, meta);
           }
         }
       }
     }
   }
 
+  /**
+   * @return a BlockEdit which applies its changes to this world when closed
+   */
+  public BlockEdit edit() {
+    return new BlockEdit(this);
+  }
+
   public void tick() {
     try (Locked<WorldLockable> locked = LockManager.lockMany(true, this, map, entities)) {
       Iterator<Entry<UUID, Entity>> iterator = entities.map.entrySet().iterator();
@@ -164,13 +173,26 @@ public abstract class World extends WorldLockable implements Disposable {
           entry.getValue().dispose();
           UUID uuid = entry.getKey();
           iterator.remove();
+          entities.removed(entry.getValue());
+          entityRemoved(entry.getValue());
           removeEntity(uuid);
+        } else {
+          entities.updateIndex(entry.getValue());
         }
       }
       time++;
       if (time >= MAX_TIME) time = 0;
       playingTime++;
     }
+    lightUpdates.update();
+  }
+
+  /**
+   * @return the seed for an area's random updates this tick, so they are the same whichever thread ticks the area
+   */
+  public long areaTickSeed(int areaX, int areaZ) {
+    long seed = save == null ? 0 : save.getSaveOptions().worldSeed;
+    return seed ^ (playingTime * 0x9E3779B97F4A7C15L) ^ (areaX * 0xC2B2AE3D27D4EB4FL) ^ (areaZ * 0x165667B19E3779F9L);
   }
 
   public float getWorldSunlight() {
@@ -207,6 +229,7 @@ public abstract class World extends WorldLockable implements Disposable {
     if (!disposed.compareAndSet(false, true)) return;
     
     WorldTasks.waitSaveFinish();
+    lightUpdates.clear();
     try (Locked<WorldLockable> locked = LockManager.lockMany(true, this, map, entities)) {
       if (Side.isServer() || !Area.isShared()) {
         for (Area area : map) {
@@ -217,7 +240,7 @@ public abstract class World extends WorldLockable implements Disposable {
       for (Entity entity : entities.map.values()) {
         entity.dispose();
       }
-      entities.map.clear();
+      entities.clear();
     }
   }
   
@@ -233,17 +256,27 @@ public abstract class World extends WorldLockable implements Disposable {
 
   public void addEntity(Entity entity) {
     try (Locked<WorldLockable> locked = entities.acquireWriteLock()) {
-      entities.map.put(entity.uuid, entity);
+      entities.add(entity);
     }
   }
 
   public void removeEntity(UUID uuid) {
     try (Locked<WorldLockable> locked = entities.acquireWriteLock()) {
-      Entity remove = entities.map.remove(uuid);
-      if (remove != null) remove.dispose();
+      Entity remove = entities.remove(uuid);
+      if (remove != null) {
+        remove.dispose();
+        entityRemoved(remove);
+      }
     }
   }
 
+  /**
+   * Called with the entities lock when an entity is removed
+   */
+  protected void entityRemoved(Entity entity) {
+
+  }
+
   public void updateEntity(DataGroup data) {
     try (Locked<WorldLockable> locked = entities.acquireWriteLock()) {
       UUID uuid = (UUID) data.get("uuid");
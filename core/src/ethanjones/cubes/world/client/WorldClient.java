@@ -6,9 +6,9 @@ import ethanjones.cubes.core.util.locks.LockManager;
 import ethanjones.cubes.core.util.locks.Locked;
 import ethanjones.cubes.entity.Entity;
 import ethanjones.cubes.graphics.world.area.AreaRenderer;
+import ethanjones.cubes.networking.packets.PacketEntitySync;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
-import ethanjones.cubes.world.CoordinateConverter;
 import ethanjones.cubes.world.World;
 import ethanjones.cubes.world.generator.RainStatus;
 import ethanjones.cubes.world.reference.AreaReference;
@@ -19,6 +19,7 @@ import ethanjones.cubes.world.thread.WorldLockable;
 import ethanjones.cubes.world.thread.WorldRequestParameter;
 
 import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.utils.IntMap;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -32,6 +33,8 @@ public class WorldClient extends World {
   private final int renderDistance = Settings.getIntegerSettingValue(Settings.GRAPHICS_VIEW_DISTANCE); //keep 3 extra
   public RainStatus rainStatus = RainStatus.NOT_RAINING;
   private int tickCounter = 0;
+  // by network id, see PacketEntitySync
+  public final IntMap<PacketEntitySync.State> syncedEntities = new IntMap<PacketEntitySync.State>();
 
   public WorldClient() {
     super(null, Side.Client);
@@ -64,12 +67,11 @@ public class WorldClient extends World {
       while (entityIterator.hasNext()) {
         Entry<UUID, Entity> entry = entityIterator.next();
         Entity entity = entry.getValue();
-        int aX = CoordinateConverter.area(entity.position.x);
-        int aZ = CoordinateConverter.area(entity.position.z);
-        int dist = Math.max(Math.abs(aX - playerArea.areaX), Math.abs(aZ - playerArea.areaZ));
-        if (dist > renderDistance + 1) {
+        if (!PacketEntitySync.inRange(entity.position, playerArea.areaX, playerArea.areaZ, PacketEntitySync.clientRemoveDistance(renderDistance))) {
           entity.dispose();
           entityIterator.remove();
+          entities.removed(entity);
+          entityRemoved(entity);
         }
       }
     }
@@ -87,9 +89,15 @@ public class WorldClient extends World {
     return Color.BLACK.cpy().lerp(Color.SKY, (light - 0.3f) * 2.5f);
   }
 
+  @Override
+  protected void entityRemoved(Entity entity) {
+    if (entity.networkID != 0) syncedEntities.remove(entity.networkID);
+  }
+
   @Override
   public void dispose() {
     super.dispose();
+    syncedEntities.clear();
   }
 
   @Override
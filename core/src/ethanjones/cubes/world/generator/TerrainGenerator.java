@@ -23,7 +23,7 @@ public abstract class TerrainGenerator {
 
     try (Locked<Area> locked = area.acquireWriteLock()) {
       area.setupArrays(y);
-      area.blocks[ref] = (block == null ? 0 : block.intID + ((meta & 0xFF) << 20));
+      area.setBlockInt(ref, block == null ? 0 : block.intID + ((meta & 0xFF) << 20));
     }
   }
   
@@ -37,7 +37,7 @@ public abstract class TerrainGenerator {
 
     try (Locked<Area> locked = area.acquireWriteLock()) {
       area.setupArrays(y);
-      area.blocks[ref] = (block == null ? 0 : (block.intID + ((meta & 0xFF) << 20)) | Area.BLOCK_VISIBLE);
+      area.setBlockInt(ref, block == null ? 0 : (block.intID + ((meta & 0xFF) << 20)) | Area.BLOCK_VISIBLE);
     }
   }
 
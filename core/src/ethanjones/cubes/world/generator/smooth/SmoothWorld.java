@@ -48,14 +48,14 @@ public class SmoothWorld extends TerrainGenerator {
 
         if ((x == 0 && z == 0) || g > area.maxY) area.setupArrays(g);
 
-        area.blocks[Area.getRef(x, 0, z)] = Blocks.bedrock.intID;
+        area.setBlockInt(Area.getRef(x, 0, z), Blocks.bedrock.intID);
         for (int y = 1; y < g; y++) {
           if (y < (g - d))
-            area.blocks[Area.getRef(x, y, z)] = Blocks.stone.intID;
+            area.setBlockInt(Area.getRef(x, y, z), Blocks.stone.intID);
           else
-            area.blocks[Area.getRef(x, y, z)] = Blocks.dirt.intID;
+            area.setBlockInt(Area.getRef(x, y, z), Blocks.dirt.intID);
         }
-        area.blocks[Area.getRef(x, g, z)] = Blocks.grass.intID;
+        area.setBlockInt(Area.getRef(x, g, z), Blocks.grass.intID);
       }
     }
     caves.apply(area);
@@ -1,13 +1,11 @@
 package ethanjones.cubes.world.light;
 
+import ethanjones.cubes.block.Block;
+import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.id.TransparencyManager;
-import ethanjones.cubes.world.CoordinateConverter;
 import ethanjones.cubes.world.storage.Area;
 
-import java.util.ArrayDeque;
-
 import static ethanjones.cubes.world.storage.Area.SIZE_BLOCKS;
-import static ethanjones.cubes.world.storage.Area.getRef;
 
 public class BlockLight {
 
@@ -15,46 +13,89 @@ public class BlockLight {
 
   public static void spreadLight(int x, int y, int z, Area area, LightWorldSection w) {
     if (y >= 0 && y <= area.maxY) {
-      ArrayDeque<LightNode> lightQueue = new ArrayDeque<LightNode>(1000);
-
-      if (y <= w.maxY(x + 1, z) && (w.transparent(x + 1, y, z) || w.isLightSource(x + 1, y, z)))
-        lightQueue.add(new LightNode(x + 1, y, z, w.getLight(x + 1, y, z)));
-      if (y <= w.maxY(x - 1, z) && (w.transparent(x - 1, y, z) || w.isLightSource(x - 1, y, z)))
-        lightQueue.add(new LightNode(x - 1, y, z, w.getLight(x - 1, y, z)));
-
-      if (y < w.maxY(x, z) && (w.transparent(x, y + 1, z) || w.isLightSource(x, y + 1, z)))
-        lightQueue.add(new LightNode(x, y + 1, z, w.getLight(x, y + 1, z)));
-      if (y > 0 && (w.transparent(x, y - 1, z) || w.isLightSource(x, y - 1, z)))
-        lightQueue.add(new LightNode(x, y - 1, z, w.getLight(x, y - 1, z)));
-
-      if (y <= w.maxY(x, z + 1) && (w.transparent(x, y, z + 1) || w.isLightSource(x, y, z + 1)))
-        lightQueue.add(new LightNode(x, y, z + 1, w.getLight(x, y, z + 1)));
-      if (y <= w.maxY(x, z - 1) && (w.transparent(x, y, z - 1) || w.isLightSource(x, y, z - 1)))
-        lightQueue.add(new LightNode(x, y, z - 1, w.getLight(x, y, z - 1)));
-
+      LightQueue lightQueue = w.addQueue;
+      addNeighbours(lightQueue, x, y, z, y > 0, w);
       propagateAdd(lightQueue, w);
     }
   }
 
   public static void addLight(int x, int y, int z, int l, Area area, LightWorldSection lws) {
     if (y > 0 && y <= area.maxY) {
-      ArrayDeque<LightNode> lightQueue = new ArrayDeque<LightNode>(1000);
+      LightQueue lightQueue = lws.addQueue;
 
       area.setLight(x - area.minBlockX, y, z - area.minBlockZ, l);
-      lightQueue.add(new LightNode(x, y, z, l));
+      lightQueue.add(lws.windowX(x), y, lws.windowZ(z), l);
       propagateAdd(lightQueue, lws);
     }
   }
 
-  private static void propagateAdd(ArrayDeque<LightNode> lightQueue, LightWorldSection w) {
-    if (lightQueue.isEmpty()) return;
+  /**
+   * Relights after many blocks in the area have changed, removing the light at all of them before spreading light from
+   * the new light sources and into new transparent blocks
+   *
+   * @param refs      from {@link Area#getRef(int, int, int)}
+   * @param newBlocks block ints with meta
+   */
+  public static void blocksChanged(int[] refs, int[] newBlocks, int count, Area area, LightWorldSection w) {
+    LightQueue removeQueue = w.removeQueue;
+    LightQueue addQueue = w.addQueue;
+
+    for (int i = 0; i < count; i++) {
+      int ref = refs[i];
+      int y = Area.getY(ref);
+      if (y <= 0 || y > area.maxY) continue;
+      int prev = area.light[ref] & 0xF;
+      area.setLight(Area.getX(ref), y, Area.getZ(ref), 0);
+      removeQueue.add(w.windowX(Area.getX(ref) + area.minBlockX), y, w.windowZ(Area.getZ(ref) + area.minBlockZ), prev);
+    }
+    propagateRemove(removeQueue, addQueue, w);
+
+    for (int i = 0; i < count; i++) {
+      int ref = refs[i];
+      int y = Area.getY(ref);
+      if (y <= 0 || y > area.maxY) continue;
+      int x = Area.getX(ref) + area.minBlockX, z = Area.getZ(ref) + area.minBlockZ;
+
+      int l = lightLevel(newBlocks[i]);
+      if (l > 0) {
+        area.setLight(Area.getX(ref), y, Area.getZ(ref), l);
+        addQueue.add(w.windowX(x), y, w.windowZ(z), l);
+      }
+      if (TransparencyManager.isTransparent(newBlocks[i])) addNeighbours(addQueue, x, y, z, true, w);
+    }
+    propagateAdd(addQueue, w);
+  }
+
+  private static void addNeighbours(LightQueue lightQueue, int x, int y, int z, boolean below, LightWorldSection w) {
+    int wx = w.windowX(x), wz = w.windowZ(z);
+    if (y <= w.maxY(x + 1, z) && (w.transparent(x + 1, y, z) || w.isLightSource(x + 1, y, z)))
+      lightQueue.add(wx + 1, y, wz, w.getLight(x + 1, y, z));
+    if (y <= w.maxY(x - 1, z) && (w.transparent(x - 1, y, z) || w.isLightSource(x - 1, y, z)))
+      lightQueue.add(wx - 1, y, wz, w.getLight(x - 1, y, z));
+
+    if (y < w.maxY(x, z) && (w.transparent(x, y + 1, z) || w.isLightSource(x, y + 1, z)))
+      lightQueue.add(wx, y + 1, wz, w.getLight(x, y + 1, z));
+    if (below && (w.transparent(x, y - 1, z) || w.isLightSource(x, y - 1, z)))
+      lightQueue.add(wx, y - 1, wz, w.getLight(x, y - 1, z));
+
+    if (y <= w.maxY(x, z + 1) && (w.transparent(x, y, z + 1) || w.isLightSource(x, y, z + 1)))
+      lightQueue.add(wx, y, wz + 1, w.getLight(x, y, z + 1));
+    if (y <= w.maxY(x, z - 1) && (w.transparent(x, y, z - 1) || w.isLightSource(x, y, z - 1)))
+      lightQueue.add(wx, y, wz - 1, w.getLight(x, y, z - 1));
+  }
 
+  private static int lightLevel(int blockInt) {
+    Block block = IDManager.toBlock(blockInt & 0xFFFFF);
+    return block == null ? 0 : block.getLightLevel((blockInt >> 20) & 0xFF);
+  }
+
+  private static void propagateAdd(LightQueue lightQueue, LightWorldSection w) {
     while (!lightQueue.isEmpty()) {
-      LightNode n = lightQueue.pop();
-      int x = n.x;
-      int y = n.y;
-      int z = n.z;
-      int l = n.l;
+      long n = lightQueue.poll();
+      int x = LightQueue.x(n);
+      int y = LightQueue.y(n);
+      int z = LightQueue.z(n);
+      int l = LightQueue.l(n);
 
       if (l <= 1) continue;
 
@@ -67,40 +108,40 @@ public class BlockLight {
     }
   }
 
-  private static void tryPropagateAdd(ArrayDeque<LightNode> lightQueue, LightWorldSection w, int x, int y, int z, int l) {
-    Area a = w.getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
-    int ref = getRef(x - a.minBlockX, y, z - a.minBlockZ);
-    if (!a.isReady() || y > a.maxY || !TransparencyManager.isTransparent(a.blocks[ref])) return;
+  // x and z are window coordinates
+  private static void tryPropagateAdd(LightQueue lightQueue, LightWorldSection w, int x, int y, int z, int l) {
+    Area a = w.windowArea(x, z);
+    if (!a.isReady() || y > a.maxY) return;
+    int ref = LightWorldSection.windowRef(x, y, z);
+    if (!TransparencyManager.isTransparent(a.getBlockInt(ref))) return;
     if ((a.light[ref] & 0xF) + 2 <= l) {
       a.light[ref] = (byte) ((a.light[ref] & 0xF0) | (l - 1));
       a.updateRender(y / SIZE_BLOCKS);
       a.modify();
-      lightQueue.add(new LightNode(x, y, z, l - 1));
+      lightQueue.add(x, y, z, l - 1);
     }
   }
 
   public static void removeLight(int x, int y, int z, Area area, LightWorldSection lws) {
     if (y > 0 && y <= area.maxY) {
-      ArrayDeque<LightNode> removeQueue = new ArrayDeque<LightNode>(1000);
-      ArrayDeque<LightNode> addQueue = new ArrayDeque<LightNode>(1000);
+      LightQueue removeQueue = lws.removeQueue;
+      LightQueue addQueue = lws.addQueue;
 
       int prev = area.getLight(x - area.minBlockX, y, z - area.minBlockZ);
       area.setLight(x - area.minBlockX, y, z - area.minBlockZ, 0);
-      removeQueue.add(new LightNode(x, y, z, prev));
+      removeQueue.add(lws.windowX(x), y, lws.windowZ(z), prev);
       propagateRemove(removeQueue, addQueue, lws);
       propagateAdd(addQueue, lws);
     }
   }
 
-  private static void propagateRemove(ArrayDeque<LightNode> removeQueue, ArrayDeque<LightNode> addQueue, LightWorldSection w) {
-    if (removeQueue.isEmpty()) return;
-
+  private static void propagateRemove(LightQueue removeQueue, LightQueue addQueue, LightWorldSection w) {
     while (!removeQueue.isEmpty()) {
-      LightNode n = removeQueue.pop();
-      int x = n.x;
-      int y = n.y;
-      int z = n.z;
-      int l = n.l;
+      long n = removeQueue.poll();
+      int x = LightQueue.x(n);
+      int y = LightQueue.y(n);
+      int z = LightQueue.z(n);
+      int l = LightQueue.l(n);
 
       if (l <= 1) continue;
 
@@ -113,18 +154,20 @@ public class BlockLight {
     }
   }
 
-  private static void tryPropagateRemove(ArrayDeque<LightNode> removeQueue, ArrayDeque<LightNode> addQueue, LightWorldSection w, int x, int y, int z, int l) {
-    Area a = w.getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
-    int ref = getRef(x - a.minBlockX, y, z - a.minBlockZ);
-    if (!a.isReady() || y > a.maxY || !TransparencyManager.isTransparent(a.blocks[ref])) return;
+  // x and z are window coordinates
+  private static void tryPropagateRemove(LightQueue removeQueue, LightQueue addQueue, LightWorldSection w, int x, int y, int z, int l) {
+    Area a = w.windowArea(x, z);
+    if (!a.isReady() || y > a.maxY) return;
+    int ref = LightWorldSection.windowRef(x, y, z);
+    if (!TransparencyManager.isTransparent(a.getBlockInt(ref))) return;
     int p = a.light[ref] & 0xF;
     if (p != 0 && p < l) {
       a.light[ref] = (byte) (a.light[ref] & 0xF0); // same as ((a.light[ref] & 0xF0) | 0)
       a.updateRender(y / SIZE_BLOCKS);
       a.modify();
-      removeQueue.add(new LightNode(x, y, z, p));
+      removeQueue.add(x, y, z, p);
     } else if (p >= l) {
-      addQueue.add(new LightNode(x, y, z, p));
+      addQueue.add(x, y, z, p);
     }
   }
 
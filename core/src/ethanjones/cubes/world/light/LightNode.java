@@ -1,15 +0,0 @@
-package ethanjones.cubes.world.light;
-
-public class LightNode {
-  public int x;
-  public int y;
-  public int z;
-  public int l;
-
-  public LightNode(int x, int y, int z, int l) {
-    this.x = x;
-    this.y = y;
-    this.z = z;
-    this.l = l;
-  }
-}
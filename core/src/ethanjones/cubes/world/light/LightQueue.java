@@ -0,0 +1,69 @@
+package ethanjones.cubes.world.light;
+
+/**
+ * FIFO ring buffer of light nodes packed into longs, so propagation doesn't allocate. x and z are window coordinates
+ * of the LightWorldSection, between 0 and 3 * SIZE_BLOCKS. Grows when full and is reused through the thread's
+ * LightWorldSection.
+ */
+final class LightQueue {
+
+  private static final int INITIAL_CAPACITY = 1 << 12;
+
+  private long[] nodes = new long[INITIAL_CAPACITY];
+  private int mask = INITIAL_CAPACITY - 1;
+  private int head; // next to poll
+  private int tail; // next to add
+
+  static long pack(int x, int y, int z, int l) {
+    return ((long) y << 32) | (x << 16) | (z << 8) | l;
+  }
+
+  static int x(long node) {
+    return (int) (node >> 16) & 0xFF;
+  }
+
+  static int y(long node) {
+    return (int) (node >>> 32);
+  }
+
+  static int z(long node) {
+    return (int) (node >> 8) & 0xFF;
+  }
+
+  static int l(long node) {
+    return (int) node & 0xFF;
+  }
+
+  void add(int x, int y, int z, int l) {
+    if (tail - head == nodes.length) grow();
+    nodes[tail++ & mask] = pack(x, y, z, l);
+  }
+
+  long poll() {
+    return nodes[head++ & mask];
+  }
+
+  boolean isEmpty() {
+    return head == tail;
+  }
+
+  int size() {
+    return tail - head;
+  }
+
+  void clear() {
+    head = tail = 0;
+  }
+
+  private void grow() {
+    long[] grown = new long[nodes.length * 2];
+    int size = tail - head;
+    for (int i = 0; i < size; i++) {
+      grown[i] = nodes[(head + i) & mask];
+    }
+    nodes = grown;
+    mask = grown.length - 1;
+    head = 0;
+    tail = size;
+  }
+}
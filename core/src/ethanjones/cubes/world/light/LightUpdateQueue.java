@@ -0,0 +1,149 @@
+package ethanjones.cubes.world.light;
+
+import ethanjones.cubes.core.performance.Performance;
+import ethanjones.cubes.core.performance.PerformanceTags;
+import ethanjones.cubes.side.common.Cubes;
+import ethanjones.cubes.world.World;
+import ethanjones.cubes.world.storage.Area;
+import ethanjones.cubes.world.thread.AreaNotLoadedException;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntSet;
+import com.badlogic.gdx.utils.LongMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+
+/**
+ * Blocks in each area which need relighting, relit together once per tick by {@link #update()} so many changes to
+ * an area in a tick cost one pass. Areas whose neighbours are not loaded are kept until they are.
+ */
+public class LightUpdateQueue {
+
+  // leave the rest of the tick for everything else, but always relight at least one area
+  private static final long BUDGET_NS = Cubes.tickMS * 1000000L / 2;
+
+  private final World world;
+  private final ArrayDeque<Pending> queue = new ArrayDeque<Pending>();
+  private final LongMap<Pending> pending = new LongMap<Pending>();
+  private volatile int lastUpdateCount;
+
+  public LightUpdateQueue(World world) {
+    this.world = world;
+  }
+
+  /**
+   * @param refs from {@link Area#getRef(int, int, int)}
+   */
+  public synchronized void add(Area area, int[] refs, int count) {
+    long key = key(area.areaX, area.areaZ);
+    Pending p = pending.get(key);
+    if (p == null) {
+      p = new Pending(area.areaX, area.areaZ);
+      pending.put(key, p);
+      queue.add(p);
+    }
+    p.refs.addAll(refs, 0, count);
+  }
+
+  public void update() {
+    if (isEmpty()) {
+      lastUpdateCount = 0;
+      return;
+    }
+    Performance.start(PerformanceTags.LIGHT_UPDATE);
+    long start = System.nanoTime();
+    ArrayList<Pending> retry = new ArrayList<Pending>();
+    int count = 0;
+    Pending p;
+    while ((p = poll()) != null) {
+      Area area = world.map.getArea(p.areaX, p.areaZ);
+      // the area has been unloaded, the changes are dropped with it
+      if (area != null) {
+        if (relight(area, p.refs)) {
+          count += p.refs.size;
+        } else {
+          retry.add(p);
+        }
+      }
+      if (System.nanoTime() - start > BUDGET_NS) break;
+    }
+    for (Pending r : retry) {
+      add(r);
+    }
+    lastUpdateCount = count;
+    Performance.stop(PerformanceTags.LIGHT_UPDATE);
+  }
+
+  /**
+   * @return blocks relit by the last update
+   */
+  public int lastUpdateCount() {
+    return lastUpdateCount;
+  }
+
+  public synchronized boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  public synchronized void clear() {
+    queue.clear();
+    pending.clear();
+  }
+
+  /**
+   * Relights the blocks in the area with their current block
+   *
+   * @return false if a neighbouring area is not loaded
+   */
+  public static boolean relight(Area area, IntSet refSet) {
+    IntArray array = refSet.iterator().toArray();
+    int count = array.size;
+    int[] refs = array.items;
+    int[] blocks = new int[count];
+
+    try (LightWorldSection lws = new LightWorldSection(area)) {
+      if (!area.isReady()) return true;
+      for (int i = 0; i < count; i++) {
+        blocks[i] = Area.getY(refs[i]) > area.maxY ? 0 : area.getBlockInt(refs[i]) & 0xFFFFFFF;
+      }
+      BlockLight.blocksChanged(refs, blocks, count, area, lws);
+      SunLight.blocksChanged(refs, blocks, count, area, lws);
+    } catch (AreaNotLoadedException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private synchronized Pending poll() {
+    Pending p = queue.poll();
+    if (p != null) pending.remove(key(p.areaX, p.areaZ));
+    return p;
+  }
+
+  private synchronized void add(Pending retry) {
+    long key = key(retry.areaX, retry.areaZ);
+    Pending p = pending.get(key);
+    if (p == null) {
+      pending.put(key, retry);
+      queue.add(retry);
+    } else {
+      p.refs.addAll(retry.refs);
+    }
+  }
+
+  private static long key(int areaX, int areaZ) {
+    return ((long) areaX << 32) | (areaZ & 0xFFFFFFFFL);
+  }
+
+  private static class Pending {
+    final int areaX;
+    final int areaZ;
+    final IntSet refs = new IntSet();
+
+    Pending(int areaX, int areaZ) {
+      this.areaX = areaX;
+      this.areaZ = areaZ;
+    }
+  }
+}
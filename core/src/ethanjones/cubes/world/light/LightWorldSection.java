@@ -4,11 +4,17 @@ import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.id.TransparencyManager;
 import ethanjones.cubes.core.util.locks.LockManager;
 import ethanjones.cubes.core.util.locks.Locked;
-import ethanjones.cubes.world.CoordinateConverter;
 import ethanjones.cubes.world.storage.Area;
 import ethanjones.cubes.world.thread.AreaNotLoadedException;
 
 class LightWorldSection implements AutoCloseable {
+  private static final ThreadLocal<LightQueue[]> queues = new ThreadLocal<LightQueue[]>() {
+    @Override
+    protected LightQueue[] initialValue() {
+      return new LightQueue[]{new LightQueue(), new LightQueue()};
+    }
+  };
+
   public final int initialAreaX;
   public final int initialAreaZ;
   public final int initialMinBlockX;
@@ -17,6 +23,9 @@ class LightWorldSection implements AutoCloseable {
   public final int initialMaxBlockZ;
   public final Area[] areas = new Area[9];
   public final Area initial;
+  // reused by the thread, empty when a section is created
+  final LightQueue addQueue;
+  final LightQueue removeQueue;
   private Locked<Area> lock;
 
   public LightWorldSection(Area initial) {
@@ -43,6 +52,12 @@ class LightWorldSection implements AutoCloseable {
     }
 
     lock = LockManager.lockMany(true, areas);
+
+    LightQueue[] q = queues.get();
+    addQueue = q[0];
+    removeQueue = q[1];
+    addQueue.clear();
+    removeQueue.clear();
   }
   
   public Area getArea(int areaX, int areaZ) {
@@ -51,29 +66,50 @@ class LightWorldSection implements AutoCloseable {
     return areas[dX * 3 + dZ];
   }
 
+  // window coordinates are from 0 to 3 * SIZE_BLOCKS across the nine areas
+  int windowX(int x) {
+    return x - initialMinBlockX + Area.SIZE_BLOCKS;
+  }
+
+  int windowZ(int z) {
+    return z - initialMinBlockZ + Area.SIZE_BLOCKS;
+  }
+
+  Area windowArea(int wx, int wz) {
+    return areas[(wx >> Area.SIZE_BLOCKS_POW2) * 3 + (wz >> Area.SIZE_BLOCKS_POW2)];
+  }
+
+  static int windowRef(int wx, int y, int wz) {
+    return (wx & (Area.SIZE_BLOCKS - 1)) + ((wz & (Area.SIZE_BLOCKS - 1)) << Area.SIZE_BLOCKS_POW2) + (y << (Area.SIZE_BLOCKS_POW2 * 2));
+  }
+
+  private Area area(int x, int z) {
+    return windowArea(windowX(x), windowZ(z));
+  }
+
   protected boolean transparent(int x, int y, int z) {
-    Area a = getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
+    Area a = area(x, z);
     if (!a.isReady()) return true;
     int ref = Area.getRef(x - a.minBlockX, y, z - a.minBlockZ);
-    return TransparencyManager.isTransparent(a.blocks[ref]);
+    return TransparencyManager.isTransparent(a.getBlockInt(ref));
   }
 
   protected int getSunlight(int x, int y, int z) {
-    Area a = getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
+    Area a = area(x, z);
     if (!a.isReady()) return 15;
     return (a.light[Area.getRef(x - a.minBlockX, y, z - a.minBlockZ)] >> 4) & 0xF;
   }
 
   protected int getLight(int x, int y, int z) {
-    Area a = getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
+    Area a = area(x, z);
     if (!a.isReady()) return 0;
     return a.light[Area.getRef(x - a.minBlockX, y, z - a.minBlockZ)] & 0xF;
   }
 
   protected boolean isLightSource(int x, int y, int z) {
-    Area a = getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
+    Area a = area(x, z);
     if (!a.isReady()) return false;
-    int b = a.blocks[Area.getRef(x - a.minBlockX, y, z - a.minBlockZ)];
+    int b = a.getBlockInt(Area.getRef(x - a.minBlockX, y, z - a.minBlockZ));
     if (b == 0) return false;
     int blockID = b & 0xFFFFF;
     int blockMeta = (b >> 20) & 0xFF;
@@ -81,7 +117,7 @@ class LightWorldSection implements AutoCloseable {
   }
 
   protected int maxY(int x, int z) {
-    return getArea(CoordinateConverter.area(x), CoordinateConverter.area(z)).maxY;
+    return area(x, z).maxY;
   }
 
   @Override
@@ -1,12 +1,8 @@
 package ethanjones.cubes.world.light;
 
 import ethanjones.cubes.core.id.TransparencyManager;
-import ethanjones.cubes.world.CoordinateConverter;
 import ethanjones.cubes.world.storage.Area;
 
-import java.util.ArrayDeque;
-import java.util.concurrent.locks.ReentrantLock;
-
 import static ethanjones.cubes.world.storage.Area.*;
 
 public class SunLight {
@@ -14,7 +10,7 @@ public class SunLight {
 
   public static void initialSunlight(Area area) {
     try (LightWorldSection worldSection = new LightWorldSection(area)) {
-      ArrayDeque<LightNode> lightQueue = new ArrayDeque<>();
+      LightQueue lightQueue = worldSection.addQueue;
       int max = 15;
       for (int x = 0; x < SIZE_BLOCKS; x++) {
         for (int z = 0; z < SIZE_BLOCKS; z++) {
@@ -27,7 +23,8 @@ public class SunLight {
             area.light[r] = (byte) ((area.light[r] & 0xF) | (max << 4));
           }
 
-          lightQueue.add(new LightNode(x + area.minBlockX, h, z + area.minBlockZ, max));
+          // the initial area is in the middle of the window
+          lightQueue.add(x + SIZE_BLOCKS, h, z + SIZE_BLOCKS, max);
         }
       }
       propagateAdd(lightQueue, worldSection);
@@ -36,33 +33,64 @@ public class SunLight {
 
   public static void addSunlight(int x, int y, int z, Area area, LightWorldSection w) {
     if (y > 0 && y <= area.maxY) {
-      ArrayDeque<LightNode> lightQueue = new ArrayDeque<LightNode>(1000);
-
-      if (y <= w.maxY(x + 1, z) && w.transparent(x + 1, y, z))
-        lightQueue.add(new LightNode(x + 1, y, z, w.getSunlight(x + 1, y, z)));
-      if (y <= w.maxY(x - 1, z) && w.transparent(x - 1, y, z))
-        lightQueue.add(new LightNode(x - 1, y, z, w.getSunlight(x - 1, y, z)));
-      if (y < w.maxY(x, z) && w.transparent(x, y + 1, z))
-        lightQueue.add(new LightNode(x, y + 1, z, w.getSunlight(x, y + 1, z)));
-      if (y > 0 && w.transparent(x, y - 1, z)) lightQueue.add(new LightNode(x, y - 1, z, w.getSunlight(x, y - 1, z)));
-      if (y <= w.maxY(x, z + 1) && w.transparent(x, y, z + 1))
-        lightQueue.add(new LightNode(x, y, z + 1, w.getSunlight(x, y, z + 1)));
-      if (y <= w.maxY(x, z - 1) && w.transparent(x, y, z - 1))
-        lightQueue.add(new LightNode(x, y, z - 1, w.getSunlight(x, y, z - 1)));
-
+      LightQueue lightQueue = w.addQueue;
+      addNeighbours(lightQueue, x, y, z, w);
       propagateAdd(lightQueue, w);
     }
   }
 
-  private static void propagateAdd(ArrayDeque<LightNode> lightQueue, LightWorldSection w) {
-    if (lightQueue.isEmpty()) return;
+  /**
+   * Relights after many blocks in the area have changed, removing sunlight below new opaque blocks before spreading it
+   * into new transparent blocks
+   *
+   * @param refs      from {@link Area#getRef(int, int, int)}
+   * @param newBlocks block ints with meta
+   */
+  public static void blocksChanged(int[] refs, int[] newBlocks, int count, Area area, LightWorldSection w) {
+    LightQueue removeQueue = w.removeQueue;
+    LightQueue addQueue = w.addQueue;
+
+    for (int i = 0; i < count; i++) {
+      int ref = refs[i];
+      int y = getY(ref);
+      if (y <= 0 || y > area.maxY || TransparencyManager.isTransparent(newBlocks[i])) continue;
+      int prev = (area.light[ref] >> 4) & 0xF;
+      area.setSunlight(getX(ref), y, getZ(ref), 0);
+      removeQueue.add(w.windowX(getX(ref) + area.minBlockX), y, w.windowZ(getZ(ref) + area.minBlockZ), prev);
+    }
+    propagateRemove(removeQueue, addQueue, w);
 
+    for (int i = 0; i < count; i++) {
+      int ref = refs[i];
+      int y = getY(ref);
+      if (y <= 0 || y > area.maxY || !TransparencyManager.isTransparent(newBlocks[i])) continue;
+      addNeighbours(addQueue, getX(ref) + area.minBlockX, y, getZ(ref) + area.minBlockZ, w);
+    }
+    propagateAdd(addQueue, w);
+  }
+
+  private static void addNeighbours(LightQueue lightQueue, int x, int y, int z, LightWorldSection w) {
+    int wx = w.windowX(x), wz = w.windowZ(z);
+    if (y <= w.maxY(x + 1, z) && w.transparent(x + 1, y, z))
+      lightQueue.add(wx + 1, y, wz, w.getSunlight(x + 1, y, z));
+    if (y <= w.maxY(x - 1, z) && w.transparent(x - 1, y, z))
+      lightQueue.add(wx - 1, y, wz, w.getSunlight(x - 1, y, z));
+    if (y < w.maxY(x, z) && w.transparent(x, y + 1, z))
+      lightQueue.add(wx, y + 1, wz, w.getSunlight(x, y + 1, z));
+    if (w.transparent(x, y - 1, z)) lightQueue.add(wx, y - 1, wz, w.getSunlight(x, y - 1, z));
+    if (y <= w.maxY(x, z + 1) && w.transparent(x, y, z + 1))
+      lightQueue.add(wx, y, wz + 1, w.getSunlight(x, y, z + 1));
+    if (y <= w.maxY(x, z - 1) && w.transparent(x, y, z - 1))
+      lightQueue.add(wx, y, wz - 1, w.getSunlight(x, y, z - 1));
+  }
+
+  private static void propagateAdd(LightQueue lightQueue, LightWorldSection w) {
     while (!lightQueue.isEmpty()) {
-      LightNode n = lightQueue.pop();
-      int x = n.x;
-      int y = n.y;
-      int z = n.z;
-      int l = n.l;
+      long n = lightQueue.poll();
+      int x = LightQueue.x(n);
+      int y = LightQueue.y(n);
+      int z = LightQueue.z(n);
+      int l = LightQueue.l(n);
 
       if (l <= 1) continue;
 
@@ -75,42 +103,41 @@ public class SunLight {
     }
   }
 
-  // ln has already been subtracted by one
-  private static void tryPropagateAdd(ArrayDeque<LightNode> lightQueue, LightWorldSection w, int x, int y, int z, int ln) {
-    Area a = w.getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
-    int ref = getRef(x - a.minBlockX, y, z - a.minBlockZ);
-    if (!a.isReady() || y > a.maxY || !TransparencyManager.isTransparent(a.blocks[ref])) return;
+  // ln has already been subtracted by one, x and z are window coordinates
+  private static void tryPropagateAdd(LightQueue lightQueue, LightWorldSection w, int x, int y, int z, int ln) {
+    Area a = w.windowArea(x, z);
+    if (!a.isReady() || y > a.maxY) return;
+    int ref = LightWorldSection.windowRef(x, y, z);
+    if (!TransparencyManager.isTransparent(a.getBlockInt(ref))) return;
     int i = ((a.light[ref] >> 4) & 0xF);
     if (i + 1 <= ln) { // DIFFERENT + 1 instead of + 2
       a.light[ref] = (byte) ((a.light[ref] & 0xF) | (ln << 4));
       a.updateRender(y / SIZE_BLOCKS);
       a.modify();
-      lightQueue.add(new LightNode(x, y, z, ln));
+      lightQueue.add(x, y, z, ln);
     }
   }
 
   public static void removeSunlight(int x, int y, int z, Area area, LightWorldSection lws) {
     if (y > 0 && y <= area.maxY) {
-      ArrayDeque<LightNode> removeQueue = new ArrayDeque<LightNode>(1000);
-      ArrayDeque<LightNode> addQueue = new ArrayDeque<LightNode>(1000);
+      LightQueue removeQueue = lws.removeQueue;
+      LightQueue addQueue = lws.addQueue;
 
       int prev = area.getSunlight(x - area.minBlockX, y, z - area.minBlockZ);
       area.setSunlight(x - area.minBlockX, y, z - area.minBlockZ, 0);
-      removeQueue.add(new LightNode(x, y, z, prev));
+      removeQueue.add(lws.windowX(x), y, lws.windowZ(z), prev);
       propagateRemove(removeQueue, addQueue, lws);
       propagateAdd(addQueue, lws);
     }
   }
 
-  private static void propagateRemove(ArrayDeque<LightNode> removeQueue, ArrayDeque<LightNode> addQueue, LightWorldSection w) {
-    if (removeQueue.isEmpty()) return;
-
+  private static void propagateRemove(LightQueue removeQueue, LightQueue addQueue, LightWorldSection w) {
     while (!removeQueue.isEmpty()) {
-      LightNode n = removeQueue.pop();
-      int x = n.x;
-      int y = n.y;
-      int z = n.z;
-      int l = n.l;
+      long n = removeQueue.poll();
+      int x = LightQueue.x(n);
+      int y = LightQueue.y(n);
+      int z = LightQueue.z(n);
+      int l = LightQueue.l(n);
 
       if (l <= 1) continue;
 
@@ -124,18 +151,20 @@ public class SunLight {
     }
   }
 
-  private static void tryPropagateRemove(ArrayDeque<LightNode> removeQueue, ArrayDeque<LightNode> addQueue, LightWorldSection w, int x, int y, int z, int l) {
-    Area a = w.getArea(CoordinateConverter.area(x), CoordinateConverter.area(z));
-    int ref = getRef(x - a.minBlockX, y, z - a.minBlockZ);
-    if (!a.isReady() || y > a.maxY || !TransparencyManager.isTransparent(a.blocks[ref])) return;
+  // x and z are window coordinates
+  private static void tryPropagateRemove(LightQueue removeQueue, LightQueue addQueue, LightWorldSection w, int x, int y, int z, int l) {
+    Area a = w.windowArea(x, z);
+    if (!a.isReady() || y > a.maxY) return;
+    int ref = LightWorldSection.windowRef(x, y, z);
+    if (!TransparencyManager.isTransparent(a.getBlockInt(ref))) return;
     int p = ((a.light[ref] >> 4) & 0xF);
     if (p != 0 && p < l) {
       a.light[ref] = (byte) (a.light[ref] & 0xF); // same as ((a.light[ref] & 0xF0) | (0 << 4))
       a.updateRender(y / SIZE_BLOCKS);
       a.modify();
-      removeQueue.add(new LightNode(x, y, z, p));
+      removeQueue.add(x, y, z, p);
     } else if (p >= l) {
-      addQueue.add(new LightNode(x, y, z, p));
+      addQueue.add(x, y, z, p);
     }
   }
 }
@@ -3,17 +3,25 @@ package ethanjones.cubes.world.light;
 import ethanjones.cubes.block.Block;
 import ethanjones.cubes.core.event.EventHandler;
 import ethanjones.cubes.core.event.world.block.BlockChangedEvent;
+import ethanjones.cubes.core.event.world.block.BlocksChangedEvent;
+import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.id.TransparencyManager;
 import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.performance.Performance;
 import ethanjones.cubes.core.performance.PerformanceTags;
 import ethanjones.cubes.world.reference.BlockReference;
 import ethanjones.cubes.world.storage.Area;
-import ethanjones.cubes.world.thread.AreaNotLoadedException;
+import ethanjones.cubes.world.storage.AreaMap;
 
+import com.badlogic.gdx.utils.IntSet;
+
+/**
+ * Queues blocks whose change affects light on the world's {@link LightUpdateQueue}, which relights them next tick
+ */
 public class WorldLightHandler {
   @EventHandler(critical = true)
   public void blockChanged(BlockChangedEvent event) {
+    if (event.isBulk()) return; // relit by blocksChanged
     BlockReference blockReference = event.getBlockReference();
     Block oldBlock = event.getOldBlock();
     Block newBlock = event.getNewBlock();
@@ -24,24 +32,45 @@ public class WorldLightHandler {
       return;
     }
 
-    Performance.start(PerformanceTags.LIGHT_UPDATE);
     Area area = event.getArea();
-    try (LightWorldSection lws = new LightWorldSection(area)) {
-      // Block light
-      BlockLight.removeLight(blockReference.blockX, blockReference.blockY, blockReference.blockZ, area, lws);
-      if (newBlock != null && newBlock.getLightLevel(newMeta) > 0) {
-        BlockLight.addLight(blockReference.blockX, blockReference.blockY, blockReference.blockZ, event.getNewBlock().getLightLevel(newMeta), area, lws);
-      }
-      BlockLight.spreadLight(blockReference.blockX, blockReference.blockY, blockReference.blockZ, area, lws);
-      // Sunlight
-      if (newBlock != null && !newBlock.isTransparent(newMeta)) {
-        SunLight.removeSunlight(blockReference.blockX, blockReference.blockY, blockReference.blockZ, area, lws);
-      } else {
-        SunLight.addSunlight(blockReference.blockX, blockReference.blockY, blockReference.blockZ, area, lws);
+    int ref = Area.getRef(blockReference.blockX - area.minBlockX, blockReference.blockY, blockReference.blockZ - area.minBlockZ);
+    queue(area, new int[]{ref}, 1);
+  }
+
+  @EventHandler(critical = true)
+  public void blocksChanged(BlocksChangedEvent event) {
+    int count = event.getCount();
+    int[] refs = new int[count];
+    int changed = 0;
+    for (int i = 0; i < count; i++) {
+      int oldBlock = event.getOldBlock(i), newBlock = event.getNewBlock(i);
+      if (lightLevel(oldBlock) == lightLevel(newBlock) && TransparencyManager.isTransparent(oldBlock) == TransparencyManager.isTransparent(newBlock)) {
+        continue;
       }
-    } catch (AreaNotLoadedException e) {
-      Log.error("Failed to update light", e);
+      refs[changed++] = event.getRef(i);
     }
+    if (changed == 0) return;
+
+    queue(event.getArea(), refs, changed);
+  }
+
+  private static void queue(Area area, int[] refs, int count) {
+    AreaMap areaMap = area.areaMap();
+    if (areaMap != null) {
+      areaMap.world.lightUpdates.add(area, refs, count);
+      return;
+    }
+
+    // not in a world, so relight now
+    Performance.start(PerformanceTags.LIGHT_UPDATE);
+    IntSet refSet = new IntSet(count);
+    refSet.addAll(refs, 0, count);
+    if (!LightUpdateQueue.relight(area, refSet)) Log.error("Failed to update light, neighbouring areas are not loaded");
     Performance.stop(PerformanceTags.LIGHT_UPDATE);
   }
+
+  private static int lightLevel(int blockInt) {
+    Block block = IDManager.toBlock(blockInt & 0xFFFFF);
+    return block == null ? 0 : block.getLightLevel((blockInt >> 20) & 0xFF);
+  }
 }
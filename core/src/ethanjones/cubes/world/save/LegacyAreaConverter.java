@@ -0,0 +1,67 @@
+package ethanjones.cubes.world.save;
+
+import ethanjones.cubes.core.logging.Log;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.IOException;
+
+/**
+ * Moves areas from the old one file per area layout (area/xMost/xLeast/zMost/zLeast) into region files.
+ * Both layouts store the same deflated area data, so files are copied without being decoded.
+ * Each file is deleted once copied, so an interrupted conversion resumes where it stopped.
+ */
+public class LegacyAreaConverter {
+
+  public static boolean needsConversion(Save save) {
+    if (save.fileHandle == null || save.readOnly) return false;
+    FileHandle folderArea = save.folderArea();
+    return folderArea.isDirectory() && folderArea.list().length > 0;
+  }
+
+  public static void convert(Save save) {
+    if (!needsConversion(save)) return;
+
+    long start = System.currentTimeMillis();
+    Log.info("Converting areas in save '" + save.name + "' to region files");
+
+    int converted = 0, failed = 0;
+    for (FileHandle xMostSignificant : save.folderArea().list()) {
+      for (FileHandle xLeastSignificant : xMostSignificant.list()) {
+        for (FileHandle zMostSignificant : xLeastSignificant.list()) {
+          for (FileHandle zLeastSignificant : zMostSignificant.list()) {
+            if (zLeastSignificant.isDirectory() || zLeastSignificant.name().startsWith(".")) continue;
+            try {
+              int x = Integer.parseInt(xMostSignificant.name()) | Integer.parseInt(xLeastSignificant.name());
+              int z = Integer.parseInt(zMostSignificant.name()) | Integer.parseInt(zLeastSignificant.name());
+              copy(save, x, z, zLeastSignificant.readBytes());
+              zLeastSignificant.delete();
+              converted++;
+              if (converted % 1000 == 0) Log.debug("Converted " + converted + " areas");
+            } catch (Exception e) {
+              Log.warning("Failed to convert area file " + zLeastSignificant.path(), e);
+              failed++;
+            }
+          }
+        }
+      }
+    }
+
+    if (failed == 0) {
+      save.folderArea().deleteDirectory();
+    } else {
+      Log.warning("Failed to convert " + failed + " areas, leaving '" + save.folderArea().path() + "'");
+    }
+    Log.info("Converted " + converted + " areas in " + (System.currentTimeMillis() - start) + "ms");
+  }
+
+  private static void copy(Save save, int x, int z, byte[] data) throws IOException {
+    if (data.length == 0) throw new IOException("Empty area file");
+    RegionFile regionFile = save.regions.acquire(x, z, true);
+    try {
+      regionFile.write(x, z, data, data.length);
+    } finally {
+      save.regions.release(regionFile);
+    }
+  }
+}
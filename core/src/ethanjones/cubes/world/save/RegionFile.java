@@ -0,0 +1,204 @@
+package ethanjones.cubes.world.save;
+
+import ethanjones.cubes.core.logging.Log;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.BitSet;
+
+/**
+ * Stores REGION_SIZE_AREAS x REGION_SIZE_AREAS areas in one file.
+ * <p>
+ * The file is split into SECTOR_SIZE byte sectors. The first two sectors hold the starting sector and the length in
+ * bytes of every area, next to each other so both change in one write. Area data is stored as written, in consecutive
+ * sectors. Writes always go to free sectors and only replace the header entry afterwards, so an interrupted write
+ * leaves the previous data readable.
+ */
+public class RegionFile implements Closeable {
+
+  public static final int REGION_SIZE_AREAS = 32;
+  public static final int REGION_SIZE_AREAS_POW2 = 5;
+  public static final int REGION_AREAS = REGION_SIZE_AREAS * REGION_SIZE_AREAS;
+
+  public static final int SECTOR_SIZE = 4096;
+  private static final int HEADER_SECTORS = 2;
+  private static final int HEADER_ENTRY_SIZE = 8;
+
+  public final File file;
+  public final boolean readOnly;
+  private final RandomAccessFile randomAccessFile;
+  private final FileChannel channel;
+
+  private final int[] offsets = new int[REGION_AREAS];
+  private final int[] lengths = new int[REGION_AREAS];
+  private final BitSet usedSectors = new BitSet();
+  private final ByteBuffer headerEntry = ByteBuffer.allocate(HEADER_ENTRY_SIZE);
+  private boolean mappingFailed;
+
+  // guarded by RegionFileCache
+  int users;
+  boolean evicted;
+
+  public RegionFile(File file, boolean readOnly) throws IOException {
+    this.file = file;
+    this.readOnly = readOnly;
+    this.randomAccessFile = new RandomAccessFile(file, readOnly ? "r" : "rw");
+    this.channel = randomAccessFile.getChannel();
+
+    try {
+      if (channel.size() < HEADER_SECTORS * SECTOR_SIZE) {
+        if (readOnly) throw new IOException("Region file " + file.getName() + " is truncated");
+        channel.write(ByteBuffer.allocate(HEADER_SECTORS * SECTOR_SIZE), 0);
+      }
+      readHeader();
+    } catch (IOException e) {
+      randomAccessFile.close();
+      throw e;
+    }
+  }
+
+  private void readHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SECTORS * SECTOR_SIZE);
+    readFully(header, 0);
+    header.flip();
+    IntBuffer ints = header.asIntBuffer();
+    for (int i = 0; i < REGION_AREAS; i++) {
+      offsets[i] = ints.get();
+      lengths[i] = ints.get();
+    }
+
+    usedSectors.set(0, HEADER_SECTORS);
+    long fileSectors = (channel.size() + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    for (int i = 0; i < REGION_AREAS; i++) {
+      if (offsets[i] == 0) continue;
+      int sectors = sectors(lengths[i]);
+      if (offsets[i] < HEADER_SECTORS || lengths[i] <= 0 || offsets[i] + sectors > fileSectors) {
+        Log.warning("Invalid entry " + i + " in region file " + file.getName());
+        offsets[i] = 0;
+        lengths[i] = 0;
+        continue;
+      }
+      usedSectors.set(offsets[i], offsets[i] + sectors);
+    }
+  }
+
+  public synchronized boolean contains(int areaX, int areaZ) {
+    return offsets[index(areaX, areaZ)] != 0;
+  }
+
+  /**
+   * @return the stored data, positioned at zero, or null if the area has not been written
+   */
+  public synchronized ByteBuffer read(int areaX, int areaZ) throws IOException {
+    int i = index(areaX, areaZ);
+    if (offsets[i] == 0) return null;
+
+    ByteBuffer buffer = ByteBuffer.allocate(lengths[i]);
+    readFully(buffer, (long) offsets[i] * SECTOR_SIZE);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Same as {@link #read(int, int)}, but copies the data out of a mapping of just the area's sectors. The mapping is
+   * not kept, so a later write cannot change the returned data. Falls back to reading if the file cannot be mapped.
+   *
+   * @return the stored data, positioned at zero, or null if the area has not been written
+   */
+  public synchronized ByteBuffer map(int areaX, int areaZ) throws IOException {
+    int i = index(areaX, areaZ);
+    if (offsets[i] == 0) return null;
+    if (mappingFailed) return read(areaX, areaZ);
+
+    MappedByteBuffer mapped;
+    try {
+      mapped = channel.map(MapMode.READ_ONLY, (long) offsets[i] * SECTOR_SIZE, lengths[i]);
+    } catch (IOException e) {
+      Log.warning("Failed to map region file " + file.getName() + ", using reads instead", e);
+      mappingFailed = true;
+      return read(areaX, areaZ);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(lengths[i]);
+    buffer.put(mapped);
+    buffer.flip();
+    return buffer;
+  }
+
+  public synchronized void write(int areaX, int areaZ, byte[] data, int length) throws IOException {
+    if (readOnly) throw new IOException("Region file " + file.getName() + " is read only");
+    if (length <= 0) throw new IllegalArgumentException("Length must be positive");
+
+    int i = index(areaX, areaZ);
+    int oldOffset = offsets[i];
+    int oldSectors = oldOffset == 0 ? 0 : sectors(lengths[i]);
+    int newSectors = sectors(length);
+
+    int offset = allocate(newSectors);
+
+    ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+    long position = (long) offset * SECTOR_SIZE;
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+    usedSectors.set(offset, offset + newSectors);
+
+    writeHeaderEntry(i, offset, length);
+    offsets[i] = offset;
+    lengths[i] = length;
+    if (oldOffset != 0) usedSectors.clear(oldOffset, oldOffset + oldSectors);
+  }
+
+  private int allocate(int sectors) {
+    int start = usedSectors.nextClearBit(HEADER_SECTORS);
+    while (true) {
+      int end = usedSectors.nextSetBit(start);
+      if (end == -1 || end - start >= sectors) return start;
+      start = usedSectors.nextClearBit(end);
+    }
+  }
+
+  private void writeHeaderEntry(int i, int offset, int length) throws IOException {
+    headerEntry.clear();
+    headerEntry.putInt(offset).putInt(length);
+    headerEntry.flip();
+    long position = (long) i * HEADER_ENTRY_SIZE;
+    while (headerEntry.hasRemaining()) {
+      position += channel.write(headerEntry, position);
+    }
+  }
+
+  private void readFully(ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read == -1) throw new EOFException("Unexpected end of region file " + file.getName());
+      position += read;
+    }
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (!readOnly) channel.force(false);
+    randomAccessFile.close();
+  }
+
+  private static int sectors(int length) {
+    return (length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+  }
+
+  public static int index(int areaX, int areaZ) {
+    return (areaX & (REGION_SIZE_AREAS - 1)) | ((areaZ & (REGION_SIZE_AREAS - 1)) << REGION_SIZE_AREAS_POW2);
+  }
+
+  public static int region(int area) {
+    return area >> REGION_SIZE_AREAS_POW2;
+  }
+}
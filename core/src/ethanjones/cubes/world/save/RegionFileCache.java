@@ -0,0 +1,87 @@
+package ethanjones.cubes.world.save;
+
+import ethanjones.cubes.core.logging.Log;
+import ethanjones.cubes.core.platform.Compatibility;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+public class RegionFileCache {
+
+  public static final int MAX_OPEN_REGIONS = 64;
+
+  private final FileHandle folder;
+  private final boolean readOnly;
+  private final LinkedHashMap<Long, RegionFile> open = new LinkedHashMap<Long, RegionFile>(16, 0.75f, true);
+
+  public RegionFileCache(FileHandle folder, boolean readOnly) {
+    this.folder = folder;
+    this.readOnly = readOnly;
+  }
+
+  /**
+   * Must be paired with {@link #release(RegionFile)}
+   *
+   * @return the region containing the area, or null if it does not exist and create is false
+   */
+  public synchronized RegionFile acquire(int areaX, int areaZ, boolean create) throws IOException {
+    int regionX = RegionFile.region(areaX);
+    int regionZ = RegionFile.region(areaZ);
+    Long key = ((long) regionX << 32) | (regionZ & 0xFFFFFFFFL);
+
+    RegionFile regionFile = open.get(key);
+    if (regionFile == null) {
+      FileHandle file = file(regionX, regionZ);
+      if (!file.exists()) {
+        if (!create || readOnly) return null;
+        folder.mkdirs();
+        Compatibility.get().nomedia(folder);
+      }
+      regionFile = new RegionFile(file.file(), readOnly);
+      open.put(key, regionFile);
+      evict();
+    }
+    regionFile.users++;
+    return regionFile;
+  }
+
+  public synchronized void release(RegionFile regionFile) {
+    regionFile.users--;
+    if (regionFile.evicted && regionFile.users == 0) close(regionFile);
+  }
+
+  private void evict() {
+    Iterator<RegionFile> iterator = open.values().iterator();
+    while (open.size() > MAX_OPEN_REGIONS && iterator.hasNext()) {
+      RegionFile regionFile = iterator.next();
+      iterator.remove();
+      regionFile.evicted = true;
+      if (regionFile.users == 0) close(regionFile);
+    }
+  }
+
+  public synchronized void close() {
+    ArrayList<RegionFile> regionFiles = new ArrayList<RegionFile>(open.values());
+    open.clear();
+    for (RegionFile regionFile : regionFiles) {
+      regionFile.evicted = true;
+      if (regionFile.users == 0) close(regionFile);
+    }
+  }
+
+  private void close(RegionFile regionFile) {
+    try {
+      regionFile.close();
+    } catch (IOException e) {
+      Log.warning("Failed to close region file " + regionFile.file.getName(), e);
+    }
+  }
+
+  public FileHandle file(int regionX, int regionZ) {
+    return folder.child(regionX + "_" + regionZ);
+  }
+}
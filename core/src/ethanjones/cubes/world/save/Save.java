@@ -24,6 +24,7 @@ public class Save {
   public final String name;
   public final FileHandle fileHandle;
   public final boolean readOnly;
+  public final RegionFileCache regions;
   private SaveOptions saveOptions;
 
   public Save(String name, FileHandle fileHandle) {
@@ -34,13 +35,14 @@ public class Save {
     this.name = name;
     this.fileHandle = fileHandle;
     this.readOnly = readOnly;
+    this.regions = fileHandle == null ? null : new RegionFileCache(folderRegion(), readOnly);
 
     if (!this.readOnly) {
       this.fileHandle.mkdirs();
       Compatibility.get().nomedia(this.fileHandle);
       
-      folderArea().mkdirs();
-      Compatibility.get().nomedia(folderArea());
+      folderRegion().mkdirs();
+      Compatibility.get().nomedia(folderRegion());
       
       folderPlayer().mkdirs();
       Compatibility.get().nomedia(folderPlayer());
@@ -65,6 +67,14 @@ public class Save {
     return SaveAreaIO.read(this, x, z);
   }
 
+  public void convertLegacyAreas() {
+    LegacyAreaConverter.convert(this);
+  }
+
+  public void close() {
+    if (regions != null) regions.close();
+  }
+
   public void writePlayer(Player player) {
     if (readOnly) return;
     FileHandle folder = folderPlayer();
@@ -179,10 +189,17 @@ public class Save {
     return this.saveOptions;
   }
 
+  /**
+   * Only used by saves from before region files
+   */
   public FileHandle folderArea() {
     return fileHandle.child("area");
   }
 
+  public FileHandle folderRegion() {
+    return fileHandle.child("region");
+  }
+
   public FileHandle folderCave() {
     return fileHandle.child("cave");
   }
@@ -1,14 +1,15 @@
 package ethanjones.cubes.world.save;
 
 import ethanjones.cubes.core.logging.Log;
-import ethanjones.cubes.core.platform.Compatibility;
+import ethanjones.cubes.networking.stream.DirectByteArrayOutputStream;
 import ethanjones.cubes.world.storage.Area;
 import ethanjones.cubes.world.storage.AreaMap;
 import ethanjones.data.DataGroup;
 
-import com.badlogic.gdx.files.FileHandle;
-
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.Inflater;
@@ -32,31 +33,95 @@ public class SaveAreaIO {
       };
     }
   };
+  private static final ThreadLocal<byte[]> inputThreadLocal = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[8192];
+    }
+  };
+  private static final ThreadLocal<byte[]> inflatedThreadLocal = new ThreadLocal<byte[]>() {
+    @Override
+    protected byte[] initialValue() {
+      return new byte[262144];
+    }
+  };
+  private static final ThreadLocal<DirectByteArrayOutputStream> outputThreadLocal = new ThreadLocal<DirectByteArrayOutputStream>() {
+    @Override
+    protected DirectByteArrayOutputStream initialValue() {
+      return new DirectByteArrayOutputStream(65536);
+    }
+  };
 
   public static Area read(Save save, int x, int z) {
-    FileHandle file = file(save, x, z);
-
-    if (!file.exists()) {
-      //Log.warning("Area does not exist");
+    RegionFile regionFile = null;
+    try {
+      regionFile = save.regions.acquire(x, z, false);
+      if (regionFile == null) return null;
+      ByteBuffer data = regionFile.map(x, z);
+      if (data == null) return null;
+      return decode(x, z, data);
+    } catch (Exception e) {
+      Log.error("Failed to read area " + x + "," + z, e);
       return null;
+    } finally {
+      if (regionFile != null) save.regions.release(regionFile);
     }
+  }
 
+  public static Area decode(int x, int z, ByteBuffer compressed) throws IOException {
+    Area area = new Area(x, z);
+    area.read(inflate(compressed));
+    return area;
+  }
+
+  /**
+   * Decodes through the stream stack used before region files, kept to compare against {@link #decode(int, int, ByteBuffer)}
+   */
+  public static Area decodeStream(int x, int z, InputStream compressed) throws IOException {
+    Inflater inflater = inflaterThreadLocal.get();
+    inflater.reset();
+    InflaterInputStream inflaterInputStream = new InflaterInputStream(compressed, inflater);
+    BufferedInputStream bufferedInputStream = new BufferedInputStream(inflaterInputStream);
+    DataInputStream dataInputStream = new DataInputStream(bufferedInputStream);
+    Area area = new Area(x, z);
+    area.read(dataInputStream);
+    dataInputStream.close();
+    return area;
+  }
+
+  /**
+   * @return the inflated data, backed by a thread local array which is reused by the next call
+   */
+  private static ByteBuffer inflate(ByteBuffer compressed) throws IOException {
     Inflater inflater = inflaterThreadLocal.get();
+    byte[] input = inputThreadLocal.get();
+    byte[] output = inflatedThreadLocal.get();
+    int length = 0;
 
+    inflater.reset();
+    if (compressed.hasArray()) {
+      inflater.setInput(compressed.array(), compressed.arrayOffset() + compressed.position(), compressed.remaining());
+      compressed.position(compressed.limit());
+    }
     try {
-      inflater.reset();
-      InputStream inputStream = file.read(8192);
-      InflaterInputStream inflaterInputStream = new InflaterInputStream(inputStream, inflater);
-      BufferedInputStream bufferedInputStream = new BufferedInputStream(inflaterInputStream);
-      DataInputStream dataInputStream = new DataInputStream(bufferedInputStream);
-      Area area = new Area(x, z);
-      area.read(dataInputStream);
-      dataInputStream.close();
-      return area;
-    } catch (Exception e) {
-      Log.error("Failed to read area " + x + "," + z, e);
-      return null;
+      while (!inflater.finished()) {
+        if (inflater.needsInput()) {
+          if (!compressed.hasRemaining()) throw new EOFException("Unexpected end of area data");
+          int n = Math.min(input.length, compressed.remaining());
+          compressed.get(input, 0, n);
+          inflater.setInput(input, 0, n);
+        }
+        if (inflater.needsDictionary()) throw new IOException("Invalid area data");
+        if (length == output.length) {
+          output = Arrays.copyOf(output, output.length * 2);
+          inflatedThreadLocal.set(output);
+        }
+        length += inflater.inflate(output, length, output.length - length);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Invalid area data", e);
     }
+    return ByteBuffer.wrap(output, 0, length);
   }
 
   public static boolean write(Save save, Area area) {
@@ -73,35 +138,36 @@ public class SaveAreaIO {
     if (!area.modifiedSinceSave(dataGroups)) return false;
     area.saveModCount();
 
-    Deflater deflater = deflaterThreadLocal.get();
-
-    FileHandle file = file(save, area.areaX, area.areaZ);
+    RegionFile regionFile = null;
     try {
-      deflater.reset();
-      OutputStream stream = file.write(false, 8192);
-      DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream, deflater);
-      BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(deflaterStream);
-      DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
-      area.writeSave(dataOutputStream, dataGroups);
-      bufferedOutputStream.flush();
-      deflaterStream.finish();
-      stream.close();
+      DirectByteArrayOutputStream stream = encode(area, dataGroups);
+      regionFile = save.regions.acquire(area.areaX, area.areaZ, true);
+      regionFile.write(area.areaX, area.areaZ, stream.buffer(), stream.count());
     } catch (Exception e) {
       Log.error("Failed to write area " + area.areaX + "," + area.areaZ, e);
       return false;
+    } finally {
+      if (regionFile != null) save.regions.release(regionFile);
     }
 
     return true;
   }
 
-  public static FileHandle file(Save save, int x, int z) {
-    FileHandle folderArea = save.folderArea();
-    FileHandle xMostSignificant = folderArea.child(Integer.toString(x & 0xFFFF0000));
-    FileHandle xLeastSignificant = xMostSignificant.child(Integer.toString(x & 0xFFFF));
-    FileHandle zMostSignificant = xLeastSignificant.child(Integer.toString(z & 0xFFFF0000));
-    zMostSignificant.mkdirs();
-    Compatibility.get().nomedia(zMostSignificant);
-    
-    return zMostSignificant.child(Integer.toString(z & 0xFFFF));
+  /**
+   * @return the deflated data, in a thread local stream which is reused by the next call
+   */
+  public static DirectByteArrayOutputStream encode(Area area, DataGroup[] entities) throws IOException {
+    Deflater deflater = deflaterThreadLocal.get();
+    DirectByteArrayOutputStream stream = outputThreadLocal.get();
+
+    deflater.reset();
+    stream.reset();
+    DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream, deflater);
+    BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(deflaterStream);
+    DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
+    area.writeSave(dataOutputStream, entities);
+    bufferedOutputStream.flush();
+    deflaterStream.finish();
+    return stream;
   }
 }
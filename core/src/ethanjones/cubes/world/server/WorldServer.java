@@ -4,6 +4,7 @@ import ethanjones.cubes.core.util.locks.RollingAreaLocked;
 import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.performance.Performance;
 import ethanjones.cubes.core.performance.PerformanceTags;
+import ethanjones.cubes.core.settings.Settings;
 import ethanjones.cubes.core.util.locks.LockManager;
 import ethanjones.cubes.core.util.locks.Locked;
 import ethanjones.cubes.entity.Entity;
@@ -23,12 +24,16 @@ import ethanjones.cubes.world.reference.multi.MultiAreaReference;
 import ethanjones.cubes.world.save.Save;
 import ethanjones.cubes.world.storage.Area;
 import ethanjones.cubes.world.thread.GenerationTask;
+import ethanjones.cubes.world.thread.ParallelAreaTick;
 import ethanjones.cubes.world.thread.WorldLockable;
 import ethanjones.cubes.world.thread.WorldRequestParameter;
 import ethanjones.cubes.world.thread.WorldTasks;
 import ethanjones.data.DataGroup;
 
+import com.badlogic.gdx.utils.Array;
+
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -39,6 +44,11 @@ public class WorldServer extends World {
 
   private RainStatus rainStatusOverride;
   private long rainStatusOverrideEnd;
+  private ParallelAreaTick parallelAreaTick;
+  // entities moved this tick, sent by PlayerManager.syncEntities
+  private final LinkedHashSet<Entity> syncedEntities = new LinkedHashSet<Entity>();
+  private final Array<Entity> syncedEntitiesArray = new Array<Entity>(Entity.class);
+  private int nextNetworkID = 1;
 
   public WorldServer(Save save) {
     super(save, Side.Server);
@@ -50,6 +60,8 @@ public class WorldServer extends World {
       Log.info("Save '" + this.save.name + "'");
     }
 
+    this.save.convertLegacyAreas();
+
     loadedAreaFilters.add(WorldTasks.getGenerationAreaFilter());
 
     this.rainStatusOverride = save.getSaveOptions().worldRainOverride;
@@ -68,9 +80,14 @@ public class WorldServer extends World {
 
     Performance.start(PerformanceTags.SERVER_WORLD_AREA_TICK);
     try (Locked<WorldLockable> locked = LockManager.lockMany(true, this, map, entities)) {
-      try (RollingAreaLocked areas = new RollingAreaLocked(map.iterator())) {
-        for (Area area : areas) {
-          area.tick();
+      if (Settings.getBooleanSettingValue(Settings.SERVER_PARALLEL_AREA_TICK)) {
+        if (parallelAreaTick == null) parallelAreaTick = new ParallelAreaTick();
+        parallelAreaTick.tick(map, locked);
+      } else {
+        try (RollingAreaLocked areas = new RollingAreaLocked(map.iterator())) {
+          for (Area area : areas) {
+            area.tick();
+          }
         }
       }
     }
@@ -120,6 +137,8 @@ public class WorldServer extends World {
   @Override
   public void dispose() {
     super.dispose();
+    if (parallelAreaTick != null) parallelAreaTick.dispose();
+    save.close();
   }
 
   @Override
@@ -149,17 +168,42 @@ public class WorldServer extends World {
     NetworkingManager.sendPacketToAllClients(packet);
   }
 
+  @Override
+  protected void entityRemoved(Entity entity) {
+    synchronized (syncedEntities) {
+      syncedEntities.remove(entity);
+    }
+    if (entity.networkID == 0) return;
+    for (ClientIdentifier clientIdentifier : Cubes.getServer().getAllClients()) {
+      if (clientIdentifier.getPlayerManager() != null) clientIdentifier.getPlayerManager().entityRemoved(entity);
+    }
+  }
+
+  /**
+   * Marks the entity to be sent to clients in range at the end of the tick, see {@link #pollSyncedEntities()}
+   */
   @Override
   public void syncEntity(UUID uuid) {
     Entity entity = getEntity(uuid);
     if (entity == null) return;
-    for (ClientIdentifier clientIdentifier : Cubes.getServer().getAllClients()) {
-      if (clientIdentifier.getPlayerManager().positionInLoadRange(entity.position)) {
-        PacketEntityUpdate packet = new PacketEntityUpdate();
-        packet.data = entity.write();
-        NetworkingManager.sendPacketToClient(packet, clientIdentifier);
+    synchronized (syncedEntities) {
+      syncedEntities.add(entity);
+    }
+  }
+
+  /**
+   * @return the entities moved since last called, with network ids assigned. Only valid until called again.
+   */
+  public Array<Entity> pollSyncedEntities() {
+    syncedEntitiesArray.clear();
+    synchronized (syncedEntities) {
+      for (Entity entity : syncedEntities) {
+        if (entity.networkID == 0) entity.networkID = nextNetworkID++;
+        syncedEntitiesArray.add(entity);
       }
+      syncedEntities.clear();
     }
+    return syncedEntitiesArray;
   }
 
   @Override
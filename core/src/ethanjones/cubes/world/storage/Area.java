@@ -3,19 +3,20 @@ package ethanjones.cubes.world.storage;
 import ethanjones.cubes.block.Block;
 import ethanjones.cubes.block.data.BlockData;
 import ethanjones.cubes.core.event.world.block.BlockChangedEvent;
+import ethanjones.cubes.core.event.world.block.BlocksChangedEvent;
 import ethanjones.cubes.core.id.IDManager;
 import ethanjones.cubes.core.id.TransparencyManager;
 import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.settings.Settings;
 import ethanjones.cubes.core.system.CubesException;
 import ethanjones.cubes.core.system.Executor;
-import ethanjones.cubes.core.util.ThreadRandom;
 import ethanjones.cubes.core.util.locks.LockManager;
 import ethanjones.cubes.core.util.locks.Lockable;
 import ethanjones.cubes.core.util.locks.Locked;
 import ethanjones.cubes.graphics.world.area.AreaRenderStatus;
 import ethanjones.cubes.graphics.world.area.AreaRenderer;
 import ethanjones.cubes.networking.NetworkingManager;
+import ethanjones.cubes.networking.server.AreaPayloadCache;
 import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
 import ethanjones.cubes.world.CoordinateConverter;
@@ -25,9 +26,15 @@ import ethanjones.cubes.world.thread.WorldLockable;
 import ethanjones.data.Data;
 import ethanjones.data.DataGroup;
 
+import com.badlogic.gdx.math.RandomXS128;
+
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -42,6 +49,14 @@ public class Area extends Lockable<Area> {
   public static final int SIZE_BLOCKS_POW2 = 5;
   public static final int SIZE_BLOCKS_SQUARED = SIZE_BLOCKS * SIZE_BLOCKS;
   public static final int SIZE_BLOCKS_CUBED = SIZE_BLOCKS * SIZE_BLOCKS * SIZE_BLOCKS;
+  public static final int SIZE_BLOCKS_CUBED_POW2 = SIZE_BLOCKS_POW2 * 3;
+
+  // networking section flags, the low bits are the light encoding
+  private static final int NETWORK_SECTION_BLOCKS = 1 << 2;
+  private static final int NETWORK_LIGHT_UNIFORM = 0;
+  private static final int NETWORK_LIGHT_PALETTE = 1;
+  private static final int NETWORK_LIGHT_FULL = 2;
+  private static final int NETWORK_LIGHT_PALETTE_SIZE = 16;
   public static final int HALF_SIZE_BLOCKS = SIZE_BLOCKS / 2;
   public static final int MAX_Y = ((Integer.MAX_VALUE - 8) / SIZE_BLOCKS_CUBED) * SIZE_BLOCKS;
 
@@ -72,10 +87,12 @@ public class Area extends Lockable<Area> {
   //
   // blank == 0, as id=0 meta=0 visible=0
   //
-  //int blockID = blocks[i] & 0xFFFFF;
-  //int blockMeta = (blocks[i] >> 20) & 0xFF;
-  //boolean blockVisible = (blocks[i] & BLOCK_VISIBLE) == BLOCK_VISIBLE;
-  public volatile int[] blocks;
+  //int blockID = getBlockInt(i) & 0xFFFFF;
+  //int blockMeta = (getBlockInt(i) >> 20) & 0xFF;
+  //boolean blockVisible = (getBlockInt(i) & BLOCK_VISIBLE) == BLOCK_VISIBLE;
+  //
+  // One PaletteStorage per SIZE_BLOCKS high section
+  public volatile PaletteStorage[] blocks;
   public volatile byte[] light; // most significant 4 bits are sunlight. the least significant are lights
   public volatile int[] heightmap = new int[SIZE_BLOCKS_SQUARED];
   public volatile AreaRenderer[] areaRenderer; //Always null on server, unless shared
@@ -122,7 +139,9 @@ public class Area extends Lockable<Area> {
     try (Locked<Area> l = LockManager.lockMany(true, this, toCopy)) {
       if (toCopy.isReady()) {
         this.setupArrays(toCopy.maxY);
-        System.arraycopy(toCopy.blocks, 0, this.blocks, 0, this.blocks.length);
+        for (int i = 0; i < this.blocks.length; i++) {
+          this.blocks[i] = toCopy.blocks[i].copy();
+        }
         System.arraycopy(toCopy.light, 0, this.light, 0, this.light.length);
         System.arraycopy(toCopy.heightmap, 0, this.heightmap, 0, this.heightmap.length);
         if (toCopy.features.get() != null) this.features.set(Boolean.TRUE);
@@ -130,23 +149,50 @@ public class Area extends Lockable<Area> {
     }
   }
 
-  public Block getBlock(int x, int y, int z) {
+  /**
+   * Copies sections minSection to maxSection into a new area, moved down so minSection starts at y = 0.
+   * The copy is not in an area map, so can be read off the main threads without holding this area's lock.
+   *
+   * @param light used for the copy's light if large enough
+   */
+  public Area copySections(int minSection, int maxSection, byte[] light) {
+    Area copy = new Area(areaX, areaZ);
     try (Locked<Area> l = acquireReadLock()) {
-      if (unready(y)) return null;
-      int b = blocks[getRef(x, y, z)] & 0xFFFFF;
-      return IDManager.toBlock(b);
+      if (!isReady()) return copy;
+      int sections = Math.max(0, Math.min(maxSection, blocks.length - 1) - minSection + 1);
+      int lightLength = (maxSection - minSection + 1) * SIZE_BLOCKS_CUBED;
+      if (light == null || light.length < lightLength) light = new byte[lightLength];
+
+      PaletteStorage[] copyBlocks = new PaletteStorage[sections];
+      for (int i = 0; i < sections; i++) {
+        copyBlocks[i] = blocks[minSection + i].copy();
+      }
+      if (sections > 0) System.arraycopy(this.light, minSection * SIZE_BLOCKS_CUBED, light, 0, sections * SIZE_BLOCKS_CUBED);
+
+      copy.blocks = copyBlocks;
+      copy.light = light;
+      copy.maxY = (sections * SIZE_BLOCKS) - 1;
+      copy.height = sections;
     }
+    return copy;
   }
 
-  public int getMeta(int x, int y, int z) {
-    try (Locked<Area> l = acquireReadLock()) {
-      if (unready(y)) return 0;
-      return (blocks[getRef(x, y, z)] >> 20) & 0xFF;
-    }
+  public Block getBlock(int x, int y, int z) {
+    int b = readBlockInt(x, y, z);
+    return b == -1 ? null : IDManager.toBlock(b & 0xFFFFF);
   }
 
+  public int getMeta(int x, int y, int z) {
+    int b = readBlockInt(x, y, z);
+    return b == -1 ? 0 : (b >> 20) & 0xFF;
+  }
 
   public int heightmap(int x, int z) {
+    int stamp = tryOptimisticRead();
+    if (stamp != -1) {
+      int height = isReady() ? heightmap[getHeightMapRef(x, z)] : 0;
+      if (validate(stamp)) return height;
+    }
     try (Locked<Area> l = acquireReadLock()) {
       if (!isReady()) return 0;
       return heightmap[getHeightMapRef(x, z)];
@@ -155,27 +201,22 @@ public class Area extends Lockable<Area> {
 
   // Get the bits XXXX0000
   public int getSunlight(int x, int y, int z) {
-    try (Locked<Area> l = acquireReadLock()) {
-      if (unready(y)) return 15;
-      return (light[getRef(x, y, z)] >> 4) & 0xF;
-    }
+    int l = readLight(x, y, z);
+    return l == -1 ? 15 : (l >> 4) & 0xF;
   }
 
   // Get the bits 0000XXXX
   public int getLight(int x, int y, int z) {
-    try (Locked<Area> l = acquireReadLock()) {
-      if (unready(y)) return 0;
-      return (light[getRef(x, y, z)]) & 0xF;
-    }
+    int l = readLight(x, y, z);
+    return l == -1 ? 0 : l & 0xF;
   }
 
   public int getMaxLight(int x, int y, int z) {
-    try (Locked<Area> l = acquireReadLock()) {
-      if (unready(y)) return 15;
-      int sunlight = (light[getRef(x, y, z)] >> 4) & 0xF;
-      int blocklight = (light[getRef(x, y, z)]) & 0xF;
-      return sunlight > blocklight ? sunlight : blocklight;
-    }
+    int l = readLight(x, y, z);
+    if (l == -1) return 15;
+    int sunlight = (l >> 4) & 0xF;
+    int blocklight = l & 0xF;
+    return sunlight > blocklight ? sunlight : blocklight;
   }
 
   // Set the bits XXXX0000
@@ -201,11 +242,58 @@ public class Area extends Lockable<Area> {
   }
 
   public int getLightRaw(int x, int y, int z) {
-    try (Locked<Area> locked = acquireReadLock()) {
-      if (y > maxY) return SunLight.MAX_SUNLIGHT;
-      if (unready(y)) return 0;
-      return light[getRef(x, y, z)] & 0xFF; // byte is signed (-128 to 127) so & 0xFF to convert to 0-255
+    if (y > maxY) return SunLight.MAX_SUNLIGHT;
+    int l = readLight(x, y, z);
+    return l == -1 ? 0 : l;
+  }
+
+  // Reads without locking unless being written. Returns -1 if unready
+  private int readBlockInt(int x, int y, int z) {
+    int stamp = tryOptimisticRead();
+    if (stamp != -1) {
+      try {
+        int b = unlockedBlockInt(x, y, z);
+        if (validate(stamp)) return b;
+      } catch (ArrayIndexOutOfBoundsException | NullPointerException ignored) {
+        // saw a partially written area, read locked instead
+      }
+    }
+    try (Locked<Area> l = acquireReadLock()) {
+      return unlockedBlockInt(x, y, z);
+    }
+  }
+
+  private int unlockedBlockInt(int x, int y, int z) {
+    PaletteStorage[] blocks = this.blocks;
+    if (unloaded || blocks == null || y < 0 || y > maxY) return -1;
+    int ref = getRef(x, y, z);
+    int section = ref >> SIZE_BLOCKS_CUBED_POW2;
+    if (section >= blocks.length) return -1;
+    return blocks[section].get(ref & (SIZE_BLOCKS_CUBED - 1));
+  }
+
+  // Reads without locking unless being written. Returns the unsigned light byte, or -1 if unready
+  private int readLight(int x, int y, int z) {
+    int stamp = tryOptimisticRead();
+    if (stamp != -1) {
+      try {
+        int l = unlockedLight(x, y, z);
+        if (validate(stamp)) return l;
+      } catch (ArrayIndexOutOfBoundsException | NullPointerException ignored) {
+        // saw a partially written area, read locked instead
+      }
     }
+    try (Locked<Area> l = acquireReadLock()) {
+      return unlockedLight(x, y, z);
+    }
+  }
+
+  private int unlockedLight(int x, int y, int z) {
+    byte[] light = this.light;
+    if (unloaded || blocks == null || light == null || y < 0 || y > maxY) return -1;
+    int ref = getRef(x, y, z);
+    if (ref >= light.length) return -1;
+    return light[ref] & 0xFF; // byte is signed (-128 to 127) so & 0xFF to convert to 0-255
   }
 
   public boolean isBlank() {
@@ -231,6 +319,7 @@ public class Area extends Lockable<Area> {
     try (Locked<Area> locked = acquireWriteLock()) {
       if (!unloaded) removeArrays();
     }
+    AreaPayloadCache.remove(this);
   }
 
   private void removeArrays() {
@@ -259,64 +348,22 @@ public class Area extends Lockable<Area> {
     if (y > maxY || y < 0) {
       return;
     }
-    if (blocks[i] == 0) return; // air cannot be visible
+    int b = getBlockInt(i);
+    if (b == 0) return; // air cannot be visible
 
-    blocks[i] &= 0xFFFFFFF; // keep block id and meta
+    int updated = b & 0xFFFFFFF; // keep block id and meta
+    if (visible(x, y, z, i)) updated |= BLOCK_VISIBLE;
+    if (updated != b) setBlockInt(i, updated);
+  }
 
-    if (x < SIZE_BLOCKS - 1) {
-      if (TransparencyManager.isTransparent(blocks[i + MAX_X_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
-    if (x > 0) {
-      if (TransparencyManager.isTransparent(blocks[i + MIN_X_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
-    if (y < maxY) {
-      if (TransparencyManager.isTransparent(blocks[i + MAX_Y_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
-    if (y > 0) {
-      if (TransparencyManager.isTransparent(blocks[i + MIN_Y_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
-    if (z < SIZE_BLOCKS - 1) {
-      if (TransparencyManager.isTransparent(blocks[i + MAX_Z_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
-    if (z > 0) {
-      if (TransparencyManager.isTransparent(blocks[i + MIN_Z_OFFSET])) {
-        blocks[i] |= BLOCK_VISIBLE;
-        return;
-      }
-    } else {
-      blocks[i] |= BLOCK_VISIBLE;
-      return;
-    }
+  //Should already be locked
+  private boolean visible(int x, int y, int z, int i) {
+    if (x == SIZE_BLOCKS - 1 || TransparencyManager.isTransparent(getBlockInt(i + MAX_X_OFFSET))) return true;
+    if (x == 0 || TransparencyManager.isTransparent(getBlockInt(i + MIN_X_OFFSET))) return true;
+    if (y >= maxY || TransparencyManager.isTransparent(getBlockInt(i + MAX_Y_OFFSET))) return true;
+    if (y == 0 || TransparencyManager.isTransparent(getBlockInt(i + MIN_Y_OFFSET))) return true;
+    if (z == SIZE_BLOCKS - 1 || TransparencyManager.isTransparent(getBlockInt(i + MAX_Z_OFFSET))) return true;
+    return z == 0 || TransparencyManager.isTransparent(getBlockInt(i + MIN_Z_OFFSET));
   }
 
   public void setBlock(Block block, int x, int y, int z, int meta) {
@@ -332,8 +379,8 @@ public class Area extends Lockable<Area> {
       if (isUnloaded()) return;
       setupArrays(y);
 
-      b = blocks[ref];
-      blocks[ref] = n;
+      b = getBlockInt(ref);
+      setBlockInt(ref, n);
 
       old = IDManager.toBlock(b & 0xFFFFF);
 
@@ -359,6 +406,81 @@ public class Area extends Lockable<Area> {
     new BlockChangedEvent(new BlockReference().setFromBlockCoordinates(x + minBlockX, y, z + minBlockZ), old, (b >> 20) & 0xFF, block, meta, this).post();
   }
 
+  /**
+   * Sets many blocks holding the write lock once. Visibility, the heightmap and render status are updated per block,
+   * neighbouring areas are locked once each, then a single BlocksChangedEvent is posted for lighting and networking,
+   * followed by a bulk BlockChangedEvent per changed block.
+   *
+   * @param refs      from {@link #getRef(int, int, int)}, y must not be negative
+   * @param blockInts block ids with the meta in bits 20 to 27
+   */
+  public void setBlocks(int[] refs, int[] blockInts, int count) {
+    int[] changedRefs = new int[count];
+    int[] oldBlocks = new int[count];
+    int[] newBlocks = new int[count];
+    int changed = 0;
+
+    try (Locked<Area> locked = acquireWriteLock()) {
+      if (isUnloaded()) return;
+      int maxRef = 0;
+      for (int i = 0; i < count; i++) {
+        maxRef = Math.max(maxRef, refs[i]);
+      }
+      setupArrays(maxRef / SIZE_BLOCKS_SQUARED);
+
+      for (int i = 0; i < count; i++) {
+        int ref = refs[i];
+        int n = blockInts[i] & 0xFFFFFFF;
+        int b = getBlockInt(ref) & 0xFFFFFFF;
+        if (b == n) continue;
+        setBlockInt(ref, n);
+
+        int x = getX(ref), y = getY(ref), z = getZ(ref);
+        Block old = IDManager.toBlock(b & 0xFFFFF);
+        Block block = IDManager.toBlock(n & 0xFFFFF);
+        if (old != null && old.blockData() && old != block) {
+          removeBlockData(x, y, z);
+        }
+        if (block != null && block.blockData()) {
+          addBlockData(block, x, y, z, (n >> 20) & 0xFF);
+        }
+
+        int hmRef = x + z * SIZE_BLOCKS;
+        if (y > heightmap[hmRef] && block != null) heightmap[hmRef] = y;
+        if (y == heightmap[hmRef] && block == null) calculateHeight(x, z);
+
+        changedRefs[changed] = ref;
+        oldBlocks[changed] = b;
+        newBlocks[changed] = n;
+        changed++;
+      }
+      if (changed == 0) return;
+
+      boolean updateRender = Side.isClient() || shared;
+      for (int i = 0; i < changed; i++) {
+        int ref = changedRefs[i];
+        int y = getY(ref);
+        updateNeighbours(getX(ref), y, getZ(ref), ref);
+        if (updateRender) {
+          int section = y / SIZE_BLOCKS;
+          updateRender(section);
+          if (y % SIZE_BLOCKS == 0) updateRender(section - 1);
+          if (y % SIZE_BLOCKS == SIZE_BLOCKS - 1) updateRender(section + 1);
+        }
+      }
+      modify();
+    }
+
+    //Must be after lock released to prevent dead locks
+    doUpdatesOtherAreas(changedRefs, oldBlocks, newBlocks, changed);
+    new BlocksChangedEvent(this, changed, changedRefs, oldBlocks, newBlocks).post();
+    for (int i = 0; i < changed; i++) {
+      int ref = changedRefs[i], b = oldBlocks[i], n = newBlocks[i];
+      BlockReference blockReference = new BlockReference().setFromBlockCoordinates(getX(ref) + minBlockX, getY(ref), getZ(ref) + minBlockZ);
+      new BlockChangedEvent(blockReference, IDManager.toBlock(b & 0xFFFFF), (b >> 20) & 0xFF, IDManager.toBlock(n & 0xFFFFF), (n >> 20) & 0xFF, this, true).post();
+    }
+  }
+
   public BlockData removeBlockData(int x, int y, int z) {
     try (Locked<Area> locked = acquireWriteLock()) {
       Iterator<BlockData> iterator = blockDataList.iterator();
@@ -446,7 +568,7 @@ public class Area extends Lockable<Area> {
     if (Side.isServer()) {
       AreaMap areaMap = areaMap();
       if (!featuresGenerated() || areaMap == null) return;
-      ThreadRandom random = ThreadRandom.get();
+      RandomXS128 random = new RandomXS128(areaMap.world.areaTickSeed(areaX, areaZ));
       //try (Locked<Area> locked = lockAllNeighbours(true, false)) {
       int updates = NUM_RANDOM_UPDATES * height;
       for (int i = 0; i < updates; i++) {
@@ -463,7 +585,7 @@ public class Area extends Lockable<Area> {
   }
 
   private void randomTick(int x, int y, int z, AreaMap areaMap) {
-    int b = blocks[getRef(x, y, z)];
+    int b = getBlockInt(getRef(x, y, z));
     Block block = IDManager.toBlock(b & 0xFFFFF);
     if (block == null) return;
     block.randomTick(areaMap.world, this, x, y, z, (b >> 20) & 0xFF);
@@ -529,18 +651,56 @@ public class Area extends Lockable<Area> {
     }
   }
 
+  // the blocks next to changes on the edge of the area, locking each neighbour once
+  private void doUpdatesOtherAreas(int[] refs, int[] oldBlocks, int[] newBlocks, int count) {
+    boolean updateRender = Side.isClient() || shared;
+
+    AreaMap areaMap = areaMap();
+    if (areaMap == null || count == 0) return;
+    try (Locked<WorldLockable> areaMapLock = areaMap.acquireReadLock()) {
+      updateEdge(neighbour(areaX - 1, areaZ), refs, oldBlocks, newBlocks, count, 0, -1, updateRender);
+      updateEdge(neighbour(areaX + 1, areaZ), refs, oldBlocks, newBlocks, count, SIZE_BLOCKS - 1, -1, updateRender);
+      updateEdge(neighbour(areaX, areaZ - 1), refs, oldBlocks, newBlocks, count, -1, 0, updateRender);
+      updateEdge(neighbour(areaX, areaZ + 1), refs, oldBlocks, newBlocks, count, -1, SIZE_BLOCKS - 1, updateRender);
+    }
+  }
+
+  // edgeX or edgeZ is the coordinate in this area of the changes next to the neighbour, the other is -1
+  private static void updateEdge(Area area, int[] refs, int[] oldBlocks, int[] newBlocks, int count, int edgeX, int edgeZ, boolean updateRender) {
+    if (area == null) return;
+    try (Locked<Area> locked = area.acquireWriteLock()) {
+      boolean ready = area.isReady();
+      for (int i = 0; i < count; i++) {
+        int ref = refs[i];
+        int x = getX(ref), y = getY(ref), z = getZ(ref);
+        if ((edgeX != -1 && x != edgeX) || (edgeZ != -1 && z != edgeZ)) continue;
+        if (TransparencyManager.isTransparent(oldBlocks[i]) == TransparencyManager.isTransparent(newBlocks[i])) continue;
+
+        if (edgeX != -1) x = SIZE_BLOCKS - 1 - x;
+        if (edgeZ != -1) z = SIZE_BLOCKS - 1 - z;
+        if (ready) area.update(x, y, z, getRef(x, y, z));
+        if (updateRender) area.updateRender(y / SIZE_BLOCKS);
+      }
+    }
+  }
+
   private void updateSurrounding(int x, int y, int z, int ref) {
     try (Locked<Area> locked = acquireWriteLock()) {
-      update(x, y, z, ref);
-      if (x < SIZE_BLOCKS - 1) update(x + 1, y, z, ref + MAX_X_OFFSET);
-      if (x > 0) update(x - 1, y, z, ref + MIN_X_OFFSET);
-      if (y < maxY) update(x, y + 1, z, ref + MAX_Y_OFFSET);
-      if (y > 0) update(x, y - 1, z, ref + MIN_Y_OFFSET);
-      if (z < SIZE_BLOCKS - 1) update(x, y, z + 1, ref + MAX_Z_OFFSET);
-      if (z > 0) update(x, y, z - 1, ref + MIN_Z_OFFSET);
+      updateNeighbours(x, y, z, ref);
     }
   }
 
+  //Should already be write locked
+  private void updateNeighbours(int x, int y, int z, int ref) {
+    update(x, y, z, ref);
+    if (x < SIZE_BLOCKS - 1) update(x + 1, y, z, ref + MAX_X_OFFSET);
+    if (x > 0) update(x - 1, y, z, ref + MIN_X_OFFSET);
+    if (y < maxY) update(x, y + 1, z, ref + MAX_Y_OFFSET);
+    if (y > 0) update(x, y - 1, z, ref + MIN_Y_OFFSET);
+    if (z < SIZE_BLOCKS - 1) update(x, y, z + 1, ref + MAX_Z_OFFSET);
+    if (z > 0) update(x, y, z - 1, ref + MIN_Z_OFFSET);
+  }
+
   public void updateRender(int section) {
     if (section >= 0 && section < renderStatus.length) {
       renderStatus[section] = AreaRenderStatus.UNKNOWN;
@@ -573,10 +733,10 @@ public class Area extends Lockable<Area> {
         int height = -1;
         for (int y = 0; y <= maxY; y++) {
           int ref = (z * SIZE_BLOCKS) + (y * SIZE_BLOCKS_SQUARED);
-          if (TransparencyManager.isTransparent(blocks[ref])) {
-            if (blocks[ref + MAX_X_OFFSET] != 0) blocks[ref + MAX_X_OFFSET] |= BLOCK_VISIBLE;
+          if (TransparencyManager.isTransparent(getBlockInt(ref))) {
+            if (getBlockInt(ref + MAX_X_OFFSET) != 0) setVisible(ref + MAX_X_OFFSET);
           } else {
-            blocks[ref] |= BLOCK_VISIBLE;
+            setVisible(ref);
             height = y;
           }
         }
@@ -587,10 +747,10 @@ public class Area extends Lockable<Area> {
         int height = -1;
         for (int y = 0; y <= maxY; y++) {
           int ref = (SIZE_BLOCKS - 1) + (z * SIZE_BLOCKS) + (y * SIZE_BLOCKS_SQUARED);
-          if (TransparencyManager.isTransparent(blocks[ref])) {
-            if (blocks[ref + MIN_X_OFFSET] != 0) blocks[ref + MIN_X_OFFSET] |= BLOCK_VISIBLE;
+          if (TransparencyManager.isTransparent(getBlockInt(ref))) {
+            if (getBlockInt(ref + MIN_X_OFFSET) != 0) setVisible(ref + MIN_X_OFFSET);
           } else {
-            blocks[ref] |= BLOCK_VISIBLE;
+            setVisible(ref);
             height = y;
           }
         }
@@ -601,10 +761,10 @@ public class Area extends Lockable<Area> {
         int height = -1;
         for (int y = 0; y <= maxY; y++) {
           int ref = x + (y * SIZE_BLOCKS_SQUARED);
-          if (TransparencyManager.isTransparent(blocks[ref])) {
-            if (blocks[ref + MAX_Z_OFFSET] != 0) blocks[ref + MAX_Z_OFFSET] |= BLOCK_VISIBLE;
+          if (TransparencyManager.isTransparent(getBlockInt(ref))) {
+            if (getBlockInt(ref + MAX_Z_OFFSET) != 0) setVisible(ref + MAX_Z_OFFSET);
           } else {
-            blocks[ref] |= BLOCK_VISIBLE;
+            setVisible(ref);
             height = y;
           }
         }
@@ -615,10 +775,10 @@ public class Area extends Lockable<Area> {
         int height = -1;
         for (int y = 0; y <= maxY; y++) {
           int ref = x + (SIZE_BLOCKS_SQUARED - SIZE_BLOCKS) + (y * SIZE_BLOCKS_SQUARED);
-          if (TransparencyManager.isTransparent(blocks[ref])) {
-            if (blocks[ref + MIN_Z_OFFSET] != 0) blocks[ref + MIN_Z_OFFSET] |= BLOCK_VISIBLE;
+          if (TransparencyManager.isTransparent(getBlockInt(ref))) {
+            if (getBlockInt(ref + MIN_Z_OFFSET) != 0) setVisible(ref + MIN_Z_OFFSET);
           } else {
-            blocks[ref] |= BLOCK_VISIBLE;
+            setVisible(ref);
             height = y;
           }
         }
@@ -630,13 +790,13 @@ public class Area extends Lockable<Area> {
           int height = -1;
           for (int y = 0; y <= maxY; y++) {
             int ref = x + z * SIZE_BLOCKS + y * SIZE_BLOCKS_SQUARED;
-            if (TransparencyManager.isTransparent(blocks[ref])) {
-              if (blocks[ref + MAX_X_OFFSET] != 0) blocks[ref + MAX_X_OFFSET] |= BLOCK_VISIBLE;
-              if (blocks[ref + MIN_X_OFFSET] != 0) blocks[ref + MIN_X_OFFSET] |= BLOCK_VISIBLE;
-              if (blocks[ref + MAX_Z_OFFSET] != 0) blocks[ref + MAX_Z_OFFSET] |= BLOCK_VISIBLE;
-              if (blocks[ref + MIN_Z_OFFSET] != 0) blocks[ref + MIN_Z_OFFSET] |= BLOCK_VISIBLE;
-              if (y < maxY && blocks[ref + MAX_Y_OFFSET] != 0) blocks[ref + MAX_Y_OFFSET] |= BLOCK_VISIBLE;
-              if (y > 0 && blocks[ref + MIN_Y_OFFSET] != 0) blocks[ref + MIN_Y_OFFSET] |= BLOCK_VISIBLE;
+            if (TransparencyManager.isTransparent(getBlockInt(ref))) {
+              if (getBlockInt(ref + MAX_X_OFFSET) != 0) setVisible(ref + MAX_X_OFFSET);
+              if (getBlockInt(ref + MIN_X_OFFSET) != 0) setVisible(ref + MIN_X_OFFSET);
+              if (getBlockInt(ref + MAX_Z_OFFSET) != 0) setVisible(ref + MAX_Z_OFFSET);
+              if (getBlockInt(ref + MIN_Z_OFFSET) != 0) setVisible(ref + MIN_Z_OFFSET);
+              if (y < maxY && getBlockInt(ref + MAX_Y_OFFSET) != 0) setVisible(ref + MAX_Y_OFFSET);
+              if (y > 0 && getBlockInt(ref + MIN_Y_OFFSET) != 0) setVisible(ref + MIN_Y_OFFSET);
             } else {
               height = y;
             }
@@ -648,9 +808,9 @@ public class Area extends Lockable<Area> {
       for (int x = 0; x < SIZE_BLOCKS; x++) {
         for (int z = 0; z < SIZE_BLOCKS; z++) {
           int i = getRef(x, 0, z);
-          if (blocks[i] != 0) blocks[i] |= BLOCK_VISIBLE;
+          if (getBlockInt(i) != 0) setVisible(i);
           i = getRef(x, maxY, z);
-          if (blocks[i] != 0) blocks[i] |= BLOCK_VISIBLE;
+          if (getBlockInt(i) != 0) setVisible(i);
         }
       }
 
@@ -665,7 +825,10 @@ public class Area extends Lockable<Area> {
       }
       if (isBlank()) {
         int h = (int) Math.ceil((y + 1) / (float) SIZE_BLOCKS);
-        blocks = new int[SIZE_BLOCKS_CUBED * h];
+        blocks = new PaletteStorage[h];
+        for (int i = 0; i < h; i++) {
+          blocks[i] = new PaletteStorage();
+        }
         light = new byte[SIZE_BLOCKS_CUBED * h];
         AreaRenderer.free(areaRenderer);
         if (Side.isClient() || shared) {
@@ -693,7 +856,7 @@ public class Area extends Lockable<Area> {
           int column = x + z * SIZE_BLOCKS;
           int y = maxY;
           while (y >= 0) {
-            if (blocks[column + y * SIZE_BLOCKS_SQUARED] != 0) {
+            if (getBlockInt(column + y * SIZE_BLOCKS_SQUARED) != 0) {
               heightmap[column] = y;
               continue zLoop;
             }
@@ -710,7 +873,7 @@ public class Area extends Lockable<Area> {
       int column = x + z * SIZE_BLOCKS;
       int y = maxY;
       while (y >= 0) {
-        if (blocks[column + y * SIZE_BLOCKS_SQUARED] != 0) {
+        if (getBlockInt(column + y * SIZE_BLOCKS_SQUARED) != 0) {
           heightmap[column] = y;
           return;
         }
@@ -727,14 +890,16 @@ public class Area extends Lockable<Area> {
       if (isBlank() || h <= maxY || h > MAX_Y) return;
 
       int oldMaxY = maxY;
-      int[] oldBlocks = blocks;
+      PaletteStorage[] oldBlocks = blocks;
       byte[] oldLight = light;
       AreaRenderer[] oldAreaRenderer = areaRenderer;
 
       int newHeight = (int) Math.ceil((h + 1) / (float) SIZE_BLOCKS); //Round up to multiple of SIZE_BLOCKS
 
-      int[] newBlocks = new int[SIZE_BLOCKS_CUBED * newHeight];
-      System.arraycopy(oldBlocks, 0, newBlocks, 0, oldBlocks.length);
+      PaletteStorage[] newBlocks = Arrays.copyOf(oldBlocks, newHeight);
+      for (int i = oldBlocks.length; i < newHeight; i++) {
+        newBlocks[i] = new PaletteStorage();
+      }
 
       byte[] newLight = new byte[SIZE_BLOCKS_CUBED * newHeight];
       System.arraycopy(oldLight, 0, newLight, 0, oldLight.length);
@@ -780,9 +945,7 @@ public class Area extends Lockable<Area> {
         return;
       }
 
-      int[] oldBlocks = blocks;
-      blocks = new int[SIZE_BLOCKS_CUBED * usedHeight];
-      System.arraycopy(oldBlocks, 0, blocks, 0, blocks.length);
+      blocks = Arrays.copyOf(blocks, usedHeight);
 
       byte[] oldLight = light;
       light = new byte[SIZE_BLOCKS_CUBED * usedHeight];
@@ -808,20 +971,11 @@ public class Area extends Lockable<Area> {
 
   //Should be read or write locked
   private int usedHeight() {
-    int y = maxY;
-    int i = blocks.length - 1;
-    int maxUsedY = -1;
-    while (y >= 0 && maxUsedY == -1) {
-      for (int b = 0; b < SIZE_BLOCKS_SQUARED; b++) {
-        if (blocks[i] != 0) {
-          maxUsedY = y;
-          break;
-        }
-        i--;
-      }
-      y--;
+    int usedHeight = blocks.length;
+    while (usedHeight > 0 && blocks[usedHeight - 1].isEmpty()) {
+      usedHeight--;
     }
-    return (int) Math.ceil((maxUsedY + 1) / (float) SIZE_BLOCKS);
+    return usedHeight;
   }
 
   @Override
@@ -829,20 +983,106 @@ public class Area extends Lockable<Area> {
     return hashCode;
   }
 
+  /**
+   * Per section only writes the blocks if it is not empty, and the light as one value if it is uniform or as 4 bit
+   * indices into a palette if it has at most 16 distinct values. Read by {@link #readArea(DataInputStream)}.
+   */
   public void writeNetworking(DataOutputStream dataOutputStream) throws IOException {
-    write(dataOutputStream, false, true, false, null);
+    try (Locked<Area> locked = acquireReadLock()) {
+      dataOutputStream.writeInt(areaX);
+      dataOutputStream.writeInt(areaZ);
+      if (isBlank()) {
+        dataOutputStream.writeInt(0);
+        return;
+      }
+
+      dataOutputStream.writeInt(featuresGenerated() ? height : -height);
+      for (int i = 0; i < SIZE_BLOCKS_SQUARED; i++) {
+        dataOutputStream.writeInt(heightmap[i]);
+      }
+
+      int[] lightIndex = new int[256];
+      byte[] lightPalette = new byte[NETWORK_LIGHT_PALETTE_SIZE];
+      for (int section = 0; section < height; section++) {
+        int offset = section * SIZE_BLOCKS_CUBED;
+
+        // distinct light values in the section, stopping once there are too many for a palette
+        Arrays.fill(lightIndex, -1);
+        int paletteSize = 0;
+        for (int i = offset; i < offset + SIZE_BLOCKS_CUBED && paletteSize <= NETWORK_LIGHT_PALETTE_SIZE; i++) {
+          int l = light[i] & 0xFF;
+          if (lightIndex[l] != -1) continue;
+          if (paletteSize < NETWORK_LIGHT_PALETTE_SIZE) lightPalette[paletteSize] = light[i];
+          lightIndex[l] = paletteSize++;
+        }
+        int lightType = paletteSize == 1 ? NETWORK_LIGHT_UNIFORM : (paletteSize <= NETWORK_LIGHT_PALETTE_SIZE ? NETWORK_LIGHT_PALETTE : NETWORK_LIGHT_FULL);
+
+        boolean writeBlocks = !blocks[section].isEmpty();
+        dataOutputStream.writeByte((writeBlocks ? NETWORK_SECTION_BLOCKS : 0) | lightType);
+
+        if (writeBlocks) writeBlocks(dataOutputStream, offset, offset + SIZE_BLOCKS_CUBED);
+
+        if (lightType == NETWORK_LIGHT_UNIFORM) {
+          dataOutputStream.writeByte(light[offset]);
+        } else if (lightType == NETWORK_LIGHT_PALETTE) {
+          dataOutputStream.writeByte(paletteSize);
+          dataOutputStream.write(lightPalette, 0, paletteSize);
+          for (int i = offset; i < offset + SIZE_BLOCKS_CUBED; i += 2) {
+            dataOutputStream.writeByte(lightIndex[light[i] & 0xFF] | (lightIndex[light[i + 1] & 0xFF] << 4));
+          }
+        } else {
+          dataOutputStream.write(light, offset, SIZE_BLOCKS_CUBED);
+        }
+      }
+
+      dataOutputStream.writeShort(0);
+      dataOutputStream.writeShort(blockDataList.size());
+      writeBlockData(dataOutputStream);
+    }
+  }
+
+  // run length encoded block ints from (inclusive) to to (exclusive), must be locked
+  private void writeBlocks(DataOutputStream dataOutputStream, int from, int to) throws IOException {
+    int currentBlock = -1, num = 0;
+    for (int i = from; i < to; i++) {
+      int block = getBlockInt(i); // always positive
+      if (block == currentBlock) {
+        num++;
+      } else {
+        if (currentBlock != -1) {
+          if (num == 1) {
+            dataOutputStream.writeInt(currentBlock);
+          } else {
+            dataOutputStream.writeInt(-num);
+            dataOutputStream.writeInt(currentBlock);
+          }
+        }
+        currentBlock = block;
+        num = 1;
+      }
+    }
+    if (num == 1) {
+      dataOutputStream.writeInt(currentBlock);
+    } else {
+      dataOutputStream.writeInt(-num);
+      dataOutputStream.writeInt(currentBlock);
+    }
+  }
+
+  // must be locked
+  private void writeBlockData(DataOutputStream dataOutputStream) throws IOException {
+    for (BlockData blockData : blockDataList) {
+      dataOutputStream.writeInt(getRef(blockData.getX(), blockData.getY(), blockData.getZ()));
+      Data.output(blockData.write(), dataOutputStream);
+    }
   }
 
   public void writeSave(DataOutputStream dataOutputStream, DataGroup[] entities) throws IOException {
-    write(dataOutputStream, false, false, true, entities); //TODO resize when writing
+    write(dataOutputStream, false, true, entities); //TODO resize when writing
   }
 
-  private void write(DataOutputStream dataOutputStream, boolean resize, boolean writeCoordinates, boolean writeEntities, DataGroup[] entities) throws IOException {
+  private void write(DataOutputStream dataOutputStream, boolean resize, boolean writeEntities, DataGroup[] entities) throws IOException {
     try (Locked<Area> locked = acquireReadLock()) {
-      if (writeCoordinates) {
-        dataOutputStream.writeInt(areaX);
-        dataOutputStream.writeInt(areaZ);
-      }
       if (isBlank()) {
         dataOutputStream.writeInt(0);
         return;
@@ -855,30 +1095,7 @@ public class Area extends Lockable<Area> {
         dataOutputStream.writeInt(heightmap[i]);
       }
 
-      int currentBlock = -1, num = 0;
-      for (int i = 0; i < (SIZE_BLOCKS_CUBED * usedHeight); i++) {
-        int block = blocks[i]; // always positive
-        if (block == currentBlock) {
-          num++;
-        } else {
-          if (currentBlock != -1) {
-            if (num == 1) {
-              dataOutputStream.writeInt(currentBlock);
-            } else {
-              dataOutputStream.writeInt(-num);
-              dataOutputStream.writeInt(currentBlock);
-            }
-          }
-          currentBlock = block;
-          num = 1;
-        }
-      }
-      if (num == 1) {
-        dataOutputStream.writeInt(currentBlock);
-      } else {
-        dataOutputStream.writeInt(-num);
-        dataOutputStream.writeInt(currentBlock);
-      }
+      writeBlocks(dataOutputStream, 0, SIZE_BLOCKS_CUBED * usedHeight);
 
       for (int i = 0; i < (SIZE_BLOCKS_CUBED * usedHeight); i++) {
         dataOutputStream.writeByte(light[i]);
@@ -896,10 +1113,7 @@ public class Area extends Lockable<Area> {
         dataOutputStream.writeShort(blockDataList.size());
       }
 
-      for (BlockData blockData : blockDataList) {
-        dataOutputStream.writeInt(getRef(blockData.getX(), blockData.getY(), blockData.getZ()));
-        Data.output(blockData.write(), dataOutputStream);
-      }
+      writeBlockData(dataOutputStream);
 
       if (usedHeight != height) {
         Executor.execute(new Runnable() {
@@ -938,16 +1152,15 @@ public class Area extends Lockable<Area> {
           invalidBlocks = true;
           a = 0;
         }
-        blocks[counter++] = a;
+        setBlockInt(counter++, a);
       } else {
         int block = dataInputStream.readInt();
         if (!IDManager.validBlock(block)) {
           invalidBlocks = true;
           block = 0;
         }
-        for (int i = 0; i < -a; i++) {
-          blocks[counter++] = block;
-        }
+        fillBlockInt(counter, counter - a, block);
+        counter -= a;
       }
     }
 
@@ -955,6 +1168,127 @@ public class Area extends Lockable<Area> {
       light[i] = dataInputStream.readByte();
     }
 
+    readEntitiesAndBlockData(dataInputStream, invalidBlocks);
+  }
+
+  /**
+   * Same format as {@link #read(DataInputStream)}, decoding blocks, light and heightmap with bulk buffer operations
+   */
+  public void read(ByteBuffer buffer) throws IOException {
+    int height = buffer.getInt();
+    if (height == 0) return;
+
+    if (height > 0) { //if features
+      features.set(Boolean.TRUE);
+    } else {
+      height = -height;
+    }
+    setupArrays((height * SIZE_BLOCKS) - 1);
+
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.get(heightmap);
+
+    int counter = 0;
+    int length = SIZE_BLOCKS_CUBED * height;
+    boolean invalidBlocks = false;
+    while (counter < length) {
+      int a = ints.get();
+      if (a >= 0) {
+        if (!IDManager.validBlock(a)) {
+          invalidBlocks = true;
+          a = 0;
+        }
+        setBlockInt(counter++, a);
+      } else {
+        int block = ints.get();
+        if (!IDManager.validBlock(block)) {
+          invalidBlocks = true;
+          block = 0;
+        }
+        fillBlockInt(counter, counter - a, block);
+        counter -= a;
+      }
+    }
+    buffer.position(buffer.position() + (ints.position() * 4));
+
+    buffer.get(light);
+
+    InputStream inputStream;
+    if (buffer.hasArray()) {
+      inputStream = new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    } else {
+      byte[] remaining = new byte[buffer.remaining()];
+      buffer.get(remaining);
+      inputStream = new ByteArrayInputStream(remaining);
+    }
+    readEntitiesAndBlockData(new DataInputStream(inputStream), invalidBlocks);
+  }
+
+  private void readNetworking(DataInputStream dataInputStream) throws IOException {
+    int height = dataInputStream.readInt();
+    if (height == 0) return;
+
+    if (height > 0) { //if features
+      features.set(Boolean.TRUE);
+    } else {
+      height = -height;
+    }
+    setupArrays((height * SIZE_BLOCKS) - 1);
+
+    for (int i = 0; i < SIZE_BLOCKS_SQUARED; i++) {
+      heightmap[i] = dataInputStream.readInt();
+    }
+
+    boolean invalidBlocks = false;
+    byte[] lightPalette = new byte[NETWORK_LIGHT_PALETTE_SIZE];
+    for (int section = 0; section < height; section++) {
+      int offset = section * SIZE_BLOCKS_CUBED;
+      int flags = dataInputStream.readUnsignedByte();
+
+      if ((flags & NETWORK_SECTION_BLOCKS) != 0) {
+        int counter = offset;
+        while (counter < offset + SIZE_BLOCKS_CUBED) {
+          int a = dataInputStream.readInt();
+          if (a >= 0) {
+            if (!IDManager.validBlock(a)) {
+              invalidBlocks = true;
+              a = 0;
+            }
+            setBlockInt(counter++, a);
+          } else {
+            if (counter - a > offset + SIZE_BLOCKS_CUBED) throw new IOException("Invalid block run " + -a);
+            int block = dataInputStream.readInt();
+            if (!IDManager.validBlock(block)) {
+              invalidBlocks = true;
+              block = 0;
+            }
+            fillBlockInt(counter, counter - a, block);
+            counter -= a;
+          }
+        }
+      }
+
+      int lightType = flags & ~NETWORK_SECTION_BLOCKS;
+      if (lightType == NETWORK_LIGHT_UNIFORM) {
+        Arrays.fill(light, offset, offset + SIZE_BLOCKS_CUBED, dataInputStream.readByte());
+      } else if (lightType == NETWORK_LIGHT_PALETTE) {
+        int paletteSize = dataInputStream.readUnsignedByte();
+        if (paletteSize > NETWORK_LIGHT_PALETTE_SIZE) throw new IOException("Invalid light palette size " + paletteSize);
+        dataInputStream.readFully(lightPalette, 0, paletteSize);
+        for (int i = offset; i < offset + SIZE_BLOCKS_CUBED; i += 2) {
+          int b = dataInputStream.readUnsignedByte();
+          light[i] = lightPalette[b & 0xF];
+          light[i + 1] = lightPalette[b >> 4];
+        }
+      } else {
+        dataInputStream.readFully(light, offset, SIZE_BLOCKS_CUBED);
+      }
+    }
+
+    readEntitiesAndBlockData(dataInputStream, invalidBlocks);
+  }
+
+  private void readEntitiesAndBlockData(DataInputStream dataInputStream, boolean invalidBlocks) throws IOException {
     int entitiesSize = dataInputStream.readShort();
     int dataSize = dataInputStream.readShort();
     for (int i = 0; i < entitiesSize; i++) {
@@ -991,10 +1325,36 @@ public class Area extends Lockable<Area> {
     int areaZ = dataInputStream.readInt();
     Area area = new Area(areaX, areaZ);
 
-    area.read(dataInputStream);
+    area.readNetworking(dataInputStream);
     return area;
   }
 
+  // must be locked
+  public int getBlockInt(int ref) {
+    return blocks[ref >> SIZE_BLOCKS_CUBED_POW2].get(ref & (SIZE_BLOCKS_CUBED - 1));
+  }
+
+  // must be write locked
+  public void setBlockInt(int ref, int blockInt) {
+    int section = ref >> SIZE_BLOCKS_CUBED_POW2;
+    blocks[section] = blocks[section].set(ref & (SIZE_BLOCKS_CUBED - 1), blockInt);
+  }
+
+  // must be write locked, from inclusive, to exclusive
+  private void fillBlockInt(int from, int to, int blockInt) {
+    while (from < to) {
+      int section = from >> SIZE_BLOCKS_CUBED_POW2;
+      int sectionEnd = Math.min(to, (section + 1) << SIZE_BLOCKS_CUBED_POW2);
+      blocks[section] = blocks[section].fill(from & (SIZE_BLOCKS_CUBED - 1), sectionEnd - (section << SIZE_BLOCKS_CUBED_POW2), blockInt);
+      from = sectionEnd;
+    }
+  }
+
+  private void setVisible(int ref) {
+    int b = getBlockInt(ref);
+    if ((b & BLOCK_VISIBLE) == 0) setBlockInt(ref, b | BLOCK_VISIBLE);
+  }
+
   public static int getRef(int x, int y, int z) {
     return x + z * SIZE_BLOCKS + y * SIZE_BLOCKS_SQUARED;
   }
@@ -1032,6 +1392,10 @@ public class Area extends Lockable<Area> {
     modCount++;
   }
 
+  public int modCount() {
+    return modCount;
+  }
+
   public boolean modifiedSinceSave(DataGroup[] entities) {
     return (entities != null && entities.length > 0) || saveEntities > 0 || saveModCount != modCount;
   }
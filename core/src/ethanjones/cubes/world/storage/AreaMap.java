@@ -26,8 +26,17 @@ public class AreaMap extends WorldLockable implements Iterable<Area> {
   }
   
   public Area getArea(int areaX, int areaZ) {
+    long packed = ((long)areaZ) << 32 | areaX & 0xFFFFFFFFL;
+    int stamp = tryOptimisticRead();
+    if (stamp != -1) {
+      try {
+        Area area = map.get(packed);
+        if (validate(stamp)) return area;
+      } catch (ArrayIndexOutOfBoundsException | NullPointerException ignored) {
+        // saw the map while it was resizing, read locked instead
+      }
+    }
     try (Locked<WorldLockable> locked = acquireReadLock()) {
-      long packed = ((long)areaZ) << 32 | areaX & 0xFFFFFFFFL;
       return map.get(packed);
     }
   }
@@ -103,7 +112,11 @@ public class AreaMap extends WorldLockable implements Iterable<Area> {
   }
   
   public void empty() {
-    map.clear();
+    try (Locked<WorldLockable> locked = acquireWriteLock()) {
+      map.clear();
+      sorted.clear();
+      modifiedSinceSort = false;
+    }
   }
 
   private class AreaIterator implements Iterator<Area> {
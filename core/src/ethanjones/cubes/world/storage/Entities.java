@@ -8,27 +8,121 @@ import ethanjones.cubes.world.World;
 import ethanjones.cubes.world.thread.WorldLockable;
 import ethanjones.data.DataGroup;
 
+import com.badlogic.gdx.utils.LongMap;
+
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.UUID;
 
+/**
+ * The world's entities, by uuid and by the area they are in. Add and remove entities with {@link #add(Entity)} and
+ * {@link #remove(UUID)} to keep the area index in sync, which is updated for moved entities by
+ * {@link #updateIndex(Entity)} each tick. Callers hold the entities lock.
+ */
 public class Entities extends WorldLockable {
   public final World world;
   public final HashMap<UUID, Entity> map;
+  private final LongMap<ArrayList<Entity>> areas = new LongMap<ArrayList<Entity>>();
+  private final HashMap<Entity, Long> indexed = new HashMap<Entity, Long>();
   
   public Entities(World world) {
     super(Type.ENTITIES, world.side);
     this.world = world;
     this.map = new HashMap<>();
   }
+
+  public void add(Entity entity) {
+    // areas ticked in parallel share the tick's lock
+    synchronized (map) {
+      Entity previous = map.put(entity.uuid, entity);
+      if (previous != null && previous != entity) unindex(previous);
+      updateIndex(entity);
+    }
+  }
+
+  public Entity remove(UUID uuid) {
+    synchronized (map) {
+      Entity entity = map.remove(uuid);
+      if (entity != null) unindex(entity);
+      return entity;
+    }
+  }
+
+  /**
+   * Call after removing the entity from the map with an iterator
+   */
+  public void removed(Entity entity) {
+    synchronized (map) {
+      unindex(entity);
+    }
+  }
+
+  public void clear() {
+    synchronized (map) {
+      map.clear();
+      areas.clear();
+      indexed.clear();
+    }
+  }
+
+  /**
+   * Moves the entity to the area it is now in
+   */
+  public void updateIndex(Entity entity) {
+    long key = key(CoordinateConverter.area(entity.position.x), CoordinateConverter.area(entity.position.z));
+    synchronized (map) {
+      Long current = indexed.get(entity);
+      if (current != null) {
+        if (current == key) return;
+        unindex(entity);
+      }
+      ArrayList<Entity> list = areas.get(key);
+      if (list == null) areas.put(key, list = new ArrayList<Entity>(4));
+      list.add(entity);
+      indexed.put(entity, key);
+    }
+  }
+
+  private void unindex(Entity entity) {
+    Long key = indexed.remove(entity);
+    if (key == null) return;
+    ArrayList<Entity> list = areas.get(key);
+    list.remove(entity);
+    if (list.isEmpty()) areas.remove(key);
+  }
+
+  /**
+   * @return the entities in the area when last indexed, do not modify
+   */
+  public List<Entity> getEntitiesInArea(int areaX, int areaZ) {
+    ArrayList<Entity> list = areas.get(key(areaX, areaZ));
+    return list == null ? Collections.<Entity>emptyList() : list;
+  }
+
+  /**
+   * Adds the entities in the areas between the minimum and maximum areas inclusive to the collection
+   */
+  public void getEntitiesInRange(int minAreaX, int minAreaZ, int maxAreaX, int maxAreaZ, Collection<Entity> entities) {
+    for (int areaX = minAreaX; areaX <= maxAreaX; areaX++) {
+      for (int areaZ = minAreaZ; areaZ <= maxAreaZ; areaZ++) {
+        ArrayList<Entity> list = areas.get(key(areaX, areaZ));
+        if (list != null) entities.addAll(list);
+      }
+    }
+  }
+
+  private static long key(int areaX, int areaZ) {
+    return ((long) areaX << 32) | (areaZ & 0xFFFFFFFFL);
+  }
   
   public DataGroup[] getEntitiesForSave(int areaX, int areaZ) {
     try (Locked<WorldLockable> locked = acquireReadLock()) {
       ArrayList<DataGroup> dataGroups = new ArrayList<DataGroup>();
-      for (Entity entity : map.values()) {
-        if (areaX == CoordinateConverter.area(entity.position.x) && areaZ == CoordinateConverter.area(entity.position.z) && !(entity instanceof Player)) {
-          dataGroups.add(entity.write());
-        }
+      for (Entity entity : getEntitiesInArea(areaX, areaZ)) {
+        if (!(entity instanceof Player)) dataGroups.add(entity.write());
       }
       return dataGroups.size() == 0 ? new DataGroup[0] : dataGroups.toArray(new DataGroup[dataGroups.size()]);
     }
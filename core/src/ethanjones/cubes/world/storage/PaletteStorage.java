@@ -0,0 +1,164 @@
+package ethanjones.cubes.world.storage;
+
+import com.badlogic.gdx.utils.IntIntMap;
+
+/**
+ * The block ints of one SIZE_BLOCKS_CUBED section of an area, stored as bit packed indices into a palette of the
+ * distinct block ints in the section. Indices are 1, 2, 4 or 8 bits wide. Sections with more distinct blocks than an
+ * 8 bit palette holds store the block ints directly instead, without a palette.
+ * <p>
+ * The index width of an instance never changes. When the palette is full {@link #set(int, int)} returns a wider copy
+ * which replaces this instance, so readers never see a palette and index array which don't match.
+ */
+public final class PaletteStorage {
+
+  public static final int SIZE = Area.SIZE_BLOCKS_CUBED;
+
+  private static final int LOOKUP_MIN_BITS = 8;
+  private static final int MAX_PALETTE_BITS = 8;
+  private static final int DIRECT_BITS = 32;
+
+  private final int bits;
+  private final int bitsPow2;
+  private final int mask;
+  private final int wordPow2;
+  private final int wordMask;
+  private final int[] data;
+  private final int[] palette;
+  private final IntIntMap lookup;
+  private int paletteSize;
+  private int nonZero;
+
+  public PaletteStorage() {
+    this(1);
+    add(0);
+  }
+
+  private PaletteStorage(int bits) {
+    this.bits = bits;
+    this.bitsPow2 = Integer.numberOfTrailingZeros(bits);
+    this.mask = bits == DIRECT_BITS ? -1 : (1 << bits) - 1;
+    this.wordPow2 = 5 - bitsPow2;
+    this.wordMask = (1 << wordPow2) - 1;
+    this.data = new int[SIZE >> wordPow2];
+    this.palette = bits == DIRECT_BITS ? null : new int[1 << bits];
+    this.lookup = palette != null && bits >= LOOKUP_MIN_BITS ? new IntIntMap(palette.length) : null;
+  }
+
+  private PaletteStorage(PaletteStorage toCopy) {
+    this(toCopy.bits);
+    System.arraycopy(toCopy.data, 0, data, 0, data.length);
+    if (palette != null) System.arraycopy(toCopy.palette, 0, palette, 0, palette.length);
+    if (lookup != null) lookup.putAll(toCopy.lookup);
+    paletteSize = toCopy.paletteSize;
+    nonZero = toCopy.nonZero;
+  }
+
+  public int get(int i) {
+    return palette == null ? getIndex(i) : palette[getIndex(i)];
+  }
+
+  /**
+   * @return the storage to use from now on, either this or a copy with wider indices
+   */
+  public PaletteStorage set(int i, int value) {
+    int index = indexOf(value);
+    if (index == -1) return resize(value).set(i, value);
+
+    int old = get(i);
+    setIndex(i, index);
+    if (old == 0 && value != 0) nonZero++;
+    if (old != 0 && value == 0) nonZero--;
+    return this;
+  }
+
+  /**
+   * Sets from (inclusive) to to (exclusive)
+   *
+   * @return the storage to use from now on, either this or a copy with wider indices
+   */
+  public PaletteStorage fill(int from, int to, int value) {
+    int index = indexOf(value);
+    if (index == -1) return resize(value).fill(from, to, value);
+
+    for (int i = from; i < to; i++) {
+      int old = get(i);
+      setIndex(i, index);
+      if (old == 0 && value != 0) nonZero++;
+      if (old != 0 && value == 0) nonZero--;
+    }
+    return this;
+  }
+
+  public boolean isEmpty() {
+    return nonZero == 0;
+  }
+
+  public int bits() {
+    return bits;
+  }
+
+  public PaletteStorage copy() {
+    return new PaletteStorage(this);
+  }
+
+  private int getIndex(int i) {
+    return (data[i >>> wordPow2] >>> ((i & wordMask) << bitsPow2)) & mask;
+  }
+
+  private void setIndex(int i, int index) {
+    int word = i >>> wordPow2;
+    int shift = (i & wordMask) << bitsPow2;
+    data[word] = (data[word] & ~(mask << shift)) | (index << shift);
+  }
+
+  private int indexOf(int value) {
+    if (palette == null) return value;
+    if (lookup != null) {
+      int index = lookup.get(value, -1);
+      if (index != -1) return index;
+    } else {
+      for (int i = 0; i < paletteSize; i++) {
+        if (palette[i] == value) return i;
+      }
+    }
+    if (paletteSize == palette.length) return -1;
+    return add(value);
+  }
+
+  private int add(int value) {
+    int index = paletteSize++;
+    palette[index] = value;
+    if (lookup != null) lookup.put(value, index);
+    return index;
+  }
+
+  // copies the values still in use, plus room for value, into a new storage
+  private PaletteStorage resize(int value) {
+    int[] remap = new int[paletteSize];
+    boolean[] used = new boolean[paletteSize];
+    int usedCount = 0;
+    for (int i = 0; i < SIZE; i++) {
+      int index = getIndex(i);
+      if (!used[index]) {
+        used[index] = true;
+        usedCount++;
+      }
+    }
+
+    // only stay the same width if the palette would be at most three quarters full, to avoid resizing repeatedly
+    int newBits = bits;
+    if ((usedCount + 1) * 4 > palette.length * 3) newBits = bits < MAX_PALETTE_BITS ? bits << 1 : DIRECT_BITS;
+
+    PaletteStorage storage = new PaletteStorage(newBits);
+    for (int i = 0; i < paletteSize; i++) {
+      if (used[i]) remap[i] = storage.palette == null ? palette[i] : storage.add(palette[i]);
+    }
+    if (storage.palette != null) storage.add(value);
+    for (int i = 0; i < SIZE; i++) {
+      storage.setIndex(i, remap[getIndex(i)]);
+    }
+    storage.nonZero = nonZero;
+    return storage;
+  }
+}
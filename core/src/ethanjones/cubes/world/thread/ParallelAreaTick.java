@@ -0,0 +1,108 @@
+package ethanjones.cubes.world.thread;
+
+import ethanjones.cubes.core.util.locks.LockManager;
+import ethanjones.cubes.core.util.locks.Locked;
+import ethanjones.cubes.side.common.Side;
+import ethanjones.cubes.world.storage.Area;
+import ethanjones.cubes.world.storage.AreaMap;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ticks areas on a fork join pool. Ticking an area locks it and its eight neighbours, so areas are split into nine
+ * classes by their coordinates modulo three. Areas in the same class never share a neighbour and are ticked at the same
+ * time, one class after another. Random updates are seeded by the area and tick, so the result doesn't depend on which
+ * thread ticks an area.
+ */
+public class ParallelAreaTick {
+
+  private static final int COLOURS = 9;
+  private static final int THRESHOLD = 4;
+
+  private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+  private final ArrayList<ArrayList<Area>> colours = new ArrayList<ArrayList<Area>>(COLOURS);
+
+  public ParallelAreaTick() {
+    for (int i = 0; i < COLOURS; i++) {
+      colours.add(new ArrayList<Area>());
+    }
+  }
+
+  /**
+   * @param worldLock the world, area map and entities write locked by the calling thread, which are shared with the
+   *                  pool's threads until ticking finishes
+   */
+  public void tick(AreaMap map, Locked<WorldLockable> worldLock) {
+    for (Area area : map) {
+      colours.get(colour(area.areaX) * 3 + colour(area.areaZ)).add(area);
+    }
+    Side side = Side.getSide();
+    try {
+      for (ArrayList<Area> areas : colours) {
+        if (!areas.isEmpty()) pool.invoke(new TickAction(areas, 0, areas.size(), worldLock, side));
+      }
+    } finally {
+      for (ArrayList<Area> areas : colours) {
+        areas.clear();
+      }
+    }
+  }
+
+  public void dispose() {
+    pool.shutdown();
+  }
+
+  private static int colour(int a) {
+    return ((a % 3) + 3) % 3;
+  }
+
+  private static class TickAction extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final ArrayList<Area> areas;
+    private final int start;
+    private final int end;
+    private final Locked<WorldLockable> worldLock;
+    private final Side side;
+
+    TickAction(ArrayList<Area> areas, int start, int end, Locked<WorldLockable> worldLock, Side side) {
+      this.areas = areas;
+      this.start = start;
+      this.end = end;
+      this.worldLock = worldLock;
+      this.side = side;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start > THRESHOLD) {
+        int middle = (start + end) >>> 1;
+        invokeAll(new TickAction(areas, start, middle, worldLock, side), new TickAction(areas, middle, end, worldLock, side));
+        return;
+      }
+      Side.setSide(side);
+      try {
+        LockManager.runShared(worldLock, new Runnable() {
+          @Override
+          public void run() {
+            Area[] neighbours = new Area[9];
+            for (int i = start; i < end; i++) {
+              Area area = areas.get(i);
+              // same order as RollingAreaLocked
+              for (int n = 0; n < 9; n++) {
+                neighbours[n] = area.neighbour(area.areaX + (n / 3) - 1, area.areaZ + (n % 3) - 1);
+              }
+              try (Locked<Area> locked = LockManager.lockMany(true, neighbours)) {
+                area.tick();
+              }
+            }
+          }
+        });
+      } finally {
+        Side.setSide(null);
+      }
+    }
+  }
+}
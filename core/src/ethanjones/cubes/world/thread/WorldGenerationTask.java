@@ -7,14 +7,10 @@ import ethanjones.cubes.world.reference.multi.MultiAreaReference;
 import ethanjones.cubes.world.reference.multi.WorldRegion;
 import ethanjones.cubes.world.server.WorldServer;
 
-import com.badlogic.gdx.math.MathUtils;
-
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -25,14 +21,15 @@ public class WorldGenerationTask implements GenerationTask {
   public final AreaReferenceSet generateReferences;
   public final WorldRequestParameter parameter;
 
-  final ConcurrentLinkedQueue<AreaReference> generateQueue = new ConcurrentLinkedQueue<AreaReference>();
-  final CountDownLatch generationComplete = new CountDownLatch(WorldTasks.GENERATION_THREADS);
-  final ConcurrentLinkedQueue<AreaReference> featuresQueue = new ConcurrentLinkedQueue<AreaReference>();
+  private final ArrayList<AreaReference> generate = new ArrayList<AreaReference>();
+  private final ArrayList<AreaReference> features = new ArrayList<AreaReference>();
 
   final AtomicLong timeStarted = new AtomicLong(0);
   final AtomicInteger generateCounter = new AtomicInteger(0);
   final AtomicInteger featureCounter = new AtomicInteger(0);
   final AtomicInteger readCounter = new AtomicInteger(0);
+  private final AtomicInteger doneGenerate = new AtomicInteger(0);
+  private final AtomicInteger doneFeatures = new AtomicInteger(0);
 
   private final int generateSize;
   private final int featureSize;
@@ -43,11 +40,11 @@ public class WorldGenerationTask implements GenerationTask {
     this.generateReferences = new AreaReferenceSet();
     this.parameter = parameter != null ? parameter : WorldRequestParameter.DEFAULT;
 
-    generateSize = fillGenerateQueue();
-    featureSize = fillFeaturesQueue();
+    generateSize = fillGenerate();
+    featureSize = fillFeatures();
   }
 
-  private int fillGenerateQueue() {
+  private int fillGenerate() {
     Set<AreaReference> generate;
     if (this.featuresReferences instanceof WorldRegion) {
       WorldRegion f = (WorldRegion) this.featuresReferences;
@@ -67,20 +64,11 @@ public class WorldGenerationTask implements GenerationTask {
       }
     }
     generateReferences.addAll(generate);
-
-    if (generate.size() >= 50) {
-      //randomize so all threads not waiting for one cave
-      ArrayList<AreaReference> copy = new ArrayList<AreaReference>(generate);
-      while (copy.size() > 0) {
-        generateQueue.add(copy.remove(MathUtils.random.nextInt(copy.size())));
-      }
-    } else {
-      generateQueue.addAll(generate);
-    }
+    this.generate.addAll(generate);
     return generate.size();
   }
 
-  private int fillFeaturesQueue() {
+  private int fillFeatures() {
     Set<AreaReference> set;
     if (parameter.prioritise != null) {
       set = new TreeSet<AreaReference>(parameter.getComparator());
@@ -88,10 +76,50 @@ public class WorldGenerationTask implements GenerationTask {
     } else {
       set = featuresReferences.getAreaReferences();
     }
-    featuresQueue.addAll(set);
+    features.addAll(set);
     return set.size();
   }
 
+  // creates or shares the jobs for every area, features jobs depend on the generate jobs of their neighbours
+  void start() {
+    timeStarted.set(System.currentTimeMillis());
+    WorldJob.Listener generateListener = new WorldJob.Listener() {
+      @Override
+      public void finished(WorldJob job) {
+        int status = ((WorldTasks.AreaJob) job).status;
+        if (status == 1) { // read from file
+          readCounter.incrementAndGet();
+        } else if (status == 2) { // generated
+          generateCounter.incrementAndGet();
+        }
+        doneGenerate.incrementAndGet();
+      }
+    };
+    WorldJob.Listener featuresListener = new WorldJob.Listener() {
+      @Override
+      public void finished(WorldJob job) {
+        if (((WorldTasks.AreaJob) job).status == 1) featureCounter.incrementAndGet(); // done features
+        if (doneFeatures.incrementAndGet() == featureSize) complete();
+      }
+    };
+
+    for (AreaReference reference : generate) {
+      WorldTasks.generateJob(world, reference, parameter.prioritise).addListener(generateListener);
+    }
+    for (AreaReference reference : features) {
+      WorldTasks.featuresJob(world, reference, parameter.prioritise).addListener(featuresListener);
+    }
+    if (featureSize == 0) complete();
+  }
+
+  private void complete() {
+    WorldTasks.generationFinished(this);
+    if (parameter.afterCompletion != null) {
+      printStatistics();
+      parameter.afterCompletion.run();
+    }
+  }
+
   @Override
   public int totalGenerate() {
     return generateSize;
@@ -104,12 +132,12 @@ public class WorldGenerationTask implements GenerationTask {
 
   @Override
   public int doneGenerate() {
-    return generateSize - generateQueue.size();
+    return doneGenerate.get();
   }
 
   @Override
   public int doneFeatures() {
-    return featureSize - featuresQueue.size();
+    return doneFeatures.get();
   }
 
   public void printStatistics() {
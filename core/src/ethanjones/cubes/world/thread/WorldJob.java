@@ -0,0 +1,84 @@
+package ethanjones.cubes.world.thread;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Work on one area for {@link WorldTasks}, which runs once every job it depends on has finished. Ready jobs run in order
+ * of distance to the nearest player, then in the order they were created.
+ */
+abstract class WorldJob implements Comparable<WorldJob> {
+
+  interface Listener {
+    void finished(WorldJob job);
+  }
+
+  private static final AtomicLong created = new AtomicLong();
+
+  final int areaX;
+  final int areaZ;
+  int priority;
+  private final long order = created.getAndIncrement();
+  // unfinished dependencies, plus one until released
+  private final AtomicInteger waiting = new AtomicInteger(1);
+  private ArrayList<Listener> listeners = new ArrayList<Listener>(); // null once finished
+
+  WorldJob(int areaX, int areaZ) {
+    this.areaX = areaX;
+    this.areaZ = areaZ;
+  }
+
+  protected abstract void execute();
+
+  void dependOn(WorldJob job) {
+    waiting.incrementAndGet();
+    job.addListener(new Listener() {
+      @Override
+      public void finished(WorldJob job) {
+        dependencyFinished();
+      }
+    });
+  }
+
+  /**
+   * Schedules the job once its dependencies have finished, call after adding all dependencies
+   */
+  void release() {
+    dependencyFinished();
+  }
+
+  /**
+   * Called immediately if the job has already finished
+   */
+  void addListener(Listener listener) {
+    synchronized (this) {
+      if (listeners != null) {
+        listeners.add(listener);
+        return;
+      }
+    }
+    listener.finished(this);
+  }
+
+  void finish() {
+    ArrayList<Listener> l;
+    synchronized (this) {
+      l = listeners;
+      listeners = null;
+    }
+    for (Listener listener : l) {
+      listener.finished(this);
+    }
+  }
+
+  private void dependencyFinished() {
+    if (waiting.decrementAndGet() == 0) WorldTasks.schedule(this);
+  }
+
+  @Override
+  public int compareTo(WorldJob o) {
+    if (priority != o.priority) return priority < o.priority ? -1 : 1;
+    return order < o.order ? -1 : (order == o.order ? 0 : 1);
+  }
+}
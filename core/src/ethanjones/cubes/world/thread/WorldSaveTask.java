@@ -1,14 +1,15 @@
 package ethanjones.cubes.world.thread;
 
+import ethanjones.cubes.core.logging.Log;
 import ethanjones.cubes.core.util.locks.Locked;
+import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.world.save.Save;
+import ethanjones.cubes.world.server.WorldServer;
 import ethanjones.cubes.world.storage.Area;
 import ethanjones.cubes.world.storage.AreaMap;
 
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -18,27 +19,53 @@ public class WorldSaveTask {
   public final int length;
 
   final ArrayList<Area> saveAreas = new ArrayList<Area>();
-  final ConcurrentLinkedQueue<Area> saveQueue = new ConcurrentLinkedQueue<Area>();
-  final CountDownLatch saveComplete = new CountDownLatch(WorldTasks.SAVE_THREADS);
 
   final AtomicLong timeStarted = new AtomicLong(0);
   final AtomicInteger written = new AtomicInteger(0);
+  private final AtomicInteger remaining = new AtomicInteger(0);
 
   public WorldSaveTask(Save save, Collection<Area> areas) {
     this.save = save;
-    this.saveQueue.addAll(areas);
     this.saveAreas.addAll(areas);
-    this.length = saveQueue.size();
+    this.length = saveAreas.size();
   }
   
   public WorldSaveTask(Save save, AreaMap areas) {
     this.save = save;
     try (Locked<WorldLockable> locked = areas.acquireReadLock()) {
       for (Area area : areas) {
-        this.saveQueue.add(area);
         this.saveAreas.add(area);
       }
     }
-    this.length = saveQueue.size();
+    this.length = saveAreas.size();
+  }
+
+  void start() {
+    timeStarted.set(System.currentTimeMillis());
+    remaining.set(length);
+    if (length == 0) {
+      complete();
+      return;
+    }
+    WorldJob.Listener listener = new WorldJob.Listener() {
+      @Override
+      public void finished(WorldJob job) {
+        if (remaining.decrementAndGet() == 0) complete();
+      }
+    };
+    for (Area area : saveAreas) {
+      WorldTasks.SaveJob job = new WorldTasks.SaveJob(this, area);
+      job.addListener(listener);
+      job.release();
+    }
+  }
+
+  private void complete() {
+    try {
+      Log.debug("Saved areas: wrote " + written + " total " + length + " time " + (System.currentTimeMillis() - timeStarted.get()) + "ms");
+      ((WorldServer) Cubes.getServer().world).unloadDistantAreas(saveAreas);
+    } finally {
+      WorldTasks.saveFinished();
+    }
   }
 }
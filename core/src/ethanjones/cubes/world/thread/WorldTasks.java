@@ -4,75 +4,222 @@ import ethanjones.cubes.core.event.world.generation.AreaLoadedEvent;
 import ethanjones.cubes.core.event.world.generation.FeaturesEvent;
 import ethanjones.cubes.core.event.world.generation.GenerationEvent;
 import ethanjones.cubes.core.logging.Log;
-import ethanjones.cubes.core.system.ThreadPool;
+import ethanjones.cubes.core.metrics.Gauge;
+import ethanjones.cubes.core.metrics.Metric;
+import ethanjones.cubes.core.metrics.Metrics;
+import ethanjones.cubes.core.system.CubesException;
+import ethanjones.cubes.core.system.Debug;
+import ethanjones.cubes.networking.server.ClientIdentifier;
+import ethanjones.cubes.side.common.Cubes;
 import ethanjones.cubes.side.common.Side;
+import ethanjones.cubes.side.server.CubesServer;
+import ethanjones.cubes.side.server.PlayerManager;
 import ethanjones.cubes.world.light.SunLight;
 import ethanjones.cubes.world.reference.AreaReference;
 import ethanjones.cubes.world.reference.multi.MultiAreaReference;
 import ethanjones.cubes.world.save.Save;
+import ethanjones.cubes.world.save.SaveAreaIO;
 import ethanjones.cubes.world.server.LoadedAreaFilter;
 import ethanjones.cubes.world.server.WorldServer;
 import ethanjones.cubes.world.storage.Area;
 import ethanjones.cubes.world.storage.AreaMap;
 
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Generates, adds features to and saves areas as {@link WorldJob}s on a fork join pool. Features are added to an area
+ * as soon as it and its eight neighbours have been generated, and jobs nearest to players run first.
+ */
 public class WorldTasks {
 
-  public static final int GENERATION_THREADS = 8;
-  public static final int SAVE_THREADS = 8;
+  public static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
 
-  private static final WorldGenerationRunnable gen = new WorldGenerationRunnable();
-  private static final WorldSaveRunnable save = new WorldSaveRunnable();
-  private static final ThreadPool genThreadPool;
-  private static final ThreadPool saveThreadPool;
+  private static final ForkJoinPool pool;
+  private static final PriorityBlockingQueue<WorldJob> ready = new PriorityBlockingQueue<WorldJob>();
+  // jobs which haven't finished, so requests for the same area share them
+  private static final ConcurrentHashMap<AreaReference, GenerateJob> generating = new ConcurrentHashMap<AreaReference, GenerateJob>();
+  private static final ConcurrentHashMap<AreaReference, FeaturesJob> featuring = new ConcurrentHashMap<AreaReference, FeaturesJob>();
+  private static final CopyOnWriteArrayList<WorldGenerationTask> generationTasks = new CopyOnWriteArrayList<WorldGenerationTask>();
+  private static final AtomicInteger saveTasks = new AtomicInteger();
+  private static final Object saveLock = new Object();
+
+  // each job submitted to the pool runs the most important ready job
+  private static final Runnable runNext = new Runnable() {
+    @Override
+    public void run() {
+      WorldJob job = ready.poll();
+      if (job == null) return;
+      try {
+        job.execute();
+      } catch (CubesException e) {
+        if (e.className.equals(Side.class.getName())) {
+          drain();
+        } else {
+          throw e;
+        }
+      } finally {
+        job.finish();
+      }
+    }
+  };
 
   static {
-    genThreadPool = new ThreadPool("WorldGeneration", gen, GENERATION_THREADS);
-    genThreadPool.setSide(Side.Server);
-    genThreadPool.setPriority(Thread.MIN_PRIORITY);
-    genThreadPool.setDaemon(true);
-    genThreadPool.start();
-    saveThreadPool = new ThreadPool("Save", save, SAVE_THREADS);
-    saveThreadPool.setSide(Side.Server);
-    saveThreadPool.setPriority(Thread.MIN_PRIORITY + 1);
-    saveThreadPool.setDaemon(true);
-    saveThreadPool.start();
+    pool = new ForkJoinPool(THREADS, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+      @Override
+      public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+          @Override
+          protected void onStart() {
+            super.onStart();
+            Side.setSide(Side.Server);
+          }
+        };
+        thread.setName("WorldTasks-" + (thread.getPoolIndex() + 1));
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+      }
+    }, Debug.UncaughtExceptionHandler.instance, true);
+
+    String help = "World jobs waiting to run, and areas and saves not finished";
+    Metrics.register(new Gauge("cubes_world_tasks", help, Metric.label("queue", "ready")) {
+      @Override
+      public double get() {
+        return ready.size();
+      }
+    });
+    Metrics.register(new Gauge("cubes_world_tasks", help, Metric.label("queue", "generate")) {
+      @Override
+      public double get() {
+        return generating.size();
+      }
+    });
+    Metrics.register(new Gauge("cubes_world_tasks", help, Metric.label("queue", "features")) {
+      @Override
+      public double get() {
+        return featuring.size();
+      }
+    });
+    Metrics.register(new Gauge("cubes_world_tasks", help, Metric.label("queue", "save")) {
+      @Override
+      public double get() {
+        return saveTasks.get();
+      }
+    });
   }
 
   public static GenerationTask request(WorldServer worldServer, MultiAreaReference references, WorldRequestParameter parameter) {
     WorldGenerationTask generationTask = new WorldGenerationTask(worldServer, references, parameter);
-    gen.queue.add(generationTask);
+    generationTasks.add(generationTask);
+    generationTask.start();
     return generationTask;
   }
 
   public static void save(Save s, Collection<Area> areas) {
-    WorldSaveTask saveTask = new WorldSaveTask(s, areas);
-    save.queue.add(saveTask);
+    save(new WorldSaveTask(s, areas));
   }
 
   public static void save(Save s, AreaMap areas) {
-    WorldSaveTask saveTask = new WorldSaveTask(s, areas);
-    save.queue.add(saveTask);
+    save(new WorldSaveTask(s, areas));
+  }
+
+  private static void save(WorldSaveTask saveTask) {
+    saveTasks.incrementAndGet();
+    saveTask.start();
   }
 
   public static boolean currentlySaving() {
-    return save.queue.size() > 0;
+    return saveTasks.get() > 0;
   }
 
   public static boolean waitSaveFinish() {
-    while (currentlySaving()) {
-      try {
-        Thread.sleep(100);
-      } catch (InterruptedException e) {
-        Log.debug(e);
-        return false;
+    synchronized (saveLock) {
+      while (currentlySaving()) {
+        try {
+          saveLock.wait();
+        } catch (InterruptedException e) {
+          Log.debug(e);
+          return false;
+        }
       }
     }
     return true;
   }
 
+  static void schedule(WorldJob job) {
+    job.priority = priority(job);
+    ready.add(job);
+    pool.execute(runNext);
+  }
+
+  // distance squared to the nearest player, or to the area prioritised by the request if there are no players
+  private static int priority(WorldJob job) {
+    int priority = Integer.MAX_VALUE;
+    CubesServer server = Cubes.getServer();
+    if (server != null) {
+      for (ClientIdentifier clientIdentifier : server.getAllClients()) {
+        PlayerManager playerManager = clientIdentifier.getPlayerManager();
+        if (playerManager != null) priority = Math.min(priority, playerManager.areaDistance2(job.areaX, job.areaZ));
+      }
+    }
+    if (priority == Integer.MAX_VALUE && job instanceof AreaJob) {
+      AreaReference prioritise = ((AreaJob) job).prioritise;
+      if (prioritise != null) {
+        int dX = job.areaX - prioritise.areaX, dZ = job.areaZ - prioritise.areaZ;
+        priority = dX * dX + dZ * dZ;
+      }
+    }
+    return priority;
+  }
+
+  static GenerateJob generateJob(WorldServer world, AreaReference reference, AreaReference prioritise) {
+    GenerateJob job = generating.get(reference);
+    if (job != null && job.world == world) return job;
+    GenerateJob created = new GenerateJob(world, reference.copy(), prioritise);
+    if (job == null) {
+      job = generating.putIfAbsent(created.reference, created);
+      if (job != null && job.world == world) return job;
+    }
+    created.release();
+    return created;
+  }
+
+  static FeaturesJob featuresJob(WorldServer world, AreaReference reference, AreaReference prioritise) {
+    FeaturesJob job = featuring.get(reference);
+    if (job != null && job.world == world) return job;
+    FeaturesJob created = new FeaturesJob(world, reference.copy(), prioritise);
+    if (job == null) {
+      job = featuring.putIfAbsent(created.reference, created);
+      if (job != null && job.world == world) return job;
+    }
+    AreaReference neighbour = new AreaReference();
+    for (int x = -1; x <= 1; x++) {
+      for (int z = -1; z <= 1; z++) {
+        neighbour.setFromAreaCoordinates(reference.areaX + x, reference.areaZ + z);
+        created.dependOn(generateJob(world, neighbour, prioritise));
+      }
+    }
+    created.release();
+    return created;
+  }
+
+  static void generationFinished(WorldGenerationTask task) {
+    generationTasks.remove(task);
+  }
+
+  static void saveFinished() {
+    synchronized (saveLock) {
+      saveTasks.decrementAndGet();
+      saveLock.notifyAll();
+    }
+  }
+
   protected static int generate(AreaReference areaReference, WorldServer world) {
     Area area = world.getArea(areaReference, false);
     if (area != null) return 0;
@@ -114,15 +261,90 @@ public class WorldTasks {
 
       @Override
       public boolean load(AreaReference areaReference) {
-        WorldGenerationTask task = gen.current.get();
-        return task != null && task.generateReferences.contains(areaReference);
+        for (WorldGenerationTask task : generationTasks) {
+          if (task.generateReferences.contains(areaReference)) return true;
+        }
+        return false;
       }
     };
   }
   
   public static void dispose() {
-    genThreadPool.stop(false);
     waitSaveFinish();
-    saveThreadPool.stop(false);
+    drain();
+    pool.shutdown();
+  }
+
+  // finishes queued jobs without running them, so saves and generation tasks waiting on them still complete
+  private static void drain() {
+    WorldJob job;
+    while ((job = ready.poll()) != null) {
+      if (job instanceof GenerateJob) generating.remove(((GenerateJob) job).reference, job);
+      if (job instanceof FeaturesJob) featuring.remove(((FeaturesJob) job).reference, job);
+      job.finish();
+    }
+  }
+
+  abstract static class AreaJob extends WorldJob {
+    final WorldServer world;
+    final AreaReference reference;
+    final AreaReference prioritise;
+    int status;
+
+    AreaJob(WorldServer world, AreaReference reference, AreaReference prioritise) {
+      super(reference.areaX, reference.areaZ);
+      this.world = world;
+      this.reference = reference;
+      this.prioritise = prioritise;
+    }
+  }
+
+  static class GenerateJob extends AreaJob {
+    GenerateJob(WorldServer world, AreaReference reference, AreaReference prioritise) {
+      super(world, reference, prioritise);
+    }
+
+    @Override
+    protected void execute() {
+      try {
+        if (!world.isDisposed()) status = generate(reference, world);
+      } finally {
+        generating.remove(reference, this);
+      }
+    }
+  }
+
+  static class FeaturesJob extends AreaJob {
+    FeaturesJob(WorldServer world, AreaReference reference, AreaReference prioritise) {
+      super(world, reference, prioritise);
+    }
+
+    @Override
+    protected void execute() {
+      try {
+        if (!world.isDisposed()) status = features(reference, world);
+      } finally {
+        featuring.remove(reference, this);
+      }
+    }
+  }
+
+  static class SaveJob extends WorldJob {
+    final WorldSaveTask task;
+    final Area area;
+
+    SaveJob(WorldSaveTask task, Area area) {
+      super(area.areaX, area.areaZ);
+      this.task = task;
+      this.area = area;
+    }
+
+    @Override
+    protected void execute() {
+      if (!task.save.readOnly && SaveAreaIO.write(task.save, area)) {
+        int written = task.written.incrementAndGet();
+        if (written % 100 == 0) Log.debug("Written " + written + " areas");
+      }
+    }
   }
 }
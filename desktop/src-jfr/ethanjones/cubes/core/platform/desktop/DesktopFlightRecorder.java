@@ -0,0 +1,141 @@
+package ethanjones.cubes.core.platform.desktop;
+
+import ethanjones.cubes.core.performance.Performance;
+import ethanjones.cubes.core.performance.PerformanceTags;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+import java.util.ArrayDeque;
+
+/**
+ * Emits Java Flight Recorder events for performance tags while a recording is running, so they can be viewed alongside
+ * garbage collection and lock events. Built for Java 11 in its own source set, and loaded by name from
+ * {@link DesktopCompatibility}.
+ */
+public class DesktopFlightRecorder implements Performance.Listener {
+
+  private static volatile boolean recording;
+
+  /**
+   * @throws LinkageError if the flight recorder is not available
+   */
+  public static void setup() {
+    if (!FlightRecorder.isAvailable()) return;
+    FlightRecorder.addListener(new FlightRecorderListener() {
+      @Override
+      public void recordingStateChanged(Recording changed) {
+        boolean running = false;
+        for (Recording r : FlightRecorder.getFlightRecorder().getRecordings()) {
+          if (r.getState() == RecordingState.RUNNING) running = true;
+        }
+        recording = running;
+      }
+    });
+    Performance.setListener(new DesktopFlightRecorder());
+  }
+
+  private final ThreadLocal<ArrayDeque<Event>> active = new ThreadLocal<ArrayDeque<Event>>() {
+    @Override
+    protected ArrayDeque<Event> initialValue() {
+      return new ArrayDeque<Event>();
+    }
+  };
+
+  @Override
+  public void start(String tag) {
+    if (!recording) return;
+    Event event = create(tag);
+    event.begin();
+    active.get().push(event);
+  }
+
+  @Override
+  public void stop(String tag) {
+    ArrayDeque<Event> events = active.get();
+    if (events.isEmpty()) return;
+    boolean started = false;
+    for (Event event : events) {
+      if (tag(event).equals(tag)) started = true;
+    }
+    if (!started) return; // started before recording
+    // events started inside the tag without being stopped end with it
+    while (!events.isEmpty()) {
+      Event event = events.pop();
+      event.commit();
+      if (tag(event).equals(tag)) return;
+    }
+  }
+
+  private static Event create(String tag) {
+    if (PerformanceTags.SERVER_TICK.equals(tag)) return new ServerTickEvent();
+    if (PerformanceTags.SERVER_WORLD_AREA_TICK.equals(tag)) return new AreaTickEvent();
+    if (PerformanceTags.LIGHT_UPDATE.equals(tag)) return new LightUpdateEvent();
+    if (PerformanceTags.CLIENT_TICK.equals(tag)) return new ClientTickEvent();
+    if (PerformanceTags.CLIENT_FRAME.equals(tag)) return new FrameEvent();
+    if (PerformanceTags.CLIENT_RENDER_WORLD.equals(tag)) return new RenderWorldEvent();
+    TagEvent event = new TagEvent();
+    event.tag = tag;
+    return event;
+  }
+
+  private static String tag(Event event) {
+    if (event instanceof ServerTickEvent) return PerformanceTags.SERVER_TICK;
+    if (event instanceof AreaTickEvent) return PerformanceTags.SERVER_WORLD_AREA_TICK;
+    if (event instanceof LightUpdateEvent) return PerformanceTags.LIGHT_UPDATE;
+    if (event instanceof ClientTickEvent) return PerformanceTags.CLIENT_TICK;
+    if (event instanceof FrameEvent) return PerformanceTags.CLIENT_FRAME;
+    if (event instanceof RenderWorldEvent) return PerformanceTags.CLIENT_RENDER_WORLD;
+    return ((TagEvent) event).tag;
+  }
+
+  @Name("cubes.ServerTick")
+  @Label("Server Tick")
+  @Category("Cubes")
+  static class ServerTickEvent extends Event {
+  }
+
+  @Name("cubes.AreaTick")
+  @Label("Area Tick")
+  @Category("Cubes")
+  static class AreaTickEvent extends Event {
+  }
+
+  @Name("cubes.LightUpdate")
+  @Label("Light Update")
+  @Category("Cubes")
+  static class LightUpdateEvent extends Event {
+  }
+
+  @Name("cubes.ClientTick")
+  @Label("Client Tick")
+  @Category("Cubes")
+  static class ClientTickEvent extends Event {
+  }
+
+  @Name("cubes.Frame")
+  @Label("Frame")
+  @Category("Cubes")
+  static class FrameEvent extends Event {
+  }
+
+  @Name("cubes.RenderWorld")
+  @Label("Render World")
+  @Category("Cubes")
+  static class RenderWorldEvent extends Event {
+  }
+
+  @Name("cubes.Tag")
+  @Label("Performance Tag")
+  @Category("Cubes")
+  static class TagEvent extends Event {
+    @Label("Tag")
+    String tag;
+  }
+}
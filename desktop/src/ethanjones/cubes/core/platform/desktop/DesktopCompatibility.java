@@ -13,6 +13,8 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input;
 import com.badlogic.gdx.files.FileHandle;
 
+import java.lang.reflect.InvocationTargetException;
+
 public abstract class DesktopCompatibility extends Compatibility {
 
   protected static final FileHandle workingFolder = new FileHandle(System.getProperty("user.dir"));
@@ -21,6 +23,15 @@ public abstract class DesktopCompatibility extends Compatibility {
     DesktopSecurityManager.setup();
     DesktopMemoryChecker.setup();
     DesktopDeadlockDetector.setup();
+    try {
+      Class.forName("ethanjones.cubes.core.platform.desktop.DesktopFlightRecorder").getMethod("setup").invoke(null);
+    } catch (ClassNotFoundException | LinkageError ignored) {
+      // not built, or flight recorder not available in this java version
+    } catch (InvocationTargetException e) {
+      if (!(e.getCause() instanceof LinkageError)) Log.warning("Failed to setup flight recorder", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      Log.warning("Failed to setup flight recorder", e);
+    }
   }
 
   private final OS os;